@@ -0,0 +1,159 @@
+package com.bina.intervalTree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Search shared by the read-only indexes laid out as an implicit augmented tree (as in cgranges).
+ * <p/>
+ * The intervals are sorted by left then right end-point. At level k the nodes are the indexes whose
+ * k lowest bits are 1, and each node holds the largest right end-point of its subtree. Subclasses only
+ * say where the end-points are kept, see {@link StaticIntervalIndex} and {@link MappedIntervalIndex}.
+ * <p/>
+ * Queries have the same criteria as {@link IntervalTree}, but every interval meeting them is found,
+ * including those only brought within reach by the wiggle, and results come in sorted order.
+ */
+abstract class ImplicitIntervalIndex<Key extends Interval1D> implements IntervalIndex<Key> {
+    // subtrees of at most 2^(SCAN_LEVEL + 1) intervals are scanned rather than descended
+    private static final int SCAN_LEVEL = 3;
+
+    /**
+     * @return level of the root, -1 if there is no interval
+     */
+    abstract int rootLevel();
+
+    abstract long left(int i);
+
+    abstract long right(int i);
+
+    /**
+     * @return largest right end-point in the subtree of node i
+     */
+    abstract long maxRight(int i);
+
+    abstract Key key(int i);
+
+    /**
+     * Computes the largest right end-point below each node
+     *
+     * @param rights    right end-points, in sorted order of the intervals
+     * @param maxRights filled with the largest right end-point of each subtree
+     * @return level of the root, -1 if there is no interval
+     */
+    static int index(final long[] rights, final long[] maxRights) {
+        final int size = rights.length;
+        if (size == 0) {
+            return -1;
+        }
+        long lastIndex = 0;
+        long last = 0;
+        for (int i = 0; i < size; i += 2) {
+            lastIndex = i;
+            last = maxRights[i] = rights[i];
+        }
+        int k;
+        for (k = 1; 1L << k <= size; k++) {
+            final long x = 1L << (k - 1);
+            final long step = x << 2;
+            for (long i = (x << 1) - 1; i < size; i += step) {
+                final long leftMax = maxRights[(int) (i - x)];
+                final long rightMax = i + x < size ? maxRights[(int) (i + x)] : last;
+                maxRights[(int) i] = Math.max(rights[(int) i], Math.max(leftMax, rightMax));
+            }
+            // the last node of the level covers the missing part of the tree
+            lastIndex = ((lastIndex >> k) & 1) != 0 ? lastIndex - x : lastIndex + x;
+            if (lastIndex < size && maxRights[(int) lastIndex] > last) {
+                last = maxRights[(int) lastIndex];
+            }
+        }
+        return k - 1;
+    }
+
+    @Override
+    public boolean forEachOverlap(final Interval1D k, final double reciprocalRatio, final int wiggle,
+                                  final IntervalVisitor<? super Key> visitor) {
+        final int rootLevel = rootLevel();
+        if (rootLevel < 0) {
+            return true;
+        }
+        return search((1L << rootLevel) - 1, rootLevel, (int) size(), k.getLeft() - wiggle - 1,
+                k.getRight() + wiggle + 1, k, reciprocalRatio, wiggle, visitor);
+    }
+
+    /**
+     * Only the intervals that may meet the criteria are tested: shifted by up to wiggle and overlapping k
+     * by at least 0 positions, they end at most one position before k and start at most one after it.
+     * The depth is bounded by the level of the root, so recursion needs no stack of its own.
+     *
+     * @param low  intervals ending before low are skipped
+     * @param high intervals starting after high are skipped
+     * @return false if the visitor stopped the search
+     */
+    private boolean search(final long node, final int level, final int size, final long low, final long high,
+                           final Interval1D k, final double reciprocalRatio, final int wiggle,
+                           final IntervalVisitor<? super Key> visitor) {
+        if (level <= SCAN_LEVEL) {
+            final long start = node >> level << level;
+            final long end = Math.min(start + (1L << (level + 1)) - 1, size);
+            for (int i = (int) start; i < end && left(i) <= high; i++) {
+                if (right(i) >= low && !accept(i, k, reciprocalRatio, wiggle, visitor)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        final long leftChild = node - (1L << (level - 1));
+        if ((leftChild >= size || maxRight((int) leftChild) >= low)
+                && !search(leftChild, level - 1, size, low, high, k, reciprocalRatio, wiggle, visitor)) {
+            return false;
+        }
+        if (node >= size || left((int) node) > high) {
+            return true;
+        }
+        final int i = (int) node;
+        if (right(i) >= low && !accept(i, k, reciprocalRatio, wiggle, visitor)) {
+            return false;
+        }
+        return search(node + (1L << (level - 1)), level - 1, size, low, high, k, reciprocalRatio, wiggle, visitor);
+    }
+
+    /**
+     * @return false if interval i meets the criteria and the visitor stopped the search
+     */
+    private boolean accept(final int i, final Interval1D k, final double reciprocalRatio, final int wiggle,
+                           final IntervalVisitor<? super Key> visitor) {
+        final Key key = key(i);
+        return !key.intersects(k, reciprocalRatio, wiggle) || visitor.visit(key);
+    }
+
+    public List<Key> getOverlaps(Interval1D k) {
+        return getOverlaps(k, 0, 0);
+    }
+
+    public List<Key> getOverlaps(Interval1D k, double reciprocalRatio) {
+        return getOverlaps(k, reciprocalRatio, 0);
+    }
+
+    @Override
+    public List<Key> getOverlaps(Interval1D k, double reciprocalRatio, int wiggle) {
+        final List<Key> retVal = new ArrayList<>();
+        forEachOverlap(k, reciprocalRatio, wiggle, retVal::add);
+        return retVal;
+    }
+
+    public boolean contains(Interval1D k) {
+        return contains(k, 0, 0);
+    }
+
+    public boolean contains(Interval1D k, double reciprocalRatio) {
+        return contains(k, reciprocalRatio, 0);
+    }
+
+    /**
+     * @return number of levels of the implicit tree
+     */
+    @Override
+    public long maxDepth() {
+        return rootLevel() + 1;
+    }
+}
@@ -0,0 +1,39 @@
+package com.bina.intervalTree;
+
+import java.util.List;
+
+/**
+ * Searches a set of intervals, see {@link IntervalTree} and {@link StaticIntervalIndex}
+ */
+public interface IntervalIndex<Key extends Interval1D> {
+    /**
+     * Passes the keys that overlap k to the visitor as they are found, without collecting them
+     *
+     * @param k               Key to search for
+     * @param reciprocalRatio minimum reciprocal overlap required, 0 means minimum one position overlap
+     * @param wiggle          Amount the interval can be shifted
+     * @param visitor         called for each key found, in the order of getOverlaps
+     * @return false if the visitor stopped the search
+     */
+    public boolean forEachOverlap(Interval1D k, double reciprocalRatio, int wiggle, IntervalVisitor<? super Key> visitor);
+
+    /**
+     * @param k               Key to search for
+     * @param reciprocalRatio minimum reciprocal overlap required, 0 means minimum one position overlap
+     * @param wiggle          Amount the interval can be shifted
+     * @return keys that overlap the given key, in pre-order of the nodes for {@link IntervalTree}, sorted by left
+     * then right end-point for the read-only indexes built at once, such as {@link StaticIntervalIndex}
+     */
+    public List<Key> getOverlaps(Interval1D k, double reciprocalRatio, int wiggle);
+
+    /**
+     * @return true if k overlaps any key, with the same criteria as getOverlaps, the search stops at the first one
+     */
+    public default boolean contains(Interval1D k, double reciprocalRatio, int wiggle) {
+        return !forEachOverlap(k, reciprocalRatio, wiggle, key -> false);
+    }
+
+    public long size();
+
+    public long maxDepth();
+}
@@ -13,7 +13,7 @@ import java.util.ArrayList;
  *
  * @author johnmu
  */
-public class IntervalTree<Key extends Interval1D> {
+public class IntervalTree<Key extends Interval1D> implements IntervalIndex<Key> {
     private final static Logger log = Logger.getLogger(IntervalTree.class.getName());
     long numEntries = 0;
     private IntervalTreeNode<Key> root = null;
@@ -266,11 +266,11 @@ public class IntervalTree<Key extends Interval1D> {
     }
 
     public ArrayList<Key> getOverlaps(Interval1D k) {
-        return getOverlaps(root, k, 0, 0);
+        return getOverlaps(k, 0, 0);
     }
 
     public ArrayList<Key> getOverlaps(Interval1D k, double reciprocalRatio) {
-        return getOverlaps(root, k, reciprocalRatio, 0);
+        return getOverlaps(k, reciprocalRatio, 0);
     }
 
     /**
@@ -282,81 +282,68 @@ public class IntervalTree<Key extends Interval1D> {
      * @return ArrayList of keys that overlap the given Key
      */
     public ArrayList<Key> getOverlaps(Interval1D k, double reciprocalRatio, int wiggle) {
-        return getOverlaps(root, k, reciprocalRatio, wiggle);
+        ArrayList<Key> retVal = new ArrayList<>();
+        forEachOverlap(root, k, reciprocalRatio, wiggle, retVal::add);
+        return retVal;
+    }
+
+    /**
+     * Gets keys overlapping k from the root, without collecting them
+     *
+     * @param k               Key to search for
+     * @param reciprocalRatio
+     * @param wiggle
+     * @param visitor         called with each key that overlaps the given key
+     * @return false if the visitor stopped the search
+     */
+    @Override
+    public boolean forEachOverlap(Interval1D k, double reciprocalRatio, int wiggle, IntervalVisitor<? super Key> visitor) {
+        return forEachOverlap(root, k, reciprocalRatio, wiggle, visitor);
     }
 
     /**
      * TODO There are some optimizations here if the left and right trees are augmented with more information
      *
-     * @param k key to search for
-     * @return List of Keys that overlap the given key
+     * @param head Start searching at this node
+     * @param k    key to search for
+     * @return false if the visitor stopped the search
      */
-    private ArrayList<Key> getOverlaps(IntervalTreeNode<Key> head, Interval1D k, double reciprocalRatio, int wiggle) {
+    private boolean forEachOverlap(IntervalTreeNode<Key> head, Interval1D k, double reciprocalRatio, int wiggle,
+                                   IntervalVisitor<? super Key> visitor) {
         if (head == null) {
-            return new ArrayList<>();
+            return true;
+        }
+        if (!head.forEachOverlap(k, reciprocalRatio, wiggle, visitor)) {
+            return false;
         }
-        ArrayList<Key> retVal = head.getOverlaps(k, reciprocalRatio, wiggle);
         int compVal = head.checkKey(k);
         if (compVal == 0) {
-            retVal.addAll(getOverlaps(head.getLeft(), k, reciprocalRatio, wiggle));
-            retVal.addAll(getOverlaps(head.getRight(), k, reciprocalRatio, wiggle));
+            return forEachOverlap(head.getLeft(), k, reciprocalRatio, wiggle, visitor)
+                    && forEachOverlap(head.getRight(), k, reciprocalRatio, wiggle, visitor);
         } else if (compVal < 0) {
-            retVal.addAll(getOverlaps(head.getLeft(), k, reciprocalRatio, wiggle));
+            return forEachOverlap(head.getLeft(), k, reciprocalRatio, wiggle, visitor);
         } else {
-            retVal.addAll(getOverlaps(head.getRight(), k, reciprocalRatio, wiggle));
+            return forEachOverlap(head.getRight(), k, reciprocalRatio, wiggle, visitor);
         }
-        return retVal;
     }
 
     public boolean contains(Interval1D k) {
-        return contains(root, k, 0, 0);
+        return contains(k, 0, 0);
     }
 
     public boolean contains(Interval1D k, double reciprocalRatio) {
-        return contains(root, k, reciprocalRatio, 0);
+        return contains(k, reciprocalRatio, 0);
     }
 
     /**
      * @param k               Key to search for
      * @param reciprocalRatio
      * @param wiggle
-     * @return true if k overlaps and key in tree
+     * @return true if k overlaps and key in tree, the search stops at the first one
      */
+    @Override
     public boolean contains(Interval1D k, double reciprocalRatio, int wiggle) {
-        return contains(root, k, reciprocalRatio, wiggle);
-    }
-
-    /**
-     * @param head Start searching at this node
-     * @param k    Key to search for
-     * @return true if k overlaps and key from the tree rooted at head
-     */
-    private boolean contains(IntervalTreeNode<Key> head, Interval1D k, double reciprocalRatio, int wiggle) {
-        if (head == null) {
-            return false;
-        }
-        if (head.contains(k, reciprocalRatio, wiggle)) {
-            return true;
-        }
-        int compVal = head.checkKey(k);
-        if (compVal == 0) {
-            if (contains(head.getLeft(), k, reciprocalRatio, wiggle)) {
-                return true;
-            }
-            if (contains(head.getRight(), k, reciprocalRatio, wiggle)) {
-                return true;
-            }
-        } else if (compVal < 0) {
-            if (contains(head.getLeft(), k, reciprocalRatio, wiggle)) {
-                return true;
-            }
-        } else {
-            if (contains(head.getRight(), k, reciprocalRatio, wiggle)) {
-                return true;
-            }
-        }
-
-        return false;
+        return !forEachOverlap(root, k, reciprocalRatio, wiggle, key -> false);
     }
 
     /**
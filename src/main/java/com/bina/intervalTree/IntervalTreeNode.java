@@ -176,6 +176,24 @@ public class IntervalTreeNode<Key extends Interval1D> {
         return retVal;
     }
 
+    /**
+     * Passes the center intervals that overlap (reciprocal with wiggle) the key to the visitor
+     *
+     * @param k               Key to search for
+     * @param reciprocalRatio Reciprocal overlap ratio
+     * @param wiggle          Try to shift the interval within this wiggle
+     * @return false if the visitor stopped the search
+     */
+    public final boolean forEachOverlap(final Interval1D k, double reciprocalRatio, int wiggle, IntervalVisitor<? super Key> visitor) {
+        for (int i = 0; i < center.size(); i++) {
+            Key centerKey = center.get(i);
+            if (centerKey.intersects(k, reciprocalRatio, wiggle) && !visitor.visit(centerKey)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * @param k               Key to search for
      * @param reciprocalRatio Reciprocal overlap ratio
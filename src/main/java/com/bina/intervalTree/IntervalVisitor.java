@@ -0,0 +1,12 @@
+package com.bina.intervalTree;
+
+/**
+ * Receives the keys found by {@link IntervalIndex#forEachOverlap}, one at a time
+ */
+public interface IntervalVisitor<Key> {
+    /**
+     * @param key key found
+     * @return true to go on with the search, false to stop it
+     */
+    public boolean visit(Key key);
+}
@@ -0,0 +1,80 @@
+package com.bina.intervalTree;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Read-only interval index over the end-points written by {@link StaticIntervalIndex#write}, queried in
+ * place from a buffer, usually a mapped file. Nothing is copied when it is opened.
+ * <p/>
+ * Only the end-points are stored, so the keys are intervals made from them when they are found.
+ * <p/>
+ * Layout: size and level of the root (two ints), then the left end-points, the right end-points and the
+ * largest right end-point of each subtree, as longs in sorted order of the intervals.
+ */
+public class MappedIntervalIndex extends ImplicitIntervalIndex<SimpleInterval1D> {
+    private final int size;
+    private final int rootLevel;
+    private final LongBuffer lefts;
+    private final LongBuffer rights;
+    private final LongBuffer maxRights;
+
+    /**
+     * @param buffer starts at the index, its position is not changed
+     */
+    public MappedIntervalIndex(final ByteBuffer buffer) {
+        final ByteBuffer in = buffer.duplicate();
+        size = in.getInt();
+        rootLevel = in.getInt();
+        lefts = slice(in, 0);
+        rights = slice(in, 1);
+        maxRights = slice(in, 2);
+    }
+
+    /**
+     * @return the nth array of longs after the header
+     */
+    private LongBuffer slice(final ByteBuffer in, final int n) {
+        final ByteBuffer array = in.duplicate();
+        array.position(in.position() + n * 8 * size);
+        array.limit(array.position() + 8 * size);
+        return array.slice().asLongBuffer();
+    }
+
+    /**
+     * @return number of bytes taken by an index of size intervals
+     */
+    public static long bytes(final long size) {
+        return 8 + 3 * 8 * size;
+    }
+
+    @Override
+    int rootLevel() {
+        return rootLevel;
+    }
+
+    @Override
+    long left(final int i) {
+        return lefts.get(i);
+    }
+
+    @Override
+    long right(final int i) {
+        return rights.get(i);
+    }
+
+    @Override
+    long maxRight(final int i) {
+        return maxRights.get(i);
+    }
+
+    @Override
+    SimpleInterval1D key(final int i) {
+        return new SimpleInterval1D(lefts.get(i), rights.get(i));
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+}
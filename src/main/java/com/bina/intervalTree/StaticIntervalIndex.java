@@ -0,0 +1,90 @@
+package com.bina.intervalTree;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Read-only interval index built at once from all its intervals, for sets that are not changed
+ * after they are loaded.
+ * <p/>
+ * The intervals are sorted by left then right end-point and kept in primitive arrays, laid out as an
+ * implicit tree (see {@link ImplicitIntervalIndex}). There is no node object, and a query reads the
+ * arrays mostly in order. Intervals with the same end-points keep the order they were given in.
+ */
+public class StaticIntervalIndex<Key extends Interval1D> extends ImplicitIntervalIndex<Key> {
+    private final int size;
+    private final long[] lefts;
+    private final long[] rights;
+    private final long[] maxRights;
+    private final Object[] keys;
+    private final int rootLevel;
+
+    /**
+     * @param data intervals to index, in any order
+     */
+    public StaticIntervalIndex(final Collection<Key> data) {
+        final List<Key> sorted = new ArrayList<>(data);
+        // stable, so that equal intervals keep their order
+        sorted.sort(Comparator.<Key>comparingLong(Interval1D::getLeft).thenComparingLong(Interval1D::getRight));
+        size = sorted.size();
+        lefts = new long[size];
+        rights = new long[size];
+        maxRights = new long[size];
+        keys = sorted.toArray();
+        for (int i = 0; i < size; i++) {
+            lefts[i] = sorted.get(i).getLeft();
+            rights[i] = sorted.get(i).getRight();
+        }
+        rootLevel = index(rights, maxRights);
+    }
+
+    /**
+     * Writes the end-points in the layout read by {@link MappedIntervalIndex}, the keys are not written
+     *
+     * @param out destination
+     */
+    public void write(final DataOutput out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(rootLevel);
+        for (final long[] array : new long[][]{lefts, rights, maxRights}) {
+            for (final long value : array) {
+                out.writeLong(value);
+            }
+        }
+    }
+
+    @Override
+    int rootLevel() {
+        return rootLevel;
+    }
+
+    @Override
+    long left(final int i) {
+        return lefts[i];
+    }
+
+    @Override
+    long right(final int i) {
+        return rights[i];
+    }
+
+    @Override
+    long maxRight(final int i) {
+        return maxRights[i];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    Key key(final int i) {
+        return (Key) keys[i];
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+}
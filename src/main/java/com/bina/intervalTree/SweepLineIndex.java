@@ -0,0 +1,145 @@
+package com.bina.intervalTree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Read-only interval index for queries that come in sorted order, as when walking two coordinate sorted
+ * VCFs side by side.
+ * <p/>
+ * The intervals are sorted by left then right end-point. A window of active intervals follows the
+ * queries: intervals enter it when the query reaches their start and leave it once a query starts after
+ * their end, so each interval is tested against the queries it is close to and there is no tree.
+ * <p/>
+ * Queries should start in non-decreasing order (with the wiggle applied). A query starting before the
+ * previous one is still answered, but the window is rebuilt from the first interval reaching the query,
+ * which costs a binary search plus the intervals from there on. That is short unless a long interval
+ * starts well before the query and spans it.
+ * <p/>
+ * The criteria and order of the results are the same as {@link StaticIntervalIndex}. The index keeps
+ * the state of the sweep, so it is not thread-safe, even for queries.
+ */
+public class SweepLineIndex<Key extends Interval1D> implements IntervalIndex<Key> {
+    private final int size;
+    private final long[] lefts;
+    private final long[] rights;
+    private final Object[] keys;
+    // largest right end-point of the intervals up to each one, non-decreasing, so a rewind can search it
+    private final long[] maxRights;
+
+    // first interval not yet admitted into the window
+    private int next = 0;
+    // indexes of the intervals in the window, in sorted order
+    private int[] active = new int[16];
+    private int activeCount = 0;
+    private long lastLow = Long.MIN_VALUE;
+
+    /**
+     * @param data intervals to index, in any order
+     */
+    public SweepLineIndex(final Collection<Key> data) {
+        final List<Key> sorted = new ArrayList<>(data);
+        // stable, so that equal intervals keep their order
+        sorted.sort(Comparator.<Key>comparingLong(Interval1D::getLeft).thenComparingLong(Interval1D::getRight));
+        size = sorted.size();
+        lefts = new long[size];
+        rights = new long[size];
+        maxRights = new long[size];
+        keys = sorted.toArray();
+        for (int i = 0; i < size; i++) {
+            lefts[i] = sorted.get(i).getLeft();
+            rights[i] = sorted.get(i).getRight();
+            maxRights[i] = i == 0 ? rights[i] : Math.max(maxRights[i - 1], rights[i]);
+        }
+    }
+
+    /**
+     * Only the intervals that may meet the criteria are tested: shifted by up to wiggle and overlapping k
+     * by at least 0 positions, they end at most one position before k and start at most one after it
+     */
+    @Override
+    public boolean forEachOverlap(final Interval1D k, final double reciprocalRatio, final int wiggle,
+                                  final IntervalVisitor<? super Key> visitor) {
+        final long low = k.getLeft() - wiggle - 1;
+        final long high = k.getRight() + wiggle + 1;
+        if (low < lastLow) {
+            rewind(low);
+        }
+        lastLow = low;
+
+        // drop the intervals ending before the window, later queries start after it too
+        int kept = 0;
+        for (int j = 0; j < activeCount; j++) {
+            if (rights[active[j]] >= low) {
+                active[kept++] = active[j];
+            }
+        }
+        activeCount = kept;
+        // admit the ones starting within it
+        for (; next < size && lefts[next] <= high; next++) {
+            if (rights[next] >= low) {
+                if (activeCount == active.length) {
+                    final int[] grown = new int[active.length * 2];
+                    System.arraycopy(active, 0, grown, 0, activeCount);
+                    active = grown;
+                }
+                active[activeCount++] = next;
+            }
+        }
+
+        // a longer query may have admitted intervals past the end of this one
+        for (int j = 0; j < activeCount && lefts[active[j]] <= high; j++) {
+            final Key key = key(active[j]);
+            if (key.intersects(k, reciprocalRatio, wiggle) && !visitor.visit(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Restarts the sweep for a query starting before the previous one, from the first interval that can
+     * still reach low: all the ones before it end before low
+     */
+    private void rewind(final long low) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (maxRights[mid] < low) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        next = lo;
+        activeCount = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Key key(final int i) {
+        return (Key) keys[i];
+    }
+
+    @Override
+    public List<Key> getOverlaps(Interval1D k, double reciprocalRatio, int wiggle) {
+        final List<Key> retVal = new ArrayList<>();
+        forEachOverlap(k, reciprocalRatio, wiggle, retVal::add);
+        return retVal;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return 1, the intervals are in a flat array
+     */
+    @Override
+    public long maxDepth() {
+        return 1;
+    }
+}
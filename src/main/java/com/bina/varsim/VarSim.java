@@ -3,8 +3,10 @@ package com.bina.varsim;
 import com.bina.varsim.fastqLiftover.FastqLiftOver;
 import com.bina.varsim.fastqLiftover.LongISLNDReadMapLiftOver;
 import com.bina.varsim.tools.LiftOver;
+import com.bina.varsim.tools.PrepareReference;
 import com.bina.varsim.tools.VCFstats;
 import com.bina.varsim.tools.evaluation.JSONInserter;
+import com.bina.varsim.tools.evaluation.PrepareTruth;
 import com.bina.varsim.tools.evaluation.SAMcompare;
 import com.bina.varsim.tools.evaluation.VCFcompare;
 import com.bina.varsim.tools.evaluation.VCFCompareResultsParser;
@@ -45,6 +47,7 @@ public class VarSim {
                 + "       vcf2diploid    -- Enhanced version of vcf2diploid from alleleseq \n"
                 + "       fastq_liftover -- Lifts over simulated FASTQ files to reference coordinates \n"
                 + "       liftover       -- Lifts a file to desired coordinates \n"
+                + "       prepare_reference -- Writes a binary reference image for fast loading \n"
                 + "\n";
 
         System.err.println(VarSim.class.getSimpleName() + " " + VERSION);
@@ -97,6 +100,12 @@ public class VarSim {
             case LiftOver:
                 new LiftOver(command, description).run(pass_args);
                 break;
+            case PrepareReference:
+                new PrepareReference(command, description).run(pass_args);
+                break;
+            case PrepareTruth:
+                new PrepareTruth(command, description).run(pass_args);
+                break;
             case Help:
                 printUsage();
                 break;
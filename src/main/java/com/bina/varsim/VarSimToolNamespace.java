@@ -14,6 +14,8 @@ public enum VarSimToolNamespace {
     LongISLNDLiftover("longislnd_liftover", "Lift read map files to the right reference", com.bina.varsim.fastqLiftover.LongISLNDReadMapLiftOver.class),
     JSONInserter("json_inserter", "Inserts n JSON files to one HTML to create n HTML files", com.bina.varsim.tools.evaluation.JSONInserter.class),
     LiftOver("liftover", "Lift over a file to desired coordinates", com.bina.varsim.tools.LiftOver.class),
+    PrepareReference("prepare_reference", "Write a binary image of a reference FASTA that the other tools map instead of parsing the FASTA", com.bina.varsim.tools.PrepareReference.class),
+    PrepareTruth("prepare_truth", "Write the parsed and canonicalized variants of a truth VCF that vcfcompare maps instead of parsing the VCF", com.bina.varsim.tools.evaluation.PrepareTruth.class),
     Help("-help", null, null, new String[]{"-h"}),
     Version("-version", null, null),
     Unknown("", null, null);
@@ -9,6 +9,7 @@ import com.bina.varsim.fastqLiftover.readers.PairedFastqReader;
 import com.bina.varsim.fastqLiftover.types.GenomeLocation;
 import com.bina.varsim.fastqLiftover.types.MapBlocks;
 import com.bina.varsim.fastqLiftover.types.SimulatedReadPair;
+import com.bina.varsim.util.ParallelBgzfInputStream;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.log4j.Logger;
 import org.kohsuke.args4j.CmdLineException;
@@ -55,6 +56,10 @@ public class FastqLiftOver extends VarSimTool {
 
     public InputStream decompressStream(final File inputFile) throws IOException {
         PushbackInputStream pb = new PushbackInputStream(new FileInputStream(inputFile), 1024 * 1024); //we need a pushbackstream to look ahead
+        if (ParallelBgzfInputStream.startsWithBgzfBlock(pb)) {
+            log.info(inputFile.getName() + " is bgzip compressed");
+            return new ParallelBgzfInputStream(new BufferedInputStream(pb, 1024 * 1024));
+        }
         byte[] signature = new byte[2];
         pb.read(signature); //read the signature
         pb.unread(signature); //push back the signature to the stream
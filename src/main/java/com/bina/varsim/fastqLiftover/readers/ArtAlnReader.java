@@ -31,7 +31,7 @@ public class ArtAlnReader {
             }
             if (currentLine.startsWith("@SQ")) {
                 final String[] fields = currentLine.split("[\\s]+");
-                chromosomeLengths.put(new ChrString(fields[1]), Integer.valueOf(fields[2]));
+                chromosomeLengths.put(ChrString.valueOf(fields[1]), Integer.valueOf(fields[2]));
             }
         }
     }
@@ -47,7 +47,7 @@ public class ArtAlnReader {
         final String[] alnFields = splitterPattern.split(currentLine.trim().substring(1));
         int direction = (alnFields[3].equals("-")) ? 1 : 0;
         final int refLength = refAln.replace("-", "").length();
-        ArtAlnRecord record = new ArtAlnRecord(new ChrString(alnFields[0]), Integer.parseInt(alnFields[2]) + 1, direction, alnFields[1], refLength);
+        ArtAlnRecord record = new ArtAlnRecord(ChrString.valueOf(alnFields[0]), Integer.parseInt(alnFields[2]) + 1, direction, alnFields[1], refLength);
         if (!chromosomeLengths.containsKey(record.chromosome)) {
             //minus 2 because there are two more readLine operations
             //this might be fragile
@@ -46,7 +46,7 @@ public class DWGSIMFastqReader {
         final int direction1 = Integer.parseInt(nameFields[nameFields.length - 12]);
         final int start2 = Integer.parseInt(nameFields[nameFields.length - 13]);
         final int start1 = Integer.parseInt(nameFields[nameFields.length - 14]);
-        final ChrString chromosome1 = new ChrString(joiner.join(Arrays.copyOfRange(nameFields, 0, nameFields.length - 14)));
+        final ChrString chromosome1 = ChrString.valueOf(joiner.join(Arrays.copyOfRange(nameFields, 0, nameFields.length - 14)));
         final ChrString chromosome2 = chromosome1; // Marghoob was there a reason for this?
 
         read.locs1.add(new GenomeLocation(chromosome1, start1, direction1));
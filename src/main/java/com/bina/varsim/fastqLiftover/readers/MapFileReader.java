@@ -18,9 +18,9 @@ public class MapFileReader {
         MapBlock mapBlock = null;
         if (scanner.hasNext()) {
             final int size = scanner.nextInt();
-            final ChrString srcChr = new ChrString(scanner.next());
+            final ChrString srcChr = ChrString.valueOf(scanner.next());
             final int srcLocation = scanner.nextInt();
-            final ChrString dstChr = new ChrString(scanner.next());
+            final ChrString dstChr = ChrString.valueOf(scanner.next());
             final int dstLocation = scanner.nextInt();
             final String direction = scanner.next();
             final String featureType = scanner.next();
@@ -75,7 +75,7 @@ public class PBSIMFastqReader implements PairedFastqReader {
             List<ChrString> tmp = new ArrayList<>(5);
             tmp.add(null); // index-0 should not be used, make it break
             for (String buffer = br.readLine(); buffer != null; buffer = br.readLine()) {
-                tmp.add(new ChrString(buffer.substring(1)));
+                tmp.add(ChrString.valueOf(buffer.substring(1)));
             }
             data = tmp;
         }
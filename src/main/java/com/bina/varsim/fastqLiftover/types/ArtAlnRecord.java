@@ -3,7 +3,7 @@ package com.bina.varsim.fastqLiftover.types;
 import com.bina.varsim.types.ChrString;
 
 public class ArtAlnRecord {
-    public ChrString chromosome = new ChrString("");
+    public ChrString chromosome = ChrString.valueOf("");
     public int location = -1;
     public int direction = -1;
     public String name = null;
@@ -21,7 +21,7 @@ public class GenomeInterval implements Comparable<GenomeInterval> {
     }
 
     public GenomeInterval(final String fields[]) {
-        chromosome = new ChrString(fields[0]);
+        chromosome = ChrString.valueOf(fields[0]);
         start = Integer.parseInt(fields[1]);
         end = Integer.parseInt(fields[2]);
         strand = Strand.valueOf(fields[3]);
@@ -13,7 +13,7 @@ public class GenomeLocation implements Comparable<GenomeLocation> {
 
     public GenomeLocation(final String locationString) {
         final String fields[] = locationString.split(SEPARATOR, -1);
-        this.chromosome = new ChrString(fields[0]);
+        this.chromosome = ChrString.valueOf(fields[0]);
         this.location = "".equals(fields[1]) ? 0 : Integer.parseInt(fields[1]);
         this.feature = MapBlock.BlockType.fromName(fields[2]);
         this.direction = (fields.length > 3) ? 1 : 0;
@@ -22,7 +22,7 @@ public class MapBlock implements Comparable<MapBlock> {
     public MapBlock(final GenomeLocation srcLoc) {
         size = 0;
         this.srcLoc = srcLoc;
-        this.dstLoc = new GenomeLocation(new ChrString(""), 0);
+        this.dstLoc = new GenomeLocation(ChrString.valueOf(""), 0);
         this.blockType = BlockType.UNKNOWN;
         this.direction = 0;
     }
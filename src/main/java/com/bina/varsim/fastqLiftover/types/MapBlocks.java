@@ -179,16 +179,9 @@ public class MapBlocks {
         return new ReadMapRecord(readMapRecord.getReadName(), liftedReadMaps);
     }
 
-    private List<MapBlock> findIntersectingBlocks(final chrSearchTree chrSearchTree, final ChrString chr, final int start, final int end) {
-        List<MapBlock> overlappingMapBlocks = new ArrayList<>();
-        Iterable<ValueInterval1D<MapBlock>> overlaps = chrSearchTree.getOverlaps(chr, new SimpleInterval1D(start, end));
-        if (overlaps == null) {
-            // nothing found
-            return overlappingMapBlocks;
-        }
-        for (ValueInterval1D<MapBlock> i : overlaps) {
-            overlappingMapBlocks.add(i.getContent());
-        }
+    private List<MapBlock> findIntersectingBlocks(final chrSearchTree<ValueInterval1D<MapBlock>> chrSearchTree, final ChrString chr, final int start, final int end) {
+        final List<MapBlock> overlappingMapBlocks = new ArrayList<>();
+        chrSearchTree.forEachOverlap(chr, new SimpleInterval1D(start, end), 0, 0, i -> overlappingMapBlocks.add(i.getContent()));
         return overlappingMapBlocks;
     }
 }
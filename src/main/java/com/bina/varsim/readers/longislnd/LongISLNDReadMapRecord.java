@@ -25,7 +25,7 @@ public class LongISLNDReadMapRecord {
     final protected Strand strand;
 
     LongISLNDReadMapRecord(final BEDFeature bedFeature) {
-        chromosome = new ChrString(bedFeature.getContig());
+        chromosome = ChrString.valueOf(bedFeature.getContig());
         start = bedFeature.getStart();
         end = bedFeature.getEnd();
         readName = bedFeature.getName();
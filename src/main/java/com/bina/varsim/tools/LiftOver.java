@@ -62,7 +62,7 @@ public class LiftOver extends VarSimTool {
         String line;
         while ((line = fileToLift.readLine()) != null) {
           String[] fields = line.split("\t");
-          GenomeInterval interval = new GenomeInterval(new ChrString(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+          GenomeInterval interval = new GenomeInterval(ChrString.valueOf(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
                   fields.length >= 6 ? Strand.decode(fields[5]) : Strand.FORWARD, MapBlock.BlockType.UNKNOWN);
           Collection<ReadMapBlock> liftedReadMapBlocks = mapBlocks.liftOverGenomeInterval(interval, 1);
           List<GenomeInterval> liftedIntervals = liftedReadMapBlocks.stream().map(ReadMapBlock::getMapInterval).collect(toList());
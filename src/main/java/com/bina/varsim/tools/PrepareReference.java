@@ -0,0 +1,43 @@
+package com.bina.varsim.tools;
+
+import com.bina.varsim.VarSimTool;
+import com.bina.varsim.VarSimToolNamespace;
+import com.bina.varsim.util.ReferenceImage;
+import org.apache.log4j.Logger;
+import org.kohsuke.args4j.Option;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Writes the binary image of a reference FASTA that SimpleReference maps instead of parsing the FASTA
+ */
+public class PrepareReference extends VarSimTool {
+    private final static Logger log = Logger.getLogger(PrepareReference.class.getName());
+
+    @Option(name = "-ref", usage = "Reference FASTA [Required]", metaVar = "file", required = true)
+    String referenceFilename;
+
+    @Option(name = "-out", usage = "Output image, tools only pick it up automatically at the default location [FASTA" + ReferenceImage.EXTENSION + "]", metaVar = "file")
+    String outFilename;
+
+    public PrepareReference(final String command, final String description) {
+        super(command, description);
+    }
+
+    public static void main(String[] args) throws IOException {
+        new PrepareReference("", VarSimToolNamespace.PrepareReference.description).run(args);
+    }
+
+    public void run(String[] args) throws IOException {
+        if (!parseArguments(args)) {
+            return;
+        }
+        final Path fasta = Paths.get(referenceFilename);
+        final Path image = outFilename == null ? ReferenceImage.getDefaultImagePath(fasta) : Paths.get(outFilename);
+        final long start = System.currentTimeMillis();
+        ReferenceImage.write(fasta, image);
+        log.info("Wrote " + image + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+}
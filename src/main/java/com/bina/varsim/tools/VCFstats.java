@@ -9,10 +9,16 @@ import com.bina.varsim.VarSimToolNamespace;
 import com.bina.varsim.types.BedFile;
 import com.bina.varsim.types.ParentRecord;
 import com.bina.varsim.types.variant.Variant;
+import com.bina.varsim.util.GzFileParser;
+import com.bina.varsim.util.IndexedVCFparser;
+import com.bina.varsim.util.PipelinedVCFParser;
 import com.bina.varsim.util.VCFparser;
+import com.bina.varsim.util.VariantBatch;
 import org.apache.log4j.Logger;
 import org.kohsuke.args4j.Option;
 
+import java.io.IOException;
+
 public class VCFstats extends VarSimTool {
     private final static Logger log = Logger.getLogger(VCFstats.class.getName());
 
@@ -27,6 +33,12 @@ public class VCFstats extends VarSimTool {
     @Option(name = "-ignore_ins_len", usage = "Ignores insertion length when comparing")
     boolean ignoreInsertionLength = false;
 
+    @Option(name = "-parse_threads", usage = "Threads used to parse each VCF, 1 parses on the main thread [1]")
+    int parseThreads = 1;
+
+    @Option(name = "-bed_regions_only", usage = "Only read the records overlapping the -bed regions if the VCF is indexed with tabix (.tbi or .csi)")
+    boolean bedRegionsOnly = false;
+
     public VCFstats(final String command, final String description) {
         super(command, description);
     }
@@ -52,7 +64,39 @@ public class VCFstats extends VarSimTool {
 
         ParentRecord data = new ParentRecord();
 
-        VCFparser parser = new VCFparser(vcf_filename, null, false, ignoreInsertionLength);
+        GzFileParser<Variant> parser = null;
+        if (bed_filename != null && bedRegionsOnly && IndexedVCFparser.isIndexed(vcf_filename)) {
+            try {
+                // one base of padding for the insertions at the region boundaries
+                parser = new IndexedVCFparser(vcf_filename, null, false, null, ignoreInsertionLength,
+                        IndexedVCFparser.readBedRegions(bed_filename, 1, null));
+            } catch (IOException e) {
+                log.warn("Can't read " + vcf_filename + " by region, reading all of it: " + e.getMessage());
+            }
+        }
+        if (parser == null && parseThreads <= 1) {
+            // records are counted from columns, without a Variant for each of them
+            final VCFparser vcfParser = new VCFparser(vcf_filename, null, false, null, ignoreInsertionLength);
+            final VariantBatch batch = new VariantBatch();
+            try {
+                while (vcfParser.parseBatch(batch) > 0) {
+                    for (int row = 0; row < batch.size(); row++) {
+                        if (batch.getGoodMaternal(row) == 0 && batch.getGoodPaternal(row) == 0) {
+                            continue;
+                        }
+                        data.add(batch, row, bed_file);
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                log.fatal(e.getMessage());
+                System.exit(255);
+            }
+            System.out.println(data);
+            return;
+        }
+        if (parser == null) {
+            parser = PipelinedVCFParser.open(vcf_filename, null, false, null, ignoreInsertionLength, parseThreads);
+        }
 
         while (parser.hasMoreInput()) {
             Variant var = parser.parseLine();
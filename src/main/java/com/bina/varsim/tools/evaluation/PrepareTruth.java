@@ -0,0 +1,81 @@
+package com.bina.varsim.tools.evaluation;
+
+import com.bina.intervalTree.SimpleInterval1D;
+import com.bina.varsim.VarSimTool;
+import com.bina.varsim.VarSimToolNamespace;
+import com.bina.varsim.constants.Constant;
+import com.bina.varsim.util.IndexedVCFparser;
+import org.apache.log4j.Logger;
+import org.kohsuke.args4j.Option;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the truth set of a truth VCF that vcfcompare maps instead of parsing and canonicalizing the VCF.
+ * The options that change the truth variants must be the ones vcfcompare is run with.
+ */
+public class PrepareTruth extends VarSimTool {
+    private final static Logger log = Logger.getLogger(PrepareTruth.class.getName());
+
+    @Option(name = "-true_vcf", usage = "Truth VCF file generated by VarSim [Required]", metaVar = "file", required = true)
+    String trueVcfFilename;
+
+    @Option(name = "-out", usage = "Output truth set, vcfcompare only picks it up automatically at the default location [VCF" + TruthSet.EXTENSION + "]", metaVar = "file")
+    String outFilename;
+
+    @Option(name = "-over", usage = "Reciprocal overlap ratio allowance in validation [" + VCFcompare.OVERLAP_ARG + "]")
+    double overlapRatio = VCFcompare.OVERLAP_ARG;
+
+    @Option(name = "-ignore_ins_len", usage = "Ignores insertion length when comparing")
+    boolean ignoreInsertionLength = false;
+
+    @Option(name = "-include_chr", usage = "Comma separated list of chromosomes to include, default is include all", metaVar = "CHR_LIST")
+    String chromosomeToBeIncluded = null;
+
+    @Option(name = "-sv_length", usage = "SV length cutoff", metaVar = "SVLEN")
+    int SVLEN = Constant.SVLEN;
+
+    @Option(name = "-parse_threads", usage = "Threads used to parse the VCF, 1 parses on the main thread [1]")
+    int parseThreads = 1;
+
+    public PrepareTruth(final String command, final String description) {
+        super(command, description);
+    }
+
+    public static void main(String[] args) throws IOException {
+        new PrepareTruth("", VarSimToolNamespace.PrepareTruth.description).run(args);
+    }
+
+    public void run(String[] args) throws IOException {
+        if (!parseArguments(args)) {
+            return;
+        }
+        final VCFcompare compare = new VCFcompare("", VarSimToolNamespace.VCFCompare.description);
+        compare.overlapRatio = overlapRatio;
+        compare.ignoreInsertionLength = ignoreInsertionLength;
+        compare.SVLEN = SVLEN;
+        compare.parseThreads = parseThreads;
+
+        Set<String> chrAcceptor = null;
+        Map<String, List<SimpleInterval1D>> readRegions = null;
+        if (chromosomeToBeIncluded != null) {
+            chrAcceptor = new HashSet<>(Arrays.asList(chromosomeToBeIncluded.split(",")));
+            readRegions = IndexedVCFparser.wholeSequences(chrAcceptor);
+        }
+
+        final Path vcf = Paths.get(trueVcfFilename);
+        final Path truthSetPath = outFilename == null ? TruthSet.getDefaultPath(vcf) : Paths.get(outFilename);
+        final long start = System.currentTimeMillis();
+        final TruthSet truthSet = compare.loadTruthSet(trueVcfFilename, chrAcceptor, readRegions);
+        truthSet.write(vcf, truthSetPath);
+        log.info("Wrote " + truthSet.getSplitVariants().size() + " split variants to " + truthSetPath + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+}
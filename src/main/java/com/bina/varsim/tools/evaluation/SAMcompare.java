@@ -220,7 +220,7 @@ public class SAMcompare extends VarSimTool {
                             }
                         } else {
                             // Use unclipped location since the true locations are also unclipped
-                            final GenomeLocation mappedLocation = new GenomeLocation(new ChrString(rec.getReferenceName()), rec.getUnclippedStart());
+                            final GenomeLocation mappedLocation = new GenomeLocation(ChrString.valueOf(rec.getReferenceName()), rec.getUnclippedStart());
 
                             //if a read can be mapped to one of possible loci
                             //then we consider it as mapped
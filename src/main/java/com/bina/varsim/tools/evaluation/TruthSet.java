@@ -0,0 +1,360 @@
+package com.bina.varsim.tools.evaluation;
+
+import com.bina.varsim.types.variant.Variant;
+import com.bina.varsim.util.AtomicFiles;
+import com.bina.varsim.util.BinaryCodec;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Truth variants of VCFcompare once parsed and canonicalized, written by prepare_truth so that
+ * later comparisons map them instead of parsing the truth VCF again.
+ * <p/>
+ * Layout: magic and version, the source VCF (path, size and CRC32), the options the truth set
+ * depends on and the truth sample, then blocks of split (canonical) variants in interval tree order,
+ * then blocks of whole variants, each either the index of a split variant or a full variant, with
+ * its total length. A table of the blocks and its offset come last. Blocks are mapped one at a time,
+ * so that images over 2GB can be read.
+ */
+public class TruthSet {
+    private final static Logger log = Logger.getLogger(TruthSet.class.getName());
+
+    public static final String EXTENSION = ".vst";
+    private static final int MAGIC = 0x56535453; // VSTS
+    private static final int VERSION = 1;
+    private static final int BLOCK_SIZE = 1 << 24;
+
+    private final List<Variant> splitVariants;
+    private final List<Variant> wholeVariants;
+    private final List<Integer> totalLengths;
+    private final String sampleId;
+
+    // options the variants depend on
+    private final boolean ignoreInsertionLength;
+    private final int svLength;
+    private final double overlapRatio;
+    private final String includedChromosomes;
+
+    private String sourceFilename = null;
+    private long sourceSize = -1;
+    private long sourceChecksum = -1;
+
+    /**
+     * @param splitVariants       canonical variants, in the order they go into the interval tree
+     * @param wholeVariants       variants that are validated as a whole, some of them split variants
+     * @param totalLengths        total length of each whole variant
+     * @param sampleId            sample of the truth VCF, null if it has none
+     * @param includedChromosomes chromosomes the variants were restricted to, null for all
+     */
+    TruthSet(final List<Variant> splitVariants, final List<Variant> wholeVariants, final List<Integer> totalLengths,
+             final String sampleId, final boolean ignoreInsertionLength, final int svLength, final double overlapRatio,
+             final Collection<String> includedChromosomes) {
+        this(splitVariants, wholeVariants, totalLengths, sampleId, ignoreInsertionLength, svLength, overlapRatio,
+                includedChromosomes == null ? null : String.join(",", new TreeSet<>(includedChromosomes)));
+    }
+
+    private TruthSet(final List<Variant> splitVariants, final List<Variant> wholeVariants, final List<Integer> totalLengths,
+                     final String sampleId, final boolean ignoreInsertionLength, final int svLength, final double overlapRatio,
+                     final String includedChromosomes) {
+        this.splitVariants = splitVariants;
+        this.wholeVariants = wholeVariants;
+        this.totalLengths = totalLengths;
+        this.sampleId = sampleId;
+        this.ignoreInsertionLength = ignoreInsertionLength;
+        this.svLength = svLength;
+        this.overlapRatio = overlapRatio;
+        this.includedChromosomes = includedChromosomes;
+    }
+
+    public List<Variant> getSplitVariants() {
+        return splitVariants;
+    }
+
+    public List<Variant> getWholeVariants() {
+        return wholeVariants;
+    }
+
+    public List<Integer> getTotalLengths() {
+        return totalLengths;
+    }
+
+    public String getSampleId() {
+        return sampleId;
+    }
+
+    /**
+     * @return path of the VCF the truth set was built from, null if it was not read from a file
+     */
+    public String getSourceFilename() {
+        return sourceFilename;
+    }
+
+    /**
+     * @return true if the truth set was built with the same options, the regions read aside
+     */
+    public boolean isCompatible(final boolean ignoreInsertionLength, final int svLength, final double overlapRatio,
+                                final Collection<String> includedChromosomes) {
+        final String chromosomes = includedChromosomes == null ? null : String.join(",", new TreeSet<>(includedChromosomes));
+        return this.ignoreInsertionLength == ignoreInsertionLength && this.svLength == svLength
+                && this.overlapRatio == overlapRatio
+                && (this.includedChromosomes == null ? chromosomes == null : this.includedChromosomes.equals(chromosomes));
+    }
+
+    /**
+     * @param vcf VCF file
+     * @return true if the truth set was built from this VCF as it is now
+     */
+    public boolean isUpToDate(final Path vcf) throws IOException {
+        return Files.size(vcf) == sourceSize && checksum(vcf) == sourceChecksum;
+    }
+
+    /**
+     * @param vcf truth VCF
+     * @return default location of its truth set, next to it
+     */
+    public static Path getDefaultPath(final Path vcf) {
+        return Paths.get(vcf.toString() + EXTENSION);
+    }
+
+    /**
+     * @return true if the file starts like a truth set
+     */
+    public static boolean isTruthSet(final Path file) {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param source VCF the truth set was built from
+     * @param image  destination
+     */
+    public void write(final Path source, final Path image) throws IOException {
+        // vcfcompare picks up the truth set next to the VCF, so it is moved there once complete
+        AtomicFiles.write(image, temp -> writeTo(source, temp));
+    }
+
+    private void writeTo(final Path source, final Path image) throws IOException {
+        final List<long[]> splitBlocks = new ArrayList<>();
+        final List<long[]> wholeBlocks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(image, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            // absolute, so that the source is found from any working directory
+            BinaryCodec.writeString(out, source.toAbsolutePath().toString());
+            out.writeLong(Files.size(source));
+            out.writeLong(checksum(source));
+            out.writeBoolean(ignoreInsertionLength);
+            out.writeInt(svLength);
+            out.writeDouble(overlapRatio);
+            BinaryCodec.writeString(out, includedChromosomes);
+            BinaryCodec.writeString(out, sampleId);
+
+            // blocks are put together in memory, then written where the channel is
+            final ByteArrayOutputStream block = new ByteArrayOutputStream();
+            final DataOutputStream blockOut = new DataOutputStream(block);
+            int blockCount = 0;
+            for (final Variant variant : splitVariants) {
+                variant.write(blockOut);
+                blockCount++;
+                if (block.size() >= BLOCK_SIZE) {
+                    splitBlocks.add(writeBlock(out, channel, block, blockCount));
+                    blockCount = 0;
+                }
+            }
+            if (blockCount > 0) {
+                splitBlocks.add(writeBlock(out, channel, block, blockCount));
+                blockCount = 0;
+            }
+            for (int i = 0; i < wholeVariants.size(); i++) {
+                final Variant variant = wholeVariants.get(i);
+                // split variants validated on their own are the same objects in both lists
+                final int index = variant.splitVariantIndex;
+                if (index >= 0 && index < splitVariants.size() && splitVariants.get(index) == variant) {
+                    blockOut.writeInt(index);
+                } else {
+                    blockOut.writeInt(-1);
+                    variant.write(blockOut);
+                }
+                blockOut.writeInt(totalLengths.get(i));
+                blockCount++;
+                if (block.size() >= BLOCK_SIZE) {
+                    wholeBlocks.add(writeBlock(out, channel, block, blockCount));
+                    blockCount = 0;
+                }
+            }
+            if (blockCount > 0) {
+                wholeBlocks.add(writeBlock(out, channel, block, blockCount));
+            }
+
+            // DataOutputStream.size() saturates at 2GB, so offsets come from the channel
+            out.flush();
+            final long tableOffset = channel.position();
+            writeBlocks(out, splitBlocks);
+            writeBlocks(out, wholeBlocks);
+            out.writeLong(tableOffset);
+        }
+    }
+
+    /**
+     * @return offset, size and number of records of the block
+     */
+    private static long[] writeBlock(final DataOutputStream out, final FileChannel channel,
+                                     final ByteArrayOutputStream block, final int count) throws IOException {
+        out.flush();
+        final long offset = channel.position();
+        block.writeTo(out);
+        final long[] entry = {offset, block.size(), count};
+        block.reset();
+        return entry;
+    }
+
+    private static void writeBlocks(final DataOutputStream out, final List<long[]> blocks) throws IOException {
+        out.writeInt(blocks.size());
+        for (final long[] block : blocks) {
+            out.writeLong(block[0]);
+            out.writeLong(block[1]);
+            out.writeInt((int) block[2]);
+        }
+    }
+
+    /**
+     * Reads all the variants of a truth set
+     *
+     * @param image file written by {@link #write(Path, Path)}
+     * @throws IllegalArgumentException if the file is of another version, truncated or corrupt
+     */
+    public static TruthSet read(final Path image) throws IOException {
+        try (FileChannel channel = FileChannel.open(image, StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            // not closed, that would close the channel
+            final DataInputStream header = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            if (header.readInt() != MAGIC || header.readInt() != VERSION) {
+                throw new IllegalArgumentException(image + " is not a VarSim truth set of version " + VERSION);
+            }
+            final String sourceFilename = readString(header, fileSize);
+            final long sourceSize = header.readLong();
+            final long sourceChecksum = header.readLong();
+            final boolean ignoreInsertionLength = header.readBoolean();
+            final int svLength = header.readInt();
+            final double overlapRatio = header.readDouble();
+            final String includedChromosomes = readString(header, fileSize);
+            final String sampleId = readString(header, fileSize);
+
+            // a truncated truth set ends with anything, so the table is checked before it is used
+            final ByteBuffer tail = ByteBuffer.allocate(8);
+            channel.read(tail, fileSize - 8);
+            tail.flip();
+            final long tableOffset = tail.getLong();
+            if (tableOffset < 8 || tableOffset > fileSize - 16) {
+                throw new IllegalArgumentException(image + " is truncated or corrupt");
+            }
+            channel.position(tableOffset);
+            final DataInputStream table = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            final List<long[]> splitBlocks = readBlocks(table, image, tableOffset);
+            final List<long[]> wholeBlocks = readBlocks(table, image, tableOffset);
+
+            final Map<String, String> strings = new HashMap<>();
+            final List<Variant> splitVariants = new ArrayList<>();
+            for (final long[] block : splitBlocks) {
+                final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, block[0], block[1]);
+                for (int i = 0; i < block[2]; i++) {
+                    splitVariants.add(Variant.read(buffer, strings));
+                }
+            }
+            final List<Variant> wholeVariants = new ArrayList<>();
+            final List<Integer> totalLengths = new ArrayList<>();
+            for (final long[] block : wholeBlocks) {
+                final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, block[0], block[1]);
+                for (int i = 0; i < block[2]; i++) {
+                    final int index = buffer.getInt();
+                    if (index >= splitVariants.size()) {
+                        throw new IllegalArgumentException(image + " is truncated or corrupt");
+                    }
+                    wholeVariants.add(index >= 0 ? splitVariants.get(index) : Variant.read(buffer, strings));
+                    totalLengths.add(buffer.getInt());
+                }
+            }
+            final TruthSet truthSet = new TruthSet(splitVariants, wholeVariants, totalLengths, sampleId,
+                    ignoreInsertionLength, svLength, overlapRatio, includedChromosomes);
+            truthSet.sourceFilename = sourceFilename;
+            truthSet.sourceSize = sourceSize;
+            truthSet.sourceChecksum = sourceChecksum;
+            log.info("Read " + splitVariants.size() + " split variants from " + image);
+            return truthSet;
+        }
+    }
+
+    /**
+     * @param tableOffset blocks are before it
+     */
+    private static List<long[]> readBlocks(final DataInputStream in, final Path image, final long tableOffset) throws IOException {
+        final int numBlocks = in.readInt();
+        if (numBlocks < 0 || numBlocks > tableOffset) {
+            throw new IllegalArgumentException(image + " is truncated or corrupt");
+        }
+        final List<long[]> blocks = new ArrayList<>(numBlocks);
+        for (int i = 0; i < numBlocks; i++) {
+            final long[] block = {in.readLong(), in.readLong(), in.readInt()};
+            if (block[0] < 8 || block[1] < 0 || block[0] + block[1] > tableOffset || block[2] < 0) {
+                throw new IllegalArgumentException(image + " is truncated or corrupt");
+            }
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    // same encoding as BinaryCodec.readString
+    private static String readString(final DataInputStream in, final long fileSize) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > fileSize) {
+            throw new IOException("Corrupt truth set, bad string length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long checksum(final Path file) throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[1 << 20];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+}
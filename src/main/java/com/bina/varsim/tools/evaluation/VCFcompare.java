@@ -4,6 +4,7 @@ import com.bina.varsim.VarSimTool;
 import com.bina.varsim.VarSimToolNamespace;
 import com.bina.varsim.constants.Constant;
 import com.bina.intervalTree.SimpleInterval1D;
+import com.bina.intervalTree.SweepLineIndex;
 import com.bina.intervalTree.ValueInterval1D;
 import com.bina.varsim.types.*;
 import com.bina.varsim.types.constraint.UnsatisfiedConstraintException;
@@ -25,13 +26,21 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.math3.random.EmpiricalDistribution;
 import org.apache.commons.math3.stat.StatUtils;
 import org.apache.log4j.Logger;
+import org.jgrapht.alg.matching.MaximumWeightBipartiteMatching;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
 import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static com.bina.varsim.constants.Constant.MAX_VCF_COMPARE_WARNING_REPEAT;
 import static com.bina.varsim.constants.Constant.DISTANCE_METRIC_BIN_COUNT;
@@ -61,6 +70,11 @@ public class VCFcompare extends VarSimTool {
     @Option(name = "-reference", usage = "Reference Genome", metaVar = "file", required = false)
     String referenceFileName;
 
+    @Option(name = "-reference_storage", usage = "How loaded reference contigs are held: HEAP, PACKED (2 bits per base, off-heap) or MAPPED (read from the mmapped FASTA) [HEAP]")
+    SimpleReference.Storage referenceStorage = SimpleReference.Storage.HEAP;
+    @Option(name = "-reference_cache_mb", usage = "Memory budget in MB for loaded reference contigs, least recently used contigs are dropped first [unbounded]")
+    long referenceCacheMb = -1;
+
     @Option(name = "-true_vcf", usage = "Truth VCF file generated by VarSim [Required]", metaVar = "file", required = true)
     String trueVcfFilename;
 
@@ -91,6 +105,9 @@ public class VCFcompare extends VarSimTool {
     @Option(name = "-global_matching", usage = "if enabled, truth and test variants will be matched globally rather than locally.")
     boolean isGlobalMatching = false;
 
+    @Option(name = "-match_threads", usage = "Threads used to solve the pairings of -global_matching [number of processors]")
+    int matchThreads = Runtime.getRuntime().availableProcessors();
+
     @Option(name = "-bed", usage = "BED file to restrict the analysis [Optional]", metaVar = "BED_file")
     String bedFilename = "";
 
@@ -124,6 +141,15 @@ public class VCFcompare extends VarSimTool {
     @Option(name = "-disallow_partial_fp", usage = "For a partially-matched false negative variant, output all matching variants as false positive")
     boolean disallowPartialFP = false;
 
+    @Option(name = "-parse_threads", usage = "Threads used to parse each VCF, 1 parses on the main thread [1]")
+    int parseThreads = 1;
+
+    @Option(name = "-bed_regions_only", usage = "Only read the records within -wig of the -bed regions from VCFs indexed with tabix (.tbi or .csi). Variants reaching the regions from further away are not compared")
+    boolean bedRegionsOnly = false;
+
+    @Option(name = "-sweep", usage = "Find the true variants overlapping each new variant by sweeping through the sorted truth alongside the new VCF instead of searching an index. Fastest when the new VCF is coordinate sorted. Records out of order, including SVs widened by -wig, make the sweep step back, which is slower where long true SVs span the step")
+    boolean sweep = false;
+
     public VCFcompare(final String command, final String description) {
         super(command, description);
     }
@@ -730,14 +756,27 @@ public class VCFcompare extends VarSimTool {
         if (!parseArguments(args)) {
             return;
         }
-        if (isGlobalMatching) {
-            globalMatching();
-        } else {
-            localMatching();
+        compare();
+    }
+
+    @Override
+    public boolean parseArguments(final String[] args) {
+        if (!super.parseArguments(args)) {
+            return false;
+        }
+        if (matchThreads < 1) {
+            System.err.println("-match_threads should be at least 1, got " + matchThreads);
+            printUsage(new CmdLineParser(this));
+            return false;
         }
+        return true;
     }
 
-    private void localMatching() {
+    /**
+     * Compares the new VCFs to the truth, each new variant is matched to a true variant locally
+     * (the first one that fits) or, with -global_matching, to the one it is paired with by {@link #globalMatching}
+     */
+    private void compare() {
 
         // these are the statistics we "ideally" want to collect
         // number of variants correct (either genotype) (for each type)
@@ -775,10 +814,28 @@ public class VCFcompare extends VarSimTool {
             log.info("Only accepting chromosomes: " + Arrays.toString(chrAcceptor.toArray()));
         }
 
+        // regions read from indexed VCFs, null to read them whole
+        Map<String, List<SimpleInterval1D>> readRegions = null;
+        if (bedExists && bedRegionsOnly) {
+            try {
+                readRegions = IndexedVCFparser.readBedRegions(bedFilename, wiggle + 1, chrAcceptor);
+            } catch (IOException e) {
+                log.warn("Can't read regions from " + bedFilename + ": " + e.getMessage());
+            }
+        } else if (chrAcceptor != null) {
+            readRegions = IndexedVCFparser.wholeSequences(chrAcceptor);
+        }
+
         ConstraintValidator validator = new ConstraintValidator(constraintArgs);
 
         // Load refernece genome
         SimpleReference referenceGenome = referenceFileName == null ? null : new SimpleReference(referenceFileName);
+        if (referenceGenome != null) {
+            referenceGenome.setStorage(referenceStorage);
+            if (referenceCacheMb >= 0) {
+                referenceGenome.setCacheBudget(referenceCacheMb << 20);
+            }
+        }
 
         // load true VCF into interval tree
         log.info("Load Truth VCF");
@@ -827,103 +884,45 @@ public class VCFcompare extends VarSimTool {
         outputBlob.getParams().setTrueVcfFilename(trueVcfFilename);
         outputBlob.getParams().setWiggle(wiggle);
 
-        VCFparser trueVcfParser = new VCFparser(trueVcfFilename, null, false, ignoreInsertionLength);
-
-        // allow duplicates, this is needed because insertions don't actually take up a location
-        chrSearchTree<ValueInterval1D<Variant>> trueVariantIntervalTree = new chrSearchTree<>(true);
-        int numReadOriginalVariant = 0;
-        int numAddedSplitVariant = 0;
-
-
-        //track TRAID-linked variants
-        Map<String, List<Variant>> traid2composingVariants = new HashMap<>();
+        TruthSet truthSet = readTruthSet(chrAcceptor, readRegions, readRegions != null && bedExists && bedRegionsOnly);
 
         // this is for the original variants
         // it stores the total length of the original variant in bases
         // Still check for validation of canonical full variants
-        List<Integer> trueVariantTotalLength = new ArrayList<>();
-        List<Variant> trueVariantsForOutput = new ArrayList<>();
+        List<Integer> trueVariantTotalLength = truthSet.getTotalLengths();
+        List<Variant> trueVariantsForOutput = truthSet.getWholeVariants();
+        int numReadOriginalVariant = trueVariantsForOutput.size();
+        int numAddedSplitVariant = truthSet.getSplitVariants().size();
+
+        // the truth is not changed once loaded, so its intervals are bulk indexed
+        // duplicates are kept, this is needed because insertions don't actually take up a location
+        Map<ChrString, List<ValueInterval1D<Variant>>> trueVariantIntervals = new LinkedHashMap<>();
+        for (Variant currentVariant : truthSet.getSplitVariants()) {
+            SimpleInterval1D currentVariantInterval = null;
+            try {
+                currentVariantInterval = currentVariant.getGenotypeUnionVariantInterval();
+            } catch (Exception e) {
+                e.printStackTrace();
+                log.error("Bad variant: " + currentVariant);
+                System.exit(1);
+            }
+            trueVariantIntervals.computeIfAbsent(currentVariant.getChr(), chr -> new ArrayList<>())
+                    .add(new ValueInterval1D<>(currentVariantInterval, currentVariant));
+        }
+        // both indexes find the true variants sorted by start then end, so when a new variant matches several
+        // the local matching pairs it with the leftmost, then shortest, one (see ResultComparator.isHomMatch)
+        chrSearchTree<ValueInterval1D<Variant>> trueVariantIntervalTree;
+        if (sweep) {
+            // new variants come in order, so each chromosome of the truth is walked once
+            trueVariantIntervalTree = chrSearchTree.build(trueVariantIntervals, SweepLineIndex::new);
+        } else {
+            trueVariantIntervalTree = chrSearchTree.build(trueVariantIntervals);
+        }
 
         // For each true variant, if the number of bases validated is over a certain threshold
         // call it correct
         outputBlob.setNumberOfTrueCorrect(new EnumStatsRatioCounter<VariantOverallType>(this.SVLEN));
 
-        // For called variants, break down into canonical ones and count based on that
-        // if any called variant overlaps a complex variant or MNP, count it as "complex"
-        // otherwise, simple count them in their canonical forms
-
-        // store true variants as canonical ones, but remember original form
-        while (trueVcfParser.hasMoreInput()) {
-            Variant trueVariant = trueVcfParser.parseLine();
-            if (trueVariant == null ||
-                (!trueVariant.getGenotypes().isNonRef()) ||
-                (chrAcceptor != null && !chrAcceptor.contains(trueVariant.getChr().getName()))) {
-                continue;
-            }
-
-            VariantOverallType trueVariantOriginalType = trueVariant.getType();
-
-            if (trueVariant.getTraid() != null) {
-                String currentTraid = trueVariant.getTraid();
-                if (traid2composingVariants.containsKey(currentTraid)) {
-                    traid2composingVariants.get(currentTraid).add(trueVariant);
-                    trueVariant = new Variant.Builder().compositions(traid2composingVariants.get(currentTraid)).build();
-                    traid2composingVariants.remove(currentTraid);
-                } else {
-                    traid2composingVariants.put(currentTraid, new ArrayList<Variant>());
-                    traid2composingVariants.get(currentTraid).add(trueVariant);
-                    continue;
-                }
-            }
-            // determine max variant region
-            // when comparing genotypes, we need to individually compare
-            // to make sure they really overlap
-
-            //TODO: remove constructor here (because another copy will be created inside canonicalizeVariant
-            List<Variant> canonicalVariantList = canonicalizeVariant(new Variant(trueVariant));
-
-            int totalLength = canonicalVariantList.stream().mapToInt(v -> v.maxLen()).sum();
-            int maxLength = canonicalVariantList.stream().mapToInt(v -> v.maxLen()).max().getAsInt();
-
-            // add to interval tree
-            for (Variant currentVariant : canonicalVariantList) {
-
-                ChrString chr = currentVariant.getChr();
-                SimpleInterval1D currentVariantInterval = null;
-                try {
-                    currentVariantInterval = currentVariant.getGenotypeUnionVariantInterval();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    log.error("Original variant: " + trueVariant);
-                    log.error("Bad variant: " + currentVariant);
-                    System.exit(1);
-                }
-                currentVariant.splitVariantIndex = numAddedSplitVariant;
-                currentVariant.wholeVariantIndex = numReadOriginalVariant;
-                currentVariant.originalType = trueVariantOriginalType;
-
-                trueVariantIntervalTree.put(chr, new ValueInterval1D<>(currentVariantInterval, currentVariant));
-                numAddedSplitVariant++;
-            }
-
-            if (totalLength >= this.SVLEN && maxLength >= overlapRatio * totalLength && canonicalVariantList.size() > 1) {
-                // in this case we break down the variant into canoical forms since
-                // the original variant was probably a large deletion with a small insertion
-                for (Variant currentVariant : canonicalVariantList) {
-                    int currentLength = currentVariant.maxLen();
-                    currentVariant.wholeVariantIndex = numReadOriginalVariant;
-                    trueVariantTotalLength.add(currentLength);
-                    trueVariantsForOutput.add(currentVariant);
-                    numReadOriginalVariant++;
-                }
-            } else {
-                trueVariant.wholeVariantIndex = numReadOriginalVariant;
-                trueVariantTotalLength.add(totalLength);
-                trueVariantsForOutput.add(trueVariant);
-                numReadOriginalVariant++;
-            }
-        }
-
         log.info("Num read:  " + numReadOriginalVariant);
         log.info("Num added: " + numAddedSplitVariant);
         log.info("Num nodes: " + trueVariantIntervalTree.size());
@@ -950,7 +949,7 @@ public class VCFcompare extends VarSimTool {
             PrintWriter jsonWriter = JSON_WRITER.getWriter(outPrefix);) {
 
             //print VCF header
-            printVCFHeader(tpWriter, unknownTpWriter, fpWriter, unknownFpWriter, fnWriter, referenceGenome);
+            printVCFHeader(tpWriter, unknownTpWriter, fpWriter, unknownFpWriter, fnWriter, referenceGenome, truthSet.getSampleId());
 
         // for this case we add to false positives if the variant is not validated.
         // However, do don't add to true positives, those that computed later
@@ -960,180 +959,163 @@ public class VCFcompare extends VarSimTool {
         List<Pair<Variant,Set<Integer>>> matchingVariantAndMatchedWholeVariants = new ArrayList<>();
         // iterate over new VCF and collect stats
 
-        traid2composingVariants.clear();
-
-        for (String currentVcfFile : newVcfFilename) {
-            VCFparser newParser = new VCFparser(currentVcfFile, sampleName, excludeFiltered, ignoreInsertionLength);
-
-            while (newParser.hasMoreInput()) {
-                Variant variant = newParser.parseLine();
-
-                //TODO: wrap variant comparison into a method for easier reading
-                if (variant == null ||
-                   (chrAcceptor != null && !chrAcceptor.contains(variant.getChr().getName()))) {
-                    continue;
-                }
+        // with -global_matching, the true variant paired with each canonical new variant, in reading order
+        int[] pairedTrueVariants = isGlobalMatching ? globalMatching(trueVariantIntervalTree, chrAcceptor, readRegions) : null;
+        int numberOfCanonicalVariants = 0;
 
-                boolean skipFP = false;
+        NewVariantReader newVariants = new NewVariantReader(chrAcceptor, readRegions);
+        Variant variant;
+        while ((variant = newVariants.next()) != null) {
+            //TODO: wrap variant comparison into a method for easier reading
+            boolean skipFP = false;
 
-                if (variant.getTraid() != null) {
-                    String currentTraid = variant.getTraid();
-                    if (traid2composingVariants.containsKey(currentTraid)) {
-                        traid2composingVariants.get(currentTraid).add(variant);
-                        variant = new Variant.Builder().compositions(traid2composingVariants.get(currentTraid)).build();
-                        traid2composingVariants.remove(currentTraid);
-                        if (intersector != null) {
-                          for (Variant c : variant.getCompositions()) {
-                              if (!excludeFdfFromBedFiltering && !intersector.containsEndpoints(c.getChr(), c.getGenotypeUnionAlternativeInterval(), bedEither)) {
-                                  skipFP = true;
-                              }
-                          }
-                        }
-                    } else {
-                        traid2composingVariants.put(currentTraid, new ArrayList<Variant>());
-                        traid2composingVariants.get(currentTraid).add(variant);
-                        continue;
-                    }
-                } else {
-                    if (intersector != null) {
-                        if (!excludeFdfFromBedFiltering && !intersector.containsEndpoints(variant.getChr(), variant.getGenotypeUnionAlternativeInterval(), bedEither)) {
+            if (intersector != null && !excludeFdfFromBedFiltering) {
+                if (variant.getCompositions() != null) {
+                    for (Variant c : variant.getCompositions()) {
+                        if (!intersector.containsEndpoints(c.getChr(), c.getGenotypeUnionAlternativeInterval(), bedEither)) {
                             skipFP = true;
                         }
                     }
+                } else if (!intersector.containsEndpoints(variant.getChr(), variant.getGenotypeUnionAlternativeInterval(), bedEither)) {
+                    skipFP = true;
                 }
+            }
 
-                // the overall type of the called variant
-                VariantOverallType currentVariantType = variant.getType();
+            // the overall type of the called variant
+            VariantOverallType currentVariantType = variant.getType();
 
-                // if called as complex variant convert to indel+snps
-                List<Variant> canonicalVariantList = canonicalizeVariant(variant);
+            // if called as complex variant convert to indel+snps
+            List<Variant> canonicalVariantList = canonicalizeVariant(variant);
 
-                int totalLength = canonicalVariantList.stream().mapToInt(v -> v.maxLen()).sum();
-                double validatedLength = 0;
-                int maxLength = canonicalVariantList.stream().mapToInt(v -> v.maxLen()).max().getAsInt();
+            int totalLength = canonicalVariantList.stream().mapToInt(v -> v.maxLen()).sum();
+            double validatedLength = 0;
+            int maxLength = canonicalVariantList.stream().mapToInt(v -> v.maxLen()).max().getAsInt();
 
-                // split up variants that are basically one big variant and one small one
-                //maxLength / totalLength >= overlapRatio, true if the longest canonicalized variant
-                //is longer than certain proportion of sum of lengths of all canonicalized variants.
-                boolean computeAsSplit = totalLength >= this.SVLEN && maxLength >= overlapRatio * totalLength  &&
-                    canonicalVariantList.size() > 1;
-                Set<Integer> matchedWholeVariants = new HashSet<>(3);
-                List<Variant> canonicalVariantsMatched = new ArrayList<>();
-                List<Variant> matchedTrueVariants = new ArrayList<>();
-                List<Integer> matchedLengths = new ArrayList<>();
+            // split up variants that are basically one big variant and one small one
+            //maxLength / totalLength >= overlapRatio, true if the longest canonicalized variant
+            //is longer than certain proportion of sum of lengths of all canonicalized variants.
+            boolean computeAsSplit = totalLength >= this.SVLEN && maxLength >= overlapRatio * totalLength  &&
+                canonicalVariantList.size() > 1;
+            Set<Integer> matchedWholeVariants = new HashSet<>(3);
+            List<Variant> canonicalVariantsMatched = new ArrayList<>();
+            List<Variant> matchedTrueVariants = new ArrayList<>();
+            List<Integer> matchedLengths = new ArrayList<>();
 
-                for (Variant currentVariant : canonicalVariantList) {
-                    // get genotype
-                    Genotypes geno = currentVariant.getGenotypes();
-                    //note here ResultComparator is created for each canonical variant
-                    ResultComparator resultComparator = new ResultComparator(trueVariantIntervalTree, overlapRatio, wiggle, ignoreInsertionLength);
-
-                    if (currentVariant.isHom()) {
-                        int maxTrueLength = resultComparator.compareVariant(currentVariant, geno.geno[0], validatedTrue);
-                        final Variant matchedTrueVariant = matchGenotype ? resultComparator.isHomMatch() : resultComparator.isMatch();
-                        final DualIdx dualIdx = matchedTrueVariant == null ? new DualIdx() : new DualIdx(matchedTrueVariant.splitVariantIndex, matchedTrueVariant.wholeVariantIndex);
-                        if (dualIdx.isSplitVariantValid()) {
-                            // validated
-                            matchedLengths.add(maxTrueLength);
-                            matchedTrueVariants.add(matchedTrueVariant);
-                            canonicalVariantsMatched.add(currentVariant);
-                        } else if (computeAsSplit) {
-                            if (!skipFP) {
-                                outputBlob.getNumberOfTrueCorrect().incFP(currentVariant.getType(), variant.maxLen());
-                                validator.inc(StatsNamespace.FP, currentVariant.getType(), variant.maxLen());
-                                variant.output(fpWriter);
-                            } else {
-                                variant.output(unknownFpWriter);
-                            }
+            for (Variant currentVariant : canonicalVariantList) {
+                // get genotype
+                Genotypes geno = currentVariant.getGenotypes();
+                //note here ResultComparator is created for each canonical variant
+                ResultComparator resultComparator = new ResultComparator(trueVariantIntervalTree, overlapRatio, wiggle, ignoreInsertionLength);
+                if (pairedTrueVariants != null) {
+                    resultComparator.setPairedTrueVariant(pairedTrueVariants[numberOfCanonicalVariants]);
+                }
+                numberOfCanonicalVariants++;
+
+                if (currentVariant.isHom()) {
+                    int maxTrueLength = resultComparator.compareVariant(currentVariant, geno.geno[0], validatedTrue);
+                    final Variant matchedTrueVariant = matchGenotype ? resultComparator.isHomMatch() : resultComparator.isMatch();
+                    final DualIdx dualIdx = matchedTrueVariant == null ? new DualIdx() : new DualIdx(matchedTrueVariant.splitVariantIndex, matchedTrueVariant.wholeVariantIndex);
+                    if (dualIdx.isSplitVariantValid()) {
+                        // validated
+                        matchedLengths.add(maxTrueLength);
+                        matchedTrueVariants.add(matchedTrueVariant);
+                        canonicalVariantsMatched.add(currentVariant);
+                    } else if (computeAsSplit) {
+                        if (!skipFP) {
+                            outputBlob.getNumberOfTrueCorrect().incFP(currentVariant.getType(), variant.maxLen());
+                            validator.inc(StatsNamespace.FP, currentVariant.getType(), variant.maxLen());
+                            variant.output(fpWriter);
+                        } else {
+                            variant.output(unknownFpWriter);
                         }
+                    }
 
-                    } else {
-                        // het
-                        //boolean matched = false;
-                        int maxTrueLen = 0;
-                        /*
-                        for heterozygous variants, all genotypes will be checked
-                        inside compareVariant, all genotypes of overlapping true variants will be checked, too
-                        so overall all possible combinations of genotype matching will be checked
-                        */
-                        for (int i = 0; i < 2; i++) {
-                            byte allele = geno.geno[i];
-                            if (allele > 0) {
-                                maxTrueLen = Math.max(resultComparator.compareVariant(currentVariant, allele, validatedTrue), maxTrueLen);
-                            }
+                } else {
+                    // het
+                    //boolean matched = false;
+                    int maxTrueLen = 0;
+                    /*
+                    for heterozygous variants, all genotypes will be checked
+                    inside compareVariant, all genotypes of overlapping true variants will be checked, too
+                    so overall all possible combinations of genotype matching will be checked
+                    */
+                    for (int i = 0; i < 2; i++) {
+                        byte allele = geno.geno[i];
+                        if (allele > 0) {
+                            maxTrueLen = Math.max(resultComparator.compareVariant(currentVariant, allele, validatedTrue), maxTrueLen);
                         }
+                    }
 
-                        final Variant matchedTrueVariant = matchGenotype ? resultComparator.isHetMatch() : resultComparator.isMatch();
-                        final DualIdx dualIdx = matchedTrueVariant == null ? new DualIdx() : new DualIdx(matchedTrueVariant.splitVariantIndex, matchedTrueVariant.wholeVariantIndex);
-
-                        if (dualIdx.isSplitVariantValid()) {
-                            matchedLengths.add(currentVariant.maxLen());
-                            matchedTrueVariants.add(matchedTrueVariant);
-                            canonicalVariantsMatched.add(currentVariant);
-                        } else if (computeAsSplit) {
-                            if (!skipFP) {
-                                outputBlob.getNumberOfTrueCorrect().incFP(currentVariant.getType(), currentVariant.maxLen());
-                                validator.inc(StatsNamespace.FP, currentVariant.getType(), currentVariant.maxLen());
-                                if (currentVariant.getType() == VariantOverallType.SNP && currentVariant.maxLen() > 1) {
-                                    if (loggingCounter.isCountLeftAndDecrement()) {
-                                        log.warn("SNP with bad length: " + currentVariant);
-                                    }
+                    final Variant matchedTrueVariant = matchGenotype ? resultComparator.isHetMatch() : resultComparator.isMatch();
+                    final DualIdx dualIdx = matchedTrueVariant == null ? new DualIdx() : new DualIdx(matchedTrueVariant.splitVariantIndex, matchedTrueVariant.wholeVariantIndex);
+
+                    if (dualIdx.isSplitVariantValid()) {
+                        matchedLengths.add(currentVariant.maxLen());
+                        matchedTrueVariants.add(matchedTrueVariant);
+                        canonicalVariantsMatched.add(currentVariant);
+                    } else if (computeAsSplit) {
+                        if (!skipFP) {
+                            outputBlob.getNumberOfTrueCorrect().incFP(currentVariant.getType(), currentVariant.maxLen());
+                            validator.inc(StatsNamespace.FP, currentVariant.getType(), currentVariant.maxLen());
+                            if (currentVariant.getType() == VariantOverallType.SNP && currentVariant.maxLen() > 1) {
+                                if (loggingCounter.isCountLeftAndDecrement()) {
+                                    log.warn("SNP with bad length: " + currentVariant);
                                 }
-                                variant.output(fpWriter);
-                            } else {
-                                variant.output(unknownFpWriter);
                             }
+                            variant.output(fpWriter);
+                        } else {
+                            variant.output(unknownFpWriter);
                         }
                     }
                 }
-                /*
-                if disallowPartialFP, then we require all canonical variants of a variant to be matched with some truth variants
-                otherwise we do not care
-                 */
-                if (!disallowPartialFP || (canonicalVariantsMatched.size() == canonicalVariantList.size())) {
-                    for (int i = 0; i < canonicalVariantsMatched.size(); i++) {
-                        int matchedLength = matchedLengths.get(i);
-                        Variant currentVariant = canonicalVariantsMatched.get(i);
-                        Variant matchedTrueVariant = matchedTrueVariants.get(i);
-
-                        final DualIdx dualIdx = matchedTrueVariant == null ? new DualIdx() : new DualIdx(matchedTrueVariant.splitVariantIndex, matchedTrueVariant.wholeVariantIndex);
-
-                        matchedWholeVariants.add(dualIdx.wholeVariantIndex);
-                        validatedTrue.set(dualIdx.splitVariantIndex);
-                        //update 3' distance,5' distance,length difference
-                        threePrimeDistance[dualIdx.wholeVariantIndex] = Math.max(Math.abs(currentVariant.getPos() - matchedTrueVariant.getPos()), threePrimeDistance[dualIdx.wholeVariantIndex]);
-                        fivePrimeDistance[dualIdx.wholeVariantIndex] = Math.max(Math.abs(currentVariant.getEnd() - matchedTrueVariant.getEnd()), fivePrimeDistance[dualIdx.wholeVariantIndex]);
-                        if (ignoreImpreciseLength &&
-                                (variant.isLengthImprecise() || matchedTrueVariant.isLengthImprecise())) {
-                            //if predicted variant or matched true variant has imprecise length, skip length difference calculation
-                            lengthDifference[dualIdx.wholeVariantIndex] = null;
-                        } else {
-                            lengthDifference[dualIdx.wholeVariantIndex] = VarSimMath.max(Math.abs(currentVariant.maxLen() - matchedTrueVariant.maxLen()), lengthDifference[dualIdx.wholeVariantIndex]);
-                        }
-                        validatedLengths[dualIdx.wholeVariantIndex] += matchedLength; // this 'should' be overlap len
-                        validatedLength += currentVariant.maxLen();
+            }
+            /*
+            if disallowPartialFP, then we require all canonical variants of a variant to be matched with some truth variants
+            otherwise we do not care
+             */
+            if (!disallowPartialFP || (canonicalVariantsMatched.size() == canonicalVariantList.size())) {
+                for (int i = 0; i < canonicalVariantsMatched.size(); i++) {
+                    int matchedLength = matchedLengths.get(i);
+                    Variant currentVariant = canonicalVariantsMatched.get(i);
+                    Variant matchedTrueVariant = matchedTrueVariants.get(i);
+
+                    final DualIdx dualIdx = matchedTrueVariant == null ? new DualIdx() : new DualIdx(matchedTrueVariant.splitVariantIndex, matchedTrueVariant.wholeVariantIndex);
+
+                    matchedWholeVariants.add(dualIdx.wholeVariantIndex);
+                    validatedTrue.set(dualIdx.splitVariantIndex);
+                    //update 3' distance,5' distance,length difference
+                    threePrimeDistance[dualIdx.wholeVariantIndex] = Math.max(Math.abs(currentVariant.getPos() - matchedTrueVariant.getPos()), threePrimeDistance[dualIdx.wholeVariantIndex]);
+                    fivePrimeDistance[dualIdx.wholeVariantIndex] = Math.max(Math.abs(currentVariant.getEnd() - matchedTrueVariant.getEnd()), fivePrimeDistance[dualIdx.wholeVariantIndex]);
+                    if (ignoreImpreciseLength &&
+                            (variant.isLengthImprecise() || matchedTrueVariant.isLengthImprecise())) {
+                        //if predicted variant or matched true variant has imprecise length, skip length difference calculation
+                        lengthDifference[dualIdx.wholeVariantIndex] = null;
+                    } else {
+                        lengthDifference[dualIdx.wholeVariantIndex] = VarSimMath.max(Math.abs(currentVariant.maxLen() - matchedTrueVariant.maxLen()), lengthDifference[dualIdx.wholeVariantIndex]);
                     }
+                    validatedLengths[dualIdx.wholeVariantIndex] += matchedLength; // this 'should' be overlap len
+                    validatedLength += currentVariant.maxLen();
                 }
+            }
 
-                if (!computeAsSplit && validatedLength < (totalLength * overlapRatio)) {
-                    if (!skipFP) {
-                        // this is a false positive!
-                        outputBlob.getNumberOfTrueCorrect().incFP(currentVariantType, variant.maxLen());
-                        validator.inc(StatsNamespace.FP, currentVariantType, variant.maxLen());
-                        if (currentVariantType == VariantOverallType.SNP && variant.maxLen() > 1) {
-                            if (loggingCounter.isCountLeftAndDecrement()) {
-                                log.warn("SNP with bad length: " + variant);
-                            }
+            if (!computeAsSplit && validatedLength < (totalLength * overlapRatio)) {
+                if (!skipFP) {
+                    // this is a false positive!
+                    outputBlob.getNumberOfTrueCorrect().incFP(currentVariantType, variant.maxLen());
+                    validator.inc(StatsNamespace.FP, currentVariantType, variant.maxLen());
+                    if (currentVariantType == VariantOverallType.SNP && variant.maxLen() > 1) {
+                        if (loggingCounter.isCountLeftAndDecrement()) {
+                            log.warn("SNP with bad length: " + variant);
                         }
-                        variant.output(fpWriter);
-                    } else {
-                        variant.output(unknownFpWriter);
                     }
+                    variant.output(fpWriter);
+                } else {
+                    variant.output(unknownFpWriter);
                 }
-
-                matchingVariantAndMatchedWholeVariants.add(new ImmutablePair<>(variant, matchedWholeVariants));
-                numberOfNewVariants++;
             }
+
+            matchingVariantAndMatchedWholeVariants.add(new ImmutablePair<>(variant, matchedWholeVariants));
+            numberOfNewVariants++;
         }
 
         log.info("Num new variants read: " + numberOfNewVariants);
@@ -1283,7 +1265,370 @@ public class VCFcompare extends VarSimTool {
 
         log.info("Done!"); // used to record the time
     }
-    private void globalMatching() {}
+    /**
+     * Pairs canonical new variants and true split variants one to one, before they are compared.
+     * <p/>
+     * Each pair that would match locally (ignoring which true variants are already validated) is an edge
+     * scored by {@link #pairScore}. The pairs split into connected components, each solved on its own
+     * with a maximum weight bipartite matching, on -match_threads threads. Components of a single pair,
+     * most of them, are paired directly.
+     *
+     * @return for each canonical new variant, in the order they are read, the split index of the true
+     * variant paired with it, -1 if none
+     */
+    private int[] globalMatching(final chrSearchTree<ValueInterval1D<Variant>> trueVariantIntervalTree,
+                                 final Set<String> chrAcceptor, final Map<String, List<SimpleInterval1D>> readRegions) {
+        log.info("Pair new and true variants globally");
+        // candidate pairs, as (new, true) vertex indexes, true variants come after all new variants
+        final List<int[]> pairs = new ArrayList<>();
+        final List<Long> weights = new ArrayList<>();
+        final List<Integer> trueIndexes = new ArrayList<>();
+        final Map<Integer, Integer> trueVertices = new HashMap<>();
+        final BitSet noneValidated = new BitSet();
+        int numberOfCanonicalVariants = 0;
+
+        NewVariantReader newVariants = new NewVariantReader(chrAcceptor, readRegions);
+        Variant variant;
+        while ((variant = newVariants.next()) != null) {
+            for (Variant currentVariant : canonicalizeVariant(variant)) {
+                Genotypes geno = currentVariant.getGenotypes();
+                ResultComparator resultComparator = new ResultComparator(trueVariantIntervalTree, overlapRatio, wiggle, ignoreInsertionLength);
+                if (currentVariant.isHom()) {
+                    resultComparator.compareVariant(currentVariant, geno.geno[0], noneValidated);
+                } else {
+                    for (int i = 0; i < 2; i++) {
+                        if (geno.geno[i] > 0) {
+                            resultComparator.compareVariant(currentVariant, geno.geno[i], noneValidated);
+                        }
+                    }
+                }
+                for (Variant trueVariant : resultComparator.getCandidates(currentVariant.isHom(), matchGenotype)) {
+                    Integer trueVertex = trueVertices.get(trueVariant.splitVariantIndex);
+                    if (trueVertex == null) {
+                        trueVertex = trueIndexes.size();
+                        trueVertices.put(trueVariant.splitVariantIndex, trueVertex);
+                        trueIndexes.add(trueVariant.splitVariantIndex);
+                    }
+                    pairs.add(new int[]{numberOfCanonicalVariants, trueVertex});
+                    weights.add(pairScore(currentVariant, trueVariant));
+                }
+                numberOfCanonicalVariants++;
+            }
+        }
+
+        // connected components, by union-find over new then true vertices
+        final int numberOfNew = numberOfCanonicalVariants;
+        final int[] parent = new int[numberOfNew + trueIndexes.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        for (int[] pair : pairs) {
+            parent[root(parent, pair[0])] = root(parent, numberOfNew + pair[1]);
+        }
+        final Map<Integer, List<Integer>> components = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.size(); i++) {
+            components.computeIfAbsent(root(parent, pairs.get(i)[0]), r -> new ArrayList<>()).add(i);
+        }
+
+        final int[] paired = new int[numberOfNew];
+        Arrays.fill(paired, -1);
+        final ForkJoinPool pool = new ForkJoinPool(matchThreads);
+        int largest = 0;
+        try {
+            final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (List<Integer> component : components.values()) {
+                largest = Math.max(largest, component.size());
+                if (component.size() == 1) {
+                    final int[] pair = pairs.get(component.get(0));
+                    paired[pair[0]] = trueIndexes.get(pair[1]);
+                } else {
+                    // each component writes the entries of its own new variants
+                    tasks.add(pool.submit(() -> {
+                        final SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+                        final Set<Integer> newSide = new LinkedHashSet<>();
+                        final Set<Integer> trueSide = new LinkedHashSet<>();
+                        for (int i : component) {
+                            final int[] pair = pairs.get(i);
+                            if (newSide.add(pair[0])) {
+                                graph.addVertex(pair[0]);
+                            }
+                            if (trueSide.add(numberOfNew + pair[1])) {
+                                graph.addVertex(numberOfNew + pair[1]);
+                            }
+                        }
+                        // each pair outweighs the scores of any matching of the component, so as many
+                        // variants as possible are paired, then the best scoring ones
+                        final long base = MAX_PAIR_SCORE * Math.min(newSide.size(), trueSide.size()) + 1;
+                        for (int i : component) {
+                            final int[] pair = pairs.get(i);
+                            final DefaultWeightedEdge edge = graph.addEdge(pair[0], numberOfNew + pair[1]);
+                            if (edge != null) {
+                                graph.setEdgeWeight(edge, base + weights.get(i));
+                            }
+                        }
+                        for (DefaultWeightedEdge edge : new MaximumWeightBipartiteMatching<>(graph, newSide, trueSide).computeMatching().getEdges()) {
+                            final int newVertex = Math.min(graph.getEdgeSource(edge), graph.getEdgeTarget(edge));
+                            final int trueVertex = Math.max(graph.getEdgeSource(edge), graph.getEdgeTarget(edge));
+                            paired[newVertex] = trueIndexes.get(trueVertex - numberOfNew);
+                        }
+                    }));
+                }
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        log.info("Candidate pairs: " + pairs.size() + " in " + components.size() + " components, largest " + largest);
+        return paired;
+    }
+
+    private static int root(final int[] parent, int i) {
+        while (parent[i] != i) {
+            // path halving
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static final long MAX_PAIR_SCORE = 2000;
+
+    /**
+     * Score of pairing a new and a true variant in the global matching, from 0 to {@link #MAX_PAIR_SCORE}:
+     * their reciprocal overlap in thousandths, plus 1000 if they have the same zygosity. The matching
+     * adds a base weight to it, larger than the scores of all the pairs of a component.
+     * Weights are whole numbers, MaximumWeightBipartiteMatching of jgrapht 1.0.1 can miss the best
+     * matching with fractional ones.
+     */
+    private static long pairScore(final Variant variant, final Variant trueVariant) {
+        final SimpleInterval1D interval = variant.getGenotypeUnionVariantInterval();
+        final SimpleInterval1D trueInterval = trueVariant.getGenotypeUnionVariantInterval();
+        final long longest = Math.max(interval.length(), trueInterval.length());
+        final long overlap = Math.min(interval.getRight(), trueInterval.getRight())
+                - Math.max(interval.getLeft(), trueInterval.getLeft()) + 1;
+        final double overlapFraction = longest <= 0 ? 1 : Math.max(0, Math.min(1, (double) overlap / longest));
+        return Math.round(1000 * overlapFraction) + (variant.isHom() == trueVariant.isHom() ? 1000 : 0);
+    }
+
+    /**
+     * Reads the new VCFs one after the other, joining the records of each TRAID into one variant
+     */
+    private class NewVariantReader {
+        private final Iterator<String> files = newVcfFilename.iterator();
+        private final Set<String> chrAcceptor;
+        private final Map<String, List<SimpleInterval1D>> readRegions;
+        //track TRAID-linked variants
+        private final Map<String, List<Variant>> traid2composingVariants = new HashMap<>();
+        private GzFileParser<Variant> newParser;
+
+        NewVariantReader(final Set<String> chrAcceptor, final Map<String, List<SimpleInterval1D>> readRegions) {
+            this.chrAcceptor = chrAcceptor;
+            this.readRegions = readRegions;
+        }
+
+        /**
+         * @return next variant, null once all files are read
+         */
+        Variant next() {
+            while (true) {
+                if (newParser == null || !newParser.hasMoreInput()) {
+                    if (!files.hasNext()) {
+                        return null;
+                    }
+                    newParser = openVcf(files.next(), sampleName, excludeFiltered, readRegions);
+                    continue;
+                }
+                Variant variant = newParser.parseLine();
+
+                if (variant == null ||
+                   (chrAcceptor != null && !chrAcceptor.contains(variant.getChr().getName()))) {
+                    continue;
+                }
+
+                if (variant.getTraid() != null) {
+                    String currentTraid = variant.getTraid();
+                    if (traid2composingVariants.containsKey(currentTraid)) {
+                        traid2composingVariants.get(currentTraid).add(variant);
+                        variant = new Variant.Builder().compositions(traid2composingVariants.get(currentTraid)).build();
+                        traid2composingVariants.remove(currentTraid);
+                    } else {
+                        traid2composingVariants.put(currentTraid, new ArrayList<Variant>());
+                        traid2composingVariants.get(currentTraid).add(variant);
+                        continue;
+                    }
+                }
+                return variant;
+            }
+        }
+    }
+
+    /**
+     * Reads the truth variants, from a truth set written by prepare_truth if -true_vcf is one or has
+     * an up to date one next to it, built with the same options
+     *
+     * @param regionsRestricted true if only regions of the truth VCF are to be read, a truth set then holds too much
+     */
+    private TruthSet readTruthSet(final Set<String> chrAcceptor, final Map<String, List<SimpleInterval1D>> readRegions,
+                                  final boolean regionsRestricted) {
+        final Path truthPath = Paths.get(trueVcfFilename);
+        if (TruthSet.isTruthSet(truthPath)) {
+            final TruthSet truthSet;
+            try {
+                truthSet = TruthSet.read(truthPath);
+            } catch (IOException | RuntimeException e) {
+                // there's no VCF to fall back on, -true_vcf is the truth set itself
+                log.error("Can't read truth set " + trueVcfFilename + ": " + e.getMessage());
+                System.exit(1);
+                return null;
+            }
+            try {
+                final String source = truthSet.getSourceFilename();
+                final boolean hasSource = source != null && new File(source).exists();
+                if (!truthSet.isCompatible(ignoreInsertionLength, SVLEN, overlapRatio, chrAcceptor)) {
+                    if (!hasSource) {
+                        log.error(trueVcfFilename + " was built with other -ignore_ins_len, -sv_length, -over or -include_chr and its VCF " + source + " is missing");
+                        System.exit(1);
+                    }
+                    log.warn(trueVcfFilename + " was built with other -ignore_ins_len, -sv_length, -over or -include_chr, parsing " + source);
+                    return loadTruthSet(source, chrAcceptor, readRegions);
+                }
+                if (hasSource && !truthSet.isUpToDate(Paths.get(source))) {
+                    log.warn(trueVcfFilename + " is out of date, " + source + " changed since it was built, parsing " + source);
+                    return loadTruthSet(source, chrAcceptor, readRegions);
+                }
+                if (regionsRestricted) {
+                    if (hasSource) {
+                        log.info("Parsing " + source + " by region instead of using " + trueVcfFilename);
+                        return loadTruthSet(source, chrAcceptor, readRegions);
+                    }
+                    log.warn(trueVcfFilename + " holds all the truth variants, its VCF " + source + " is missing to read only the -bed regions");
+                }
+                return truthSet;
+            } catch (IOException e) {
+                log.warn("Can't check " + trueVcfFilename + " against its VCF " + truthSet.getSourceFilename() + ", parsing it: " + e.getMessage());
+                return loadTruthSet(truthSet.getSourceFilename(), chrAcceptor, readRegions);
+            }
+        }
+        final Path truthSetPath = TruthSet.getDefaultPath(truthPath);
+        if (!regionsRestricted && TruthSet.isTruthSet(truthSetPath)) {
+            // a truncated or corrupt truth set next to the VCF is only a cache, the VCF is parsed instead
+            try {
+                final TruthSet truthSet = TruthSet.read(truthSetPath);
+                if (truthSet.isCompatible(ignoreInsertionLength, SVLEN, overlapRatio, chrAcceptor) && truthSet.isUpToDate(truthPath)) {
+                    log.info("Using truth set " + truthSetPath);
+                    return truthSet;
+                }
+                log.info(truthSetPath + " is out of date or was built with other options, parsing " + trueVcfFilename);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Can't read truth set " + truthSetPath + ", parsing " + trueVcfFilename + ": " + e);
+            }
+        }
+        return loadTruthSet(trueVcfFilename, chrAcceptor, readRegions);
+    }
+
+    /**
+     * Parses and canonicalizes the variants of a truth VCF
+     *
+     * @param chrAcceptor chromosomes to keep, null for all
+     * @param readRegions regions to read if the VCF is indexed, null to read it whole
+     */
+    TruthSet loadTruthSet(final String vcfFilename, final Set<String> chrAcceptor,
+                          final Map<String, List<SimpleInterval1D>> readRegions) {
+        GzFileParser<Variant> trueVcfParser = openVcf(vcfFilename, null, false, readRegions);
+
+        int numReadOriginalVariant = 0;
+        int numAddedSplitVariant = 0;
+
+        //track TRAID-linked variants
+        Map<String, List<Variant>> traid2composingVariants = new HashMap<>();
+
+        List<Variant> splitVariants = new ArrayList<>();
+        List<Integer> trueVariantTotalLength = new ArrayList<>();
+        List<Variant> trueVariantsForOutput = new ArrayList<>();
+
+        // store true variants as canonical ones, but remember original form
+        while (trueVcfParser.hasMoreInput()) {
+            Variant trueVariant = trueVcfParser.parseLine();
+            if (trueVariant == null ||
+                (!trueVariant.getGenotypes().isNonRef()) ||
+                (chrAcceptor != null && !chrAcceptor.contains(trueVariant.getChr().getName()))) {
+                continue;
+            }
+
+            VariantOverallType trueVariantOriginalType = trueVariant.getType();
+
+            if (trueVariant.getTraid() != null) {
+                String currentTraid = trueVariant.getTraid();
+                if (traid2composingVariants.containsKey(currentTraid)) {
+                    traid2composingVariants.get(currentTraid).add(trueVariant);
+                    trueVariant = new Variant.Builder().compositions(traid2composingVariants.get(currentTraid)).build();
+                    traid2composingVariants.remove(currentTraid);
+                } else {
+                    traid2composingVariants.put(currentTraid, new ArrayList<Variant>());
+                    traid2composingVariants.get(currentTraid).add(trueVariant);
+                    continue;
+                }
+            }
+            // determine max variant region
+            // when comparing genotypes, we need to individually compare
+            // to make sure they really overlap
+
+            //TODO: remove constructor here (because another copy will be created inside canonicalizeVariant
+            List<Variant> canonicalVariantList = canonicalizeVariant(new Variant(trueVariant));
+
+            int totalLength = canonicalVariantList.stream().mapToInt(v -> v.maxLen()).sum();
+            int maxLength = canonicalVariantList.stream().mapToInt(v -> v.maxLen()).max().getAsInt();
+
+            // in the order they go into the interval tree
+            for (Variant currentVariant : canonicalVariantList) {
+
+                currentVariant.splitVariantIndex = numAddedSplitVariant;
+                currentVariant.wholeVariantIndex = numReadOriginalVariant;
+                currentVariant.originalType = trueVariantOriginalType;
+
+                splitVariants.add(currentVariant);
+                numAddedSplitVariant++;
+            }
+
+            if (totalLength >= this.SVLEN && maxLength >= overlapRatio * totalLength && canonicalVariantList.size() > 1) {
+                // in this case we break down the variant into canoical forms since
+                // the original variant was probably a large deletion with a small insertion
+                for (Variant currentVariant : canonicalVariantList) {
+                    int currentLength = currentVariant.maxLen();
+                    currentVariant.wholeVariantIndex = numReadOriginalVariant;
+                    trueVariantTotalLength.add(currentLength);
+                    trueVariantsForOutput.add(currentVariant);
+                    numReadOriginalVariant++;
+                }
+            } else {
+                trueVariant.wholeVariantIndex = numReadOriginalVariant;
+                trueVariantTotalLength.add(totalLength);
+                trueVariantsForOutput.add(trueVariant);
+                numReadOriginalVariant++;
+            }
+        }
+
+        return new TruthSet(splitVariants, trueVariantsForOutput, trueVariantTotalLength, readSampleId(vcfFilename),
+                ignoreInsertionLength, SVLEN, overlapRatio, chrAcceptor);
+    }
+
+    /**
+     * @param regions regions to read if the VCF is indexed, null to read it whole
+     * @return parser of the VCF, see {@link VCFparser} for the other arguments
+     */
+    private GzFileParser<Variant> openVcf(final String fileName, final String id, final boolean pass,
+                                          final Map<String, List<SimpleInterval1D>> regions) {
+        if (regions != null && IndexedVCFparser.isIndexed(fileName)) {
+            try {
+                return new IndexedVCFparser(fileName, id, pass, null, ignoreInsertionLength, regions);
+            } catch (IOException e) {
+                log.warn("Can't read " + fileName + " by region, reading all of it: " + e.getMessage());
+            }
+        }
+        return PipelinedVCFParser.open(fileName, id, pass, null, ignoreInsertionLength, parseThreads);
+    }
 
     class CompareParams {
         @JsonProperty(value = "true_vcf_filename")
@@ -1403,6 +1748,7 @@ public class VCFcompare extends VarSimTool {
     }
 
     class ResultComparator {
+        private static final int ANY_TRUE_VARIANT = -2;
 
         chrSearchTree<ValueInterval1D<Variant>> trueVariantIntervalTree; // true variants
         double overlapRatio;
@@ -1415,6 +1761,13 @@ public class VCFcompare extends VarSimTool {
         List<Variant> homozygousMatches = new ArrayList<>();
         List<List<Variant>> heterozygousMatches = Arrays.asList(new ArrayList<Variant>(), new ArrayList<Variant>()); // matches either parent
 
+        // split index of the only true variant that may match, see setPairedTrueVariant
+        private int pairedTrueVariant = ANY_TRUE_VARIANT;
+
+        // updated by compareSnp/compareNonSnp while compareVariant walks the true variants
+        private int maxTrueVariantLength;
+        private int numberOfSnpMatches;
+
         public ResultComparator(chrSearchTree<ValueInterval1D<Variant>> trueVariantIntervalTree, double overlapRatio, int wiggle, boolean ignoreInsLen) {
             this.trueVariantIntervalTree = trueVariantIntervalTree;
             this.overlapRatio = overlapRatio;
@@ -1425,7 +1778,37 @@ public class VCFcompare extends VarSimTool {
         }
 
         /**
-         * return homozygous match (empty if no match)
+         * Only lets the variant match one true variant, as paired by the global matching
+         *
+         * @param splitVariantIndex split index of the true variant, -1 to match none
+         */
+        public void setPairedTrueVariant(int splitVariantIndex) {
+            pairedTrueVariant = splitVariantIndex;
+        }
+
+        /**
+         * All the true variants a variant would match with isHomMatch (matchGenotype and a homozygous variant),
+         * isHetMatch (matchGenotype and a heterozygous variant) or isMatch
+         *
+         * @param isHom         whether the compared variant is homozygous
+         * @param matchGenotype whether genotypes have to match
+         * @return the true variants, in the order they were found
+         */
+        public Set<Variant> getCandidates(boolean isHom, boolean matchGenotype) {
+            Set<Variant> candidates = new LinkedHashSet<>();
+            if (!matchGenotype || isHom) {
+                candidates.addAll(homozygousMatches);
+            }
+            if (!matchGenotype || !isHom) {
+                for (List<Variant> matches : heterozygousMatches) {
+                    candidates.addAll(matches);
+                }
+            }
+            return candidates;
+        }
+
+        /**
+         * return homozygous match (empty if no match), the first true variant found by compareVariant
          * @return
          */
         public Variant isHomMatch() {
@@ -1433,7 +1816,7 @@ public class VCFcompare extends VarSimTool {
         }
 
         /**
-         * return heterozygous match (empty if no match)
+         * return heterozygous match (empty if no match), the first true variant found by compareVariant
          * @return
          */
         public Variant isHetMatch() {
@@ -1499,136 +1882,137 @@ public class VCFcompare extends VarSimTool {
             ChrString chr = variant.getChr();
             SimpleInterval1D intervalForCompare = variant.getVariantInterval(genotype, ignoreInsertionLength);
 
-            int maxTrueVarianLength = 0;
+            maxTrueVariantLength = 0;
 
             // sometimes MNPs are called as SNPs?
             if (type == VariantType.SNP) {
                 // handle SNPs differently
                 // require SNP content to match
-                Iterable<ValueInterval1D<Variant>> overlaps = trueVariantIntervalTree.getOverlaps(chr, intervalForCompare);
-
-                if (overlaps == null) {
-                    // nothing found
-                    return maxTrueVarianLength;
-                }
-
                 byte alternativeAlleleFirstBase = variant.getAlt(genotype).getSequence()[0];
 
-                int numberOfSnpMatches = 0;
-                for (ValueInterval1D<Variant> trueVariantInterval : overlaps) {
-                    Variant trueVariant = trueVariantInterval.getContent();
-                    boolean hasSnp = false;
-                    int splitVariantIndex = trueVariant.splitVariantIndex;
-                    int wholeVariantIndex = trueVariant.wholeVariantIndex;
-                    overlapComplex = trueVariant.originalType == VariantOverallType.Complex;
-
-                    if (validated.get(splitVariantIndex)) {
-                        // skip ones already validated
-                        continue;
-                    }
-
-                    // check genotype
-                    for (int parent = 0; parent < 2; parent++) {
-                        int allele = trueVariant.getAllele(parent);
-                        //true variant is heterozygous, so only one allele has non-reference sequence
-                        if (trueVariant.isHom() || allele > 0) {
-                            if (trueVariant.getType(allele) == VariantType.SNP
-                                    && variant.getPos() == trueVariant.getPos()) {
-                                if (alternativeAlleleFirstBase == trueVariant.getAlt(allele).getSequence()[0]) {
-                                    if (trueVariant.isHom())
-                                        homozygousMatches.add(trueVariant);
-                                    else
-                                        heterozygousMatches.get(parent).add(trueVariant);
-                                }
-                                hasSnp = true;
-                            }
-                        }
-                        if (trueVariant.isHom())
-                            break;
-                    }
-
-                    if (hasSnp) {
-                        numberOfSnpMatches++;
-                        maxTrueVarianLength = 1;
-                    }
-                }
+                numberOfSnpMatches = 0;
+                trueVariantIntervalTree.forEachOverlap(chr, intervalForCompare, 0, 0, trueVariantInterval ->
+                        compareSnp(variant, alternativeAlleleFirstBase, trueVariantInterval.getContent(), validated));
 
                 if (numberOfSnpMatches > 1) {
                     log.info("Something strange, multiple SNP matches in true set: " + numberOfSnpMatches);
                 }
             } else {
                 // Non-SNPs
-                boolean isSmallVariant = false;
-                if (variant.isSmallVariant(genotype, SVLEN, ignoreInsertionLength)) {
+                final boolean isSmallVariant = variant.isSmallVariant(genotype, SVLEN, ignoreInsertionLength);
+                if (isSmallVariant) {
                     wiggle = 0;
-                    isSmallVariant = true;
                 }
                 SimpleInterval1D intervalForCompareWithWiggle = new SimpleInterval1D(intervalForCompare.left - wiggle, intervalForCompare.right + wiggle);
-                Iterable<ValueInterval1D<Variant>> overlaps = trueVariantIntervalTree.getOverlaps(chr, intervalForCompareWithWiggle);
-
-                if (overlaps == null) {
-                    // nothing found
-                    return maxTrueVarianLength;
-                }
-
-                for (ValueInterval1D<Variant> trueVariantInterval : overlaps) {
-                    Variant trueVariant = trueVariantInterval.getContent();
-                    int splitVariantIndex = trueVariant.splitVariantIndex;
-                    int wholeVariantIndex = trueVariant.wholeVariantIndex;
-                    overlapComplex = trueVariant.originalType == VariantOverallType.Complex;
-
-                    if (validated.get(splitVariantIndex)) {
-                        // skip ones already validated
-                        continue;
-                    }
+                trueVariantIntervalTree.forEachOverlap(chr, intervalForCompareWithWiggle, 0, 0, trueVariantInterval ->
+                        compareNonSnp(variant, genotype, type, intervalForCompare, isSmallVariant, trueVariantInterval.getContent(), validated));
+            }
 
-                    //all genotypes in the overlapping true variant will be checked
-                    for (int parent = 0; parent < 2; parent++) {
-                        int allele = trueVariant.getAllele(parent);
+            return maxTrueVariantLength;
+        }
 
-                        if (allele == 0 || // reference allele
-                            type != trueVariant.getType(allele) ||
-                                variant.getAlt(allele) == null ||
-                                trueVariant.getAlt(allele) == null) { // need type to be the same
-                            continue;
-                        }
+        /**
+         * Compares a SNP with one overlapping true variant, called as the true variants are found
+         *
+         * @return true, to go on with the other true variants
+         */
+        private boolean compareSnp(Variant variant, byte alternativeAlleleFirstBase, Variant trueVariant, BitSet validated) {
+            boolean hasSnp = false;
+            int splitVariantIndex = trueVariant.splitVariantIndex;
+            overlapComplex = trueVariant.originalType == VariantOverallType.Complex;
+
+            if (validated.get(splitVariantIndex) ||
+                    (pairedTrueVariant != ANY_TRUE_VARIANT && splitVariantIndex != pairedTrueVariant)) {
+                // skip ones already validated, or paired with another variant
+                return true;
+            }
 
-                        Alt.Breakend currentBreakend = variant.getAlt(allele).getBreakend();
-                        Alt.Breakend trueBreakend = trueVariant.getAlt(allele).getBreakend();
-                        boolean overlap = trueVariant.getVariantInterval(allele, ignoreInsertionLength).
-                                intersects(intervalForCompare, overlapRatio, wiggle);
-                        boolean breakendMatch =  trueVariant.getType(allele) == VariantType.Breakend &&
-                                Alt.Breakend.looseEquals(currentBreakend, trueBreakend, overlapRatio, wiggle);
-                        boolean matched = trueVariant.getType(allele) == VariantType.Breakend ? breakendMatch : overlap;
-
-                        if (matched && isSmallVariant) {
-                            //double check POS, REF, ALT sequences for small variants
-                            //require exact matching
-                            matched = matched && variant.getPos() == trueVariant.getPos();
-                            matched = matched && variant.getReferenceAlleleLength() == trueVariant.getReferenceAlleleLength();
-                            byte[] altSequence = variant.getAlt(genotype).getSequence();
-                            byte[] trueAltSequence = trueVariant.getAlt(allele).getSequence();
-                            if (altSequence != null && altSequence != null) {
-                                matched = matched && Arrays.equals(altSequence, trueAltSequence);
-                            }
-                        }
-                        if (matched) {
-                            if (trueVariant.isHom()) {
+            // check genotype
+            for (int parent = 0; parent < 2; parent++) {
+                int allele = trueVariant.getAllele(parent);
+                //true variant is heterozygous, so only one allele has non-reference sequence
+                if (trueVariant.isHom() || allele > 0) {
+                    if (trueVariant.getType(allele) == VariantType.SNP
+                            && variant.getPos() == trueVariant.getPos()) {
+                        if (alternativeAlleleFirstBase == trueVariant.getAlt(allele).getSequence()[0]) {
+                            if (trueVariant.isHom())
                                 homozygousMatches.add(trueVariant);
-                            } else {
+                            else
                                 heterozygousMatches.get(parent).add(trueVariant);
-                            }
-                            maxTrueVarianLength = Math.max(trueVariant.maxLen(allele), maxTrueVarianLength);
                         }
-                        //for homozygous variants, we only check the first allele
-                        if (trueVariant.isHom())
-                            break;
+                        hasSnp = true;
                     }
                 }
+                if (trueVariant.isHom())
+                    break;
+            }
 
+            if (hasSnp) {
+                numberOfSnpMatches++;
+                maxTrueVariantLength = 1;
             }
+            return true;
+        }
 
-            return maxTrueVarianLength;
+        /**
+         * Compares a non-SNP with one overlapping true variant, called as the true variants are found
+         *
+         * @return true, to go on with the other true variants
+         */
+        private boolean compareNonSnp(Variant variant, int genotype, VariantType type, SimpleInterval1D intervalForCompare,
+                                      boolean isSmallVariant, Variant trueVariant, BitSet validated) {
+            int splitVariantIndex = trueVariant.splitVariantIndex;
+            overlapComplex = trueVariant.originalType == VariantOverallType.Complex;
+
+            if (validated.get(splitVariantIndex) ||
+                    (pairedTrueVariant != ANY_TRUE_VARIANT && splitVariantIndex != pairedTrueVariant)) {
+                // skip ones already validated, or paired with another variant
+                return true;
+            }
+
+            //all genotypes in the overlapping true variant will be checked
+            for (int parent = 0; parent < 2; parent++) {
+                int allele = trueVariant.getAllele(parent);
+
+                if (allele == 0 || // reference allele
+                    type != trueVariant.getType(allele) ||
+                        variant.getAlt(allele) == null ||
+                        trueVariant.getAlt(allele) == null) { // need type to be the same
+                    continue;
+                }
+
+                Alt.Breakend currentBreakend = variant.getAlt(allele).getBreakend();
+                Alt.Breakend trueBreakend = trueVariant.getAlt(allele).getBreakend();
+                boolean overlap = trueVariant.getVariantInterval(allele, ignoreInsertionLength).
+                        intersects(intervalForCompare, overlapRatio, wiggle);
+                boolean breakendMatch =  trueVariant.getType(allele) == VariantType.Breakend &&
+                        Alt.Breakend.looseEquals(currentBreakend, trueBreakend, overlapRatio, wiggle);
+                boolean matched = trueVariant.getType(allele) == VariantType.Breakend ? breakendMatch : overlap;
+
+                if (matched && isSmallVariant) {
+                    //double check POS, REF, ALT sequences for small variants
+                    //require exact matching
+                    matched = matched && variant.getPos() == trueVariant.getPos();
+                    matched = matched && variant.getReferenceAlleleLength() == trueVariant.getReferenceAlleleLength();
+                    byte[] altSequence = variant.getAlt(genotype).getSequence();
+                    byte[] trueAltSequence = trueVariant.getAlt(allele).getSequence();
+                    if (altSequence != null && altSequence != null) {
+                        matched = matched && Arrays.equals(altSequence, trueAltSequence);
+                    }
+                }
+                if (matched) {
+                    if (trueVariant.isHom()) {
+                        homozygousMatches.add(trueVariant);
+                    } else {
+                        heterozygousMatches.get(parent).add(trueVariant);
+                    }
+                    maxTrueVariantLength = Math.max(trueVariant.maxLen(allele), maxTrueVariantLength);
+                }
+                //for homozygous variants, we only check the first allele
+                if (trueVariant.isHom())
+                    break;
+            }
+            return true;
         }
     }
 
@@ -1639,25 +2023,18 @@ public class VCFcompare extends VarSimTool {
      * @param fpWriter
      * @param unknownFpWriter
      * @param fnWriter
+     * @param truthSampleId sample of the truth VCF, null if it has none
      */
-    private void printVCFHeader(PrintWriter tpWriter, PrintWriter unknownTpWriter,PrintWriter  fpWriter,PrintWriter  unknownFpWriter,PrintWriter  fnWriter, SimpleReference reference) {
+    private void printVCFHeader(PrintWriter tpWriter, PrintWriter unknownTpWriter,PrintWriter  fpWriter,PrintWriter  unknownFpWriter,PrintWriter  fnWriter, SimpleReference reference,
+                                String truthSampleId) {
       //set default sample name
         ImmutableList<String> truthSampleList = new ImmutableList.Builder<String>().add("truth").build(); //truth is default sample name for truth VCF
         ImmutableList<String> predictSampleList = new ImmutableList.Builder<String>().add("predict").build(); //add default sample name
 
         //identity user input sample names in truth and predictions, respectively
-        VCFparser trueVcfParser = new VCFparser(trueVcfFilename, null, false, ignoreInsertionLength);
-        while (trueVcfParser.hasMoreInput()) {
-            Variant variant = trueVcfParser.parseLine();
-            if (variant != null) {
-                //assume header lines come before variants
-                break;
-            }
-        }
-
         if (sampleName == null) {
-            if (trueVcfParser.getSampleId() != null) {
-                truthSampleList = new ImmutableList.Builder<String>().add(trueVcfParser.getSampleId()).build();
+            if (truthSampleId != null) {
+                truthSampleList = new ImmutableList.Builder<String>().add(truthSampleId).build();
             }
         } else {
             truthSampleList = new ImmutableList.Builder<String>().add(sampleName).build();
@@ -1685,6 +2062,22 @@ public class VCFcompare extends VarSimTool {
         fpWriter.write(generateVCFHeader(reference, predictSampleList));
         unknownFpWriter.write(generateVCFHeader(reference, predictSampleList));
     }
+
+    /**
+     * @return first sample of the VCF, null if it has none
+     */
+    private String readSampleId(String vcfFilename) {
+        VCFparser parser = new VCFparser(vcfFilename, null, false, ignoreInsertionLength);
+        while (parser.hasMoreInput()) {
+            Variant variant = parser.parseLine();
+            if (variant != null) {
+                //assume header lines come before variants
+                break;
+            }
+        }
+        return parser.getSampleId();
+    }
+
     private String getSummaryStats(List<Integer> list) {
         if (list == null || list.isEmpty()) {
             return "No data.";
@@ -92,7 +92,7 @@ public class RandBED2VCF extends RandVCFgenerator {
             return null;
         }
 
-        ChrString chr = new ChrString(ll[0]);
+        ChrString chr = ChrString.valueOf(ll[0]);
 
         int pos = Integer.parseInt(ll[1]) + 1; //0-indexed
         //int end = Integer.parseInt(ll[2]);
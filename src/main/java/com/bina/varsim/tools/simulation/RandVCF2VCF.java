@@ -63,6 +63,11 @@ public class RandVCF2VCF extends RandVCFgenerator {
     @Option(name = "-ref", usage = "Reference Genome [Required]", metaVar = "file", required = true)
     String referenceFilename;
 
+    @Option(name = "-reference_storage", usage = "How loaded reference contigs are held: HEAP, PACKED (2 bits per base, off-heap) or MAPPED (read from the mmapped FASTA) [HEAP]")
+    SimpleReference.Storage referenceStorage = SimpleReference.Storage.HEAP;
+    @Option(name = "-reference_cache_mb", usage = "Memory budget in MB for loaded reference contigs, least recently used contigs are dropped first [unbounded]")
+    long referenceCacheMb = -1;
+
     @Option(name = "-vcf", usage = "Known VCF file, eg. dbSNP [Required]", metaVar = "file", required = true)
     String vcfFilename;
 
@@ -287,6 +292,10 @@ public class RandVCF2VCF extends RandVCFgenerator {
         }
 
         final SimpleReference reference = new SimpleReference(referenceFilename);
+        reference.setStorage(referenceStorage);
+        if (referenceCacheMb >= 0) {
+            reference.setCacheBudget(referenceCacheMb << 20);
+        }
 
         rand = new Random(seed);
 
@@ -5,13 +5,15 @@ package com.bina.varsim.tools.simulation;
 import com.bina.varsim.VarSimTool;
 import com.bina.varsim.VarSimToolNamespace;
 import com.bina.varsim.types.*;
+import com.bina.varsim.types.variant.PackedVariantList;
 import com.bina.varsim.types.variant.Variant;
 import com.bina.varsim.types.variant.VariantOverallType;
 import com.bina.varsim.types.variant.VariantType;
+import com.bina.varsim.util.GzFileParser;
+import com.bina.varsim.util.PipelinedVCFParser;
 import com.bina.varsim.util.SimpleReference;
 import com.bina.varsim.util.StringUtilities;
 import com.bina.varsim.util.VCFWriter;
-import com.bina.varsim.util.VCFparser;
 import com.google.common.collect.ImmutableList;
 import org.apache.log4j.Logger;
 import org.kohsuke.args4j.CmdLineException;
@@ -53,8 +55,14 @@ public class VCF2diploid extends VarSimTool {
     private boolean pass = false;
     @Option(name = "-outdir", usage = "Directory to output results in [current directory]")
     File outDir = new File("").getAbsoluteFile();
+    @Option(name = "-reference_storage", usage = "How loaded reference contigs are held: HEAP, PACKED (2 bits per base, off-heap) or MAPPED (read from the mmapped FASTA) [HEAP]")
+    private SimpleReference.Storage referenceStorage = SimpleReference.Storage.HEAP;
+    @Option(name = "-reference_cache_mb", usage = "Memory budget in MB for loaded reference contigs, least recently used contigs are dropped first [unbounded]")
+    private long referenceCacheMb = -1;
     @Option(name = "-no_contig_id", usage = "suppress writing contig IDs into VCF headers (useful when number of contigs is large)")
     private boolean noContigID = false;
+    @Option(name = "-parse_threads", usage = "Threads used to parse each VCF, 1 parses on the main thread [1]")
+    private int parseThreads = 1;
     private Map<ChrString, List<Variant>> variants = new HashMap<>();
 
     /**
@@ -122,7 +130,7 @@ public class VCF2diploid extends VarSimTool {
      */
     public void parseVCFs(List<String> vcfs, Map<ChrString, List<Variant>> variants, String id, boolean pass) {
         for (String vcfFile : vcfs) {
-            final VCFparser parser = new VCFparser(vcfFile, id, pass, rand);
+            final GzFileParser<Variant> parser = PipelinedVCFParser.open(vcfFile, id, pass, rand, false, parseThreads);
             /*
             apparently, nVariant is for # of variants
             nVariantBase is for # of nucleotides in variants
@@ -149,7 +157,8 @@ public class VCF2diploid extends VarSimTool {
 
                 ChrString chr = var.getChr();
                 if (!variants.containsKey(chr)) {
-                    variants.put(chr, new ArrayList<Variant>());
+                    // SNVs and small indels are kept packed until their chromosome is made
+                    variants.put(chr, new PackedVariantList());
                 }
                 variants.get(chr).add(var);
                 nVariant++;
@@ -181,6 +190,10 @@ public class VCF2diploid extends VarSimTool {
 
         // This is the loop if chromosomes exist in separate files
         SimpleReference allSequences = new SimpleReference(chrfiles);
+        allSequences.setStorage(referenceStorage);
+        if (referenceCacheMb >= 0) {
+            allSequences.setCacheBudget(referenceCacheMb << 20);
+        }
 
         //VCF header will be the same within this call
         List<String> idList = new ArrayList<>();
@@ -220,7 +233,8 @@ public class VCF2diploid extends VarSimTool {
             }
 
             // this is the list of variants for the chromosome of question
-            final List<Variant> varList = variants.containsKey(chr) ? variants.get(chr) : Collections.EMPTY_LIST;
+            // unpacked, as the variants are changed while they are applied and written out
+            final List<Variant> varList = variants.containsKey(chr) ? new ArrayList<>(variants.get(chr)) : Collections.EMPTY_LIST;
 
             final List<Boolean> maternalIsVariantAdded = new ArrayList<>();
             final List<Boolean> paternalIsVariantAdded = new ArrayList<>();
@@ -237,9 +251,9 @@ public class VCF2diploid extends VarSimTool {
 
             // fill both maternal and paternal with the original reference
             // sequence
-            for (int c = 1; c <= len; c++) {
-                maternalMaskedSequence[c - 1] = paternalMaskedSequence[c - 1] = referenceSequence.byteAt(c);
-            }
+            final byte[] referenceBases = referenceSequence.subSeq(1, len + 1);
+            System.arraycopy(referenceBases, 0, maternalMaskedSequence, 0, len);
+            System.arraycopy(referenceBases, 0, paternalMaskedSequence, 0, len);
 
             Hashtable<Integer, FlexSeq> paternalInsertionSeq = new Hashtable<>(150);
             Hashtable<Integer, FlexSeq> maternalInsertionSeq = new Hashtable<>(150);
@@ -304,6 +318,7 @@ public class VCF2diploid extends VarSimTool {
                         + nMaternalVariantBase + " bases to " + "maternal genome.");
             }
         }
+        log.info("Reference contig cache: " + allSequences.getCache());
 
         try {
             FileWriter fw = new FileWriter(new File(outDir, id + ".map"));
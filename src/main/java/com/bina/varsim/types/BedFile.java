@@ -1,17 +1,29 @@
 package com.bina.varsim.types;
 
 import com.bina.intervalTree.SimpleInterval1D;
+import com.bina.varsim.util.IntervalImage;
 import com.bina.varsim.util.chrSearchTree;
+import org.apache.log4j.Logger;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Reads in a BED file and allows testing of regions
  * Remember that a BED file is 0-based
  * <p/>
+ * The intervals are kept in an {@link IntervalImage} next to the BED file, written on the first run
+ * and mapped by the later ones, so large BED files are not parsed again.
+ * <p/>
  * TODO this current implementation ignores the other bed columns other than chr,start,end
  * TODO implement the other types of overlap
  */
@@ -20,12 +32,14 @@ import java.io.IOException;
  * @author johnmu
  */
 public class BedFile {
+    private final static Logger log = Logger.getLogger(BedFile.class.getName());
+
     String _filename; // file name of the BED file
     chrSearchTree<SimpleInterval1D> bedST; // the interval search tree for bed file
     boolean bedEither = false;
 
     /**
-     * Reads the BED file into a search tree
+     * Maps the search tree of the BED file, see {@link #loadOrBuild(Path)}
      *
      * @param filename BED file
      */
@@ -33,7 +47,7 @@ public class BedFile {
         bedST = new chrSearchTree<>();
         _filename = filename;
         try {
-            readBedFile(new File(_filename));
+            bedST = loadOrBuild(Paths.get(_filename));
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -51,36 +65,73 @@ public class BedFile {
     }
 
     /**
-     * Reads the bed file into a search tree
+     * Maps the interval image of the BED file, writing it first if it is missing or out of date.
+     * If it cannot be written, the intervals are indexed in memory.
      *
-     * @param f BED file
+     * @param bed BED file
+     * @return search tree of the BED intervals
      * @throws IOException
      */
-    private void readBedFile(File f) throws IOException {
-        BufferedReader br = new BufferedReader(new FileReader(f));
-        String line;
-        while ((line = br.readLine()) != null) {
-            line = line.trim();
-            if (line.length() == 0 || line.charAt(0) == '#') {
-                // comment line
-                continue;
-            }
-
-            // TODO replace this with apache-commons for speed
-            String[] ll = line.split("\t");
-
-            String chr_name = ll[0];
-            int start;
-            int end;
+    private static chrSearchTree<SimpleInterval1D> loadOrBuild(final Path bed) throws IOException {
+        final Path image = IntervalImage.getDefaultImagePath(bed);
+        if (Files.exists(image)) {
             try {
-                start = Integer.parseInt(ll[1]);
-                end = Integer.parseInt(ll[2]);
-            } catch (NumberFormatException e) {
-                throw new RuntimeException("Malformed BED line (nfe): " + line);
+                final IntervalImage intervals = IntervalImage.open(image);
+                if (intervals.isUpToDate(bed)) {
+                    return intervals.getTree();
+                }
+                log.info("Interval image " + image + " is out of date, rebuilding");
+            } catch (IOException | RuntimeException e) {
+                // a truncated or corrupt image is rebuilt too, rather than leave the regions empty
+                log.warn("Cannot read interval image " + image + ", rebuilding: " + e);
             }
+        }
+        final Map<ChrString, List<SimpleInterval1D>> intervals = readBedFile(bed.toFile());
+        try {
+            IntervalImage.write(intervals, Files.size(bed), image);
+            return IntervalImage.open(image).getTree();
+        } catch (IOException e) {
+            log.warn("Cannot write interval image " + image + ": " + e.getMessage());
+            return chrSearchTree.build(intervals);
+        }
+    }
 
-            bedST.put(new ChrString(chr_name), new SimpleInterval1D(start + 1, end));
+    /**
+     * Reads the intervals of a bed file
+     *
+     * @param f BED file
+     * @return 1-based inclusive intervals of each chromosome, in file order
+     * @throws IOException
+     */
+    private static Map<ChrString, List<SimpleInterval1D>> readBedFile(File f) throws IOException {
+        final Map<ChrString, List<SimpleInterval1D>> intervals = new LinkedHashMap<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.charAt(0) == '#') {
+                    // comment line
+                    continue;
+                }
+
+                // TODO replace this with apache-commons for speed
+                String[] ll = line.split("\t");
+
+                String chr_name = ll[0];
+                int start;
+                int end;
+                try {
+                    start = Integer.parseInt(ll[1]);
+                    end = Integer.parseInt(ll[2]);
+                } catch (NumberFormatException e) {
+                    throw new RuntimeException("Malformed BED line (nfe): " + line);
+                }
+
+                intervals.computeIfAbsent(ChrString.valueOf(chr_name), chr -> new ArrayList<>())
+                        .add(new SimpleInterval1D(start + 1, end));
+            }
         }
+        return intervals;
     }
 
     /**
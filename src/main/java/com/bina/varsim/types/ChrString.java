@@ -1,11 +1,18 @@
 package com.bina.varsim.types;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
 /**
  * Used to represent the chromosome name, able to useful things like determine sex
  * <p/>
+ * Names are interned by {@link #valueOf(String)}: each distinct name gets one shared instance with
+ * a dense integer ID, and whether it is X, Y or MT is worked out once per instance.
+ * <p/>
  * Created by johnmu on 1/27/15.
  */
 public class ChrString implements Comparable<ChrString>{
@@ -13,12 +20,82 @@ public class ChrString implements Comparable<ChrString>{
     private final static Pattern restrictedChrX = Pattern.compile("(chr)?X_\\d+_\\d+");
     private final static Pattern restrictedChrY = Pattern.compile("(chr)?Y_\\d+_\\d+");
     private final static Pattern restrictedChrMT = Pattern.compile("(MT|chrM)_\\d+_\\d+");
+    private final static ConcurrentMap<String, ChrString> REGISTRY = new ConcurrentHashMap<>();
+    private final static List<ChrString> BY_ID = new ArrayList<>();
+
+    private final static byte X = 1, Y = 2, MT = 4, KNOWN = 8;
+
     final String name;
+    // -1 until the name is interned
+    private volatile int id = -1;
+    // X, Y and MT bits, KNOWN once they are set
+    private volatile byte flags = 0;
 
     public ChrString(final String name) {
         this.name = name;
     }
 
+    /**
+     * @param name chromosome name
+     * @return the shared instance for the name
+     */
+    public static ChrString valueOf(final String name) {
+        final ChrString chr = REGISTRY.get(name);
+        return chr != null ? chr : register(name);
+    }
+
+    private static synchronized ChrString register(final String name) {
+        ChrString chr = REGISTRY.get(name);
+        if (chr == null) {
+            chr = new ChrString(name);
+            chr.getFlags();
+            chr.id = BY_ID.size();
+            BY_ID.add(chr);
+            REGISTRY.put(name, chr);
+        }
+        return chr;
+    }
+
+    /**
+     * @param id ID given by {@link #getId()}
+     * @return the shared instance with that ID
+     */
+    public static synchronized ChrString byId(final int id) {
+        return BY_ID.get(id);
+    }
+
+    /**
+     * @return number of IDs given so far, IDs are below it
+     */
+    public static synchronized int getNumIds() {
+        return BY_ID.size();
+    }
+
+    /**
+     * @return the shared instance with the same name
+     */
+    public ChrString intern() {
+        return id >= 0 ? this : valueOf(name);
+    }
+
+    /**
+     * Only looks the name up, names are registered by {@link #valueOf(String)} or {@link #intern()}
+     *
+     * @return dense ID of the name, the same for all the instances with the same name, -1 if the name
+     * was never interned
+     */
+    public int getId() {
+        int value = id;
+        if (value < 0) {
+            final ChrString chr = REGISTRY.get(name);
+            if (chr != null) {
+                value = chr.id;
+                id = value;
+            }
+        }
+        return value;
+    }
+
     /**
      * Converts hg19 or b37 format chromosomes to b37 format
      *
@@ -46,7 +123,7 @@ public class ChrString implements Comparable<ChrString>{
         }
         ChrString[] chrStrings = new ChrString[s.length];
         for (int i = 0; i < s.length; i++) {
-            chrStrings[i] = new ChrString(s[i]);
+            chrStrings[i] = valueOf(s[i]);
         }
         return chrStrings;
     }
@@ -60,34 +137,43 @@ public class ChrString implements Comparable<ChrString>{
         return name;
     }
 
-    public boolean isX() {
-        if (name.equals("X") || name.equals("chrX")) {
-            return true;
-        } else if (restrictedChrX.matcher(name).matches()) {
-            log.warning("Treating " + name + " as restricted genome.");
-            return true;
+    private byte getFlags() {
+        byte value = flags;
+        if (value == 0) {
+            value = KNOWN;
+            if (name.equals("X") || name.equals("chrX")) {
+                value |= X;
+            } else if (restrictedChrX.matcher(name).matches()) {
+                log.warning("Treating " + name + " as restricted genome.");
+                value |= X;
+            }
+            if (name.equals("Y") || name.equals("chrY")) {
+                value |= Y;
+            } else if (restrictedChrY.matcher(name).matches()) {
+                log.warning("Treating " + name + " as restricted genome.");
+                value |= Y;
+            }
+            if (name.equals("MT") || name.equals("chrM")) {
+                value |= MT;
+            } else if (restrictedChrMT.matcher(name).matches()) {
+                log.warning("Treating " + name + " as restricted genome.");
+                value |= MT;
+            }
+            flags = value;
         }
-        return false;
+        return value;
+    }
+
+    public boolean isX() {
+        return (getFlags() & X) != 0;
     }
 
     public boolean isY() {
-        if (name.equals("Y") || name.equals("chrY")) {
-            return true;
-        } else if (restrictedChrY.matcher(name).matches()) {
-            log.warning("Treating " + name + " as restricted genome.");
-            return true;
-        }
-        return false;
+        return (getFlags() & Y) != 0;
     }
 
     public boolean isMT() {
-        if (name.equals("MT") || name.equals("chrM")) {
-            return true;
-        } else if (restrictedChrMT.matcher(name).matches()) {
-            log.warning("Treating " + name + " as restricted genome.");
-            return true;
-        }
-        return false;
+        return (getFlags() & MT) != 0;
     }
 
     /**
@@ -112,6 +198,9 @@ public class ChrString implements Comparable<ChrString>{
         if (!(o instanceof ChrString)) return false;
 
         ChrString chrString = (ChrString) o;
+        if (id >= 0 && chrString.id >= 0) {
+            return id == chrString.id;
+        }
 
         return name.equals(chrString.name);
 
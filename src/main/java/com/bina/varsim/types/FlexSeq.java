@@ -1,6 +1,11 @@
 package com.bina.varsim.types;
 
+import com.bina.varsim.util.BinaryCodec;
+
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -308,6 +313,14 @@ public final class FlexSeq {
         return (type == Type.SEQ);
     }
 
+    /**
+     * @return true if this is only a sequence, without copy number, inversion or SV fields
+     */
+    public boolean isPlainSequence() {
+        return type == Type.SEQ && sequence != null && length == sequence.length && copyNumber == 1 && !isinv
+                && "".equals(variantId) && chr2 == null && pos2 == 0 && end2 == 0 && referenceAlleleLength == 0;
+    }
+
     public String toString() {
         if (sequence == null) {
             switch (type) {
@@ -369,4 +382,40 @@ public final class FlexSeq {
 
         return referenceAlleleLength;
     }
+
+    /**
+     * Writes all the fields, see {@link #read(ByteBuffer)}
+     */
+    public void write(final DataOutput out) throws IOException {
+        BinaryCodec.writeEnum(out, type);
+        out.writeInt(length);
+        out.writeInt(copyNumber);
+        BinaryCodec.writeBytes(out, sequence);
+        BinaryCodec.writeString(out, variantId);
+        BinaryCodec.writeString(out, chr2 == null ? null : chr2.toString());
+        out.writeInt(pos2);
+        out.writeInt(end2);
+        out.writeInt(referenceAlleleLength);
+        out.writeBoolean(isinv);
+    }
+
+    /**
+     * @param buffer positioned at a FlexSeq written by {@link #write(DataOutput)}
+     */
+    public static FlexSeq read(final ByteBuffer buffer) {
+        // the sequence was checked when it was written
+        final FlexSeq seq = new FlexSeq();
+        seq.type = BinaryCodec.readEnum(buffer, Type.values());
+        seq.length = buffer.getInt();
+        seq.copyNumber = buffer.getInt();
+        seq.sequence = BinaryCodec.readBytes(buffer);
+        seq.variantId = BinaryCodec.readString(buffer);
+        final String chr2 = BinaryCodec.readString(buffer);
+        seq.chr2 = chr2 == null ? null : ChrString.valueOf(chr2);
+        seq.pos2 = buffer.getInt();
+        seq.end2 = buffer.getInt();
+        seq.referenceAlleleLength = buffer.getInt();
+        seq.isinv = buffer.get() != 0;
+        return seq;
+    }
 }
@@ -0,0 +1,138 @@
+package com.bina.varsim.types;
+
+import htsjdk.samtools.reference.FastaSequenceIndexEntry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A contig read straight out of a memory-mapped, uncompressed FASTA file.
+ * <p/>
+ * The fai line layout (bases per line, bytes per line) is used to turn a 1-based
+ * position into a file offset, so nothing is copied onto the heap until subSeq is called.
+ * Bases are returned exactly as they are in the file.
+ */
+public class MappedFastaSequence extends Sequence {
+    private final ByteBuffer mapped; // starts at the first base of the contig
+    private final int basesPerLine;
+    private final int bytesPerLine;
+    private final int offset; // 0-based position in the contig of the first base of this view
+    private final int length;
+
+    private MappedFastaSequence(final String header, final ByteBuffer mapped, final int basesPerLine,
+                                final int bytesPerLine, final int offset, final int length) {
+        super(header);
+        this.mapped = mapped;
+        this.basesPerLine = basesPerLine;
+        this.bytesPerLine = bytesPerLine;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Maps one contig of a FASTA file
+     *
+     * @param fasta uncompressed FASTA file
+     * @param entry fai entry of the contig
+     * @return sequence backed by the mapping
+     * @throws IOException if the file cannot be mapped
+     */
+    public static MappedFastaSequence map(final Path fasta, final FastaSequenceIndexEntry entry) throws IOException {
+        final long size = entry.getSize();
+        if (size == 0) {
+            return new MappedFastaSequence(entry.getContig(), ByteBuffer.allocate(0), 1, 1, 0, 0);
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Contig " + entry.getContig() + " is too long to map: " + size);
+        }
+        final long fullLines = size / entry.getBasesPerLine();
+        final long span = fullLines * entry.getBytesPerLine() + size % entry.getBasesPerLine();
+        if (span > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Contig " + entry.getContig() + " spans too many bytes to map: " + span);
+        }
+        try (FileChannel channel = FileChannel.open(fasta, StandardOpenOption.READ)) {
+            final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, entry.getLocation(), span);
+            return new MappedFastaSequence(entry.getContig(), mapped, entry.getBasesPerLine(),
+                    entry.getBytesPerLine(), 0, (int) size);
+        }
+    }
+
+    /**
+     * Zero-copy view of part of this sequence, positions in the view start at 1 again
+     *
+     * @param beginIndex start of the view (inclusive)
+     * @param endIndex   end of the view (exclusive)
+     * @return view sharing the same mapping
+     */
+    public MappedFastaSequence range(final int beginIndex, final int endIndex) {
+        checkRange(beginIndex, endIndex);
+        return new MappedFastaSequence(getHeader(), mapped, basesPerLine, bytesPerLine,
+                offset + beginIndex - 1, endIndex - beginIndex);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public byte byteAt(int p) {
+        if (p < 1 || p > length) {
+            throw new ArrayIndexOutOfBoundsException(p - 1);
+        }
+        return mapped.get(fileOffset(offset + p - 1));
+    }
+
+    @Override
+    public byte[] subSeq(int beginIndex, int endIndex) {
+        checkRange(beginIndex, endIndex);
+        final byte[] out = new byte[endIndex - beginIndex];
+        final ByteBuffer view = mapped.duplicate();
+        int i = offset + beginIndex - 1;
+        int copied = 0;
+        // copy one FASTA line at a time
+        while (copied < out.length) {
+            final int inLine = Math.min(basesPerLine - i % basesPerLine, out.length - copied);
+            view.position(fileOffset(i));
+            view.get(out, copied, inLine);
+            copied += inLine;
+            i += inLine;
+        }
+        return out;
+    }
+
+    @Override
+    public int getNumNonNBases() {
+        return getNumNonNBases(0, length);
+    }
+
+    @Override
+    public int getNumNonNBases(final int start, final int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (!isN(mapped.get(fileOffset(offset + i)))) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return 0, the mapped pages belong to the OS page cache
+     */
+    @Override
+    public long getFootprint() {
+        return 0;
+    }
+
+    private int fileOffset(final int position) {
+        return (position / basesPerLine) * bytesPerLine + position % basesPerLine;
+    }
+
+    private void checkRange(final int beginIndex, final int endIndex) {
+        if (beginIndex < 1 || endIndex - 1 > length || beginIndex > endIndex) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range " + beginIndex + "-" + endIndex);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.bina.varsim.types;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stores a sequence of bases at 2 bits per base outside of the java heap.
+ * <p/>
+ * Runs of N and of lowercase (soft-masked) bases are kept in separate run tables,
+ * anything that is not ACGTN (IUPAC codes etc.) is kept as a sparse exception list,
+ * so the original bytes are returned unchanged.
+ * <p/>
+ * Internally all positions are 0-based, the public methods follow {@link Sequence} (1-based).
+ */
+public class PackedSequence extends Sequence {
+    private static final byte[] CODE_TO_BASE = {A, C, G, T};
+    private static final int[] EMPTY = new int[0];
+
+    private final int length;
+    private final ByteBuffer packed; // 4 bases per byte, first base in the lowest two bits
+    // runs are 0-based, [start, end)
+    private final int[] nRunStarts;
+    private final int[] nRunEnds;
+    private final int[] lowerRunStarts;
+    private final int[] lowerRunEnds;
+    // positions that are not ACGTN, sorted
+    private final int[] exceptionPositions;
+    private final byte[] exceptionBases;
+    private final int numNBases;
+    private boolean mapped = false; // bases live in a file mapping rather than a buffer we allocated
+
+    PackedSequence(final String header, final int length, final ByteBuffer packed,
+                   final int[] nRunStarts, final int[] nRunEnds,
+                   final int[] lowerRunStarts, final int[] lowerRunEnds,
+                   final int[] exceptionPositions, final byte[] exceptionBases) {
+        super(header);
+        this.length = length;
+        this.packed = packed;
+        this.nRunStarts = nRunStarts;
+        this.nRunEnds = nRunEnds;
+        this.lowerRunStarts = lowerRunStarts;
+        this.lowerRunEnds = lowerRunEnds;
+        this.exceptionPositions = exceptionPositions;
+        this.exceptionBases = exceptionBases;
+        int n = 0;
+        for (int i = 0; i < nRunStarts.length; i++) {
+            n += nRunEnds[i] - nRunStarts[i];
+        }
+        this.numNBases = n;
+    }
+
+    /**
+     * Packs the first len bases of seq into a direct buffer
+     *
+     * @param header FASTA header
+     * @param seq    bases, not modified
+     * @param len    number of bases to keep
+     * @return packed copy of the sequence
+     */
+    public static PackedSequence pack(final String header, final byte[] seq, int len) {
+        if (len < 0)
+            len = 0;
+        if (seq.length < len)
+            len = seq.length;
+
+        final ByteBuffer packed = ByteBuffer.allocateDirect(packedSize(len));
+        final RunBuilder nRuns = new RunBuilder();
+        final RunBuilder lowerRuns = new RunBuilder();
+        final RunBuilder exceptions = new RunBuilder();
+        byte[] exceptionBases = new byte[0];
+
+        int current = 0;
+        for (int i = 0; i < len; i++) {
+            final byte b = seq[i];
+            int code;
+            switch (b) {
+                case A: case a: code = 0; break;
+                case C: case c: code = 1; break;
+                case G: case g: code = 2; break;
+                case T: case t: code = 3; break;
+                case N: case n: code = 0; nRuns.add(i); break;
+                default:
+                    code = 0;
+                    if (exceptions.size == exceptionBases.length) {
+                        exceptionBases = Arrays.copyOf(exceptionBases, Math.max(16, exceptionBases.length * 2));
+                    }
+                    exceptionBases[exceptions.size] = b;
+                    exceptions.addPoint(i);
+                    break;
+            }
+            if (b >= 'a' && b <= 'z') {
+                lowerRuns.add(i);
+            }
+            current |= code << ((i & 3) << 1);
+            if ((i & 3) == 3) {
+                packed.put((byte) current);
+                current = 0;
+            }
+        }
+        if ((len & 3) != 0) {
+            packed.put((byte) current);
+        }
+        packed.flip();
+
+        return new PackedSequence(header, len, packed, nRuns.starts(), nRuns.ends(),
+                lowerRuns.starts(), lowerRuns.ends(),
+                exceptions.starts(), Arrays.copyOf(exceptionBases, exceptions.size));
+    }
+
+    /**
+     * Writes the packed form, the layout is what {@link #read(String, ByteBuffer)} expects:
+     * length, the N runs, the lowercase runs, the exceptions and finally the packed bases
+     *
+     * @param out destination, ints are big-endian
+     */
+    public void write(final DataOutput out) throws IOException {
+        out.writeInt(length);
+        writeRuns(out, nRunStarts, nRunEnds);
+        writeRuns(out, lowerRunStarts, lowerRunEnds);
+        out.writeInt(exceptionPositions.length);
+        for (final int position : exceptionPositions) {
+            out.writeInt(position);
+        }
+        out.write(exceptionBases);
+        final ByteBuffer bases = packed.duplicate();
+        bases.rewind();
+        final byte[] chunk = new byte[Math.min(bases.remaining(), 1 << 16)];
+        while (bases.hasRemaining()) {
+            final int n = Math.min(chunk.length, bases.remaining());
+            bases.get(chunk, 0, n);
+            out.write(chunk, 0, n);
+        }
+    }
+
+    private static void writeRuns(final DataOutput out, final int[] starts, final int[] ends) throws IOException {
+        out.writeInt(starts.length);
+        for (int i = 0; i < starts.length; i++) {
+            out.writeInt(starts[i]);
+            out.writeInt(ends[i]);
+        }
+    }
+
+    /**
+     * Reads what {@link #write(DataOutput)} wrote, the packed bases are not copied
+     *
+     * @param header FASTA header
+     * @param buffer big-endian buffer positioned at the start of the sequence, typically a file mapping
+     * @return sequence sharing the bases with the buffer
+     */
+    public static PackedSequence read(final String header, final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        final int[][] nRuns = readRuns(buffer);
+        final int[][] lowerRuns = readRuns(buffer);
+        final int[] exceptionPositions = new int[buffer.getInt()];
+        for (int i = 0; i < exceptionPositions.length; i++) {
+            exceptionPositions[i] = buffer.getInt();
+        }
+        final byte[] exceptionBases = new byte[exceptionPositions.length];
+        buffer.get(exceptionBases);
+        final ByteBuffer bases = buffer.slice();
+        bases.limit(packedSize(length));
+        final PackedSequence sequence = new PackedSequence(header, length, bases, nRuns[0], nRuns[1],
+                lowerRuns[0], lowerRuns[1], exceptionPositions, exceptionBases);
+        sequence.mapped = true;
+        return sequence;
+    }
+
+    private static int[][] readRuns(final ByteBuffer buffer) {
+        final int size = buffer.getInt();
+        if (size == 0) {
+            return new int[][]{EMPTY, EMPTY};
+        }
+        final int[] starts = new int[size];
+        final int[] ends = new int[size];
+        for (int i = 0; i < size; i++) {
+            starts[i] = buffer.getInt();
+            ends[i] = buffer.getInt();
+        }
+        return new int[][]{starts, ends};
+    }
+
+    /**
+     * @param length number of bases
+     * @return number of bytes needed to pack that many bases
+     */
+    public static int packedSize(final int length) {
+        return (length + 3) >>> 2;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public byte byteAt(int p) {
+        final int i = p - 1;
+        if (i < 0 || i >= length) {
+            throw new ArrayIndexOutOfBoundsException(i);
+        }
+        if (exceptionPositions.length > 0) {
+            final int e = Arrays.binarySearch(exceptionPositions, i);
+            if (e >= 0) {
+                return exceptionBases[e];
+            }
+        }
+        byte b = inRun(nRunStarts, nRunEnds, i) ? N : CODE_TO_BASE[code(i)];
+        if (lowerRunStarts.length > 0 && inRun(lowerRunStarts, lowerRunEnds, i)) {
+            b = (byte) (b + ('a' - 'A'));
+        }
+        return b;
+    }
+
+    @Override
+    public byte[] subSeq(int beginIndex, int endIndex) {
+        final int from = beginIndex - 1;
+        final int to = endIndex - 1;
+        if (from < 0 || to > length || from > to) {
+            throw new ArrayIndexOutOfBoundsException("Invalid range " + beginIndex + "-" + endIndex);
+        }
+        final byte[] out = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            out[i - from] = CODE_TO_BASE[code(i)];
+        }
+        overlayRuns(out, from, nRunStarts, nRunEnds, true);
+        overlayRuns(out, from, lowerRunStarts, lowerRunEnds, false);
+        for (int e = firstAtOrAfter(exceptionPositions, from); e < exceptionPositions.length && exceptionPositions[e] < to; e++) {
+            out[exceptionPositions[e] - from] = exceptionBases[e];
+        }
+        return out;
+    }
+
+    @Override
+    public int getNumNonNBases() {
+        return length - numNBases;
+    }
+
+    @Override
+    public int getNumNonNBases(final int start, final int end) {
+        int count = end - start;
+        for (int r = firstRunEndingAfter(nRunStarts, nRunEnds, start); r < nRunStarts.length && nRunStarts[r] < end; r++) {
+            count -= Math.min(end, nRunEnds[r]) - Math.max(start, nRunStarts[r]);
+        }
+        return count;
+    }
+
+    /**
+     * @return number of bytes held off-heap plus the run tables
+     */
+    public long getPackedSize() {
+        return packed.capacity() + 4L * (nRunStarts.length + nRunEnds.length + lowerRunStarts.length
+                + lowerRunEnds.length + exceptionPositions.length) + exceptionBases.length;
+    }
+
+    /**
+     * @return only the run tables when the bases are mapped from a file, they belong to the OS page cache
+     */
+    @Override
+    public long getFootprint() {
+        return mapped ? getPackedSize() - packed.capacity() : getPackedSize();
+    }
+
+    private int code(final int i) {
+        return (packed.get(i >>> 2) >>> ((i & 3) << 1)) & 3;
+    }
+
+    /**
+     * Applies the runs that intersect [from, from + out.length) to the decoded bases
+     *
+     * @param toN if true, replace bases with N, otherwise lowercase them
+     */
+    private static void overlayRuns(final byte[] out, final int from, final int[] starts, final int[] ends, final boolean toN) {
+        final int to = from + out.length;
+        for (int r = firstRunEndingAfter(starts, ends, from); r < starts.length && starts[r] < to; r++) {
+            final int s = Math.max(from, starts[r]);
+            final int e = Math.min(to, ends[r]);
+            for (int i = s; i < e; i++) {
+                out[i - from] = toN ? N : (byte) (out[i - from] + ('a' - 'A'));
+            }
+        }
+    }
+
+    private static boolean inRun(final int[] starts, final int[] ends, final int i) {
+        int idx = Arrays.binarySearch(starts, i);
+        if (idx >= 0) {
+            return true;
+        }
+        idx = -idx - 2;
+        return idx >= 0 && i < ends[idx];
+    }
+
+    /**
+     * @return index of the first run whose end is past position
+     */
+    private static int firstRunEndingAfter(final int[] starts, final int[] ends, final int position) {
+        int idx = Arrays.binarySearch(starts, position);
+        if (idx < 0) {
+            idx = Math.max(0, -idx - 2);
+        }
+        while (idx < starts.length && ends[idx] <= position) {
+            idx++;
+        }
+        return idx;
+    }
+
+    private static int firstAtOrAfter(final int[] positions, final int position) {
+        final int idx = Arrays.binarySearch(positions, position);
+        return idx >= 0 ? idx : -idx - 1;
+    }
+
+    /**
+     * Collects sorted positions into [start, end) runs
+     */
+    static class RunBuilder {
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int size = 0;
+
+        /**
+         * extends the last run if position is adjacent, otherwise starts a new run
+         */
+        void add(final int position) {
+            if (size > 0 && ends[size - 1] == position) {
+                ends[size - 1]++;
+            } else {
+                addPoint(position);
+            }
+        }
+
+        /**
+         * always starts a new run of length one
+         */
+        void addPoint(final int position) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = position;
+            ends[size] = position + 1;
+            size++;
+        }
+
+        int[] starts() {
+            return size == 0 ? EMPTY : Arrays.copyOf(starts, size);
+        }
+
+        int[] ends() {
+            return size == 0 ? EMPTY : Arrays.copyOf(ends, size);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.bina.varsim.types.stats.Type_record;
 import com.bina.varsim.types.variant.Variant;
 import com.bina.varsim.types.variant.VariantOverallType;
 import com.bina.varsim.types.variant.VariantType;
+import com.bina.varsim.util.VariantBatch;
 
 /**
  * Stores the data for each haplotype separately
@@ -53,6 +54,40 @@ public class ParentRecord {
         }
     }
 
+    /**
+     * Same as {@link #add(Variant, BedFile)} for a row of a batch
+     */
+    public void add(VariantBatch batch, int row, BedFile bed_file) {
+        int paternal_allele = batch.getGoodPaternal(row);
+        int maternal_allele = batch.getGoodMaternal(row);
+        ChrString chr = batch.getChr(row);
+        int pos = batch.getPositions()[row];
+
+        boolean added = false;
+        if (bed_file == null
+                || bed_file.contains(chr, pos, batch.getAlternativeAlleleEnd(row, paternal_allele))) {
+            data[PATERNAL].add(batch.getType(row, paternal_allele), batch.maxLen(row, paternal_allele));
+            added = true;
+        }
+
+        if (bed_file == null
+                || bed_file.contains(chr, pos, batch.getAlternativeAlleleEnd(row, maternal_allele))) {
+            data[MATERNAL].add(batch.getType(row, maternal_allele), batch.maxLen(row, maternal_allele));
+            added = true;
+        }
+
+        if (bed_file == null
+                || bed_file.contains(chr, pos, Math.max(batch.getAlternativeAlleleEnd(row, paternal_allele),
+                batch.getAlternativeAlleleEnd(row, maternal_allele)))) {
+            overall_data.add(batch.getOverallType(row), batch.maxLen(row));
+            added = true;
+        }
+
+        if (added) {
+            total_count++;
+        }
+    }
+
     public String toString() {
         return "Total count: " + total_count + "\n"
                 + "Paternal\n"
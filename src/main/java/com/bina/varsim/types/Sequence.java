@@ -16,13 +16,23 @@ public class Sequence {
     private Integer numNonNBases = null; // This is computed lazily
 
     public Sequence(String header, byte[] seq, int len) {
-        _header = header;
+        this(header);
         if (len < 0)
             len = 0;
         if (seq.length < len)
             len = seq.length;
         _seq = new byte[len];
         System.arraycopy(seq, 0, _seq, 0, len);
+    }
+
+    /**
+     * For subclasses that keep the bases somewhere other than a heap byte array,
+     * they must override length, byteAt, subSeq and the non-N counts
+     *
+     * @param header FASTA header, with or without the leading '>'
+     */
+    protected Sequence(String header) {
+        _header = header;
         if (header.charAt(0) == '>') {
             _header = header.substring(1);
         }
@@ -156,6 +166,13 @@ public class Sequence {
         return _seq.length;
     }
 
+    /**
+     * @return approximate number of bytes held by this sequence, used for cache budgets
+     */
+    public long getFootprint() {
+        return _seq.length;
+    }
+
     /**
      * 1-indexed get from the sequence
      *
@@ -183,7 +200,7 @@ public class Sequence {
      * @return subsequence that has been reverse complemented
      */
     public byte[] revComp(int from, int to) {
-        byte[] segment = Arrays.copyOfRange(_seq, from - 1, to - 1);
+        byte[] segment = subSeq(from, to);
         reverseComplement(segment);
         return segment;
     }
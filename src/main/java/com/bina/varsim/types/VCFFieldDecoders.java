@@ -0,0 +1,229 @@
+package com.bina.varsim.types;
+
+import com.bina.varsim.util.StringUtilities;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decoders for INFO and FORMAT values, compiled from the ##INFO and ##FORMAT header lines.
+ * <p/>
+ * Keys that the header does not declare fall back to the types VarSim has always assumed
+ * (SVLEN, POS2, END2, END and DP are integers, everything else is a string), so that
+ * VCFs without a full header still parse.
+ */
+public class VCFFieldDecoders {
+    /**
+     * How the comma separated values of one key are decoded, by the Type of its header line
+     */
+    public enum Decoder {
+        INTEGER(int[].class) {
+            @Override
+            public Object decode(final String value) {
+                String[] valueArray = StringUtilities.fastSplit(value, ",");
+                int[] nums = new int[valueArray.length];
+                for (int i = 0; i < nums.length; i++) {
+                    nums[i] = StringUtilities.parseInt(valueArray[i]);
+                }
+                return nums;
+            }
+        },
+        FLOAT(double[].class) {
+            @Override
+            public Object decode(final String value) {
+                String[] valueArray = StringUtilities.fastSplit(value, ",");
+                double[] nums = new double[valueArray.length];
+                for (int i = 0; i < nums.length; i++) {
+                    nums[i] = valueArray[i].equals(".") ? Double.NaN : Double.parseDouble(valueArray[i]);
+                }
+                return nums;
+            }
+        },
+        FLAG(Boolean.class) {
+            @Override
+            public Object decode(final String value) {
+                return Boolean.TRUE;
+            }
+        },
+        STRING(String[].class) {
+            @Override
+            public Object decode(final String value) {
+                return StringUtilities.fastSplit(value, ",");
+            }
+        };
+
+        private final Class type;
+
+        Decoder(final Class type) {
+            this.type = type;
+        }
+
+        /**
+         * @return class of the decoded values
+         */
+        public Class getType() {
+            return type;
+        }
+
+        public abstract Object decode(final String value);
+
+        /**
+         * @param headerType Type of a header line
+         * @return decoder for values of that type, Character and unknown types are read as strings
+         */
+        public static Decoder forHeaderType(final String headerType) {
+            switch (headerType) {
+                case "Integer":
+                    return INTEGER;
+                case "Float":
+                    return FLOAT;
+                case "Flag":
+                    return FLAG;
+                default:
+                    return STRING;
+            }
+        }
+    }
+
+    /**
+     * Position and decoder of each key of one FORMAT column
+     */
+    public static class FormatLayout {
+        private final String format;
+        private final String[] keys;
+        private final Decoder[] decoders;
+
+        FormatLayout(final String format, final String[] keys, final Decoder[] decoders) {
+            this.format = format;
+            this.keys = keys;
+            this.decoders = decoders;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        /**
+         * @return 0-based position of key in the FORMAT column, -1 if absent
+         */
+        public int indexOf(final String key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public Decoder getDecoder(final int index) {
+            return decoders[index];
+        }
+    }
+
+    private static final Map<String, Decoder> DEFAULT_INFO;
+
+    static {
+        Map<String, Decoder> defaults = new HashMap<>();
+        for (String id : new String[]{"SVLEN", "POS2", "END2", "END", "DP"}) {
+            defaults.put(id, Decoder.INTEGER);
+        }
+        DEFAULT_INFO = Collections.unmodifiableMap(defaults);
+    }
+
+    /**
+     * decoders for VCFs without ##INFO lines
+     */
+    public static final VCFFieldDecoders DEFAULT = new VCFFieldDecoders();
+
+    private final Map<String, Decoder> info = new HashMap<>(DEFAULT_INFO);
+    private final Map<String, Decoder> format = new HashMap<>();
+
+    /**
+     * Compiles one header line, lines other than ##INFO and ##FORMAT are ignored
+     *
+     * @return true if the line declared an INFO or FORMAT key
+     */
+    public boolean addHeaderLine(final String line) {
+        final Map<String, Decoder> table;
+        if (line.startsWith("##INFO=<")) {
+            table = info;
+        } else if (line.startsWith("##FORMAT=<")) {
+            table = format;
+        } else {
+            return false;
+        }
+        if (this == DEFAULT) {
+            throw new UnsupportedOperationException("The default decoders cannot be changed");
+        }
+        final Map<String, String> attributes = parseAttributes(line.substring(line.indexOf('<') + 1));
+        final String id = attributes.get("ID");
+        final String type = attributes.get("Type");
+        if (id == null || type == null) {
+            return false;
+        }
+        table.put(id, Decoder.forHeaderType(type));
+        return true;
+    }
+
+    /**
+     * @param s key=value pairs separated by commas, up to the closing '&gt;', values may be quoted
+     */
+    private static Map<String, String> parseAttributes(final String s) {
+        final Map<String, String> attributes = new HashMap<>();
+        int i = 0;
+        while (i < s.length() && s.charAt(i) != '>') {
+            final int equals = s.indexOf('=', i);
+            if (equals < 0) {
+                break;
+            }
+            final String key = s.substring(i, equals).trim();
+            int end = equals + 1;
+            if (end < s.length() && s.charAt(end) == '"') {
+                end++;
+                while (end < s.length() && s.charAt(end) != '"') {
+                    end += s.charAt(end) == '\\' ? 2 : 1;
+                }
+                attributes.put(key, s.substring(equals + 2, Math.min(end, s.length())));
+                end++;
+            } else {
+                while (end < s.length() && s.charAt(end) != ',' && s.charAt(end) != '>') {
+                    end++;
+                }
+                attributes.put(key, s.substring(equals + 1, end));
+            }
+            // skip the comma
+            i = end < s.length() && s.charAt(end) == ',' ? end + 1 : end;
+        }
+        return attributes;
+    }
+
+    /**
+     * @return decoder of an INFO key, strings if the key is unknown
+     */
+    public Decoder getInfoDecoder(final String id) {
+        final Decoder decoder = info.get(id);
+        return decoder == null ? Decoder.STRING : decoder;
+    }
+
+    /**
+     * @return decoder of a FORMAT key, strings if the key is unknown
+     */
+    public Decoder getFormatDecoder(final String id) {
+        final Decoder decoder = format.get(id);
+        return decoder == null ? Decoder.STRING : decoder;
+    }
+
+    /**
+     * @param formatString FORMAT column of a record
+     * @return keys of the column with their decoders
+     */
+    public FormatLayout getFormatLayout(final String formatString) {
+        final String[] keys = StringUtilities.fastSplit(formatString, ":");
+        final Decoder[] decoders = new Decoder[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            decoders[i] = getFormatDecoder(keys[i]);
+        }
+        return new FormatLayout(formatString, keys, decoders);
+    }
+}
@@ -1,6 +1,5 @@
 package com.bina.varsim.types;
 
-import com.bina.varsim.util.StringUtilities;
 import com.google.common.base.Splitter;
 
 import java.rmi.UnexpectedException;
@@ -11,10 +10,17 @@ import java.util.stream.StreamSupport;
  * Created by guoy28 on 10/5/16.
  * CLass for VCF INFO field.
  * TODO: this class should be augmented to handle FORMAT field
- * TODO: constructors of this class should honor specifications outlined in VCF header
+ * Values are decoded by the types declared in the VCF header, see {@link VCFFieldDecoders}.
+ *
+ * Parsing is lazy: the INFO string is only scanned for the keys that are asked for,
+ * and each key is decoded at most once.
  */
 public class VCFInfo {
-    final private Map<String, VCFInfoElement> info2Value;
+    private static final Object ABSENT = new Object();
+    final private String infoString;
+    final private VCFFieldDecoders decoders;
+    // decoded values of the keys asked for so far, ABSENT if the key is not in the INFO field
+    private Map<String, Object> info2Value = null;
 
     /**
      * compare speed of different string splitting methods
@@ -43,25 +49,21 @@ public class VCFInfo {
          */
     }
     /**
-     * parse INFO field string
-     * store each key value pair in a map
+     * keep INFO field string, key value pairs are
+     * only parsed when asked for
      * @param infoString
      */
     public VCFInfo(final String infoString) throws UnexpectedException {
-        this.info2Value = new HashMap<String, VCFInfoElement>();
-        StringTokenizer infos = new StringTokenizer(infoString, ";");
-        while (infos.hasMoreTokens()) {
-            String i = infos.nextToken();
-            StringTokenizer keyAndValue = new StringTokenizer(i, "=");
-            String key = keyAndValue.nextToken();
-            if (keyAndValue.hasMoreTokens()) {
-                String value = keyAndValue.nextToken();
-                this.info2Value.put(key, new VCFInfoElement(key, value));
-            } else {
-                //must be boolean or flag
-                this.info2Value.put(key, new VCFInfoElement(Boolean.class));
-            }
-        }
+        this(infoString, VCFFieldDecoders.DEFAULT);
+    }
+
+    /**
+     * @param infoString INFO column
+     * @param decoders   types of the INFO keys, compiled from the VCF header
+     */
+    public VCFInfo(final String infoString, final VCFFieldDecoders decoders) {
+        this.infoString = infoString;
+        this.decoders = decoders;
     }
 
     /**
@@ -71,74 +73,80 @@ public class VCFInfo {
      * @return
      */
     public <T> T getValue(String id, Class<T> type) {
-        return type.cast(this.info2Value.containsKey(id) ? this.info2Value.get(id).getValue(type) : null);
+        if (info2Value == null) {
+            info2Value = new HashMap<>(8);
+        }
+        Object value = info2Value.get(id);
+        if (value == null) {
+            value = find(id);
+            info2Value.put(id, value);
+        }
+        if (value == ABSENT) {
+            return null;
+        }
+        if (type == int[].class && !(value instanceof int[])) {
+            // some callers declare keys VarSim reads as integers (SVLEN, END, POS2...) as Float or String
+            return type.cast(toInts(id, value));
+        }
+        return type.cast(value);
     }
-    private class VCFInfoElement<T> {
-        private T value;
-        private Class<T> type;
 
-        /**
-         * parse comma separated value and store it
-         * in proper types
-         * @param id
-         * @param vcfIdValue
-         */
-        public VCFInfoElement(final String id, String vcfIdValue) throws UnexpectedException {
-            this.type = getType(id);
-            String[] valueArray = StringUtilities.fastSplit(vcfIdValue, ",");
-            if (type == int[].class) {
-                int[] nums = new int[valueArray.length];
-                for (int i = 0; i < nums.length; i++) {
-                    nums[i] = StringUtilities.parseInt(valueArray[i]);
-                }
-                this.value = type.cast(nums);
-            } else if (type == String[].class) {
-                    this.value = type.cast(valueArray);
-            } else {
-                throw new UnexpectedException("ERROR: only Integer and String supported for INFO field (" + id + ").");
+    /**
+     * @param value decoded as floats or strings
+     * @return the values rounded to integers
+     */
+    private static int[] toInts(final String id, final Object value) {
+        if (value instanceof double[]) {
+            final double[] doubles = (double[]) value;
+            final int[] ints = new int[doubles.length];
+            for (int i = 0; i < doubles.length; i++) {
+                ints[i] = (int) Math.round(doubles[i]);
             }
+            return ints;
         }
-
-        /**
-         * store id as a boolean field
-         */
-        public VCFInfoElement(final Class<T> type) {
-            this.value = type.cast(true);
-        }
-
-        /**
-         * return appropriate values based on types
-         * @return return should be casted before being return
-         */
-        private <T> T getValue(Class<T> t) {
-            return t.cast(value);
+        if (value instanceof String[]) {
+            final String[] strings = (String[]) value;
+            final int[] ints = new int[strings.length];
+            for (int i = 0; i < strings.length; i++) {
+                try {
+                    ints[i] = (int) Math.round(Double.parseDouble(strings[i]));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("INFO " + id + " is not a number: " + strings[i]);
+                }
+            }
+            return ints;
         }
+        throw new ClassCastException("INFO " + id + " is not a number");
     }
 
     /**
-     * return hard-coded type for some INFO IDs (including some reserved IDs in VCF
-     * spec)
-     * TODO: replace hard-coded infoID-type mapping with VCF header defined mapping
-     *
-     "##INFO=<ID=SVLEN,Number=.,Type=Integer,Description=\"Length of variant\">\n" +
-     "##INFO=<ID=POS2,Number=1,Type=Integer,Description=\"1-based Start position of source sequence\">\n" +
-     "##INFO=<ID=END2,Number=1,Type=Integer,Description=\"1-based End position of source sequence\">\n" +
-     "##INFO=<ID=SVTYPE,Number=1,Type=String,Description=\"Type of structural variant\">\n" +
-     "##INFO=<ID=CHR2,Number=1,Type=String,Description=\"Chromosome of source sequence\">\n" +
-     " source sequence deleted (SELFISHNESS); source sequence accepted (CHIVALRY).\">\n"
-
-     * @param infoID
-     * @return
+     * scan key value pairs separated by ';' for id, empty pairs are skipped
+     * @param id
+     * @return decoded value of the first pair with this key, ABSENT if there is none
      */
-    public static Class getType(final String infoID) {
-        if (infoID.equals("SVLEN") || infoID.equals("POS2") || infoID.equals("END2") || infoID.equals("END")
-                || infoID.equals("DP")) {
-            return int[].class;
-        } else if (infoID.equals("SVTYPE") || infoID.equals("CHR2") || infoID.equals("TRAID")) {
-            return String[].class;
-        } else {
-            //unrecognized INFO ID, return String for now
-            return String[].class;
+    private Object find(final String id) {
+        final int length = infoString.length();
+        int start = 0;
+        while (start < length) {
+            int end = infoString.indexOf(';', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end - start >= id.length() && infoString.startsWith(id, start)) {
+                final int keyEnd = start + id.length();
+                if (keyEnd == end) {
+                    //must be boolean or flag
+                    return Boolean.TRUE;
+                }
+                if (infoString.charAt(keyEnd) == '=') {
+                    // as with splitting on '=', the value stops at the next '='
+                    int valueEnd = infoString.indexOf('=', keyEnd + 1);
+                    valueEnd = valueEnd < 0 || valueEnd > end ? end : valueEnd;
+                    return valueEnd == keyEnd + 1 ? Boolean.TRUE : decoders.getInfoDecoder(id).decode(infoString.substring(keyEnd + 1, valueEnd));
+                }
+            }
+            start = end + 1;
         }
+        return ABSENT;
     }
 }
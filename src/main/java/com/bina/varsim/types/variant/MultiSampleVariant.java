@@ -0,0 +1,73 @@
+package com.bina.varsim.types.variant;
+
+/**
+ * One VCF record with the genotypes of several samples.
+ * <p/>
+ * The record is parsed once into a site {@link Variant}, which carries the genotype of the first
+ * sample that is not homozygous reference; the other samples only keep their two alleles and
+ * phasing. Copy numbers of symbolic alleles are those of that first sample.
+ */
+public class MultiSampleVariant {
+    private final Variant site;
+    private final String[] sampleIds;
+    private final byte[] alleles; // paternal, maternal of each sample, -1 for not available
+    private final boolean[] phased;
+
+    /**
+     * @param site      the record, with the genotype of one of the samples
+     * @param sampleIds sample names, shared between records
+     * @param alleles   paternal and maternal allele of each sample
+     * @param phased    whether the genotype of each sample is phased
+     */
+    public MultiSampleVariant(final Variant site, final String[] sampleIds, final byte[] alleles, final boolean[] phased) {
+        this.site = site;
+        this.sampleIds = sampleIds;
+        this.alleles = alleles;
+        this.phased = phased;
+    }
+
+    /**
+     * @return the record parsed once, its genotype is not that of any particular sample
+     */
+    public Variant getSite() {
+        return site;
+    }
+
+    public int getNumSamples() {
+        return phased.length;
+    }
+
+    public String getSampleId(final int sample) {
+        return sampleIds[sample];
+    }
+
+    public byte getPaternal(final int sample) {
+        return alleles[2 * sample];
+    }
+
+    public byte getMaternal(final int sample) {
+        return alleles[2 * sample + 1];
+    }
+
+    public boolean isPhased(final int sample) {
+        return phased[sample];
+    }
+
+    /**
+     * @return true if both alleles of the sample are the reference
+     */
+    public boolean isRef(final int sample) {
+        return getPaternal(sample) == 0 && getMaternal(sample) == 0;
+    }
+
+    /**
+     * @return a copy of the site with the genotype of one sample
+     */
+    public Variant forSample(final int sample) {
+        final Variant variant = new Variant(site);
+        variant.setAllele(0, getPaternal(sample));
+        variant.setAllele(1, getMaternal(sample));
+        variant.setPhased(isPhased(sample));
+        return variant;
+    }
+}
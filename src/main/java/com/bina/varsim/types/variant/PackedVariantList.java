@@ -0,0 +1,278 @@
+package com.bina.varsim.types.variant;
+
+import com.bina.varsim.types.ChrString;
+import com.bina.varsim.types.FlexSeq;
+import com.bina.varsim.types.variant.alt.Alt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.RandomAccess;
+
+/**
+ * List of variants that keeps SNVs and small indels packed in primitive arrays instead of
+ * one Variant object graph each.
+ * <p/>
+ * A packed variant is a row of ints: chromosome ID, position, and indexes into a table shared
+ * by the list for the alleles, FILTER, QUAL and the deleted and clipped bases, the ID and INFO
+ * being kept as bytes in a pool. SVs, complex events and anything else with more fields are
+ * stored as they are. Variants are rebuilt on {@link #get(int)}, so changes made to a returned
+ * variant are not kept in the list; use {@link #set(int, Variant)} or copy the list.
+ */
+public class PackedVariantList extends AbstractList<Variant> implements RandomAccess {
+    // longer alleles are not worth sharing in the table
+    public static final int MAX_PACKED_ALLELE_LENGTH = 64;
+
+    // ints of a row, CHR is -1 for a variant stored as it is and POS is then its index in full
+    private static final int CHR = 0, POS = 1, REF_LENGTH = 2, REF = 3, ALT = 4, REF_DELETED = 5, CLIPPED = 6,
+            FILTER = 7, QUAL = 8, VAR_ID = 9, INFO = 10, INFO_END = 11, STRIDE = 12;
+    private static final byte PHASED = 1, NULL_VAR_ID = 2, NULL_INFO = 4;
+
+    private int size = 0;
+    private int[] rows = new int[16 * STRIDE];
+    private byte[] genotypes = new byte[16 * 2];
+    private byte[] flags = new byte[16];
+    private byte[] pool = new byte[256];
+    private int poolSize = 0;
+
+    // alleles are kept as ISO-8859-1 so that every byte maps to one char
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<Variant> full = new ArrayList<>();
+    // shared by all the packed variants
+    private Random rand = null;
+    private boolean hasRand = false;
+
+    public PackedVariantList() {
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(final Variant variant) {
+        ensureCapacity(size + 1);
+        size++;
+        store(size - 1, variant);
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public Variant get(final int index) {
+        checkIndex(index);
+        final int row = index * STRIDE;
+        if (rows[row + CHR] < 0) {
+            return full.get(rows[row + POS]);
+        }
+        final byte flag = flags[index];
+        return new Variant.Builder()
+                .chr(ChrString.byId(rows[row + CHR]))
+                .pos(rows[row + POS])
+                .referenceAlleleLength(rows[row + REF_LENGTH])
+                .ref(allele(rows[row + REF]))
+                .alts(new Alt[]{new Alt(new FlexSeq(allele(rows[row + ALT])))})
+                .phase(new byte[]{genotypes[2 * index], genotypes[2 * index + 1]})
+                .isPhased((flag & PHASED) != 0)
+                .varId((flag & NULL_VAR_ID) != 0 ? null : poolString(rows[row + VAR_ID], rows[row + INFO]))
+                .filter(string(rows[row + FILTER]))
+                .qual(string(rows[row + QUAL]))
+                .info((flag & NULL_INFO) != 0 ? null : poolString(rows[row + INFO], rows[row + INFO_END]))
+                .refDeleted(string(rows[row + REF_DELETED]))
+                .clippedSequence(string(rows[row + CLIPPED]))
+                .randomNumberGenerator(rand)
+                .build();
+    }
+
+    @Override
+    public Variant set(final int index, final Variant variant) {
+        final Variant previous = get(index);
+        store(index, variant);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        poolSize = 0;
+        strings.clear();
+        stringIds.clear();
+        full.clear();
+        rand = null;
+        hasRand = false;
+        modCount++;
+    }
+
+    /**
+     * Sorts in the natural order of the variants without rebuilding the packed ones
+     */
+    @Override
+    public void sort(final Comparator<? super Variant> c) {
+        if (c != null) {
+            super.sort(c);
+            return;
+        }
+        final ChrString[] chrs = new ChrString[size];
+        final int[] starts = new int[size];
+        final Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            final int row = i * STRIDE;
+            if (rows[row + CHR] < 0) {
+                final Variant variant = full.get(rows[row + POS]);
+                chrs[i] = variant.getChr();
+                starts[i] = variant.getPos() - variant.getRef_deleted().length;
+            } else {
+                chrs[i] = ChrString.byId(rows[row + CHR]);
+                starts[i] = rows[row + POS] - string(rows[row + REF_DELETED]).getBytes().length;
+            }
+            order[i] = i;
+        }
+        // stable, like Collections.sort on a list of Variant
+        Arrays.sort(order, (a, b) -> {
+            final int chrCmp = chrs[a].compareTo(chrs[b]);
+            return chrCmp != 0 ? chrCmp : starts[a] - starts[b];
+        });
+
+        final int[] sortedRows = new int[rows.length];
+        final byte[] sortedGenotypes = new byte[genotypes.length];
+        final byte[] sortedFlags = new byte[flags.length];
+        for (int i = 0; i < size; i++) {
+            final int from = order[i];
+            System.arraycopy(rows, from * STRIDE, sortedRows, i * STRIDE, STRIDE);
+            System.arraycopy(genotypes, 2 * from, sortedGenotypes, 2 * i, 2);
+            sortedFlags[i] = flags[from];
+        }
+        rows = sortedRows;
+        genotypes = sortedGenotypes;
+        flags = sortedFlags;
+        modCount++;
+    }
+
+    /**
+     * @return number of variants stored as they are rather than packed
+     */
+    public int getNumUnpacked() {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (rows[i * STRIDE + CHR] < 0) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private void store(final int index, final Variant variant) {
+        final int row = index * STRIDE;
+        final boolean wasFull = rows[row + CHR] < 0;
+        if (!isPackable(variant)) {
+            if (wasFull) {
+                full.set(rows[row + POS], variant);
+            } else {
+                rows[row + CHR] = -1;
+                rows[row + POS] = full.size();
+                full.add(variant);
+            }
+            return;
+        }
+        if (wasFull) {
+            full.set(rows[row + POS], null);
+        }
+        if (!hasRand) {
+            rand = variant.getRandom();
+            hasRand = true;
+        }
+        rows[row + CHR] = variant.getChr().intern().getId();
+        rows[row + POS] = variant.getPos();
+        rows[row + REF_LENGTH] = variant.getReferenceAlleleLength();
+        rows[row + REF] = stringId(new String(variant.getReference(), StandardCharsets.ISO_8859_1));
+        rows[row + ALT] = stringId(new String(variant.getAlt(1).getSequence(), StandardCharsets.ISO_8859_1));
+        rows[row + REF_DELETED] = stringId(variant.getRefDeleted());
+        rows[row + CLIPPED] = stringId(variant.getClippedSequence());
+        rows[row + FILTER] = stringId(variant.getFilter());
+        rows[row + QUAL] = stringId(variant.getQual());
+        rows[row + VAR_ID] = appendToPool(variant.getVariantId());
+        rows[row + INFO] = appendToPool(variant.getInfo());
+        rows[row + INFO_END] = poolSize;
+        genotypes[2 * index] = (byte) variant.paternal();
+        genotypes[2 * index + 1] = (byte) variant.maternal();
+        flags[index] = (byte) ((variant.isPhased() ? PHASED : 0)
+                | (variant.getVariantId() == null ? NULL_VAR_ID : 0)
+                | (variant.getInfo() == null ? NULL_INFO : 0));
+    }
+
+    private boolean isPackable(final Variant variant) {
+        return variant.isPackable(MAX_PACKED_ALLELE_LENGTH) && (!hasRand || variant.getRandom() == rand);
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > flags.length) {
+            final int newCapacity = Math.max(capacity, flags.length + (flags.length >> 1));
+            rows = Arrays.copyOf(rows, newCapacity * STRIDE);
+            genotypes = Arrays.copyOf(genotypes, newCapacity * 2);
+            flags = Arrays.copyOf(flags, newCapacity);
+        }
+        // new rows are not stored as they are until set
+        for (int i = size; i < capacity; i++) {
+            rows[i * STRIDE + CHR] = 0;
+        }
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * @return index of the string in the table, -1 for null
+     */
+    private int stringId(final String s) {
+        if (s == null) {
+            return -1;
+        }
+        Integer id = stringIds.get(s);
+        if (id == null) {
+            id = strings.size();
+            strings.add(s);
+            stringIds.put(s, id);
+        }
+        return id;
+    }
+
+    private String string(final int id) {
+        return id < 0 ? null : strings.get(id);
+    }
+
+    private byte[] allele(final int id) {
+        return strings.get(id).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return offset of the string in the pool
+     */
+    private int appendToPool(final String s) {
+        final int start = poolSize;
+        if (s == null) {
+            return start;
+        }
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (poolSize + bytes.length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(poolSize + bytes.length, pool.length + (pool.length >> 1)));
+        }
+        System.arraycopy(bytes, 0, pool, poolSize, bytes.length);
+        poolSize += bytes.length;
+        return start;
+    }
+
+    private String poolString(final int start, final int end) {
+        return new String(pool, start, end - start, StandardCharsets.UTF_8);
+    }
+}
@@ -5,12 +5,16 @@ package com.bina.varsim.types.variant;
 import com.bina.intervalTree.SimpleInterval1D;
 import com.bina.varsim.types.*;
 import com.bina.varsim.types.variant.alt.Alt;
+import com.bina.varsim.util.BinaryCodec;
 import com.bina.varsim.util.SimpleReference;
 import com.bina.varsim.util.StringUtilities;
 import org.apache.log4j.Logger;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -395,7 +399,7 @@ public class Variant implements Comparable<Variant>{
     }
 
     public ChrString getChr2(final int ind) {
-        return (ind <= 0 || ind > alts.length) ? new ChrString("") : this.chr2[ind - 1];
+        return (ind <= 0 || ind > alts.length) ? ChrString.valueOf("") : this.chr2[ind - 1];
     }
 
     public int getPos2(final int ind) {
@@ -635,6 +639,10 @@ public class Variant implements Comparable<Variant>{
         }
     }
 
+    void setPhased(final boolean isPhased) {
+        this.isPhased = isPhased;
+    }
+
     // TODO this is wrong, but it only effects the count of variant bases
     public int variantBases() {
         int ret = referenceAlleleLength;
@@ -1394,4 +1402,163 @@ public class Variant implements Comparable<Variant>{
     public void setLengthImprecise(Boolean lengthImprecise) {
         isLengthImprecise = lengthImprecise;
     }
+
+    /**
+     * @return true if {@link PackedVariantList} can store the variant without losing anything:
+     * one plain sequence ALT of at most maxAlleleLength bases and none of the SV or matching fields
+     */
+    boolean isPackable(final int maxAlleleLength) {
+        return chr != null && ref != null && ref.length <= maxAlleleLength
+                && alts != null && alts.length == 1 && alts[0] != null
+                && alts[0].getBreakend() == null && alts[0].getSymbolicAllele() == null
+                && alts[0].getSeq() != null && alts[0].getSeq().isPlainSequence()
+                && alts[0].length() <= maxAlleleLength
+                && refDeleted != null && clippedSequence != null && extraBase.isEmpty()
+                && chr2 == null && pos2 == null && end2 == null && isinv == null && traid == null
+                && compositions == null && Boolean.FALSE.equals(isLengthImprecise)
+                && splitVariantIndex == 0 && wholeVariantIndex == 0 && originalType == null
+                && threePrimeDistance == -1 && fivePrimeDistance == -1 && lengthDifference == -1;
+    }
+
+    /**
+     * Writes all the fields but the random number generator, compositions included,
+     * see {@link #read(ByteBuffer)}
+     */
+    public void write(final DataOutput out) throws IOException {
+        out.writeInt(splitVariantIndex);
+        out.writeInt(wholeVariantIndex);
+        BinaryCodec.writeEnum(out, originalType);
+        out.writeInt(pos);
+        out.writeInt(referenceAlleleLength);
+        BinaryCodec.writeBytes(out, ref);
+        BinaryCodec.writeString(out, chr == null ? null : chr.toString());
+        out.writeInt(alts == null ? -1 : alts.length);
+        if (alts != null) {
+            for (final Alt alt : alts) {
+                out.writeBoolean(alt != null);
+                if (alt != null) {
+                    alt.write(out);
+                }
+            }
+        }
+        out.writeByte(maternal);
+        out.writeByte(paternal);
+        out.writeBoolean(isPhased);
+        BinaryCodec.writeString(out, filter);
+        BinaryCodec.writeString(out, qual);
+        BinaryCodec.writeString(out, info);
+        BinaryCodec.writeString(out, varId);
+        BinaryCodec.writeString(out, refDeleted);
+        BinaryCodec.writeString(out, extraBase);
+        BinaryCodec.writeString(out, clippedSequence);
+        out.writeInt(chr2 == null ? -1 : chr2.length);
+        if (chr2 != null) {
+            for (final ChrString c : chr2) {
+                BinaryCodec.writeString(out, c == null ? null : c.toString());
+            }
+        }
+        BinaryCodec.writeInts(out, pos2);
+        BinaryCodec.writeInts(out, end2);
+        BinaryCodec.writeBoolean(out, isinv);
+        BinaryCodec.writeString(out, traid);
+        out.writeInt(compositions == null ? -1 : compositions.size());
+        if (compositions != null) {
+            for (final Variant composition : compositions) {
+                composition.write(out);
+            }
+        }
+        out.writeInt(threePrimeDistance);
+        out.writeInt(fivePrimeDistance);
+        out.writeInt(lengthDifference);
+        BinaryCodec.writeBoolean(out, isLengthImprecise);
+    }
+
+    /**
+     * @param buffer positioned at a variant written by {@link #write(DataOutput)}
+     * @return the variant, without a random number generator
+     */
+    public static Variant read(final ByteBuffer buffer) {
+        return read(buffer, new HashMap<>());
+    }
+
+    /**
+     * @param strings FILTER, QUAL and other fields with few distinct values already read, shared
+     *                by the variants instead of holding a copy each
+     */
+    public static Variant read(final ByteBuffer buffer, final Map<String, String> strings) {
+        final Variant variant = new Variant((Random) null);
+        variant.splitVariantIndex = buffer.getInt();
+        variant.wholeVariantIndex = buffer.getInt();
+        variant.originalType = BinaryCodec.readEnum(buffer, VariantOverallType.values());
+        variant.pos = buffer.getInt();
+        variant.referenceAlleleLength = buffer.getInt();
+        variant.ref = BinaryCodec.readBytes(buffer);
+        variant.chr = readChr(buffer);
+        final int numAlts = buffer.getInt();
+        if (numAlts >= 0) {
+            variant.alts = new Alt[numAlts];
+            for (int i = 0; i < numAlts; i++) {
+                variant.alts[i] = buffer.get() != 0 ? Alt.read(buffer) : null;
+            }
+        }
+        variant.maternal = buffer.get();
+        variant.paternal = buffer.get();
+        variant.isPhased = buffer.get() != 0;
+        variant.filter = shared(strings, BinaryCodec.readString(buffer));
+        variant.qual = shared(strings, BinaryCodec.readString(buffer));
+        variant.info = BinaryCodec.readString(buffer);
+        variant.varId = BinaryCodec.readString(buffer);
+        variant.refDeleted = shared(strings, BinaryCodec.readString(buffer));
+        variant.extraBase = shared(strings, BinaryCodec.readString(buffer));
+        variant.clippedSequence = shared(strings, BinaryCodec.readString(buffer));
+        final int numChr2 = buffer.getInt();
+        if (numChr2 >= 0) {
+            variant.chr2 = new ChrString[numChr2];
+            for (int i = 0; i < numChr2; i++) {
+                variant.chr2[i] = readChr(buffer);
+            }
+        }
+        variant.pos2 = BinaryCodec.readInts(buffer);
+        variant.end2 = BinaryCodec.readInts(buffer);
+        variant.isinv = BinaryCodec.readBoolean(buffer);
+        variant.traid = BinaryCodec.readString(buffer);
+        final int numCompositions = buffer.getInt();
+        if (numCompositions >= 0) {
+            variant.compositions = new ArrayList<>(numCompositions);
+            for (int i = 0; i < numCompositions; i++) {
+                variant.compositions.add(read(buffer, strings));
+            }
+        }
+        variant.threePrimeDistance = buffer.getInt();
+        variant.fivePrimeDistance = buffer.getInt();
+        variant.lengthDifference = buffer.getInt();
+        variant.isLengthImprecise = BinaryCodec.readBoolean(buffer);
+        return variant;
+    }
+
+    private static String shared(final Map<String, String> strings, final String s) {
+        if (s == null) {
+            return null;
+        }
+        final String previous = strings.putIfAbsent(s, s);
+        return previous == null ? s : previous;
+    }
+
+    private static ChrString readChr(final ByteBuffer buffer) {
+        final String name = BinaryCodec.readString(buffer);
+        return name == null ? null : ChrString.valueOf(name);
+    }
+
+    // fields read by PackedVariantList that have no public getter
+    String getRefDeleted() {
+        return refDeleted;
+    }
+
+    String getClippedSequence() {
+        return clippedSequence;
+    }
+
+    Random getRandom() {
+        return rand;
+    }
 }
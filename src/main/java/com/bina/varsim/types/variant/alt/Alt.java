@@ -3,7 +3,11 @@ package com.bina.varsim.types.variant.alt;
 import com.bina.intervalTree.SimpleInterval1D;
 import com.bina.varsim.types.ChrString;
 import com.bina.varsim.types.FlexSeq;
+import com.bina.varsim.util.BinaryCodec;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -150,6 +154,54 @@ public final class Alt {
     return seq == null ? null : seq.getSequence();
   }
 
+  /**
+   * writes the 3 kinds of alleles and the counts, see {@link #read(ByteBuffer)}
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeBoolean(symbolicAllele != null);
+    if (symbolicAllele != null) {
+      BinaryCodec.writeEnum(out, symbolicAllele.getMajor());
+      BinaryCodec.writeEnum(out, symbolicAllele.getMinor());
+    }
+    out.writeBoolean(breakend != null);
+    if (breakend != null) {
+      BinaryCodec.writeBytes(out, breakend.seq);
+      BinaryCodec.writeString(out, breakend.getChr() == null ? null : breakend.getChr().toString());
+      out.writeInt(breakend.getPos());
+      out.writeBoolean(breakend.isLeft());
+      out.writeBoolean(breakend.isForward());
+    }
+    out.writeBoolean(seq != null);
+    if (seq != null) {
+      seq.write(out);
+    }
+    out.writeInt(breakendCount);
+    out.writeInt(symbolicAlleleCount);
+  }
+
+  public static Alt read(ByteBuffer buffer) {
+    Alt a = new Alt();
+    if (buffer.get() != 0) {
+      SVType major = BinaryCodec.readEnum(buffer, SVType.values());
+      SVType.SVSubtype minor = BinaryCodec.readEnum(buffer, SVType.SVSubtype.values());
+      a.symbolicAllele = minor == null ? new SymbolicAllele(major.name()) : new SymbolicAllele(major.name(), minor.name());
+    }
+    if (buffer.get() != 0) {
+      byte[] breakendSeq = BinaryCodec.readBytes(buffer);
+      String chr = BinaryCodec.readString(buffer);
+      int pos = buffer.getInt();
+      boolean left = buffer.get() != 0;
+      boolean forward = buffer.get() != 0;
+      a.breakend = new Breakend(breakendSeq, chr == null ? null : ChrString.valueOf(chr), pos, left, forward);
+    }
+    if (buffer.get() != 0) {
+      a.seq = FlexSeq.read(buffer);
+    }
+    a.breakendCount = buffer.getInt();
+    a.symbolicAlleleCount = buffer.getInt();
+    return a;
+  }
+
   public enum SVType {
     DEL, INS, DUP, INV, CNV,
     BND; //breakend
@@ -238,9 +290,9 @@ public final class Alt {
       Matcher m = r.matcher(alt);
       if (m.find()) {
         if (m.group(1) != null) {
-          return new Breakend(m.group(1).getBytes(), new ChrString(m.group(3)), Integer.parseInt(m.group(4)), true, m.group(2).indexOf("[") >= 0 );
+          return new Breakend(m.group(1).getBytes(), ChrString.valueOf(m.group(3)), Integer.parseInt(m.group(4)), true, m.group(2).indexOf("[") >= 0 );
         } else {
-          return new Breakend(m.group(10).getBytes(), new ChrString(m.group(7)), Integer.parseInt(m.group(8)), false, m.group(6).indexOf("[") >= 0 );
+          return new Breakend(m.group(10).getBytes(), ChrString.valueOf(m.group(7)), Integer.parseInt(m.group(8)), false, m.group(6).indexOf("[") >= 0 );
         }
       }
       return null; //failed to parse as a symbolic allele
@@ -0,0 +1,39 @@
+package com.bina.varsim.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * Writes the files that runs share, such as the sidecars next to a FASTA or VCF, next to their
+ * destination and then moves them in place, so a crash or a concurrent run never leaves one half
+ * written where the others pick it up.
+ */
+public final class AtomicFiles {
+    private AtomicFiles() {
+    }
+
+    public interface Writer {
+        /**
+         * @param temp file to write, it does not exist yet
+         */
+        void write(Path temp) throws IOException;
+    }
+
+    /**
+     * @param destination file replaced once writer is done
+     * @param writer      writes the content to a temporary sibling of destination
+     */
+    public static void write(final Path destination, final Writer writer) throws IOException {
+        // not Files.createTempFile, the file is shared and should get the usual permissions
+        final Path temp = destination.resolveSibling(destination.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            writer.write(temp);
+            Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
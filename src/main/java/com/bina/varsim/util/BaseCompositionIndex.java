@@ -0,0 +1,350 @@
+package com.bina.varsim.util;
+
+import com.bina.varsim.types.ChrString;
+import com.bina.varsim.types.Sequence;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts of N, lowercase (soft-masked) and GC bases over any region of a FASTA without reading the bases.
+ * <p/>
+ * N and lowercase bases are kept as run tables with running totals, so their counts over a region
+ * are exact and take two binary searches. GC counts are sampled every {@link #GC_BLOCK} bases, the
+ * partial blocks at the ends of a region are counted from the sequence.
+ * <p/>
+ * The index is stored next to the fai as FASTA + {@link #EXTENSION} and rebuilt when the FASTA changes.
+ * All positions are 0-based, ends are exclusive.
+ */
+public class BaseCompositionIndex {
+    private final static Logger log = Logger.getLogger(BaseCompositionIndex.class.getName());
+
+    public static final String EXTENSION = ".bci";
+    public static final int GC_BLOCK = 1024;
+    private static final int MAGIC = 0x56534349; // VSCI
+    private static final int VERSION = 1;
+
+    /**
+     * Composition of one contig
+     */
+    static class Contig {
+        final int length;
+        final Runs nRuns;
+        final Runs lowerRuns;
+        final long[] gcSamples; // GC bases in [0, i * GC_BLOCK)
+
+        Contig(final int length, final Runs nRuns, final Runs lowerRuns, final long[] gcSamples) {
+            this.length = length;
+            this.nRuns = nRuns;
+            this.lowerRuns = lowerRuns;
+            this.gcSamples = gcSamples;
+        }
+    }
+
+    /**
+     * Sorted, non-overlapping [start, end) runs with the number of bases covered before each run
+     */
+    static class Runs {
+        final int[] starts;
+        final int[] ends;
+        final long[] before;
+
+        Runs(final int[] starts, final int[] ends) {
+            this.starts = starts;
+            this.ends = ends;
+            this.before = new long[starts.length];
+            long total = 0;
+            for (int i = 0; i < starts.length; i++) {
+                before[i] = total;
+                total += ends[i] - starts[i];
+            }
+        }
+
+        /**
+         * @return number of covered bases in [0, position)
+         */
+        long prefix(final int position) {
+            // number of runs starting before position
+            int r = Arrays.binarySearch(starts, position);
+            r = r >= 0 ? r : -r - 1;
+            if (r == 0) {
+                return 0;
+            }
+            return before[r - 1] + Math.min(ends[r - 1], position) - starts[r - 1];
+        }
+
+        long count(final int start, final int end) {
+            return prefix(end) - prefix(start);
+        }
+    }
+
+    private final long sourceSize;
+    private final Map<ChrString, Contig> contigs = new HashMap<>();
+
+    private BaseCompositionIndex(final long sourceSize) {
+        this.sourceSize = sourceSize;
+    }
+
+    /**
+     * Reads the sidecar of a FASTA, building and writing it first if it is missing or out of date
+     *
+     * @param fasta FASTA, plain or gzip-compressed
+     * @return index of all contigs in the FASTA
+     */
+    public static BaseCompositionIndex loadOrBuild(final Path fasta) throws IOException {
+        final Path sidecar = Paths.get(fasta.toString() + EXTENSION);
+        final long sourceSize = Files.size(fasta);
+        if (Files.exists(sidecar)) {
+            try {
+                final BaseCompositionIndex index = read(sidecar);
+                if (index != null && index.sourceSize == sourceSize
+                        && Files.getLastModifiedTime(sidecar).compareTo(Files.getLastModifiedTime(fasta)) >= 0) {
+                    return index;
+                }
+                log.info("Base composition index " + sidecar + " is out of date, rebuilding");
+            } catch (IOException | RuntimeException e) {
+                // a truncated or corrupt sidecar is rebuilt too
+                log.warn("Cannot read base composition index " + sidecar + ", rebuilding: " + e);
+            }
+        }
+        final BaseCompositionIndex index = build(fasta);
+        try {
+            index.write(sidecar);
+        } catch (IOException e) {
+            log.warn("Cannot write base composition index " + sidecar + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * Reads the FASTA one contig at a time
+     *
+     * @param fasta FASTA, plain or gzip-compressed
+     * @return index of all contigs in the FASTA
+     */
+    public static BaseCompositionIndex build(final Path fasta) throws IOException {
+        final BaseCompositionIndex index = new BaseCompositionIndex(Files.size(fasta));
+        try (ReferenceSequenceFile file = ReferenceSequenceFileFactory.getReferenceSequenceFile(fasta, true, false)) {
+            ReferenceSequence sequence;
+            while ((sequence = file.nextSequence()) != null) {
+                index.contigs.put(ChrString.valueOf(sequence.getName()), build(sequence.getBases()));
+            }
+        }
+        return index;
+    }
+
+    static Contig build(final byte[] bases) {
+        final RunCollector nRuns = new RunCollector();
+        final RunCollector lowerRuns = new RunCollector();
+        final long[] gcSamples = new long[bases.length / GC_BLOCK + 1];
+        long gc = 0;
+        for (int i = 0; i < bases.length; i++) {
+            if (i % GC_BLOCK == 0) {
+                gcSamples[i / GC_BLOCK] = gc;
+            }
+            final byte b = bases[i];
+            if (Sequence.isN(b)) {
+                nRuns.add(i);
+            }
+            if (b >= 'a' && b <= 'z') {
+                lowerRuns.add(i);
+            }
+            if (isGC(b)) {
+                gc++;
+            }
+        }
+        if (bases.length % GC_BLOCK == 0) {
+            gcSamples[bases.length / GC_BLOCK] = gc;
+        }
+        return new Contig(bases.length, nRuns.toRuns(), lowerRuns.toRuns(), gcSamples);
+    }
+
+    private static boolean isGC(final byte b) {
+        return b == Sequence.G || b == Sequence.C || b == Sequence.g || b == Sequence.c;
+    }
+
+    /**
+     * @return the index, null if the sidecar is of another version
+     * @throws IOException if the sidecar is truncated or corrupt
+     */
+    static BaseCompositionIndex read(final Path sidecar) throws IOException {
+        // counts are checked against the file length, so garbage does not allocate huge arrays
+        final long fileSize = Files.size(sidecar);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != GC_BLOCK) {
+                return null;
+            }
+            final BaseCompositionIndex index = new BaseCompositionIndex(in.readLong());
+            final int numContigs = readCount(in, 1, fileSize);
+            for (int c = 0; c < numContigs; c++) {
+                final ChrString name = ChrString.valueOf(in.readUTF());
+                final int length = in.readInt();
+                final Runs nRuns = readRuns(in, fileSize);
+                final Runs lowerRuns = readRuns(in, fileSize);
+                final long[] gcSamples = new long[readCount(in, 8, fileSize)];
+                for (int i = 0; i < gcSamples.length; i++) {
+                    gcSamples[i] = in.readLong();
+                }
+                index.contigs.put(name, new Contig(length, nRuns, lowerRuns, gcSamples));
+            }
+            return index;
+        }
+    }
+
+    /**
+     * @param bytes size of each of the items counted
+     * @return the count, if the items can fit in the file
+     */
+    private static int readCount(final DataInputStream in, final int bytes, final long fileSize) throws IOException {
+        final int count = in.readInt();
+        if (count < 0 || (long) count * bytes > fileSize) {
+            throw new IOException("Corrupt base composition index, bad count " + count);
+        }
+        return count;
+    }
+
+    private static Runs readRuns(final DataInputStream in, final long fileSize) throws IOException {
+        final int size = readCount(in, 8, fileSize);
+        final int[] starts = new int[size];
+        final int[] ends = new int[size];
+        for (int i = 0; i < size; i++) {
+            starts[i] = in.readInt();
+            ends[i] = in.readInt();
+        }
+        return new Runs(starts, ends);
+    }
+
+    void write(final Path sidecar) throws IOException {
+        AtomicFiles.write(sidecar, this::writeTo);
+    }
+
+    private void writeTo(final Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(GC_BLOCK);
+            out.writeLong(sourceSize);
+            out.writeInt(contigs.size());
+            for (final Map.Entry<ChrString, Contig> entry : contigs.entrySet()) {
+                final Contig contig = entry.getValue();
+                out.writeUTF(entry.getKey().toString());
+                out.writeInt(contig.length);
+                writeRuns(out, contig.nRuns);
+                writeRuns(out, contig.lowerRuns);
+                out.writeInt(contig.gcSamples.length);
+                for (final long sample : contig.gcSamples) {
+                    out.writeLong(sample);
+                }
+            }
+        }
+    }
+
+    private static void writeRuns(final DataOutputStream out, final Runs runs) throws IOException {
+        out.writeInt(runs.starts.length);
+        for (int i = 0; i < runs.starts.length; i++) {
+            out.writeInt(runs.starts[i]);
+            out.writeInt(runs.ends[i]);
+        }
+    }
+
+    public boolean contains(final ChrString contig) {
+        return contigs.containsKey(contig);
+    }
+
+    /**
+     * @return number of non-N bases in the whole contig
+     */
+    public long getNumNonNBases(final ChrString contig) {
+        final Contig c = getContig(contig);
+        return c.length - c.nRuns.count(0, c.length);
+    }
+
+    /**
+     * Same result as {@link Sequence#getNumNonNBases(int, int)}
+     *
+     * @param start 0-based start
+     * @param end   exclusive end
+     * @return number of non-N bases in the region
+     */
+    public long getNumNonNBases(final ChrString contig, final int start, final int end) {
+        return end - start - getContig(contig).nRuns.count(start, end);
+    }
+
+    /**
+     * @return number of lowercase bases in [start, end)
+     */
+    public long getNumLowercaseBases(final ChrString contig, final int start, final int end) {
+        return getContig(contig).lowerRuns.count(start, end);
+    }
+
+    /**
+     * @param sequence the contig itself, only the bases of the partial blocks at either end are read
+     * @return number of G/C bases (either case) in [start, end)
+     */
+    public long getGCCount(final ChrString contig, final int start, final int end, final Sequence sequence) {
+        final Contig c = getContig(contig);
+        return gcPrefix(c, end, sequence) - gcPrefix(c, start, sequence);
+    }
+
+    private static long gcPrefix(final Contig contig, final int position, final Sequence sequence) {
+        final int block = position / GC_BLOCK;
+        long gc = contig.gcSamples[block];
+        for (int i = block * GC_BLOCK; i < position; i++) {
+            // Sequence is 1-based
+            if (isGC(sequence.byteAt(i + 1))) {
+                gc++;
+            }
+        }
+        return gc;
+    }
+
+    private Contig getContig(final ChrString contig) {
+        final Contig c = contigs.get(contig);
+        if (c == null) {
+            throw new IllegalArgumentException("Contig " + contig + " is not in the base composition index");
+        }
+        return c;
+    }
+
+    /**
+     * Collects increasing positions into runs
+     */
+    private static class RunCollector {
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int size = 0;
+
+        void add(final int position) {
+            if (size > 0 && ends[size - 1] == position) {
+                ends[size - 1]++;
+                return;
+            }
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = position;
+            ends[size] = position + 1;
+            size++;
+        }
+
+        Runs toRuns() {
+            return new Runs(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size));
+        }
+    }
+}
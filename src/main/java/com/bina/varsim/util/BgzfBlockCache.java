@@ -0,0 +1,194 @@
+package com.bina.varsim.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Least-recently-used cache of decompressed BGZF blocks, shared by all readers of BGZF files,
+ * so that nearby reads do not inflate the same block twice.
+ * <p/>
+ * Blocks are keyed by file and compressed offset. All methods are synchronized,
+ * inflating happens outside of the lock.
+ */
+public class BgzfBlockCache {
+    public static final long DEFAULT_BUDGET = 64L << 20;
+    private static final BgzfBlockCache SHARED = new BgzfBlockCache(DEFAULT_BUDGET);
+
+    static final int HEADER_SIZE = 18;
+    // an Inflater holds native memory that is slow to set up, each thread keeps one
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final int FOOTER_SIZE = 8;
+
+    private static class Key {
+        final Path file;
+        final long compressedOffset;
+
+        Key(final Path file, final long compressedOffset) {
+            this.file = file;
+            this.compressedOffset = compressedOffset;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return compressedOffset == key.compressedOffset && file.equals(key.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, compressedOffset);
+        }
+    }
+
+    private final LinkedHashMap<Key, byte[]> blocks = new LinkedHashMap<>(16, 0.75f, true);
+    private long budget;
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    public BgzfBlockCache(final long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return the cache used by default by all BGZF readers
+     */
+    public static BgzfBlockCache getShared() {
+        return SHARED;
+    }
+
+    public synchronized void setBudget(final long budget) {
+        this.budget = budget;
+        evict();
+    }
+
+    /**
+     * @param file             BGZF file, only used as the cache key
+     * @param channel          open channel of the file
+     * @param compressedOffset offset of the block in the file
+     * @return decompressed contents of the block
+     */
+    public byte[] getBlock(final Path file, final FileChannel channel, final long compressedOffset) throws IOException {
+        final Key key = new Key(file, compressedOffset);
+        synchronized (this) {
+            final byte[] block = blocks.get(key);
+            if (block != null) {
+                hits++;
+                return block;
+            }
+            misses++;
+        }
+        // two threads may inflate the same block, either result is fine
+        final byte[] block = inflate(channel, compressedOffset);
+        synchronized (this) {
+            if (blocks.put(key, block) == null) {
+                bytes += block.length;
+            }
+            evict();
+        }
+        return block;
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<Key, byte[]>> it = blocks.entrySet().iterator();
+        while (bytes > budget && it.hasNext()) {
+            bytes -= it.next().getValue().length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Reads and inflates one BGZF block, see the SAM specification for the layout
+     */
+    static byte[] inflate(final FileChannel channel, final long compressedOffset) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, compressedOffset);
+        if (!isBlockHeader(header.array())) {
+            throw new IOException("No BGZF block at offset " + compressedOffset);
+        }
+        final ByteBuffer block = ByteBuffer.allocate(getBlockSize(header.array()));
+        block.put(header.array());
+        readFully(channel, block, compressedOffset + HEADER_SIZE);
+        return inflate(block.array(), compressedOffset);
+    }
+
+    /**
+     * @param header at least the first {@value #HEADER_SIZE} bytes of a block
+     * @return true if they are the header of a BGZF block
+     */
+    static boolean isBlockHeader(final byte[] header) {
+        return header.length >= HEADER_SIZE && (header[0] & 0xff) == 31 && (header[1] & 0xff) == 139
+                && header[2] == 8 && (header[3] & 4) != 0 && header[12] == 'B' && header[13] == 'C';
+    }
+
+    /**
+     * @param header header of a BGZF block
+     * @return compressed size of the block, header and footer included
+     */
+    static int getBlockSize(final byte[] header) {
+        return ((header[16] & 0xff) | (header[17] & 0xff) << 8) + 1;
+    }
+
+    /**
+     * @param block            one whole BGZF block
+     * @param compressedOffset offset of the block, for messages
+     * @return decompressed contents of the block
+     */
+    static byte[] inflate(final byte[] block, final long compressedOffset) throws IOException {
+        final ByteBuffer footer = ByteBuffer.wrap(block, block.length - 4, 4).order(ByteOrder.LITTLE_ENDIAN);
+        final int inputSize = footer.getInt();
+        final byte[] out = new byte[inputSize];
+        final Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        try {
+            inflater.setInput(block, HEADER_SIZE, block.length - HEADER_SIZE - FOOTER_SIZE);
+            int n = 0;
+            while (n < out.length && !inflater.finished()) {
+                final int inflated = inflater.inflate(out, n, out.length - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated BGZF block at offset " + compressedOffset);
+                }
+                n += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt BGZF block at offset " + compressedOffset, e);
+        }
+        return out;
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        long p = position;
+        while (buffer.hasRemaining()) {
+            final int n = channel.read(buffer, p);
+            if (n < 0) {
+                throw new IOException("Unexpected end of BGZF file at " + p);
+            }
+            p += n;
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "blocks=" + blocks.size() + " bytes=" + bytes + " hits=" + hits + " misses=" + misses;
+    }
+}
@@ -0,0 +1,164 @@
+package com.bina.varsim.util;
+
+import htsjdk.samtools.reference.FastaSequenceIndex;
+import htsjdk.samtools.reference.FastaSequenceIndexEntry;
+import htsjdk.samtools.util.GZIIndex;
+import htsjdk.samtools.util.RuntimeIOException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Random access to a bgzip-compressed FASTA through its fai and gzi indexes.
+ * <p/>
+ * The fai gives uncompressed offsets, the gzi maps them to BGZF blocks, and decompressed blocks
+ * come from a {@link BgzfBlockCache} shared by all readers. Reads are positional, so one instance
+ * can be used from several threads.
+ */
+public class BgzfFastaSequenceFile implements Closeable {
+    private final Path path;
+    private final FileChannel channel;
+    private final FastaSequenceIndex index;
+    private final BgzfBlockCache cache;
+    // block i starts at compressedOffsets[i] and holds uncompressed bytes from uncompressedOffsets[i]
+    private final long[] compressedOffsets;
+    private final long[] uncompressedOffsets;
+
+    /**
+     * @param path  bgzip-compressed FASTA
+     * @param index fai of the uncompressed FASTA
+     * @param gzi   block index, see {@link #loadOrCreateGzi(Path)}
+     * @param cache cache of decompressed blocks
+     */
+    public BgzfFastaSequenceFile(final Path path, final FastaSequenceIndex index, final GZIIndex gzi,
+                                 final BgzfBlockCache cache) throws IOException {
+        this.path = path;
+        this.index = index;
+        this.cache = cache;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        // the gzi leaves out the first block
+        final List<GZIIndex.IndexEntry> entries = gzi.getIndexEntries();
+        compressedOffsets = new long[entries.size() + 1];
+        uncompressedOffsets = new long[entries.size() + 1];
+        for (int i = 0; i < entries.size(); i++) {
+            compressedOffsets[i + 1] = entries.get(i).getCompressedOffset();
+            uncompressedOffsets[i + 1] = entries.get(i).getUncompressedOffset();
+        }
+    }
+
+    /**
+     * @param path bgzip-compressed FASTA
+     * @return the gzi next to the file, built and written first if it does not exist
+     */
+    public static GZIIndex loadOrCreateGzi(final Path path) throws IOException {
+        final Path gziFile = GZIIndex.resolveIndexNameForBgzipFile(path);
+        if (Files.exists(gziFile)) {
+            return GZIIndex.loadIndex(gziFile);
+        }
+        final GZIIndex gzi = GZIIndex.buildIndex(path);
+        gzi.writeIndex(gziFile);
+        return gzi;
+    }
+
+    /**
+     * @param path any file
+     * @return true if the file starts with a BGZF block
+     */
+    public static boolean isBgzf(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < 18) {
+                return false;
+            }
+            BgzfBlockCache.inflate(channel, 0);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Same contract as htsjdk's IndexedFastaSequenceFile.getSubsequenceAt
+     *
+     * @param contig contig name
+     * @param start  1-based start
+     * @param stop   1-based inclusive end
+     * @return the bases, without line breaks
+     */
+    public byte[] getSubsequenceAt(final String contig, final long start, final long stop) {
+        final FastaSequenceIndexEntry entry = index.getIndexEntry(contig);
+        if (start < 1 || stop > entry.getSize() || stop < start - 1) {
+            throw new IllegalArgumentException("Invalid range " + contig + ":" + start + "-" + stop);
+        }
+        final int length = (int) (stop - start + 1);
+        final byte[] bases = new byte[length];
+        if (length == 0) {
+            return bases;
+        }
+        final long first = fileOffset(entry, start - 1);
+        final long last = fileOffset(entry, stop - 1);
+        final byte[] raw = read(first, (int) (last - first + 1));
+        int n = 0;
+        for (final byte b : raw) {
+            if (b != '\n' && b != '\r') {
+                bases[n++] = b;
+            }
+        }
+        return bases;
+    }
+
+    /**
+     * @param contig contig name
+     * @return all bases of the contig
+     */
+    public byte[] getSequence(final String contig) {
+        return getSubsequenceAt(contig, 1, index.getIndexEntry(contig).getSize());
+    }
+
+    private static long fileOffset(final FastaSequenceIndexEntry entry, final long position) {
+        return entry.getLocation() + position / entry.getBasesPerLine() * entry.getBytesPerLine()
+                + position % entry.getBasesPerLine();
+    }
+
+    /**
+     * @param offset uncompressed offset
+     * @param length number of uncompressed bytes
+     * @return the uncompressed bytes
+     */
+    private byte[] read(final long offset, final int length) {
+        final byte[] out = new byte[length];
+        int b = Arrays.binarySearch(uncompressedOffsets, offset);
+        if (b < 0) {
+            b = -b - 2;
+        }
+        int copied = 0;
+        try {
+            while (copied < length) {
+                if (b >= compressedOffsets.length) {
+                    throw new IllegalArgumentException("Offset " + (offset + copied) + " is past the end of " + path);
+                }
+                final byte[] block = cache.getBlock(path, channel, compressedOffsets[b]);
+                final int within = (int) (offset + copied - uncompressedOffsets[b]);
+                final int n = Math.min(block.length - within, length - copied);
+                if (n > 0) {
+                    System.arraycopy(block, within, out, copied, n);
+                    copied += n;
+                }
+                b++;
+            }
+        } catch (IOException e) {
+            throw new RuntimeIOException("Cannot read " + path, e);
+        }
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
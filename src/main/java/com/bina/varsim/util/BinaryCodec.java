@@ -0,0 +1,93 @@
+package com.bina.varsim.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Nullable strings and arrays written to a DataOutput and read back from a mapped ByteBuffer,
+ * for the binary files that tools map instead of parsing text.
+ * <p/>
+ * Each value is its length followed by its content, -1 standing for null. Strings are UTF-8 and,
+ * unlike with writeUTF, have no length limit.
+ */
+public final class BinaryCodec {
+    private BinaryCodec() {
+    }
+
+    public static void writeString(final DataOutput out, final String s) throws IOException {
+        writeBytes(out, s == null ? null : s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String readString(final ByteBuffer buffer) {
+        final byte[] bytes = readBytes(buffer);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeBytes(final DataOutput out, final byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static byte[] readBytes(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    public static void writeInts(final DataOutput out, final int[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.length);
+        for (final int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    public static int[] readInts(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = buffer.getInt();
+        }
+        return values;
+    }
+
+    /**
+     * Writes a nullable Boolean as one byte
+     */
+    public static void writeBoolean(final DataOutput out, final Boolean b) throws IOException {
+        out.writeByte(b == null ? -1 : b ? 1 : 0);
+    }
+
+    public static Boolean readBoolean(final ByteBuffer buffer) {
+        final byte b = buffer.get();
+        return b < 0 ? null : b == 1;
+    }
+
+    /**
+     * Writes a nullable enum constant as its ordinal
+     */
+    public static void writeEnum(final DataOutput out, final Enum<?> e) throws IOException {
+        out.writeByte(e == null ? -1 : e.ordinal());
+    }
+
+    public static <E extends Enum<E>> E readEnum(final ByteBuffer buffer, final E[] values) {
+        final byte ordinal = buffer.get();
+        return ordinal < 0 ? null : values[ordinal];
+    }
+}
@@ -0,0 +1,110 @@
+package com.bina.varsim.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads lines as raw bytes into a buffer that is reused from line to line,
+ * so that no String is made unless the caller asks for one.
+ * <p/>
+ * Lines end with \n, a trailing \r is dropped as in BufferedReader.readLine.
+ */
+public class ByteLineReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private byte[] line = new byte[1024];
+    private int length = 0;
+
+    public ByteLineReader(final InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * @return true if there is at least one more line
+     */
+    public boolean hasMoreLines() throws IOException {
+        return position < limit || fill();
+    }
+
+    /**
+     * @return first byte of the next line, -1 at the end of the input
+     */
+    public int peek() throws IOException {
+        return hasMoreLines() ? buffer[position] : -1;
+    }
+
+    /**
+     * Reads the next line, see {@link #getLine()} and {@link #getLength()}
+     *
+     * @return false at the end of the input
+     */
+    public boolean readLine() throws IOException {
+        if (!hasMoreLines()) {
+            return false;
+        }
+        length = 0;
+        while (true) {
+            int end = position;
+            while (end < limit && buffer[end] != '\n') {
+                end++;
+            }
+            append(position, end);
+            if (end < limit) {
+                position = end + 1;
+                break;
+            }
+            position = limit;
+            if (!fill()) {
+                break;
+            }
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return true;
+    }
+
+    private void append(final int from, final int to) {
+        final int n = to - from;
+        if (length + n > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, length + n));
+        }
+        System.arraycopy(buffer, from, line, length, n);
+        length += n;
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = in.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        position = 0;
+        limit = Math.max(n, 0);
+        return n > 0;
+    }
+
+    /**
+     * @return bytes of the last line read, valid until the next call to {@link #readLine()}
+     */
+    public byte[] getLine() {
+        return line;
+    }
+
+    /**
+     * @return number of bytes of the last line read, without the line break
+     */
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,151 @@
+package com.bina.varsim.util;
+
+import com.bina.varsim.types.ChrString;
+import com.bina.varsim.types.Sequence;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of loaded contigs, bounded by the total footprint of the sequences.
+ * <p/>
+ * The contig that was put last is never evicted, so a single contig larger than the budget
+ * is still usable, it is just dropped as soon as another contig is loaded.
+ * All methods are synchronized.
+ */
+public class ContigCache {
+    public static final long UNBOUNDED = Long.MAX_VALUE;
+
+    // access order, the eldest entry is the least recently used
+    private final LinkedHashMap<ChrString, Sequence> contigs = new LinkedHashMap<>(16, 0.75f, true);
+    private long budget;
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public ContigCache() {
+        this(UNBOUNDED);
+    }
+
+    /**
+     * @param budget maximum number of bytes held by the cached sequences
+     */
+    public ContigCache(final long budget) {
+        setBudget(budget);
+    }
+
+    /**
+     * Evicts right away if the cache is now over budget
+     *
+     * @param budget maximum number of bytes held by the cached sequences
+     */
+    public synchronized void setBudget(final long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("Cache budget must not be negative: " + budget);
+        }
+        this.budget = budget;
+        evict(null);
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Counts a hit or a miss and marks the contig as recently used
+     *
+     * @param contig contig name
+     * @return cached sequence, null if not cached
+     */
+    public synchronized Sequence get(final ChrString contig) {
+        final Sequence sequence = contigs.get(contig);
+        if (sequence == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return sequence;
+    }
+
+    /**
+     * Marks the contig as recently used without counting towards the statistics,
+     * for per-base lookups that would otherwise swamp the hit count
+     *
+     * @param contig contig name
+     * @return cached sequence, null if not cached
+     */
+    public synchronized Sequence peek(final ChrString contig) {
+        return contigs.get(contig);
+    }
+
+    /**
+     * Adds a sequence and evicts least recently used ones until the cache is within budget
+     *
+     * @param contig   contig name
+     * @param sequence loaded sequence
+     */
+    public synchronized void put(final ChrString contig, final Sequence sequence) {
+        final Sequence old = contigs.put(contig, sequence);
+        if (old != null) {
+            bytes -= old.getFootprint();
+        }
+        bytes += sequence.getFootprint();
+        evict(contig);
+    }
+
+    public synchronized boolean contains(final ChrString contig) {
+        return contigs.containsKey(contig);
+    }
+
+    public synchronized void clear() {
+        contigs.clear();
+        bytes = 0;
+    }
+
+    private void evict(final ChrString keep) {
+        final Iterator<Map.Entry<ChrString, Sequence>> it = contigs.entrySet().iterator();
+        while (bytes > budget && it.hasNext()) {
+            final Map.Entry<ChrString, Sequence> eldest = it.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            bytes -= eldest.getValue().getFootprint();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * @return number of contigs currently cached
+     */
+    public synchronized int size() {
+        return contigs.size();
+    }
+
+    /**
+     * @return number of bytes held by the cached sequences
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "contigs=" + contigs.size() + " bytes=" + bytes + " hits=" + hits
+                + " misses=" + misses + " evictions=" + evictions;
+    }
+}
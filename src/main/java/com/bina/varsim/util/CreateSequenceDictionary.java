@@ -2,10 +2,14 @@ package com.bina.varsim.util;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceDictionaryCodec;
 import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.FastaSequenceIndex;
+import htsjdk.samtools.reference.FastaSequenceIndexEntry;
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import htsjdk.samtools.reference.ReferenceSequence;
 import htsjdk.samtools.reference.ReferenceSequenceFile;
 import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
 import htsjdk.samtools.util.AsciiWriter;
+import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.Log;
@@ -18,10 +22,15 @@ import java.io.*;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 
 /**
@@ -63,17 +72,38 @@ public class CreateSequenceDictionary {
     public String SPECIES;
     public boolean TRUNCATE_NAMES_AT_WHITESPACE = true;
     public int NUM_SEQUENCES = Integer.MAX_VALUE;
-    private final MessageDigest md5;
+    private final ThreadLocal<MessageDigest> md5;
     public File REFERENCE;
     public File REFERENCE_SEQUENCE;
     public boolean CREATE_MD5_FILE = false;
+    public int NUM_THREADS;
+    // bases of a contig read at a time by the parallel path, so memory does not grow with contig size times threads
+    private final int chunkSize;
 
   public CreateSequenceDictionary(String FastaSequenceFileName) {
-    try {
-      md5 = MessageDigest.getInstance("MD5");
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException("MD5 algorithm not found", e);
-    }
+    this(FastaSequenceFileName, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param numThreads contigs are read and hashed on this many threads if the FASTA has a fai
+   */
+  public CreateSequenceDictionary(String FastaSequenceFileName, int numThreads) {
+    this(FastaSequenceFileName, numThreads, 1 << 22);
+  }
+
+  /**
+   * @param chunkSize bases read at a time by each thread
+   */
+  CreateSequenceDictionary(String FastaSequenceFileName, int numThreads, int chunkSize) {
+    NUM_THREADS = numThreads;
+    this.chunkSize = chunkSize;
+    md5 = ThreadLocal.withInitial(() -> {
+      try {
+        return MessageDigest.getInstance("MD5");
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException("MD5 algorithm not found", e);
+      }
+    });
     REFERENCE_SEQUENCE = new File(FastaSequenceFileName);
     URI = "file:" + REFERENCE_SEQUENCE.getAbsolutePath();
     OUTPUT = ReferenceSequenceFileFactory.getDefaultDictionaryForReferenceSequence(REFERENCE_SEQUENCE);
@@ -101,11 +131,16 @@ public class CreateSequenceDictionary {
         SAMSequenceDictionaryCodec samDictCodec = new SAMSequenceDictionaryCodec(writer);
 
         samDictCodec.encodeHeaderLine(false);
-        // read reference sequence one by one and write its metadata
-        for (ReferenceSequence refSeq = refSeqFile.nextSequence(); refSeq != null; refSeq = refSeqFile.nextSequence()) {
-          final SAMSequenceRecord samSequenceRecord = makeSequenceRecord(refSeq);
-          samDictCodec.encodeSequenceRecord(samSequenceRecord);
-          sequenceNames.add(refSeq.getName());
+        final Path indexFile = ReferenceSequenceFileFactory.getFastaIndexFileName(REFERENCE_SEQUENCE.toPath());
+        if (NUM_THREADS > 1 && TRUNCATE_NAMES_AT_WHITESPACE && Files.exists(indexFile)) {
+          writeRecordsInParallel(new FastaSequenceIndex(indexFile), samDictCodec, sequenceNames);
+        } else {
+          // read reference sequence one by one and write its metadata
+          for (ReferenceSequence refSeq = refSeqFile.nextSequence(); refSeq != null; refSeq = refSeqFile.nextSequence()) {
+            final SAMSequenceRecord samSequenceRecord = makeSequenceRecord(refSeq);
+            samDictCodec.encodeSequenceRecord(samSequenceRecord);
+            sequenceNames.add(refSeq.getName());
+          }
         }
       } catch (FileNotFoundException e) {
         throw new RuntimeException("File " + OUTPUT.getAbsolutePath() + " not found");
@@ -131,6 +166,65 @@ public class CreateSequenceDictionary {
       return 0;
     }
 
+    /**
+     * Reads and hashes the contigs listed in the fai on a fork-join pool, each worker thread with its
+     * own reader. Records are written in fai order, so the output is the same as the serial loop.
+     * A bgzip-compressed FASTA is read through one shared {@link BgzfFastaSequenceFile} instead.
+     * Each contig is streamed through the MD5 in chunks, so at most one chunk per thread is in memory.
+     */
+    private void writeRecordsInParallel(final FastaSequenceIndex index, final SAMSequenceDictionaryCodec samDictCodec,
+                                        final SortingCollection<String> sequenceNames) throws IOException {
+      final Path fasta = REFERENCE_SEQUENCE.toPath();
+      // kept to be closed, the pool threads do not close their own
+      final List<IndexedFastaSequenceFile> opened = Collections.synchronizedList(new ArrayList<>());
+      final ThreadLocal<IndexedFastaSequenceFile> readers = ThreadLocal.withInitial(() -> {
+        final IndexedFastaSequenceFile reader = new IndexedFastaSequenceFile(fasta, index);
+        opened.add(reader);
+        return reader;
+      });
+      final ForkJoinPool pool = new ForkJoinPool(NUM_THREADS);
+      try (BgzfFastaSequenceFile bgzf = BgzfFastaSequenceFile.isBgzf(fasta) ? new BgzfFastaSequenceFile(fasta, index,
+              BgzfFastaSequenceFile.loadOrCreateGzi(fasta), BgzfBlockCache.getShared()) : null) {
+        final SubsequenceReader reader = bgzf != null ? bgzf::getSubsequenceAt
+                : (contig, start, stop) -> readers.get().getSubsequenceAt(contig, start, stop).getBases();
+        final List<ForkJoinTask<SAMSequenceRecord>> records = new ArrayList<>();
+        for (final FastaSequenceIndexEntry entry : index) {
+          records.add(pool.submit(() -> makeSequenceRecord(entry, reader)));
+        }
+        for (final ForkJoinTask<SAMSequenceRecord> record : records) {
+          final SAMSequenceRecord samSequenceRecord = record.join();
+          samDictCodec.encodeSequenceRecord(samSequenceRecord);
+          sequenceNames.add(samSequenceRecord.getSequenceName());
+        }
+      } finally {
+        pool.shutdown();
+        CloserUtil.close(new ArrayList<>(opened));
+      }
+    }
+
+    private interface SubsequenceReader {
+      /**
+       * @return bases from 1-based start to inclusive stop
+       */
+      byte[] read(String contig, long start, long stop);
+    }
+
+    /**
+     * Create one SAMSequenceRecord from a contig of the fai, read chunkSize bases at a time
+     */
+    private SAMSequenceRecord makeSequenceRecord(final FastaSequenceIndexEntry entry, final SubsequenceReader reader) {
+      final MessageDigest digest = md5.get();
+      digest.reset();
+      for (long start = 1; start <= entry.getSize(); start += chunkSize) {
+        final byte[] bases = reader.read(entry.getContig(), start, Math.min(entry.getSize(), start + chunkSize - 1));
+        for (int i = 0; i < bases.length; ++i) {
+          bases[i] = StringUtil.toUpperCase(bases[i]);
+        }
+        digest.update(bases);
+      }
+      return makeSequenceRecord(entry.getContig(), (int) entry.getSize(), toHex(digest.digest()));
+    }
+
     private BufferedWriter makeWriter() throws FileNotFoundException {
       return new BufferedWriter(
               new AsciiWriter(this.CREATE_MD5_FILE ?
@@ -147,15 +241,17 @@ public class CreateSequenceDictionary {
      * Create one SAMSequenceRecord from a single fasta sequence
      */
     private SAMSequenceRecord makeSequenceRecord(final ReferenceSequence refSeq) {
-      final SAMSequenceRecord ret = new SAMSequenceRecord(refSeq.getName(), refSeq.length());
-
       // Compute MD5 of upcased bases
       final byte[] bases = refSeq.getBases();
       for (int i = 0; i < bases.length; ++i) {
         bases[i] = StringUtil.toUpperCase(bases[i]);
       }
+      return makeSequenceRecord(refSeq.getName(), refSeq.length(), md5Hash(bases));
+    }
 
-      ret.setAttribute(SAMSequenceRecord.MD5_TAG, md5Hash(bases));
+    private SAMSequenceRecord makeSequenceRecord(final String name, final int length, final String md5) {
+      final SAMSequenceRecord ret = new SAMSequenceRecord(name, length);
+      ret.setAttribute(SAMSequenceRecord.MD5_TAG, md5);
       if (GENOME_ASSEMBLY != null) {
         ret.setAttribute(SAMSequenceRecord.ASSEMBLY_TAG, GENOME_ASSEMBLY);
       }
@@ -167,9 +263,14 @@ public class CreateSequenceDictionary {
     }
 
     private String md5Hash(final byte[] bytes) {
-      md5.reset();
-      md5.update(bytes);
-      String s = new BigInteger(1, md5.digest()).toString(16);
+      final MessageDigest digest = md5.get();
+      digest.reset();
+      digest.update(bytes);
+      return toHex(digest.digest());
+    }
+
+    private static String toHex(final byte[] digest) {
+      String s = new BigInteger(1, digest).toString(16);
       if (s.length() != 32) {
         final String zeros = "00000000000000000000000000000000";
         s = zeros.substring(0, 32 - s.length()) + s;
@@ -140,7 +140,7 @@ public class DGVparser extends GzFileParser<Variant> {
          cohortdescription genes samples
         */
         final String var_id = ll[0];
-        final ChrString chr = new ChrString(ll[1]);
+        final ChrString chr = ChrString.valueOf(ll[1]);
         final int start_loc = Integer.parseInt(ll[2]);
         final int end_loc = Integer.parseInt(ll[3]);
 
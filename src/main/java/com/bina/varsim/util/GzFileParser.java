@@ -14,8 +14,15 @@ public abstract class GzFileParser<T> {
         return decompressStream(new File(fileName));
     }
 
+    /**
+     * @return the contents of the file, bgzipped files are inflated on several threads,
+     * other gzipped files on the calling thread
+     */
     protected InputStream decompressStream(final File file) throws IOException {
         PushbackInputStream pb = new PushbackInputStream(new FileInputStream(file), 1024 * 1024); //we need a pushbackstream to look ahead
+        if (ParallelBgzfInputStream.startsWithBgzfBlock(pb)) {
+            return new ParallelBgzfInputStream(new BufferedInputStream(pb, 1024 * 1024));
+        }
         byte[] signature = new byte[2];
         pb.read(signature); //read the signature
         pb.unread(signature); //push back the signature to the stream
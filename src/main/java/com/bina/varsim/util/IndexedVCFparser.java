@@ -0,0 +1,304 @@
+package com.bina.varsim.util;
+
+import com.bina.intervalTree.SimpleInterval1D;
+import com.bina.varsim.types.variant.Variant;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Reads the records of a bgzipped, tabix or CSI indexed VCF that overlap a list of regions,
+ * through {@link VCFRegionIndex}, so that only the compressed blocks holding them are read.
+ * <p/>
+ * Records come in file order, each one once however many regions it overlaps. A record spans
+ * from POS over the REF allele, or up to INFO END when it is given, as in tabix.
+ */
+public class IndexedVCFparser extends GzFileParser<Variant> {
+    private final static Logger log = Logger.getLogger(IndexedVCFparser.class.getName());
+
+    private final VCFparser parser;
+    private final VCFRecordTokenizer record = new VCFRecordTokenizer();
+    private final VCFRegionIndex index;
+    private final Map<String, List<SimpleInterval1D>> regions;
+    private final Iterator<String> sequences;
+    private BlockCompressedInputStream input;
+
+    // regions and chunks of the sequence being read
+    private String sequence = null;
+    private List<SimpleInterval1D> sequenceRegions = Collections.emptyList();
+    private Iterator<long[]> chunks = Collections.emptyIterator();
+    private long chunkEnd = 0;
+
+    private byte[] pending = null;
+    private long numRecords = 0;
+
+    /**
+     * @param fileName              bgzipped VCF with a .tbi or .csi index
+     * @param id                    ID of individual, null to use the first sample column
+     * @param pass                  if true, only output pass lines
+     * @param rand                  random number generator given to the variants
+     * @param ignoreInsertionLength see {@link VCFparser}
+     * @param regions               1-based inclusive regions of each sequence
+     */
+    public IndexedVCFparser(final String fileName, final String id, final boolean pass, final Random rand,
+                            final boolean ignoreInsertionLength, final Map<String, List<SimpleInterval1D>> regions) throws IOException {
+        final File file = new File(fileName);
+        index = VCFRegionIndex.load(file);
+        if (index == null) {
+            throw new IOException(fileName + " has no .tbi or .csi index");
+        }
+        parser = new VCFparser(id, pass, rand, ignoreInsertionLength);
+        try (ByteLineReader header = new ByteLineReader(decompressStream(file))) {
+            while (header.peek() == '#') {
+                header.readLine();
+                parser.parseLine(header.getLine(), header.getLength());
+            }
+        }
+        this.regions = new LinkedHashMap<>();
+        for (final Map.Entry<String, List<SimpleInterval1D>> entry : regions.entrySet()) {
+            this.regions.put(entry.getKey(), mergeRegions(entry.getValue()));
+        }
+        final List<String> names = index.getSequenceNames();
+        names.retainAll(this.regions.keySet());
+        sequences = names.iterator();
+        input = new BlockCompressedInputStream(file);
+        log.info("Reading " + fileName + " in " + names.size() + " indexed sequences");
+    }
+
+    /**
+     * @return true if the VCF can be read by region
+     */
+    public static boolean isIndexed(final String fileName) {
+        return VCFRegionIndex.findIndexFile(new File(fileName)) != null;
+    }
+
+    /**
+     * @return whole sequences as regions
+     */
+    public static Map<String, List<SimpleInterval1D>> wholeSequences(final Collection<String> names) {
+        final Map<String, List<SimpleInterval1D>> regions = new LinkedHashMap<>();
+        for (final String name : names) {
+            regions.put(name, Collections.singletonList(new SimpleInterval1D(1, Integer.MAX_VALUE)));
+        }
+        return regions;
+    }
+
+    /**
+     * @param bedFilename BED file
+     * @param padding     number of bases added on both sides of each region
+     * @param sequences   only keep the regions of these sequences, null to keep all
+     * @return the 1-based inclusive regions of the BED file
+     */
+    public static Map<String, List<SimpleInterval1D>> readBedRegions(final String bedFilename, final int padding,
+                                                                      final Set<String> sequences) throws IOException {
+        final Map<String, List<SimpleInterval1D>> regions = new LinkedHashMap<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(bedFilename))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.charAt(0) == '#') {
+                    continue;
+                }
+                final String[] ll = line.split("\t");
+                if (sequences != null && !sequences.contains(ll[0])) {
+                    continue;
+                }
+                final long start;
+                final long end;
+                try {
+                    start = Long.parseLong(ll[1]);
+                    end = Long.parseLong(ll[2]);
+                } catch (NumberFormatException e) {
+                    throw new RuntimeException("Malformed BED line (nfe): " + line);
+                }
+                regions.computeIfAbsent(ll[0], k -> new ArrayList<>())
+                        .add(new SimpleInterval1D(Math.max(1, start + 1 - padding), end + padding));
+            }
+        }
+        return regions;
+    }
+
+    private static List<SimpleInterval1D> mergeRegions(final List<SimpleInterval1D> regions) {
+        final List<SimpleInterval1D> sorted = new ArrayList<>(regions);
+        sorted.sort((a, b) -> Long.compare(a.getLeft(), b.getLeft()));
+        final List<SimpleInterval1D> merged = new ArrayList<>();
+        for (final SimpleInterval1D region : sorted) {
+            final SimpleInterval1D previous = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (previous != null && region.getLeft() <= previous.getRight() + 1) {
+                if (region.getRight() > previous.getRight()) {
+                    merged.set(merged.size() - 1, new SimpleInterval1D(previous.getLeft(), region.getRight()));
+                }
+            } else {
+                merged.add(region);
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public boolean hasMoreInput() {
+        if (pending != null) {
+            return true;
+        }
+        try {
+            pending = nextRecord();
+        } catch (IOException ex) {
+            log.error("Error reading VCF: " + ex);
+            pending = null;
+        }
+        if (pending == null) {
+            close();
+        }
+        return pending != null;
+    }
+
+    /**
+     * @return the next variant overlapping the regions, null if the record is not a variant
+     */
+    @Override
+    public Variant parseLine() {
+        if (!hasMoreInput()) {
+            return null;
+        }
+        final byte[] line = pending;
+        pending = null;
+        numRecords++;
+        return parser.parseLine(line, line.length);
+    }
+
+    public String getSampleId() {
+        return parser.getSampleId();
+    }
+
+    /**
+     * @return the next record overlapping the regions, null after the last one
+     */
+    private byte[] nextRecord() throws IOException {
+        while (input != null) {
+            if (input.getFilePointer() >= chunkEnd && !nextChunk()) {
+                return null;
+            }
+            final String line = input.readLine();
+            if (line == null) {
+                chunkEnd = 0;
+                continue;
+            }
+            final byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            record.tokenize(bytes, bytes.length);
+            if (record.getNumFields() <= VCFRecordTokenizer.REF || bytes[0] == '#'
+                    || !record.fieldEquals(VCFRecordTokenizer.CHROM, sequence)) {
+                continue;
+            }
+            final int start = record.getInt(VCFRecordTokenizer.POS);
+            if (start > sequenceRegions.get(sequenceRegions.size() - 1).getRight()) {
+                // the file is sorted, nothing further in this sequence can overlap
+                chunks = Collections.emptyIterator();
+                chunkEnd = 0;
+                continue;
+            }
+            if (overlaps(start, recordEnd(start))) {
+                return bytes;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves to the next chunk, or to the first chunk of the next sequence
+     *
+     * @return false if there are no more chunks
+     */
+    private boolean nextChunk() throws IOException {
+        boolean newSequence = false;
+        while (!chunks.hasNext()) {
+            if (!sequences.hasNext()) {
+                return false;
+            }
+            sequence = sequences.next();
+            sequenceRegions = regions.get(sequence);
+            final long start = sequenceRegions.get(0).getLeft() - 1;
+            final long end = sequenceRegions.get(sequenceRegions.size() - 1).getRight();
+            chunks = index.getChunks(sequence, start, end).iterator();
+            newSequence = true;
+        }
+        final long[] chunk = chunks.next();
+        // merged chunks are disjoint, but a line read at the end of one may run past the start of the next
+        if (newSequence || chunk[0] > input.getFilePointer()) {
+            input.seek(chunk[0]);
+        }
+        chunkEnd = chunk[1];
+        return true;
+    }
+
+    /**
+     * @return 1-based inclusive end of the current record
+     */
+    private int recordEnd(final int start) {
+        int end = start + Math.max(record.getLength(VCFRecordTokenizer.REF), 1) - 1;
+        if (record.getNumFields() > VCFRecordTokenizer.INFO) {
+            final byte[] line = record.getLine();
+            final int infoStart = record.getStart(VCFRecordTokenizer.INFO);
+            final int infoEnd = record.getEnd(VCFRecordTokenizer.INFO);
+            for (int i = infoStart; i + 4 <= infoEnd; i++) {
+                if ((i == infoStart || line[i - 1] == ';') && line[i] == 'E' && line[i + 1] == 'N'
+                        && line[i + 2] == 'D' && line[i + 3] == '=') {
+                    int valueEnd = i + 4;
+                    while (valueEnd < infoEnd && line[valueEnd] != ';') {
+                        valueEnd++;
+                    }
+                    if (valueEnd > i + 4 && line[i + 4] != '.') {
+                        end = Math.max(end, VCFRecordTokenizer.parseInt(line, i + 4, valueEnd));
+                    }
+                    break;
+                }
+            }
+        }
+        return end;
+    }
+
+    /**
+     * @return true if [start, end] overlaps one of the regions of the current sequence
+     */
+    private boolean overlaps(final long start, final long end) {
+        int low = 0;
+        int high = sequenceRegions.size() - 1;
+        // first region whose right end is at or after start
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (sequenceRegions.get(mid).getRight() < start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        final SimpleInterval1D region = sequenceRegions.get(low);
+        return region.getRight() >= start && region.getLeft() <= end;
+    }
+
+    private void close() {
+        if (input == null) {
+            return;
+        }
+        try {
+            input.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        input = null;
+        log.info("Read " + numRecords + " records overlapping the regions");
+    }
+}
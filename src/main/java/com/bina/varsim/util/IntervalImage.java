@@ -0,0 +1,173 @@
+package com.bina.varsim.util;
+
+import com.bina.intervalTree.Interval1D;
+import com.bina.intervalTree.MappedIntervalIndex;
+import com.bina.intervalTree.SimpleInterval1D;
+import com.bina.intervalTree.StaticIntervalIndex;
+import com.bina.varsim.types.ChrString;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Binary image of the intervals of each chromosome, e.g. of a BED file, written once and mapped by every
+ * later run.
+ * <p/>
+ * Layout: magic, version and the size of the source, then one {@link MappedIntervalIndex} per chromosome,
+ * then the chromosome table (name, offset, size) and finally the offset of the table. Opening an image
+ * only reads the table, queries run on the mapped indexes.
+ */
+public class IntervalImage {
+    public static final String EXTENSION = ".vsi";
+    private static final int MAGIC = 0x56534949; // VSII
+    private static final int VERSION = 1;
+
+    private final Path path;
+    private final long sourceSize;
+    private final chrSearchTree<SimpleInterval1D> tree = new chrSearchTree<>(true);
+
+    private IntervalImage(final Path path) throws IOException {
+        this.path = path;
+        // mappings stay valid once the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // header, empty table and its offset
+            if (channel.size() < 28) {
+                throw new IllegalArgumentException(path + " is truncated or corrupt");
+            }
+            final ByteBuffer header = ByteBuffer.allocate(16);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalArgumentException(path + " is not a VarSim interval image of version " + VERSION);
+            }
+            sourceSize = header.getLong();
+            final ByteBuffer tail = ByteBuffer.allocate(8);
+            channel.read(tail, channel.size() - 8);
+            tail.flip();
+            // a truncated image ends with anything, so the table is checked before it is used
+            final long tableOffset = tail.getLong();
+            if (tableOffset < 16 || tableOffset > channel.size() - 12) {
+                throw new IllegalArgumentException(path + " is truncated or corrupt");
+            }
+            channel.position(tableOffset);
+            // not closed, that would close the channel
+            final DataInputStream table = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            final int numChromosomes = table.readInt();
+            if (numChromosomes < 0) {
+                throw new IllegalArgumentException(path + " is truncated or corrupt");
+            }
+            for (int i = 0; i < numChromosomes; i++) {
+                final ChrString name = ChrString.valueOf(table.readUTF());
+                final long offset = table.readLong();
+                final long size = table.readLong();
+                if (offset < 16 || size < 8 || offset + size > tableOffset) {
+                    throw new IllegalArgumentException(path + " is truncated or corrupt");
+                }
+                tree.setIndex(name, new MappedIntervalIndex(channel.map(FileChannel.MapMode.READ_ONLY, offset, size)));
+            }
+        }
+    }
+
+    /**
+     * Maps an image
+     *
+     * @param image file written by {@link #write(Map, long, Path)}
+     * @return the opened image
+     */
+    public static IntervalImage open(final Path image) throws IOException {
+        return new IntervalImage(image);
+    }
+
+    /**
+     * @param source file the intervals were read from
+     * @return default image location, next to the source
+     */
+    public static Path getDefaultImagePath(final Path source) {
+        return Paths.get(source.toString() + EXTENSION);
+    }
+
+    /**
+     * @param source file the intervals were read from
+     * @return true if the image was written from this file after its last change
+     */
+    public boolean isUpToDate(final Path source) throws IOException {
+        return Files.size(source) == sourceSize
+                && Files.getLastModifiedTime(path).compareTo(Files.getLastModifiedTime(source)) >= 0;
+    }
+
+    /**
+     * Indexes the intervals of each chromosome and writes them. The image is written next to its
+     * destination and then moved in place, so runs sharing it never see it half written.
+     *
+     * @param intervals  intervals of each chromosome, in any order
+     * @param sourceSize size of the file the intervals were read from
+     * @param image      destination
+     */
+    public static void write(final Map<ChrString, ? extends Collection<? extends Interval1D>> intervals,
+                             final long sourceSize, final Path image) throws IOException {
+        // not Files.createTempFile, the image is shared and should get the usual permissions
+        final Path temp = image.resolveSibling(image.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            final List<ChrString> names = new ArrayList<>();
+            final List<long[]> sections = new ArrayList<>();
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(sourceSize);
+                for (final Map.Entry<ChrString, ? extends Collection<? extends Interval1D>> entry : intervals.entrySet()) {
+                    final long size = MappedIntervalIndex.bytes(entry.getValue().size());
+                    if (size > Integer.MAX_VALUE) {
+                        throw new IllegalArgumentException("Too many intervals to map on " + entry.getKey() + ": "
+                                + entry.getValue().size());
+                    }
+                    // DataOutputStream.size() saturates at 2GB, so offsets come from the channel
+                    out.flush();
+                    final long offset = channel.position();
+                    new StaticIntervalIndex<Interval1D>(new ArrayList<>(entry.getValue())).write(out);
+                    names.add(entry.getKey());
+                    sections.add(new long[]{offset, size});
+                }
+                out.flush();
+                final long tableOffset = channel.position();
+                out.writeInt(names.size());
+                for (int i = 0; i < names.size(); i++) {
+                    out.writeUTF(names.get(i).toString());
+                    out.writeLong(sections.get(i)[0]);
+                    out.writeLong(sections.get(i)[1]);
+                }
+                out.writeLong(tableOffset);
+            }
+            Files.move(temp, image, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return search tree over the mapped intervals, put() is not supported
+     */
+    public chrSearchTree<SimpleInterval1D> getTree() {
+        return tree;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+}
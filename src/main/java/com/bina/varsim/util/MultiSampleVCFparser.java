@@ -0,0 +1,133 @@
+package com.bina.varsim.util;
+
+import com.bina.varsim.types.variant.MultiSampleVariant;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reads the genotypes of several samples of a VCF in one pass, see {@link MultiSampleVariant}.
+ * <p/>
+ * Each record is read, split and parsed once whatever the number of samples, only the GT values
+ * are decoded per sample. Records where every selected sample is homozygous reference are skipped.
+ */
+public class MultiSampleVCFparser extends GzFileParser<MultiSampleVariant> {
+    private final static Logger log = Logger.getLogger(MultiSampleVCFparser.class.getName());
+
+    private final VCFparser parser;
+    private ByteLineReader lineReader = null;
+    private String[] sampleIds = new String[0];
+    private int[] sampleFields = new int[0];
+    private long numRecords = 0;
+
+    /**
+     * @param fileName              VCF file, plain or gzipped
+     * @param ids                   samples to read, null to read all of them
+     * @param pass                  if true, only output pass lines
+     * @param rand                  random number generator given to the variants
+     * @param ignoreInsertionLength see {@link VCFparser}
+     */
+    public MultiSampleVCFparser(final String fileName, final Collection<String> ids, final boolean pass, final Random rand,
+                                final boolean ignoreInsertionLength) {
+        parser = new VCFparser(null, pass, rand, ignoreInsertionLength);
+        try {
+            lineReader = new ByteLineReader(decompressStream(new File(fileName)));
+            while (lineReader.peek() == '#') {
+                lineReader.readLine();
+                parser.parseLine(lineReader.getLine(), lineReader.getLength());
+            }
+        } catch (IOException ex) {
+            log.error("Can't open file " + fileName);
+            log.error(ex.toString());
+            lineReader = null;
+            return;
+        }
+        selectSamples(ids);
+        log.info("Reading " + sampleIds.length + " samples of " + fileName);
+    }
+
+    private void selectSamples(final Collection<String> ids) {
+        final List<String> names = parser.getSampleNames();
+        final List<String> selected = new ArrayList<>();
+        final List<Integer> fields = new ArrayList<>();
+        if (ids == null) {
+            selected.addAll(names);
+            for (int i = 0; i < names.size(); i++) {
+                fields.add(VCFRecordTokenizer.FIRST_SAMPLE + i);
+            }
+        } else {
+            for (final String id : ids) {
+                final int index = names.indexOf(id);
+                if (index < 0) {
+                    throw new IllegalArgumentException("Sample " + id + " is not in the VCF");
+                }
+                selected.add(id);
+                fields.add(VCFRecordTokenizer.FIRST_SAMPLE + index);
+            }
+        }
+        sampleIds = selected.toArray(new String[0]);
+        sampleFields = new int[fields.size()];
+        for (int i = 0; i < sampleFields.length; i++) {
+            sampleFields[i] = fields.get(i);
+        }
+    }
+
+    /**
+     * @return names of the samples read, in the order of the genotypes
+     */
+    public String[] getSampleIds() {
+        return sampleIds.clone();
+    }
+
+    @Override
+    public boolean hasMoreInput() {
+        if (lineReader == null) {
+            return false;
+        }
+        try {
+            if (lineReader.hasMoreLines()) {
+                return true;
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        close();
+        return false;
+    }
+
+    /**
+     * @return the next record, null if it is not a variant line, no sample carries it or it is skipped
+     * @throws IllegalArgumentException if the record is malformed
+     */
+    @Override
+    public MultiSampleVariant parseLine() {
+        if (!hasMoreInput()) {
+            return null;
+        }
+        try {
+            if (!lineReader.readLine() || lineReader.getLength() == 0 || lineReader.getLine()[0] == '#') {
+                return null;
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+        numRecords++;
+        return parser.parseSamples(lineReader.getLine(), lineReader.getLength(), sampleFields, sampleIds);
+    }
+
+    private void close() {
+        try {
+            lineReader.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        lineReader = null;
+        log.info("Read " + numRecords + " records for " + sampleIds.length + " samples");
+    }
+}
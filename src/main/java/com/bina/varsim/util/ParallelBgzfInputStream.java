@@ -0,0 +1,187 @@
+package com.bina.varsim.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decompresses a BGZF stream, such as the output of bgzip, with several blocks inflated at once.
+ * <p/>
+ * BGZF blocks are independent gzip members of at most 64KB. The compressed blocks are read in
+ * order on the calling thread and inflated on a shared pool; a window of a few blocks per thread is
+ * inflated ahead of the reader, so memory stays small however large the file is.
+ */
+public class ParallelBgzfInputStream extends InputStream {
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    // with one processor, blocks are inflated on the reading thread
+    private static final ExecutorService POOL = THREADS == 1 ? null : Executors.newFixedThreadPool(THREADS, r -> {
+        final Thread thread = new Thread(r, "bgzf-inflate-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final InputStream in;
+    private final int windowSize;
+    private final Deque<Future<byte[]>> window = new ArrayDeque<>();
+    private long compressedOffset = 0;
+    private boolean endOfInput = false;
+    private byte[] current = new byte[0];
+    private int position = 0;
+
+    /**
+     * @param in compressed stream, positioned at the start of a block
+     */
+    public ParallelBgzfInputStream(final InputStream in) {
+        this(in, 4 * THREADS);
+    }
+
+    /**
+     * @param in         compressed stream, positioned at the start of a block
+     * @param windowSize number of blocks inflated ahead of the reader
+     */
+    public ParallelBgzfInputStream(final InputStream in, final int windowSize) {
+        this.in = in;
+        this.windowSize = Math.max(1, windowSize);
+    }
+
+    /**
+     * Looks at the start of a stream without consuming it
+     *
+     * @param in stream that can push back at least one block header
+     * @return true if the stream starts with a BGZF block
+     */
+    public static boolean startsWithBgzfBlock(final PushbackInputStream in) throws IOException {
+        final byte[] header = new byte[BgzfBlockCache.HEADER_SIZE];
+        final int n = readFully(in, header, 0, header.length);
+        if (n > 0) {
+            in.unread(header, 0, n);
+        }
+        return n == header.length && BgzfBlockCache.isBlockHeader(header);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        final int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    /**
+     * @return false at the end of the stream
+     */
+    private boolean ensureAvailable() throws IOException {
+        while (position == current.length) {
+            fillWindow();
+            final Future<byte[]> next = window.poll();
+            if (next == null) {
+                return false;
+            }
+            try {
+                current = next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while inflating BGZF blocks");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+            position = 0;
+        }
+        return true;
+    }
+
+    private void fillWindow() throws IOException {
+        while (!endOfInput && window.size() < windowSize) {
+            final byte[] block = readBlock();
+            if (block == null) {
+                endOfInput = true;
+                break;
+            }
+            final long offset = compressedOffset;
+            compressedOffset += block.length;
+            final FutureTask<byte[]> task = new FutureTask<>(() -> BgzfBlockCache.inflate(block, offset));
+            if (POOL == null) {
+                task.run();
+            } else {
+                POOL.execute(task);
+            }
+            window.add(task);
+        }
+    }
+
+    /**
+     * @return the next compressed block, null at the end of the input
+     */
+    private byte[] readBlock() throws IOException {
+        final byte[] header = new byte[BgzfBlockCache.HEADER_SIZE];
+        final int n = readFully(in, header, 0, header.length);
+        if (n == 0) {
+            return null;
+        }
+        if (n < header.length || !BgzfBlockCache.isBlockHeader(header)) {
+            throw new IOException("No BGZF block at offset " + compressedOffset);
+        }
+        final byte[] block = new byte[BgzfBlockCache.getBlockSize(header)];
+        System.arraycopy(header, 0, block, 0, header.length);
+        if (readFully(in, block, header.length, block.length - header.length) < block.length - header.length) {
+            throw new IOException("Truncated BGZF block at offset " + compressedOffset);
+        }
+        return block;
+    }
+
+    /**
+     * @return number of bytes read, less than len only at the end of the input
+     */
+    private static int readFully(final InputStream in, final byte[] b, final int off, final int len) throws IOException {
+        int n = 0;
+        while (n < len) {
+            final int read = in.read(b, off + n, len - n);
+            if (read < 0) {
+                break;
+            }
+            n += read;
+        }
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (final Future<byte[]> future : window) {
+            future.cancel(false);
+        }
+        window.clear();
+        endOfInput = true;
+        current = new byte[0];
+        position = 0;
+        in.close();
+    }
+}
@@ -0,0 +1,295 @@
+package com.bina.varsim.util;
+
+import com.bina.varsim.types.variant.Variant;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads a VCF on several threads with the same pull API as {@link VCFparser}.
+ * <p/>
+ * One thread reads and decompresses the file and cuts it into batches of lines, a pool of workers
+ * parses the batches into variants, and the caller takes them back in file order. At most a few
+ * batches per worker are in flight, so a slow caller stalls reading instead of filling the memory.
+ * <p/>
+ * Header lines must come before the records; they are read up front and given to every worker.
+ * Unlike {@link VCFparser}, lines that are not variants are dropped, parseLine never returns null
+ * while {@link #hasMoreInput()} is true.
+ */
+public class PipelinedVCFParser extends GzFileParser<Variant> implements Closeable {
+    private final static Logger log = Logger.getLogger(PipelinedVCFParser.class.getName());
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+    /**
+     * Lines of one batch, packed in one buffer
+     */
+    private static class Batch {
+        byte[] data = new byte[1 << 16];
+        int[] ends;
+        int size = 0;
+
+        Batch(final int batchSize) {
+            ends = new int[batchSize];
+        }
+
+        void add(final byte[] line, final int length) {
+            final int start = size == 0 ? 0 : ends[size - 1];
+            if (start + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, start + length));
+            }
+            System.arraycopy(line, 0, data, start, length);
+            ends[size++] = start + length;
+        }
+    }
+
+    private static final Future<List<Variant>> END = CompletableFuture.completedFuture(Collections.<Variant>emptyList());
+
+    private final String id;
+    private final boolean pass;
+    private final Random random;
+    private final boolean ignoreInsertionLength;
+    private final int batchSize;
+    private final List<String> headerLines = new ArrayList<>();
+    private final VCFparser headerParser;
+    private final ThreadLocal<VCFparser> parsers = ThreadLocal.withInitial(this::newParser);
+    private final BlockingQueue<Future<List<Variant>>> queue;
+    private final ExecutorService workers;
+    private Thread reader = null;
+    private volatile IOException readError = null;
+
+    private List<Variant> current = Collections.emptyList();
+    private int currentIndex = 0;
+    private boolean done = false;
+    private long numVariants = 0;
+    private final long startTime = System.nanoTime();
+
+    /**
+     * @param fileName              VCF file, plain or gzipped
+     * @param id                    ID of individual, null to use the first sample column
+     * @param pass                  if true, only output pass lines
+     * @param rand                  random number generator given to the variants
+     * @param ignoreInsertionLength see {@link VCFparser}
+     * @param numThreads            number of parsing threads
+     * @param batchSize             number of lines parsed as one unit of work
+     */
+    public PipelinedVCFParser(final String fileName, final String id, final boolean pass, final Random rand,
+                              final boolean ignoreInsertionLength, final int numThreads, final int batchSize) {
+        this.id = id;
+        this.pass = pass;
+        this.random = rand;
+        this.ignoreInsertionLength = ignoreInsertionLength;
+        this.batchSize = batchSize;
+        final int threads = Math.max(1, numThreads);
+        queue = new ArrayBlockingQueue<>(2 * threads);
+        final int pool = POOL_COUNT.incrementAndGet();
+        final AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, r -> {
+            final Thread thread = new Thread(r, "vcf-parse-" + pool + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        log.info("Reading " + fileName + " on " + threads + " parsing threads");
+        ByteLineReader lineReader = null;
+        try {
+            lineReader = new ByteLineReader(decompressStream(new File(fileName)));
+            while (lineReader.peek() == '#') {
+                lineReader.readLine();
+                headerLines.add(new String(lineReader.getLine(), 0, lineReader.getLength(), StandardCharsets.UTF_8));
+            }
+        } catch (IOException ex) {
+            log.error("Can't open file " + fileName);
+            log.error(ex.toString());
+        }
+        headerParser = newParser();
+
+        if (lineReader == null) {
+            done = true;
+            workers.shutdown();
+            return;
+        }
+        final ByteLineReader input = lineReader;
+        reader = new Thread(() -> read(input), "vcf-read-" + pool);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public PipelinedVCFParser(final String fileName, final String id, final boolean pass, final Random rand,
+                              final boolean ignoreInsertionLength, final int numThreads) {
+        this(fileName, id, pass, rand, ignoreInsertionLength, numThreads, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param numThreads number of parsing threads, 1 or less parses on the calling thread
+     * @return a VCF reader for the other arguments, see {@link VCFparser}
+     */
+    public static GzFileParser<Variant> open(final String fileName, final String id, final boolean pass, final Random rand,
+                                             final boolean ignoreInsertionLength, final int numThreads) {
+        if (numThreads <= 1) {
+            return new VCFparser(fileName, id, pass, rand, ignoreInsertionLength);
+        }
+        return new PipelinedVCFParser(fileName, id, pass, rand, ignoreInsertionLength, numThreads);
+    }
+
+    /**
+     * @return a parser that has seen the header
+     */
+    private VCFparser newParser() {
+        final VCFparser parser = new VCFparser(id, pass, random, ignoreInsertionLength);
+        for (final String line : headerLines) {
+            final byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            parser.parseLine(bytes, bytes.length);
+        }
+        return parser;
+    }
+
+    /**
+     * Runs on the reader thread: cuts the input into batches and hands them to the workers
+     */
+    private void read(final ByteLineReader input) {
+        try {
+            Batch batch = new Batch(batchSize);
+            while (input.readLine()) {
+                if (input.getLength() == 0) {
+                    continue;
+                }
+                batch.add(input.getLine(), input.getLength());
+                if (batch.size == batchSize) {
+                    submit(batch);
+                    batch = new Batch(batchSize);
+                }
+            }
+            if (batch.size > 0) {
+                submit(batch);
+            }
+        } catch (IOException ex) {
+            readError = ex;
+        } catch (InterruptedException | RejectedExecutionException ex) {
+            // closed by the consumer
+            return;
+        } finally {
+            try {
+                input.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        try {
+            queue.put(END);
+        } catch (InterruptedException ex) {
+            // closed by the consumer
+        }
+    }
+
+    private void submit(final Batch batch) throws InterruptedException {
+        // the queue is bounded, this blocks while the consumer is behind
+        queue.put(workers.submit(() -> parse(batch)));
+    }
+
+    /**
+     * Runs on a worker thread
+     */
+    private List<Variant> parse(final Batch batch) {
+        final VCFparser parser = parsers.get();
+        final List<Variant> variants = new ArrayList<>(batch.size);
+        byte[] line = new byte[256];
+        int start = 0;
+        for (int i = 0; i < batch.size; i++) {
+            final int length = batch.ends[i] - start;
+            if (line.length < length) {
+                line = new byte[Math.max(length, line.length * 2)];
+            }
+            System.arraycopy(batch.data, start, line, 0, length);
+            start = batch.ends[i];
+            final Variant variant = parser.parseLine(line, length);
+            if (variant != null) {
+                variants.add(variant);
+            }
+        }
+        return variants;
+    }
+
+    /**
+     * @return true if there are more variants, blocks until the next batch is parsed
+     */
+    @Override
+    public boolean hasMoreInput() {
+        while (!done && currentIndex >= current.size()) {
+            final Future<List<Variant>> next;
+            try {
+                next = queue.take();
+                if (next == END) {
+                    finish();
+                    break;
+                }
+                current = next.get();
+                currentIndex = 0;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                close();
+            } catch (ExecutionException ex) {
+                close();
+                throw new RuntimeException("Failed to parse VCF", ex.getCause());
+            }
+        }
+        return currentIndex < current.size();
+    }
+
+    /**
+     * @return the next variant in file order, null if there is none
+     */
+    @Override
+    public Variant parseLine() {
+        if (!hasMoreInput()) {
+            return null;
+        }
+        numVariants++;
+        return current.get(currentIndex++);
+    }
+
+    public String getSampleId() {
+        return headerParser.getSampleId();
+    }
+
+    private void finish() {
+        done = true;
+        workers.shutdown();
+        if (readError != null) {
+            log.error("Error reading VCF: " + readError);
+        }
+        final double seconds = Math.max(System.nanoTime() - startTime, 1) / 1e9;
+        log.info(String.format("Read %d variants in %.1fs (%.0f variants/s)", numVariants, seconds, numVariants / seconds));
+    }
+
+    /**
+     * Stops reading and parsing, needed only if the caller stops before the end of the file
+     */
+    @Override
+    public void close() {
+        done = true;
+        if (reader != null) {
+            reader.interrupt();
+        }
+        workers.shutdownNow();
+        queue.clear();
+        current = Collections.emptyList();
+    }
+}
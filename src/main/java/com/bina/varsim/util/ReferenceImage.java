@@ -0,0 +1,266 @@
+package com.bina.varsim.util;
+
+import com.bina.varsim.types.ChrString;
+import com.bina.varsim.types.PackedSequence;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.StringUtil;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary image of a reference written once by prepare_reference and mapped by every later run.
+ * <p/>
+ * Layout: magic, version and the size of the source FASTA, then one {@link PackedSequence} per contig
+ * (packed bases, N, soft-mask and IUPAC runs), then the contig table (name, length, MD5, offset, size)
+ * and finally the offset of the contig table. Opening an image only reads the contig table,
+ * each contig is mapped when it is first asked for.
+ */
+public class ReferenceImage implements AutoCloseable {
+    private final static Logger log = Logger.getLogger(ReferenceImage.class.getName());
+
+    public static final String EXTENSION = ".vsr";
+    private static final int MAGIC = 0x56535249; // VSRI
+    private static final int VERSION = 1;
+
+    private static class Entry {
+        final ChrString name;
+        final int length;
+        final String md5;
+        final long offset;
+        final long size;
+
+        Entry(final ChrString name, final int length, final String md5, final long offset, final long size) {
+            this.name = name;
+            this.length = length;
+            this.md5 = md5;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long sourceSize;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<ChrString, Entry> byName = new HashMap<>();
+
+    private ReferenceImage(final Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            sourceSize = readTable();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the contig table, a truncated image ends with anything so the table is checked before it is used
+     *
+     * @return size of the source FASTA
+     */
+    private long readTable() throws IOException {
+        // header, empty table and its offset
+        if (channel.size() < 28) {
+            throw new IllegalArgumentException(path + " is truncated or corrupt");
+        }
+        final ByteBuffer header = ByteBuffer.allocate(16);
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IllegalArgumentException(path + " is not a VarSim reference image of version " + VERSION);
+        }
+        final long sourceSize = header.getLong();
+        final ByteBuffer tail = ByteBuffer.allocate(8);
+        channel.read(tail, channel.size() - 8);
+        tail.flip();
+        final long tableOffset = tail.getLong();
+        if (tableOffset < 16 || tableOffset > channel.size() - 12) {
+            throw new IllegalArgumentException(path + " is truncated or corrupt");
+        }
+        channel.position(tableOffset);
+        // not closed, that would close the channel
+        final DataInputStream table = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        final int numContigs = table.readInt();
+        if (numContigs < 0) {
+            throw new IllegalArgumentException(path + " is truncated or corrupt");
+        }
+        for (int i = 0; i < numContigs; i++) {
+            final Entry entry = new Entry(ChrString.valueOf(table.readUTF()), table.readInt(), table.readUTF(),
+                    table.readLong(), table.readLong());
+            if (entry.length < 0 || entry.offset < 16 || entry.size < 0 || entry.offset + entry.size > tableOffset) {
+                throw new IllegalArgumentException(path + " is truncated or corrupt");
+            }
+            entries.add(entry);
+            byName.put(entry.name, entry);
+        }
+        return sourceSize;
+    }
+
+    /**
+     * Reads the contig table of an image
+     *
+     * @param image file written by {@link #write(Path, Path)}
+     * @return the opened image
+     */
+    public static ReferenceImage open(final Path image) throws IOException {
+        return new ReferenceImage(image);
+    }
+
+    /**
+     * @param fasta FASTA file
+     * @return default image location, next to the FASTA
+     */
+    public static Path getDefaultImagePath(final Path fasta) {
+        return Paths.get(fasta.toString() + EXTENSION);
+    }
+
+    /**
+     * @param fasta source FASTA
+     * @return true if the image was written from this FASTA after its last change
+     */
+    public boolean isUpToDate(final Path fasta) throws IOException {
+        return Files.size(fasta) == sourceSize
+                && Files.getLastModifiedTime(path).compareTo(Files.getLastModifiedTime(fasta)) >= 0;
+    }
+
+    /**
+     * Packs all contigs of a FASTA into an image, one contig is held in memory at a time.
+     * No fai or dict is needed. The image is moved in place once it is complete.
+     *
+     * @param fasta source FASTA
+     * @param image destination
+     */
+    public static void write(final Path fasta, final Path image) throws IOException {
+        AtomicFiles.write(image, temp -> writeTo(fasta, temp));
+    }
+
+    private static void writeTo(final Path fasta, final Path image) throws IOException {
+        final MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("MD5 algorithm not found", e);
+        }
+        final List<Entry> written = new ArrayList<>();
+        try (ReferenceSequenceFile reference = ReferenceSequenceFileFactory.getReferenceSequenceFile(fasta, true, false);
+             FileChannel channel = FileChannel.open(image, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(Files.size(fasta));
+            ReferenceSequence sequence;
+            while ((sequence = reference.nextSequence()) != null) {
+                final byte[] bases = sequence.getBases();
+                final PackedSequence packed = PackedSequence.pack(sequence.getName(), bases, bases.length);
+                // DataOutputStream.size() saturates at 2GB, so offsets come from the channel
+                out.flush();
+                final long offset = channel.position();
+                packed.write(out);
+                out.flush();
+                // the MD5 is of the upper-cased bases, as in the dict
+                for (int i = 0; i < bases.length; i++) {
+                    bases[i] = StringUtil.toUpperCase(bases[i]);
+                }
+                written.add(new Entry(ChrString.valueOf(sequence.getName()), bases.length, md5Hash(md5, bases),
+                        offset, channel.position() - offset));
+                log.info("Packed " + sequence.getName());
+            }
+            final long tableOffset = channel.position();
+            out.writeInt(written.size());
+            for (final Entry entry : written) {
+                out.writeUTF(entry.name.toString());
+                out.writeInt(entry.length);
+                out.writeUTF(entry.md5);
+                out.writeLong(entry.offset);
+                out.writeLong(entry.size);
+            }
+            out.writeLong(tableOffset);
+        }
+    }
+
+    private static String md5Hash(final MessageDigest md5, final byte[] bytes) {
+        md5.reset();
+        md5.update(bytes);
+        String s = new BigInteger(1, md5.digest()).toString(16);
+        if (s.length() != 32) {
+            final String zeros = "00000000000000000000000000000000";
+            s = zeros.substring(0, 32 - s.length()) + s;
+        }
+        return s;
+    }
+
+    /**
+     * @return contig names in FASTA order
+     */
+    public List<ChrString> getContigs() {
+        final List<ChrString> names = new ArrayList<>(entries.size());
+        for (final Entry entry : entries) {
+            names.add(entry.name);
+        }
+        return names;
+    }
+
+    /**
+     * Adds the names, lengths and MD5s of all contigs
+     *
+     * @param metadata metadata to add to
+     */
+    void addTo(final ReferenceMetadata metadata) {
+        for (final Entry entry : entries) {
+            if (!metadata.add(entry.name, entry.length, entry.md5)) {
+                log.warn("Duplicate Key!");
+            }
+        }
+    }
+
+    /**
+     * Maps one contig, nothing but its run tables is copied
+     *
+     * @param contig contig name
+     * @return the contig, null if it is not in the image
+     */
+    public PackedSequence getSequence(final ChrString contig) {
+        final Entry entry = byName.get(contig);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return PackedSequence.read(contig.toString(), channel.map(FileChannel.MapMode.READ_ONLY, entry.offset, entry.size));
+        } catch (IOException e) {
+            throw new RuntimeIOException("Cannot map " + contig + " from " + path, e);
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
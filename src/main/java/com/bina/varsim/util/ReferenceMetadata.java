@@ -0,0 +1,192 @@
+package com.bina.varsim.util;
+
+import com.bina.varsim.types.ChrString;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.FastaSequenceIndex;
+import htsjdk.samtools.reference.FastaSequenceIndexEntry;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.variant.utils.SAMSequenceDictionaryExtractor;
+import org.apache.log4j.Logger;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Contig names, lengths, order and MD5s of a reference, read from the .fai and .dict files only.
+ * <p/>
+ * None of the queries touch the sequence itself, so this is cheap even for whole genomes.
+ */
+public class ReferenceMetadata {
+    private final static Logger log = Logger.getLogger(ReferenceMetadata.class.getName());
+
+    /**
+     * One contig of the reference
+     */
+    public static class Contig {
+        private final ChrString name;
+        private final long length;
+        private final int index;
+        private final String md5;
+
+        Contig(final ChrString name, final long length, final int index, final String md5) {
+            this.name = name;
+            this.length = length;
+            this.index = index;
+            this.md5 = md5;
+        }
+
+        public ChrString getName() {
+            return name;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return 0-based position of the contig in the reference file(s)
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return MD5 of the upper-cased bases as in the .dict, null if unknown
+         */
+        public String getMd5() {
+            return md5;
+        }
+    }
+
+    private final List<Contig> contigs = new ArrayList<>();
+    private final Map<ChrString, Contig> byName = new HashMap<>();
+
+    public ReferenceMetadata() {
+    }
+
+    /**
+     * Index-only mode, for callers that never need the bases
+     *
+     * @param filename FASTA file, the fai index must exist, the dict is optional
+     * @return metadata of all contigs in the file
+     */
+    public static ReferenceMetadata read(final String filename) {
+        final Path fasta = Paths.get(filename);
+        final ReferenceMetadata metadata = new ReferenceMetadata();
+        metadata.addReference(fasta, new FastaSequenceIndex(ReferenceSequenceFileFactory.getFastaIndexFileName(fasta)));
+        return metadata;
+    }
+
+    /**
+     * Adds all contigs of a FASTA file, contigs already present are skipped
+     *
+     * @param fasta FASTA file, its dict is read for the MD5s if it exists
+     * @param index fai index of the FASTA file
+     */
+    void addReference(final Path fasta, final FastaSequenceIndex index) {
+        final Path dictionaryFile = ReferenceSequenceFileFactory.getDefaultDictionaryForReferenceSequence(fasta);
+        final SAMSequenceDictionary dictionary = Files.exists(dictionaryFile) ?
+                SAMSequenceDictionaryExtractor.extractDictionary(dictionaryFile) : null;
+        for (final FastaSequenceIndexEntry entry : index) {
+            final SAMSequenceRecord record = dictionary == null ? null : dictionary.getSequence(entry.getContig());
+            if (!add(ChrString.valueOf(entry.getContig()), entry.getSize(),
+                    record == null ? null : record.getAttribute(SAMSequenceRecord.MD5_TAG))) {
+                log.warn("Duplicate Key!");
+            }
+        }
+    }
+
+    /**
+     * Adds all contigs of other, contigs already present are skipped
+     */
+    void addAll(final ReferenceMetadata other) {
+        for (final Contig contig : other.contigs) {
+            add(contig.getName(), contig.getLength(), contig.getMd5());
+        }
+    }
+
+    /**
+     * @return false if the contig is already present
+     */
+    boolean add(final ChrString name, final long length, final String md5) {
+        if (byName.containsKey(name)) {
+            return false;
+        }
+        final Contig contig = new Contig(name, length, contigs.size(), md5);
+        contigs.add(contig);
+        byName.put(name, contig);
+        return true;
+    }
+
+    public boolean contains(final ChrString name) {
+        return byName.containsKey(name);
+    }
+
+    /**
+     * @return the contig, null if not present
+     */
+    public Contig getContig(final ChrString name) {
+        return byName.get(name);
+    }
+
+    /**
+     * @return length of the contig, 0 if not present
+     */
+    public long getLength(final ChrString name) {
+        final Contig contig = byName.get(name);
+        return contig == null ? 0 : contig.getLength();
+    }
+
+    /**
+     * @return MD5 of the contig, null if not present or unknown
+     */
+    public String getMd5(final ChrString name) {
+        final Contig contig = byName.get(name);
+        return contig == null ? null : contig.getMd5();
+    }
+
+    /**
+     * @return 0-based position of the contig in the reference, -1 if not present
+     */
+    public int getIndex(final ChrString name) {
+        final Contig contig = byName.get(name);
+        return contig == null ? -1 : contig.getIndex();
+    }
+
+    /**
+     * @return contigs in file order
+     */
+    public List<Contig> getContigs() {
+        return Collections.unmodifiableList(contigs);
+    }
+
+    public int size() {
+        return contigs.size();
+    }
+
+    /**
+     * Checks that an interval lies on a known contig
+     *
+     * @param name  contig
+     * @param start start of the interval
+     * @param end   end of the interval, at most the contig length
+     * @throws IllegalArgumentException if the contig is unknown or the interval is outside of it
+     */
+    public void checkInterval(final ChrString name, final long start, final long end) {
+        final Contig contig = byName.get(name);
+        if (contig == null) {
+            throw new IllegalArgumentException("Contig " + name + " is not in the reference");
+        }
+        if (start < 0 || end < start || end > contig.getLength()) {
+            throw new IllegalArgumentException("Interval " + name + ":" + start + "-" + end
+                    + " is outside of the contig (length " + contig.getLength() + ")");
+        }
+    }
+}
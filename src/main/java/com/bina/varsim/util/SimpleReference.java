@@ -2,14 +2,22 @@ package com.bina.varsim.util;
 
 /**
  * Reads in a FASTA reference to memory and allows fast queries
+ * <p/>
+ * Safe to share between threads: the contig tables are only written by the constructors,
+ * contigs are loaded once under a per-contig lock, and every thread reads the FASTA through
+ * its own htsjdk reader. {@link #snapshot()} gives a read-only copy with every contig loaded
+ * that needs no locking at all.
  *
  * @author johnmu
  */
 
 import com.bina.varsim.types.ChrString;
+import com.bina.varsim.types.MappedFastaSequence;
+import com.bina.varsim.types.PackedSequence;
 import com.bina.varsim.types.Sequence;
 import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.reference.*;
+import htsjdk.samtools.util.RuntimeIOException;
 import htsjdk.tribble.FeatureCodec;
 import htsjdk.tribble.bed.BEDCodec;
 import htsjdk.tribble.bed.BEDFeature;
@@ -26,33 +34,63 @@ import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 public class SimpleReference {
     private final static Logger log = Logger.getLogger(SimpleReference.class.getName());
 
-    // chr_idx -> reference_string
-    private final Map<ChrString, Sequence> data = new HashMap<>();
-    private final Map<ChrString, IndexedFastaSequenceFile> dataSources = new HashMap<>();
+    /**
+     * How loaded contigs are held in memory
+     */
+    public enum Storage {
+        HEAP, // one byte per base on the java heap
+        PACKED, // two bits per base in direct buffers, see PackedSequence
+        MAPPED // read in place from the memory-mapped FASTA, see MappedFastaSequence
+    }
+
+    private final Set<ChrString> contigs = new HashSet<>();
+    // loaded contigs
+    private final ContigCache cache = new ContigCache();
+    // contigs come either from an indexed FASTA or from a prepared image
+    private final Map<ChrString, ReferenceImage> images = new HashMap<>();
+    private final Map<ChrString, Path> contigFiles = new HashMap<>();
+    private final Map<ChrString, FastaSequenceIndexEntry> indexEntries = new HashMap<>();
+    private final Map<Path, FastaSequenceIndex> fastaIndexes = new HashMap<>();
+    // htsjdk readers are not thread-safe, each thread opens its own
+    private final ThreadLocal<Map<Path, IndexedFastaSequenceFile>> readers = ThreadLocal.withInitial(HashMap::new);
+    // bgzip-compressed FASTAs, these readers are thread-safe
+    private final Map<Path, BgzfFastaSequenceFile> bgzfFiles = new HashMap<>();
+    private final Map<ChrString, Object> loadLocks = new HashMap<>();
+    private final ReferenceMetadata metadata = new ReferenceMetadata();
+    private final Map<Path, BaseCompositionIndex> compositions = new HashMap<>();
+    // all contigs, only set for snapshots
+    private final Map<ChrString, Sequence> frozen;
     private long nonNCount = -1;
-    private String referenceFileName = null;
-    private boolean sequencesFullyLoaded = false;
+    private final String referenceFileName;
+    private volatile Storage storage = Storage.HEAP;
 
     public SimpleReference() {
+        frozen = null;
+        referenceFileName = null;
     }
 
     /**
      * @param filename FASTA file, should include the fai index
      */
     public SimpleReference(String filename) {
+        frozen = null;
         addReference(filename);
         referenceFileName = filename;
     }
 
     public SimpleReference(final Collection<String> filenames) {
+        frozen = null;
         if (filenames != null) {
             StringBuilder stringBuilder = new StringBuilder();
             for (final String filename : filenames) {
@@ -60,37 +98,120 @@ public class SimpleReference {
                 stringBuilder.append(filename);
             }
             referenceFileName = stringBuilder.toString();
+        } else {
+            referenceFileName = null;
+        }
+    }
+
+    /**
+     * Copies the contig tables and loads every contig of source
+     */
+    private SimpleReference(final SimpleReference source) {
+        contigs.addAll(source.contigs);
+        images.putAll(source.images);
+        contigFiles.putAll(source.contigFiles);
+        indexEntries.putAll(source.indexEntries);
+        fastaIndexes.putAll(source.fastaIndexes);
+        bgzfFiles.putAll(source.bgzfFiles);
+        metadata.addAll(source.metadata);
+        referenceFileName = source.referenceFileName;
+        storage = source.storage;
+        // contigs are read in parallel, getSequence is thread-safe
+        final Map<ChrString, Sequence> sequences = new ConcurrentHashMap<>();
+        contigs.parallelStream().forEach(contig -> sequences.put(contig, source.getSequence(contig)));
+        frozen = Collections.unmodifiableMap(new HashMap<>(sequences));
+    }
+
+    /**
+     * Loads every contig (held according to the storage setting, in parallel) into a read-only copy.
+     * The copy needs no locking, so it is the cheapest way to share a reference between threads.
+     * Its cache budget cannot be changed, all contigs stay loaded.
+     *
+     * @return read-only copy of this reference
+     */
+    public SimpleReference snapshot() {
+        return frozen == null ? new SimpleReference(this) : this;
+    }
+
+    public boolean isSnapshot() {
+        return frozen != null;
+    }
+
+    /**
+     * Only affects contigs loaded after this call
+     *
+     * @param storage how to hold loaded contigs
+     */
+    public void setStorage(final Storage storage) {
+        if (frozen != null) {
+            throw new UnsupportedOperationException("Cannot change the storage of a read-only snapshot");
+        }
+        this.storage = storage;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Limits the memory held by loaded contigs, least recently used contigs are dropped first
+     *
+     * @param bytes budget in bytes, {@link ContigCache#UNBOUNDED} (the default) keeps every contig
+     */
+    public void setCacheBudget(final long bytes) {
+        if (frozen != null) {
+            throw new UnsupportedOperationException("Cannot change the cache budget of a read-only snapshot");
         }
+        cache.setBudget(bytes);
+    }
+
+    /**
+     * @return the contig cache, for its hit/miss/eviction counters
+     */
+    public ContigCache getCache() {
+        return cache;
     }
 
     /**
-     * This loads a FASTA file into the memory, can load multi-FASTA files, can call multiple times
+     * This loads a FASTA file into the memory, can load multi-FASTA files, can call multiple times.
+     * An up-to-date image written by prepare_reference next to the FASTA (or given instead of it)
+     * is used in place of the FASTA, then no fai or dict is needed.
+     * bgzip-compressed FASTAs are read through their gzi, which is created if missing.
      *
-     * @param filename FASTA file with fai index
+     * @param filename FASTA file with fai index, or a reference image
      */
     private void addReference(String filename) {
         File f = new File(filename);
-        Path indexFile = ReferenceSequenceFileFactory.getFastaIndexFileName(Paths.get(filename));
-        Path dictionaryFile = ReferenceSequenceFileFactory.getDefaultDictionaryForReferenceSequence(Paths.get(filename));
         try {
+            if (addImage(f.toPath())) {
+                return;
+            }
+            Path indexFile = ReferenceSequenceFileFactory.getFastaIndexFileName(Paths.get(filename));
+            Path dictionaryFile = ReferenceSequenceFileFactory.getDefaultDictionaryForReferenceSequence(Paths.get(filename));
             if (!Files.exists(indexFile, new LinkOption[0])) {
                 FastaSequenceIndexCreator.create(Paths.get(filename), false);
             }
             if (!Files.exists(dictionaryFile, new LinkOption[0])) {
                 CreateSequenceDictionary sequenceDictionaryCreator = new CreateSequenceDictionary(filename);
             }
-            IndexedFastaSequenceFile fa = new IndexedFastaSequenceFile(f);
-            ReferenceSequence s = null;
-            while ( (s = fa.nextSequence()) != null) {
-                ChrString name = new ChrString(s.getName());
-                if (!name.toString().equals(s.getName())) {
-                    throw new IllegalArgumentException("Internal name " + name + " is different from name in file (" + filename + "): " + s.getName());
+            FastaSequenceIndex index = new FastaSequenceIndex(indexFile);
+            fastaIndexes.put(f.toPath(), index);
+            if (BgzfFastaSequenceFile.isBgzf(f.toPath())) {
+                bgzfFiles.put(f.toPath(), new BgzfFastaSequenceFile(f.toPath(), index,
+                        BgzfFastaSequenceFile.loadOrCreateGzi(f.toPath()), BgzfBlockCache.getShared()));
+            }
+            metadata.addReference(f.toPath(), index);
+            // only the index is read here, sequences are loaded lazily
+            for (FastaSequenceIndexEntry entry : index) {
+                ChrString name = ChrString.valueOf(entry.getContig());
+                if (!name.toString().equals(entry.getContig())) {
+                    throw new IllegalArgumentException("Internal name " + name + " is different from name in file (" + filename + "): " + entry.getContig());
                 }
-                if (!data.containsKey(name)) {
-                    data.put(name, null); //be lazy here
-                    dataSources.put(name, fa);
-                } else {
-                    log.warn("Duplicate Key!");
+                if (contigs.add(name)) {
+                    //be lazy here, contigs are loaded on first use
+                    loadLocks.put(name, new Object());
+                    contigFiles.put(name, f.toPath());
+                    indexEntries.put(name, entry);
                 }
             }
         } catch (IOException e) {
@@ -98,7 +219,66 @@ public class SimpleReference {
             e.printStackTrace();
             System.exit(1);
         }
-        sequencesFullyLoaded = false; //everytime we add new sequences, reset this flag.
+    }
+
+    /**
+     * @param file FASTA file or reference image
+     * @return true if the contigs were taken from an image
+     */
+    private boolean addImage(final Path file) throws IOException {
+        final boolean isImage = file.toString().endsWith(ReferenceImage.EXTENSION);
+        final Path imageFile = isImage ? file : ReferenceImage.getDefaultImagePath(file);
+        if (!Files.exists(imageFile)) {
+            return false;
+        }
+        final ReferenceImage image;
+        if (isImage) {
+            image = ReferenceImage.open(imageFile);
+        } else {
+            // the image next to the FASTA is optional, the FASTA is read if it is unusable
+            try {
+                image = ReferenceImage.open(imageFile);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Ignoring reference image " + imageFile + ", it cannot be read: " + e);
+                return false;
+            }
+            if (!image.isUpToDate(file)) {
+                log.warn("Ignoring reference image " + imageFile + ", it is older than " + file);
+                image.close();
+                return false;
+            }
+        }
+        image.addTo(metadata);
+        for (final ChrString name : image.getContigs()) {
+            if (contigs.add(name)) {
+                images.put(name, image);
+                loadLocks.put(name, new Object());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param contig contig from a FASTA
+     * @return this thread's reader of the FASTA holding the contig
+     */
+    private IndexedFastaSequenceFile reader(final ChrString contig) {
+        final Path fasta = contigFiles.get(contig);
+        return readers.get().computeIfAbsent(fasta, path -> new IndexedFastaSequenceFile(path, fastaIndexes.get(path)));
+    }
+
+    /**
+     * @param contig contig from a FASTA
+     * @param start  1-based start
+     * @param stop   1-based inclusive end
+     * @return bases read straight from the FASTA, plain or bgzip-compressed
+     */
+    private byte[] readBases(final ChrString contig, final long start, final long stop) {
+        final BgzfFastaSequenceFile bgzf = bgzfFiles.get(contigFiles.get(contig));
+        if (bgzf != null) {
+            return bgzf.getSubsequenceAt(contig.toString(), start, stop);
+        }
+        return reader(contig).getSubsequenceAt(contig.toString(), start, stop).getBases();
     }
 
     /**
@@ -106,15 +286,35 @@ public class SimpleReference {
      * @return Entire sequence of the chromosome
      */
     public Sequence getSequence(ChrString chr_name) {
-        if (data.containsKey(chr_name)) {
-            if (data.get(chr_name) == null) {
-                ReferenceSequence sequence = dataSources.get(chr_name).getSequence(chr_name.toString());
-                data.put(chr_name, new Sequence(chr_name.toString(), sequence.getBases(), sequence.length()));
-            }
-        } else {
+        if (frozen != null) {
+            return frozen.get(chr_name);
+        }
+        if (!contigs.contains(chr_name)) {
             return null;
         }
-        return data.get(chr_name);
+        Sequence sequence = cache.get(chr_name);
+        if (sequence == null) {
+            // another thread may be loading the same contig
+            synchronized (loadLocks.get(chr_name)) {
+                sequence = cache.peek(chr_name);
+                if (sequence == null) {
+                    sequence = loadSequence(chr_name);
+                    cache.put(chr_name, sequence);
+                }
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * @return the contig if it is loaded, or if it is cheap to load (mapped), otherwise null
+     */
+    private Sequence loadedSequence(final ChrString contig) {
+        if (frozen != null || images.containsKey(contig)
+                || (storage == Storage.MAPPED && !bgzfFiles.containsKey(contigFiles.get(contig)))) {
+            return getSequence(contig);
+        }
+        return cache.peek(contig);
     }
 
     /**
@@ -129,11 +329,12 @@ public class SimpleReference {
             return 0;
         }
 
-        if (data.containsKey(chr_name)) {
-            if (data.get(chr_name) == null) {
-                return dataSources.get(chr_name).getSubsequenceAt(chr_name.toString(), loc, loc).getBases()[0];
+        if (contigs.contains(chr_name)) {
+            Sequence contig = loadedSequence(chr_name);
+            if (contig == null) {
+                return readBases(chr_name, loc, loc)[0];
             } else {
-                return data.get(chr_name).byteAt(loc);
+                return contig.byteAt(loc);
             }
         } else {
             return 0;
@@ -158,11 +359,11 @@ public class SimpleReference {
             return null;
         }
 
-        if (data.containsKey(chr_name)) {
-            if (data.get(chr_name) == null) {
-                return dataSources.get(chr_name).getSubsequenceAt(chr_name.toString(), start_loc + 1, end_loc).getBases();
+        if (contigs.contains(chr_name)) {
+            Sequence contig = loadedSequence(chr_name);
+            if (contig == null) {
+                return readBases(chr_name, start_loc + 1, end_loc);
             } else {
-                Sequence contig = data.get(chr_name);
                 return contig.subSeq(start_loc, end_loc);
             }
         } else {
@@ -176,47 +377,74 @@ public class SimpleReference {
      * @return length of the specified chromosome
      */
     public int getRefLen(ChrString chr_name) {
-        if (data.containsKey(chr_name)) {
-            return dataSources.get(chr_name).getSequence(chr_name.toString()).length();
-        } else {
-            return 0;
-        }
+        return (int) metadata.getLength(chr_name);
+    }
+
+    /**
+     * @return names, lengths, order and MD5s of the contigs, answered from the fai/dict only
+     */
+    public ReferenceMetadata getMetadata() {
+        return metadata;
     }
 
     /**
      * @return Number of chromosomes loaded
      */
     public int getNumContigs() {
-        return data.keySet().size();
+        return contigs.size();
     }
 
-    private void loadAllSequences() {
-        if (!sequencesFullyLoaded) {
-            for (ChrString contig : data.keySet()) {
-                if (data.get(contig) == null) {
-                    ReferenceSequence contigSequence = dataSources.get(contig).getSequence(contig.toString());
-                    data.put(contig, new Sequence(contig.toString(), contigSequence.getBases(), contigSequence.length()));
-                }
+    /**
+     * Reads a whole contig from its FASTA and stores it according to the storage setting
+     *
+     * @param contig contig to read
+     * @return the contig sequence
+     */
+    private Sequence loadSequence(final ChrString contig) {
+        if (images.containsKey(contig)) {
+            return images.get(contig).getSequence(contig);
+        }
+        final boolean bgzf = bgzfFiles.containsKey(contigFiles.get(contig));
+        if (storage == Storage.MAPPED && !bgzf) {
+            try {
+                return MappedFastaSequence.map(contigFiles.get(contig), indexEntries.get(contig));
+            } catch (IOException e) {
+                throw new RuntimeIOException("Cannot map " + contig + " from " + contigFiles.get(contig), e);
             }
-            sequencesFullyLoaded = true;
         }
+        // compressed FASTAs cannot be mapped, MAPPED falls back to HEAP for them
+        final byte[] bases = bgzf ? bgzfFiles.get(contigFiles.get(contig)).getSequence(contig.toString())
+                : reader(contig).getSequence(contig.toString()).getBases();
+        if (storage == Storage.PACKED) {
+            return PackedSequence.pack(contig.toString(), bases, bases.length);
+        }
+        return new Sequence(contig.toString(), bases, bases.length);
     }
+
     /**
-     * This is computed lazily, so the first call to this will be slow
+     * This is computed lazily from the base composition index, the first call
+     * builds the index if there is no up-to-date one next to the FASTA
      * @return number of non-N bases in the sequence
      */
-    public long getNumNonNBases(){
+    public synchronized long getNumNonNBases(){
         if (nonNCount == -1) {
-            loadAllSequences();
-            for (Sequence sequence : data.values()) {
-                nonNCount += sequence.getNumNonNBases();
+            for (ChrString contig : contigs) {
+                // image contigs carry their own N runs
+                nonNCount += images.containsKey(contig) ? getSequence(contig).getNumNonNBases()
+                        : getBaseComposition(contig).getNumNonNBases(contig);
             }
         }
         return nonNCount;
     }
 
+    /**
+     * Counted from the base composition index or the N runs of an image, no bases are read
+     *
+     * @param regions BED file
+     * @return number of non-N bases in the regions
+     * @throws IllegalArgumentException if a region is not within a contig of the reference
+     */
     public long getNumNonNBases(final File regions) throws IOException {
-        loadAllSequences();
         long count = 0;
 
         final FeatureCodec<BEDFeature, LineIterator> bedCodec = new BEDCodec(BEDCodec.StartOffset.ONE);
@@ -224,16 +452,42 @@ public class SimpleReference {
 
         while (lineIterator.hasNext()) {
             final BEDFeature bedFeature = bedCodec.decode(lineIterator);
-            count += data.get(new ChrString(bedFeature.getContig())).getNumNonNBases(bedFeature.getStart(), bedFeature.getEnd());
+            final ChrString contig = ChrString.valueOf(bedFeature.getContig());
+            metadata.checkInterval(contig, bedFeature.getStart(), bedFeature.getEnd());
+            count += images.containsKey(contig) ? getSequence(contig).getNumNonNBases(bedFeature.getStart(), bedFeature.getEnd())
+                    : getBaseComposition(contig).getNumNonNBases(contig, bedFeature.getStart(), bedFeature.getEnd());
         }
         return count;
     }
 
+    /**
+     * Reads (or builds and writes) the index sidecar of the FASTA the contig comes from
+     *
+     * @param contig contig of this reference
+     * @return N, lowercase and GC counts of the FASTA holding the contig
+     */
+    public synchronized BaseCompositionIndex getBaseComposition(final ChrString contig) {
+        final Path fasta = contigFiles.get(contig);
+        if (fasta == null) {
+            throw new IllegalArgumentException("Contig " + contig + " is not in the reference");
+        }
+        BaseCompositionIndex index = compositions.get(fasta);
+        if (index == null) {
+            try {
+                index = BaseCompositionIndex.loadOrBuild(fasta);
+            } catch (IOException e) {
+                throw new RuntimeIOException("Cannot build base composition index for " + fasta, e);
+            }
+            compositions.put(fasta, index);
+        }
+        return index;
+    }
+
     /**
      * @return Chromosomes currently loaded
      */
     public Set<ChrString> keySet() {
-        return data.keySet();
+        return contigs;
     }
 
     /**
@@ -0,0 +1,260 @@
+package com.bina.varsim.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a VCF record held as bytes into tab-separated fields without copying.
+ * <p/>
+ * Only field offsets are kept. Integers are parsed in place and Strings are only made for the
+ * fields that are asked for; the String of a fixed column is reused while consecutive records
+ * have the same bytes there (chromosome, ".", "PASS", ...).
+ * <p/>
+ * As with StringUtilities.fastSplit, runs of separators count as one and empty fields are skipped.
+ */
+public class VCFRecordTokenizer {
+    public static final int CHROM = 0;
+    public static final int POS = 1;
+    public static final int ID = 2;
+    public static final int REF = 3;
+    public static final int ALT = 4;
+    public static final int QUAL = 5;
+    public static final int FILTER = 6;
+    public static final int INFO = 7;
+    public static final int FORMAT = 8;
+    public static final int FIRST_SAMPLE = 9;
+
+    private byte[] line = new byte[0];
+    private int length = 0;
+    private int numFields = 0;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    // last String made for each fixed column, and whether it was upper cased
+    private final String[] lastStrings = new String[FIRST_SAMPLE];
+    private final boolean[] lastUpperCase = new boolean[FIRST_SAMPLE];
+    private byte[] scratch = new byte[64];
+
+    /**
+     * Splits a line, the bytes are not copied and must not change while the record is in use
+     *
+     * @param line   buffer holding the line
+     * @param length number of bytes of the line
+     */
+    public void tokenize(final byte[] line, final int length) {
+        this.line = line;
+        this.length = length;
+        numFields = 0;
+        int i = 0;
+        while (i < length) {
+            while (i < length && line[i] == '\t') {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            final int start = i;
+            while (i < length && line[i] != '\t') {
+                i++;
+            }
+            if (numFields == starts.length) {
+                starts = Arrays.copyOf(starts, numFields * 2);
+                ends = Arrays.copyOf(ends, numFields * 2);
+            }
+            starts[numFields] = start;
+            ends[numFields] = i;
+            numFields++;
+        }
+    }
+
+    public int getNumFields() {
+        return numFields;
+    }
+
+    public byte[] getLine() {
+        return line;
+    }
+
+    /**
+     * @return offset of the first byte of the field in {@link #getLine()}
+     */
+    public int getStart(final int field) {
+        return starts[field];
+    }
+
+    /**
+     * @return offset just past the last byte of the field in {@link #getLine()}
+     */
+    public int getEnd(final int field) {
+        return ends[field];
+    }
+
+    public int getLength(final int field) {
+        return ends[field] - starts[field];
+    }
+
+    /**
+     * @return offset of the first occurrence of b in the field, -1 if absent
+     */
+    public int indexOf(final int field, final byte b) {
+        for (int i = starts[field]; i < ends[field]; i++) {
+            if (line[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Same semantics as StringUtilities.parseInt, there is no sanity check
+     */
+    public int getInt(final int field) {
+        return parseInt(line, starts[field], ends[field]);
+    }
+
+    static int parseInt(final byte[] bytes, final int start, final int end) {
+        int n = 0;
+        int sign = -1;
+        if (bytes[start] == '-') {
+            sign = 1;
+        } else {
+            n = '0' - bytes[start];
+        }
+        for (int i = start + 1; i < end; i++) {
+            n = n * 10 + '0' - bytes[i];
+        }
+        return sign * n;
+    }
+
+    /**
+     * @return the field as a String
+     */
+    public String getString(final int field) {
+        return getString(field, false);
+    }
+
+    /**
+     * @return the field as an upper-cased String
+     */
+    public String getUpperCaseString(final int field) {
+        return getString(field, true);
+    }
+
+    private String getString(final int field, final boolean upperCase) {
+        final int start = starts[field];
+        final int n = ends[field] - start;
+        if (field < FIRST_SAMPLE) {
+            final String last = lastStrings[field];
+            if (last != null && lastUpperCase[field] == upperCase && matches(start, n, last, upperCase)) {
+                return last;
+            }
+        }
+        final String s;
+        if (upperCase) {
+            if (scratch.length < n) {
+                scratch = new byte[Math.max(n, scratch.length * 2)];
+            }
+            for (int i = 0; i < n; i++) {
+                scratch[i] = toUpperCase(line[start + i]);
+            }
+            s = new String(scratch, 0, n, StandardCharsets.UTF_8);
+        } else {
+            s = new String(line, start, n, StandardCharsets.UTF_8);
+        }
+        if (field < FIRST_SAMPLE) {
+            lastStrings[field] = s;
+            lastUpperCase[field] = upperCase;
+        }
+        return s;
+    }
+
+    private boolean matches(final int start, final int n, final String s, final boolean upperCase) {
+        if (s.length() != n) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            final byte b = upperCase ? toUpperCase(line[start + i]) : line[start + i];
+            if (s.charAt(i) != (b & 0xff)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte toUpperCase(final byte b) {
+        return b >= 'a' && b <= 'z' ? (byte) (b - ('a' - 'A')) : b;
+    }
+
+    /**
+     * @return true if the field is exactly s
+     */
+    public boolean fieldEquals(final int field, final String s) {
+        return matches(starts[field], ends[field] - starts[field], s, false);
+    }
+
+    /**
+     * Finds a key in a separated list such as the FORMAT column
+     *
+     * @return 0-based position of key among the separated values of the field, -1 if absent
+     */
+    public int getSubfieldIndex(final int field, final byte separator, final String key) {
+        int index = 0;
+        int i = starts[field];
+        final int end = ends[field];
+        while (i < end) {
+            while (i < end && line[i] == separator) {
+                i++;
+            }
+            if (i == end) {
+                break;
+            }
+            final int start = i;
+            while (i < end && line[i] != separator) {
+                i++;
+            }
+            if (matches(start, i - start, key, false)) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    /**
+     * Locates one of the separated values of a field, such as the GT of a sample column
+     *
+     * @param bounds receives the start and end offsets of the value
+     * @return false if the field has fewer values
+     */
+    public boolean getSubfield(final int field, final byte separator, final int index, final int[] bounds) {
+        int current = 0;
+        int i = starts[field];
+        final int end = ends[field];
+        while (i < end) {
+            while (i < end && line[i] == separator) {
+                i++;
+            }
+            if (i == end) {
+                break;
+            }
+            final int start = i;
+            while (i < end && line[i] != separator) {
+                i++;
+            }
+            if (current == index) {
+                bounds[0] = start;
+                bounds[1] = i;
+                return true;
+            }
+            current++;
+        }
+        return false;
+    }
+
+    /**
+     * @return the whole line, for messages
+     */
+    @Override
+    public String toString() {
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,233 @@
+package com.bina.varsim.util;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tabix (.tbi) or CSI (.csi) index of a bgzipped VCF, see the tabix and CSI specifications.
+ * <p/>
+ * Only what is needed to find the records of a region is kept: the bins of each sequence with
+ * their chunks of virtual file offsets, and the linear index (tbi) or the bin offsets (csi) that
+ * skip the chunks ending before the region.
+ */
+public class VCFRegionIndex {
+    private static final int TBI_MIN_SHIFT = 14;
+    private static final int TBI_DEPTH = 5;
+
+    private static class Reference {
+        final Map<Integer, long[]> chunks = new HashMap<>();
+        // csi only, smallest virtual offset of the records in each bin
+        final Map<Integer, Long> binOffsets = new HashMap<>();
+        // tbi only, smallest virtual offset of the records in each 16kb window
+        long[] linearIndex = new long[0];
+    }
+
+    private final int minShift;
+    private final int depth;
+    private final boolean csi;
+    private final Map<String, Reference> references = new LinkedHashMap<>();
+
+    private VCFRegionIndex(final int minShift, final int depth, final boolean csi) {
+        this.minShift = minShift;
+        this.depth = depth;
+        this.csi = csi;
+    }
+
+    /**
+     * @return the index file of a bgzipped VCF, .tbi preferred over .csi, null if there is none
+     */
+    public static File findIndexFile(final File vcf) {
+        for (final String extension : new String[]{".tbi", ".csi"}) {
+            final File index = new File(vcf.getPath() + extension);
+            if (index.isFile()) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param vcf bgzipped VCF
+     * @return its index, null if it has none
+     */
+    public static VCFRegionIndex load(final File vcf) throws IOException {
+        final File indexFile = findIndexFile(vcf);
+        if (indexFile == null) {
+            return null;
+        }
+        final byte[] bytes;
+        try (InputStream in = new BlockCompressedInputStream(indexFile)) {
+            bytes = IOUtils.toByteArray(in);
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        final byte[] magic = new byte[4];
+        buffer.get(magic);
+        final String magicString = new String(magic, 0, 3, StandardCharsets.US_ASCII);
+        if (magicString.equals("TBI") && magic[3] == 1) {
+            return readTbi(buffer);
+        }
+        if (magicString.equals("CSI") && magic[3] == 1) {
+            return readCsi(buffer);
+        }
+        throw new IOException(indexFile + " is not a tabix or CSI index");
+    }
+
+    private static VCFRegionIndex readTbi(final ByteBuffer buffer) {
+        final VCFRegionIndex index = new VCFRegionIndex(TBI_MIN_SHIFT, TBI_DEPTH, false);
+        final int numReferences = buffer.getInt();
+        final List<String> names = readNames(buffer);
+        for (int r = 0; r < numReferences; r++) {
+            final Reference reference = new Reference();
+            final int numBins = buffer.getInt();
+            for (int b = 0; b < numBins; b++) {
+                final int bin = buffer.getInt();
+                reference.chunks.put(bin, readChunks(buffer));
+            }
+            reference.linearIndex = new long[buffer.getInt()];
+            for (int i = 0; i < reference.linearIndex.length; i++) {
+                reference.linearIndex[i] = buffer.getLong();
+            }
+            index.references.put(names.get(r), reference);
+        }
+        return index;
+    }
+
+    private static VCFRegionIndex readCsi(final ByteBuffer buffer) throws IOException {
+        final int minShift = buffer.getInt();
+        final int depth = buffer.getInt();
+        final int auxLength = buffer.getInt();
+        if (auxLength < 28) {
+            throw new IOException("CSI index without sequence names");
+        }
+        final int auxEnd = buffer.position() + auxLength;
+        final List<String> names = readNames(buffer);
+        buffer.position(auxEnd);
+        final VCFRegionIndex index = new VCFRegionIndex(minShift, depth, true);
+        final int numReferences = buffer.getInt();
+        for (int r = 0; r < numReferences; r++) {
+            final Reference reference = new Reference();
+            final int numBins = buffer.getInt();
+            for (int b = 0; b < numBins; b++) {
+                final int bin = buffer.getInt();
+                reference.binOffsets.put(bin, buffer.getLong());
+                reference.chunks.put(bin, readChunks(buffer));
+            }
+            index.references.put(names.get(r), reference);
+        }
+        return index;
+    }
+
+    /**
+     * Reads the tabix header (format, columns, meta character, skip) and the sequence names
+     */
+    private static List<String> readNames(final ByteBuffer buffer) {
+        buffer.position(buffer.position() + 6 * 4);
+        final byte[] names = new byte[buffer.getInt()];
+        buffer.get(names);
+        final List<String> list = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == 0) {
+                list.add(new String(names, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return list;
+    }
+
+    private static long[] readChunks(final ByteBuffer buffer) {
+        final long[] chunks = new long[2 * buffer.getInt()];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = buffer.getLong();
+        }
+        return chunks;
+    }
+
+    /**
+     * @return names of the indexed sequences, in file order
+     */
+    public List<String> getSequenceNames() {
+        return new ArrayList<>(references.keySet());
+    }
+
+    /**
+     * Finds where the records overlapping a region may be, some of them can be outside the region
+     *
+     * @param sequence sequence name
+     * @param start    0-based start of the region
+     * @param end      0-based exclusive end of the region
+     * @return sorted, disjoint chunks as {start, end} virtual offsets, empty if the sequence is not indexed
+     */
+    public List<long[]> getChunks(final String sequence, final long start, final long end) {
+        final Reference reference = references.get(sequence);
+        if (reference == null || end <= start) {
+            return Collections.emptyList();
+        }
+        final long maxEnd = 1L << (minShift + 3 * depth);
+        final long beg = Math.min(start, maxEnd - 1);
+        final long last = Math.min(end, maxEnd) - 1;
+        final long minOffset = minOffset(reference, beg);
+
+        final List<long[]> chunks = new ArrayList<>();
+        int firstBin = 0;
+        int shift = minShift + 3 * depth;
+        for (int level = 0; level <= depth; level++, shift -= 3) {
+            for (long bin = firstBin + (beg >> shift); bin <= firstBin + (last >> shift); bin++) {
+                final long[] binChunks = reference.chunks.get((int) bin);
+                if (binChunks == null) {
+                    continue;
+                }
+                for (int i = 0; i < binChunks.length; i += 2) {
+                    if (binChunks[i + 1] > minOffset) {
+                        chunks.add(new long[]{binChunks[i], binChunks[i + 1]});
+                    }
+                }
+            }
+            firstBin += 1 << (3 * level);
+        }
+        chunks.sort((a, b) -> Long.compare(a[0], b[0]));
+
+        final List<long[]> merged = new ArrayList<>();
+        for (final long[] chunk : chunks) {
+            final long[] previous = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (previous != null && chunk[0] <= previous[1]) {
+                previous[1] = Math.max(previous[1], chunk[1]);
+            } else {
+                merged.add(chunk);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return virtual offset before which no record can overlap a region starting at beg
+     */
+    private long minOffset(final Reference reference, final long beg) {
+        if (!csi) {
+            if (reference.linearIndex.length == 0) {
+                return 0;
+            }
+            return reference.linearIndex[(int) Math.min(beg >> TBI_MIN_SHIFT, reference.linearIndex.length - 1)];
+        }
+        // the offset of the smallest bin holding beg that has records
+        int bin = (int) ((((1L << (3 * depth)) - 1) / 7) + (beg >> minShift));
+        while (bin > 0 && !reference.binOffsets.containsKey(bin)) {
+            bin = (bin - 1) >> 3;
+        }
+        final Long offset = reference.binOffsets.get(bin);
+        return offset == null ? 0 : offset;
+    }
+}
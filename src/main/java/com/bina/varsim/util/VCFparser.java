@@ -5,21 +5,23 @@ package com.bina.varsim.util;
 import com.bina.varsim.types.ChrString;
 import com.bina.varsim.types.FlexSeq;
 import com.bina.varsim.types.Sequence;
+import com.bina.varsim.types.VCFFieldDecoders;
 import com.bina.varsim.types.VCFInfo;
+import com.bina.varsim.types.variant.MultiSampleVariant;
 import com.bina.varsim.types.variant.Variant;
+import com.bina.varsim.types.variant.VariantType;
 import com.bina.varsim.types.variant.alt.Alt;
 import com.bina.varsim.util.logging.LoggingCounter;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.rmi.UnexpectedException;
 import java.util.*;
 
 import static com.bina.varsim.constants.Constant.MAX_VCF_PARSER_WARNING_REPEAT;
-import static com.bina.varsim.types.VCFInfo.getType;
 
 public class VCFparser extends GzFileParser<Variant> {
     private static final LoggingCounter loggingCounter = new LoggingCounter(MAX_VCF_PARSER_WARNING_REPEAT);
@@ -40,6 +42,24 @@ public class VCFparser extends GzFileParser<Variant> {
     private int illegalPhasingWarningCount = 0;
     private boolean ignoreInsertionLength = false;
 
+    private static final byte[] MISSING_GENOTYPE = {'.'};
+    private static final byte[] DEFAULT_COPY_NUMBER = {'0', '/', '0'};
+    private ByteLineReader lineReader = null;
+    private final VCFRecordTokenizer record = new VCFRecordTokenizer();
+    private final int[] subfield = new int[2];
+    private final byte[] batchGenotype = new byte[2];
+    // ChrString of the previous record, reused while the chromosome does not change
+    private String lastChrName = null;
+    private ChrString lastChr = null;
+    private long numRecords = 0;
+    // INFO and FORMAT types from the header, and the layout of the last FORMAT column seen
+    private final VCFFieldDecoders decoders = new VCFFieldDecoders();
+    private VCFFieldDecoders.FormatLayout formatLayout = null;
+    private int formatGenotypeIndex = -1;
+    private int formatCopyNumberIndex = -1;
+    private long startTime = 0;
+    private List<String> sampleNames = Collections.emptyList();
+
     public VCFparser() {
         sampleIndex = 10; // the first sample
     }
@@ -63,14 +83,20 @@ public class VCFparser extends GzFileParser<Variant> {
 
 
     public VCFparser(File file, String id, boolean pass, Random rand, boolean ignoreInsertionLength) {
-        random = rand;
+        this(id, pass, rand, ignoreInsertionLength);
         try {
-            bufferedReader = new BufferedReader(new InputStreamReader(decompressStream(file)));
-            readLine();
+            lineReader = new ByteLineReader(decompressStream(file));
         } catch (Exception ex) {
             log.error("Can't open file " + file.getName());
             log.error(ex.toString());
         }
+    }
+
+    /**
+     * Parser without input of its own, lines are given to {@link #parseLine(byte[], int)}
+     */
+    VCFparser(String id, boolean pass, Random rand, boolean ignoreInsertionLength) {
+        random = rand;
         sampleId = id;
         isPassFilterRequired = pass;
         this.ignoreInsertionLength = ignoreInsertionLength;
@@ -99,25 +125,6 @@ public class VCFparser extends GzFileParser<Variant> {
         this(file, id, pass, null, false);
     }
 
-    /**
-     * finds where "GT" or similar is in the VCF string so that the genotype can be read
-     *
-     * @param record The column in VCF that contains GT, CN, etc..
-     * @param key    The key to be found "GT" or "CN" or other
-     * @return the index of the key
-     */
-    private int getFormatKeyIndex(final String record, final String key) {
-        StringTokenizer words = new StringTokenizer(record, ":");
-        int ret = 0;
-        while (words.hasMoreTokens()) {
-            if (words.nextToken().equals(key))
-                return ret;
-            else
-                ret++;
-        }
-        return -1;
-    }
-
     /**
      * Takes genotype string and splits it into alleles, supports a maximum of two
      *
@@ -127,15 +134,52 @@ public class VCFparser extends GzFileParser<Variant> {
      * @return true if the variant is phased
      */
     boolean isPhased(String geno, byte[] vals, ChrString chr) {
+        final byte[] bytes = geno.getBytes(StandardCharsets.UTF_8);
+        return isPhased(bytes, 0, bytes.length, vals, chr);
+    }
+
+    /**
+     * Same as {@link #isPhased(String, byte[], ChrString)} on geno[start, end), without making Strings
+     */
+    boolean isPhased(final byte[] geno, int start, int end, byte[] vals, ChrString chr) {
         boolean isPhased = false;
 
-        geno = geno.trim();
+        // trim as String.trim does
+        while (start < end && (geno[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (geno[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
         boolean strangePhase = false;
-        String[] ll = StringUtilities.fastSplit(geno, "/|");
+        // split on '/' and '|', empty alleles are skipped as in StringUtilities.fastSplit
+        int numAlleles = 0;
+        int start1 = 0, end1 = 0, start2 = 0, end2 = 0;
+        int i = start;
+        while (i < end) {
+            while (i < end && isPhaseSeparator(geno[i])) {
+                i++;
+            }
+            if (i == end) {
+                break;
+            }
+            final int alleleStart = i;
+            while (i < end && !isPhaseSeparator(geno[i])) {
+                i++;
+            }
+            if (numAlleles == 0) {
+                start1 = alleleStart;
+                end1 = i;
+            } else if (numAlleles == 1) {
+                start2 = alleleStart;
+                end2 = i;
+            }
+            numAlleles++;
+        }
 
-        if (ll.length == 1) {
+        if (numAlleles == 1) {
             // phase is only a single number, for haploid chromosomes
-            byte val = (byte) (ll[0] == "." ? -1 : StringUtilities.parseInt(ll[0]));
+            byte val = (byte) VCFRecordTokenizer.parseInt(geno, start1, end1);
             if (chr.isX()) {
                 vals[0] = -1; //paternal missing
                 vals[1] = val; // maternal
@@ -151,17 +195,11 @@ public class VCFparser extends GzFileParser<Variant> {
             } else {
                 vals[0] = vals[1] = val;
             }
-        } else if (ll.length == 2) {
+        } else if (numAlleles == 2) {
             // this is the case where phase looks like "1|0" or "10|4"
-            int c1 = -1;
-            int c2 = -1;
-            char phasing = geno.charAt(ll[0].length());
-            try {
-                c1 = ll[0] == "." ? -1 : StringUtilities.parseInt(ll[0]);
-                c2 = ll[1] == "." ? -1 : StringUtilities.parseInt(ll[1]);
-            } catch (NumberFormatException e) {
-                strangePhase = true;
-            }
+            byte phasing = geno[start + end1 - start1];
+            int c1 = VCFRecordTokenizer.parseInt(geno, start1, end1);
+            int c2 = VCFRecordTokenizer.parseInt(geno, start2, end2);
 
             if (phasing == '|') {
                 isPhased = true;
@@ -178,7 +216,7 @@ public class VCFparser extends GzFileParser<Variant> {
 
         if (strangePhase) {
             if (loggingCounter.isCountLeftAndDecrement()) {
-                log.warn("Unrecognized phasing '" + geno + "'.");
+                log.warn("Unrecognized phasing '" + new String(geno, start, end - start, StandardCharsets.UTF_8) + "'.");
             }
             vals[0] = -1;
             vals[1] = -1;
@@ -188,6 +226,10 @@ public class VCFparser extends GzFileParser<Variant> {
         return isPhased;
     }
 
+    private static boolean isPhaseSeparator(final byte b) {
+        return b == '/' || b == '|';
+    }
+
     /**
      * takes a line from a VCF file, parse it,
      * return a Variant object
@@ -199,28 +241,51 @@ public class VCFparser extends GzFileParser<Variant> {
      * @return
      */
     public Variant processLine(String line) throws UnexpectedException {
+        if (line.startsWith("#")) {
+            processHeaderLine(line);
+            return null;
+        }
+        final byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        record.tokenize(bytes, bytes.length);
+        return processRecord(record);
+    }
 
+    private void processHeaderLine(final String line) {
         // try to determine the column we should read for the genotype
+        decoders.addHeaderLine(line);
         String[] toks = StringUtilities.fastSplit(line, "\t");
-        if (line.startsWith("#")) {
-            if (!StringUtils.isEmpty(sampleId) && line.startsWith("#CHROM")) {
-                chromLineSeen = true;
-                int index = 0;
-                for (String tok : toks) {
-                    index++;
-                    if (tok.equals(sampleId))
-                        sampleIndex = index;
-                }
-            } else if (StringUtils.isEmpty(sampleId)) {
-                sampleIndex = 10; // the first sample
-                if (line.startsWith("#CHROM") && toks.length >= sampleIndex) {
-                    sampleId = toks[sampleIndex - 1];
-                }
+        if (line.startsWith("#CHROM") && toks.length > VCFRecordTokenizer.FIRST_SAMPLE) {
+            sampleNames = Arrays.asList(toks).subList(VCFRecordTokenizer.FIRST_SAMPLE, toks.length);
+        }
+        if (!StringUtils.isEmpty(sampleId) && line.startsWith("#CHROM")) {
+            chromLineSeen = true;
+            int index = 0;
+            for (String tok : toks) {
+                index++;
+                if (tok.equals(sampleId))
+                    sampleIndex = index;
+            }
+        } else if (StringUtils.isEmpty(sampleId)) {
+            sampleIndex = 10; // the first sample
+            if (line.startsWith("#CHROM") && toks.length >= sampleIndex) {
+                sampleId = toks[sampleIndex - 1];
             }
-            log.info("Reading header line.");
-            return null;
         }
+        log.info("Reading header line.");
+    }
+
+    /**
+     * same as {@link #processLine(String)} on a record split by the tokenizer,
+     * only the columns that are used are turned into Strings
+     */
+    private Variant processRecord(final VCFRecordTokenizer record) throws UnexpectedException {
+        return processRecord(record, sampleField());
+    }
 
+    /**
+     * @return 0-based column of the sample to read
+     */
+    private int sampleField() {
         // If we cannot determine, then use the first one
         if (sampleIndex < 0 && !chromLineSeen) {
             sampleIndex = 10;
@@ -230,47 +295,44 @@ public class VCFparser extends GzFileParser<Variant> {
                 log.warn("Warning!!! ID (" + sampleId + ") does not exist... ");
             }
         }
+        return sampleIndex - 1;
+    }
 
-
-        int index = 0, genotypeIndex = -1, copyNumberIndex = -1;
-        int pos = -1;
-        ChrString chr = null;
-        String REF = "", FILTER = "", ALT = "", variantId = "";
-        String QUAL = ".";
-        String phase = ".", copyNumber = "0/0", infoString = "", FORMAT;
-        String[] sampleInfo;
-        for (String tok : toks) {
-            index++;
-            if (index == 1) { // Parsing chromosome
-                chr = new ChrString(tok);
-            } else if (index == 2) // Parsing position
-                pos = StringUtilities.parseInt(tok);
-            else if (index == 3) // Parsing position
-                variantId = tok;
-            else if (index == 4) // Parsing reference allele
-                REF = tok;
-            else if (index == 5) // Parsing alternative allele
-                ALT = tok;
-            else if (index == 6) // Parsing alternative allele
-                QUAL = tok;
-            else if (index == 7) // FILTER field
-                FILTER = tok;
-            else if (index == 8) // INFO field
-                infoString = tok;
-            else if (index == 9) { // Output format
-                FORMAT = tok;
-                genotypeIndex = getFormatKeyIndex(FORMAT, "GT");
-                copyNumberIndex = getFormatKeyIndex(FORMAT, "CN");
-            } else if (index == sampleIndex) { // phased or unphased genotype
-                sampleInfo = StringUtilities.fastSplit(tok, ":");
-                if (genotypeIndex >= 0) {
-                    phase = sampleInfo[genotypeIndex];
-                }
-                if (copyNumberIndex >= 0) {
-                    copyNumber = sampleInfo[copyNumberIndex];
-                }
-
-                break;
+    /**
+     * @param sampleField 0-based column of the sample whose genotype the variant gets
+     */
+    private Variant processRecord(final VCFRecordTokenizer record, final int sampleField) throws UnexpectedException {
+        final int numFields = record.getNumFields();
+        int genotypeIndex = -1, copyNumberIndex = -1;
+        ChrString chr = numFields > VCFRecordTokenizer.CHROM ? chromosome(record) : null;
+        int pos = numFields > VCFRecordTokenizer.POS ? record.getInt(VCFRecordTokenizer.POS) : -1;
+        String variantId = numFields > VCFRecordTokenizer.ID ? record.getString(VCFRecordTokenizer.ID) : "";
+        // Upper casing
+        String REF = numFields > VCFRecordTokenizer.REF ? record.getUpperCaseString(VCFRecordTokenizer.REF) : "";
+        String ALT = numFields > VCFRecordTokenizer.ALT ? record.getUpperCaseString(VCFRecordTokenizer.ALT) : "";
+        String QUAL = numFields > VCFRecordTokenizer.QUAL ? record.getString(VCFRecordTokenizer.QUAL) : ".";
+        String FILTER = numFields > VCFRecordTokenizer.FILTER ? record.getString(VCFRecordTokenizer.FILTER) : "";
+        String infoString = numFields > VCFRecordTokenizer.INFO ? record.getString(VCFRecordTokenizer.INFO) : "";
+        if (numFields > VCFRecordTokenizer.FORMAT) {
+            updateFormatLayout(record);
+            genotypeIndex = formatGenotypeIndex;
+            copyNumberIndex = formatCopyNumberIndex;
+        }
+        // phased or unphased genotype, as [line, start, end)
+        byte[] phase = MISSING_GENOTYPE, copyNumber = DEFAULT_COPY_NUMBER;
+        int phaseStart = 0, phaseEnd = phase.length, copyNumberStart = 0, copyNumberEnd = copyNumber.length;
+        if (sampleField >= VCFRecordTokenizer.FIRST_SAMPLE && numFields > sampleField) {
+            if (genotypeIndex >= 0) {
+                subfield(record, sampleField, genotypeIndex);
+                phase = record.getLine();
+                phaseStart = subfield[0];
+                phaseEnd = subfield[1];
+            }
+            if (copyNumberIndex >= 0) {
+                subfield(record, sampleField, copyNumberIndex);
+                copyNumber = record.getLine();
+                copyNumberStart = subfield[0];
+                copyNumberEnd = subfield[1];
             }
         }
 
@@ -291,7 +353,7 @@ public class VCFparser extends GzFileParser<Variant> {
         }
         // parse the phased or unphased genotype
         byte[] genotypeArray = new byte[2]; // paternal-maternal
-        boolean isGenotypePhased = isPhased(phase, genotypeArray, chr);
+        boolean isGenotypePhased = isPhased(phase, phaseStart, phaseEnd, genotypeArray, chr);
 
 
         if (genotypeIndex >= 0 && genotypeArray[0] == 0 && genotypeArray[1] == 0) {
@@ -314,7 +376,7 @@ public class VCFparser extends GzFileParser<Variant> {
         boolean isCopyNumberPhased;
 
         if (copyNumberIndex >= 0) {
-            isCopyNumberPhased = isPhased(copyNumber, copyNumberArray, chr);
+            isCopyNumberPhased = isPhased(copyNumber, copyNumberStart, copyNumberEnd, copyNumberArray, chr);
             if (isCopyNumberPhased != isGenotypePhased) {
                 // TODO maybe don't throw error, this is not standard format
                 // anyways
@@ -325,12 +387,9 @@ public class VCFparser extends GzFileParser<Variant> {
             }
         }
 
-        // Upper casing
-        REF = REF.toUpperCase();
-        ALT = ALT.toUpperCase();
-
         String deletedReference = "";
-        VCFInfo info = new VCFInfo(infoString);
+        // INFO is only read for symbolic alleles, plain SNVs and indels never parse it
+        VCFInfo info = null;
 
         /*if symbolic alleles are present,
         make sure # of alleles equal # of
@@ -351,6 +410,7 @@ public class VCFparser extends GzFileParser<Variant> {
             return null;
         }
         if (ALT.indexOf('<') != -1) {
+            info = new VCFInfo(infoString, decoders);
             String[] alternativeAlleles = StringUtilities.fastSplit(ALT, ",");
             int[] svlen = info.getValue("SVLEN", int[].class);
             // when number of SVLEN values is not equal to number of alternative alleles
@@ -364,14 +424,14 @@ public class VCFparser extends GzFileParser<Variant> {
                 } else {
                     if (loggingCounter.isCountLeftAndDecrement()) {
                         log.warn("WARNING: number of symbolic alleles is unequal to number of SV lengths.\n" +
-                                line + "\nFor symbolic insertions, can set -ignore_ins_len to ignore SVLEN.");
+                                record + "\nFor symbolic insertions, can set -ignore_ins_len to ignore SVLEN.");
                     }
                     return null;
                 }
             }
             for (int i = 0; i < alternativeAlleles.length; i++) {
                 if (!alternativeAlleles[i].startsWith("<")) {
-                    throw new IllegalArgumentException("ERROR: symbolic alleles are mixed with non-symbolic alleles.\n" + line);
+                    throw new IllegalArgumentException("ERROR: symbolic alleles are mixed with non-symbolic alleles.\n" + record);
                 }
             }
         }
@@ -393,7 +453,7 @@ public class VCFparser extends GzFileParser<Variant> {
 
           if (Alt.SVType.SVSubtype.TRA.equals(alts[0].getSymbolicAllele().getMinor())) {
             if (traid == null || traid.length == 0) {
-                throw new IllegalArgumentException("ERROR: <*:TRA> must have TRAID in INFO field.\n" + line);
+                throw new IllegalArgumentException("ERROR: <*:TRA> must have TRAID in INFO field.\n" + record);
             }
           }
 
@@ -435,7 +495,7 @@ public class VCFparser extends GzFileParser<Variant> {
           } else if (alts[0].getSymbolicAllele().getMajor() == Alt.SVType.DUP &&
                     ((alts[0].getSymbolicAllele().getMinor() != Alt.SVType.SVSubtype.TRA &&
                             alts[0].getSymbolicAllele().getMinor() != Alt.SVType.SVSubtype.ISP &&
-                            info.getValue("POS2", getType("POS2")) == null) ||
+                            info.getValue("POS2", Object.class) == null) ||
                      alts[0].getSymbolicAllele().getMinor() == Alt.SVType.SVSubtype.TANDEM)) {
               if (svlen.length > 0) {
                   for (int i = 0; i < svlen.length; i++) {
@@ -550,7 +610,7 @@ public class VCFparser extends GzFileParser<Variant> {
               //TODO major SVTYPE actually does not allow TRA
           } else if ( alts[0].getSymbolicAllele().getMajor() == Alt.SVType.DUP &&
                   (alts[0].getSymbolicAllele().getMinor() == Alt.SVType.SVSubtype.TRA || alts[0].getSymbolicAllele().getMinor() == Alt.SVType.SVSubtype.ISP ||
-                  info.getValue("POS2", getType("POS2")) != null)) {
+                  info.getValue("POS2", Object.class) != null)) {
               //translocation SV DUP or interspersed DUP
 
               if (svlen.length > 0) {
@@ -586,7 +646,7 @@ public class VCFparser extends GzFileParser<Variant> {
                   //reference allele
                   for (int i = 1; i < svlen.length; i++) {
                       if (svlen[i] != svlen[0]) {
-                          throw new IllegalArgumentException("ERROR: SVLEN values not equal.\n" + line);
+                          throw new IllegalArgumentException("ERROR: SVLEN values not equal.\n" + record);
                       }
                   }
                   //pos is incremented by 1, so it becomes 1-based start
@@ -726,62 +786,356 @@ public class VCFparser extends GzFileParser<Variant> {
       }
     }
 
+    /**
+     * @return chromosome of the record, the previous ChrString is reused if it did not change
+     */
+    private ChrString chromosome(final VCFRecordTokenizer record) {
+        final String name = record.getString(VCFRecordTokenizer.CHROM);
+        // the tokenizer returns the same String while the bytes are the same
+        if (name != lastChrName) {
+            lastChrName = name;
+            lastChr = ChrString.valueOf(name);
+        }
+        return lastChr;
+    }
+
+    private void updateFormatLayout(final VCFRecordTokenizer record) {
+        // the tokenizer returns the same String while FORMAT does not change
+        final String format = record.getString(VCFRecordTokenizer.FORMAT);
+        if (formatLayout == null || format != formatLayout.getFormat()) {
+            formatLayout = decoders.getFormatLayout(format);
+            formatGenotypeIndex = formatLayout.indexOf("GT");
+            formatCopyNumberIndex = formatLayout.indexOf("CN");
+        }
+    }
+
+    private void subfield(final VCFRecordTokenizer record, final int field, final int index) {
+        if (!record.getSubfield(field, (byte) ':', index, subfield)) {
+            throw new IllegalArgumentException("ERROR: sample column has no value for FORMAT key " + (index + 1) + ".\n" + record);
+        }
+    }
+
     /**
      * extract header from a VCF
      * must be run before parseLine, otherwise may return nothing
      */
     public String extractHeader() {
         StringBuilder stringBuilder = new StringBuilder();
-        while (line != null && line.startsWith("#")) {
-            stringBuilder.append(line);
-            stringBuilder.append("\n");
-            readLine();
+        try {
+            while (lineReader != null && lineReader.peek() == '#') {
+                lineReader.readLine();
+                stringBuilder.append(new String(lineReader.getLine(), 0, lineReader.getLength(), StandardCharsets.UTF_8));
+                stringBuilder.append("\n");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
         }
 
-        //readLine automatically close filehandle when no more lines
-        if (line != null) {
-            try {
-                this.bufferedReader.close(); //right now use this naive method to prevent more reading
-            } catch (Exception e) {
-                e.printStackTrace();
+        close(); //right now use this naive method to prevent more reading
+
+        return stringBuilder.toString();
+    }
+
+    /**
+     * @return true if the file has more to read
+     */
+    @Override
+    public boolean hasMoreInput() {
+        if (lineReader == null) {
+            return false;
+        }
+        try {
+            if (lineReader.hasMoreLines()) {
+                return true;
             }
+        } catch (IOException ex) {
+            ex.printStackTrace();
         }
+        close();
+        return false;
+    }
 
-        return stringBuilder.toString();
+    private void close() {
+        if (lineReader == null) {
+            return;
+        }
+        try {
+            lineReader.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        lineReader = null;
+        if (numRecords > 0) {
+            final double seconds = Math.max(System.nanoTime() - startTime, 1) / 1e9;
+            log.info(String.format("Parsed %d records in %.1fs (%.0f records/s)", numRecords, seconds, numRecords / seconds));
+        }
     }
 
     public Variant parseLine() {
         /*
         TODO: line reading should be handled in a loop calling
          */
-        String line = this.line;
-        readLine();
+        boolean hasLine = false;
+        if (hasMoreInput()) {
+            try {
+                hasLine = lineReader.readLine();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
 
-        if (line == null || line.length() == 0) {
+        if (!hasLine || lineReader.getLength() == 0) {
             log.info("blank line");
             return null;
         }
 
+        if (lineReader.getLine()[0] != '#' && numRecords++ == 0) {
+            startTime = System.nanoTime();
+        }
+        return parseLine(lineReader.getLine(), lineReader.getLength());
+    }
+
+    /**
+     * parse one non-empty line that was read elsewhere
+     *
+     * @param line   buffer holding the line, without the line break
+     * @param length number of bytes of the line
+     * @return the variant read, null if the line is not a variant line or there was an error parsing
+     */
+    Variant parseLine(final byte[] line, final int length) {
+        if (line[0] == '#') {
+            processHeaderLine(new String(line, 0, length, StandardCharsets.UTF_8));
+            return null;
+        }
+
+        record.tokenize(line, length);
         Variant variant = null;
 
         try {
-            variant = processLine(line);
+            variant = processRecord(record);
         } catch (Exception e) {
             //TODO: right now just be lazy, die on any error
-            log.fatal(e.getMessage() + "\n" + line);
+            log.fatal(e.getMessage() + "\n" + record);
             e.printStackTrace();
             System.exit(255);
         }
 
-        if (variant == null && !line.startsWith("#")) {
+        if (variant == null) {
             if (loggingCounter.isCountLeftAndDecrement()) {
-                log.warn("Returned null variant for line " + line);
+                log.warn("Returned null variant for line " + record);
             }
         }
 
         return variant;
     }
 
+    /**
+     * Reads the next records into the columns of a batch, see {@link VariantBatch}. Records are
+     * kept or dropped as by {@link #parseLine()}.
+     *
+     * @param batch cleared, then filled with up to its capacity of records
+     * @return number of records in the batch, 0 at the end of the input
+     * @throws IllegalArgumentException if a record is malformed, the batch then holds the records before it
+     */
+    public int parseBatch(final VariantBatch batch) {
+        batch.clear();
+        while (!batch.isFull() && hasMoreInput()) {
+            boolean hasLine = false;
+            try {
+                hasLine = lineReader.readLine();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            if (!hasLine || lineReader.getLength() == 0) {
+                continue;
+            }
+            final byte[] line = lineReader.getLine();
+            if (line[0] == '#') {
+                processHeaderLine(new String(line, 0, lineReader.getLength(), StandardCharsets.UTF_8));
+                continue;
+            }
+            if (numRecords++ == 0) {
+                startTime = System.nanoTime();
+            }
+            record.tokenize(line, lineReader.getLength());
+            try {
+                if (!addSimpleRecord(batch)) {
+                    final Variant variant = processRecord(record);
+                    if (variant != null) {
+                        batch.add(variant);
+                    }
+                }
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Malformed VCF record (" + e.getMessage() + "): " + record, e);
+            }
+        }
+        return batch.size();
+    }
+
+    /**
+     * Adds the record to the batch without making a Variant if it has one plain sequence ALT allele,
+     * a GT and no CN. Alleles are trimmed as in {@link #processRecord(VCFRecordTokenizer, int)}.
+     *
+     * @return false if the record has to be parsed as a Variant
+     */
+    private boolean addSimpleRecord(final VariantBatch batch) {
+        final int numFields = record.getNumFields();
+        if (numFields <= VCFRecordTokenizer.FORMAT) {
+            return false;
+        }
+        final int sampleField = sampleField();
+        if (sampleField < VCFRecordTokenizer.FIRST_SAMPLE || numFields <= sampleField) {
+            return false;
+        }
+        updateFormatLayout(record);
+        if (formatGenotypeIndex < 0 || formatCopyNumberIndex >= 0
+                || !record.getSubfield(sampleField, (byte) ':', formatGenotypeIndex, subfield)) {
+            return false;
+        }
+        final byte[] line = record.getLine();
+        int refStart = record.getStart(VCFRecordTokenizer.REF);
+        int refEnd = record.getEnd(VCFRecordTokenizer.REF);
+        int altStart = record.getStart(VCFRecordTokenizer.ALT);
+        int altEnd = record.getEnd(VCFRecordTokenizer.ALT);
+        if (!isPlainBases(line, refStart, refEnd) || !isPlainBases(line, altStart, altEnd)) {
+            return false;
+        }
+        if (isPassFilterRequired) {
+            final String filter = record.getString(VCFRecordTokenizer.FILTER);
+            if (!(filter.contains("PASS") || filter.equals(DEFAULT_FILTER))) {
+                return false;
+            }
+        }
+        final ChrString chr = chromosome(record);
+        final boolean isGenotypePhased = isPhased(line, subfield[0], subfield[1], batchGenotype, chr);
+        if (batchGenotype[0] > 1 || batchGenotype[1] > 1) {
+            return false;
+        }
+        if (batchGenotype[0] == 0 && batchGenotype[1] == 0) {
+            return true; // reference alleles, dropped as by parseLine
+        }
+
+        int pos = record.getInt(VCFRecordTokenizer.POS);
+        // drop the shared first bases
+        while (refStart < refEnd && altStart < altEnd && upperCase(line[refStart]) == upperCase(line[altStart])) {
+            pos++;
+            refStart++;
+            altStart++;
+        }
+        // then the shared last bases
+        if (refStart < refEnd) {
+            while (refStart < refEnd && altStart < altEnd && upperCase(line[refEnd - 1]) == upperCase(line[altEnd - 1])) {
+                refEnd--;
+                altEnd--;
+            }
+        }
+        final int refLength = refEnd - refStart;
+        final int altLength = altEnd - altStart;
+        final VariantType type;
+        if (refLength == 0 && altLength == 0) {
+            type = VariantType.Reference;
+        } else if (refLength == 1 && altLength == 1) {
+            type = VariantType.SNP;
+        } else if (altLength == 0) {
+            type = VariantType.Deletion;
+        } else if (refLength == 0) {
+            type = VariantType.Insertion;
+        } else if (refLength == altLength) {
+            type = VariantType.MNP;
+        } else {
+            // the shared last bases are gone, so REF cannot end with ALT
+            type = VariantType.Complex;
+        }
+        batch.addSimple(chr.getId(), pos, line, refStart, refLength, altStart, altLength, type,
+                batchGenotype[0], batchGenotype[1], isGenotypePhased);
+        return true;
+    }
+
+    private static boolean isPlainBases(final byte[] line, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            switch (line[i]) {
+                case 'A': case 'C': case 'G': case 'T': case 'N':
+                case 'a': case 'c': case 'g': case 't': case 'n':
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return start < end;
+    }
+
+    private static byte upperCase(final byte b) {
+        return b >= 'a' && b <= 'z' ? (byte) (b - ('a' - 'A')) : b;
+    }
+
+    /**
+     * Parses one record for several samples: the genotype of each sample is decoded, and the rest of
+     * the record is parsed once, with the genotype and copy numbers of the first sample that is not
+     * homozygous reference.
+     *
+     * @param line         buffer holding a record line
+     * @param length       number of bytes of the line
+     * @param sampleFields 0-based columns of the samples
+     * @param sampleIds    names of the samples, shared by all the records
+     * @return the record, null if no sample has a non-reference genotype or the record is skipped
+     * @throws IllegalArgumentException if the record is malformed
+     */
+    MultiSampleVariant parseSamples(final byte[] line, final int length, final int[] sampleFields, final String[] sampleIds) {
+        record.tokenize(line, length);
+        final int numFields = record.getNumFields();
+        if (numFields <= VCFRecordTokenizer.CHROM) {
+            return null;
+        }
+        int genotypeIndex = -1;
+        if (numFields > VCFRecordTokenizer.FORMAT) {
+            updateFormatLayout(record);
+            genotypeIndex = formatGenotypeIndex;
+        }
+        final ChrString chr = chromosome(record);
+        final byte[] alleles = new byte[2 * sampleFields.length];
+        final boolean[] phased = new boolean[sampleFields.length];
+        final byte[] genotype = new byte[2];
+        int siteField = -1;
+        for (int i = 0; i < sampleFields.length; i++) {
+            final int field = sampleFields[i];
+            if (genotypeIndex >= 0 && numFields > field && record.getSubfield(field, (byte) ':', genotypeIndex, subfield)) {
+                phased[i] = isPhased(record.getLine(), subfield[0], subfield[1], genotype, chr);
+            } else {
+                phased[i] = isPhased(MISSING_GENOTYPE, 0, MISSING_GENOTYPE.length, genotype, chr);
+            }
+            alleles[2 * i] = genotype[0];
+            alleles[2 * i + 1] = genotype[1];
+            // same rule as for a single sample, only homozygous reference calls are dropped
+            if (siteField < 0 && (genotypeIndex < 0 || genotype[0] != 0 || genotype[1] != 0)) {
+                siteField = field;
+            }
+        }
+        if (siteField < 0) {
+            return null;
+        }
+
+        final Variant site;
+        try {
+            site = processRecord(record, siteField);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Malformed VCF record (" + e.getMessage() + "): " + record, e);
+        }
+        if (site == null) {
+            if (loggingCounter.isCountLeftAndDecrement()) {
+                log.warn("Returned null variant for line " + record);
+            }
+            return null;
+        }
+        return new MultiSampleVariant(site, sampleIds, alleles, phased);
+    }
+
+    /**
+     * @return names of the sample columns, empty before the #CHROM line
+     */
+    List<String> getSampleNames() {
+        return sampleNames;
+    }
+
     /**
      * convert ALT field to Alt[] array
      * AT,ATG => ..
@@ -0,0 +1,339 @@
+package com.bina.varsim.util;
+
+import com.bina.varsim.types.ChrString;
+import com.bina.varsim.types.variant.Variant;
+import com.bina.varsim.types.variant.VariantOverallType;
+import com.bina.varsim.types.variant.VariantType;
+import com.bina.varsim.types.variant.alt.Alt;
+
+import java.util.Arrays;
+
+/**
+ * Records of a VCF held in reusable column arrays, filled by {@link VCFparser#parseBatch(VariantBatch)}.
+ * <p/>
+ * A record is a row: chromosome ID (see {@link ChrString#getId()}), normalized position and
+ * reference length as in {@link Variant}, raw genotype and the overall type code. The ALT alleles of
+ * row r are entries altStarts[r] to altStarts[r + 1] of the allele columns, with their length, type
+ * code and offset of their bases in the shared pool, -1 for symbolic alleles and SVs. Type codes are
+ * ordinals of {@link VariantType} and {@link VariantOverallType}.
+ * <p/>
+ * The arrays are reused from one batch to the next and only valid up to {@link #size()}. Fields
+ * that only SVs have, such as CHR2 or POS2, are not kept; parse records one by one to get them.
+ */
+public class VariantBatch {
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final VariantType[] VARIANT_TYPES = VariantType.values();
+    private static final VariantOverallType[] OVERALL_TYPES = VariantOverallType.values();
+
+    private final int capacity;
+    private int size = 0;
+    private final int[] chrIds;
+    private final int[] positions;
+    private final int[] refLengths;
+    private final int[] refOffsets;
+    private final byte[] genotypes;
+    private final boolean[] phased;
+    private final byte[] overallTypes;
+    private final int[] altStarts;
+
+    private int numAlts = 0;
+    private int[] altOffsets = new int[16];
+    private int[] altLengths = new int[16];
+    private byte[] altTypes = new byte[16];
+
+    private int numBases = 0;
+    private byte[] bases = new byte[1024];
+
+    public VariantBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum number of records per batch
+     */
+    public VariantBatch(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Batch capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        chrIds = new int[capacity];
+        positions = new int[capacity];
+        refLengths = new int[capacity];
+        refOffsets = new int[capacity];
+        genotypes = new byte[2 * capacity];
+        phased = new boolean[capacity];
+        overallTypes = new byte[capacity];
+        altStarts = new int[capacity + 1];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    public void clear() {
+        size = 0;
+        numAlts = 0;
+        numBases = 0;
+    }
+
+    public int[] getChrIds() {
+        return chrIds;
+    }
+
+    public int[] getPositions() {
+        return positions;
+    }
+
+    public int[] getRefLengths() {
+        return refLengths;
+    }
+
+    /**
+     * @return offsets of the reference bases in {@link #getBases()}, -1 if they are not known, as for SVs
+     */
+    public int[] getRefOffsets() {
+        return refOffsets;
+    }
+
+    /**
+     * @return paternal and maternal allele of each row, -1 if missing
+     */
+    public byte[] getGenotypes() {
+        return genotypes;
+    }
+
+    public byte[] getOverallTypes() {
+        return overallTypes;
+    }
+
+    /**
+     * @return index of the first ALT allele of each row, size() + 1 entries
+     */
+    public int[] getAltStarts() {
+        return altStarts;
+    }
+
+    /**
+     * @return offsets of the ALT bases in {@link #getBases()}, -1 for symbolic alleles
+     */
+    public int[] getAltOffsets() {
+        return altOffsets;
+    }
+
+    public int[] getAltLengths() {
+        return altLengths;
+    }
+
+    public byte[] getAltTypes() {
+        return altTypes;
+    }
+
+    /**
+     * @return pool holding the bases of the REF and ALT alleles, upper cased
+     */
+    public byte[] getBases() {
+        return bases;
+    }
+
+    public ChrString getChr(final int row) {
+        return ChrString.byId(chrIds[row]);
+    }
+
+    public boolean isPhased(final int row) {
+        return phased[row];
+    }
+
+    public int getNumAlts(final int row) {
+        return altStarts[row + 1] - altStarts[row];
+    }
+
+    /**
+     * Same as {@link Variant#getGoodPaternal()}
+     */
+    public int getGoodPaternal(final int row) {
+        final byte paternal = genotypes[2 * row];
+        if (paternal >= 0) {
+            return paternal;
+        }
+        final ChrString chr = getChr(row);
+        if (chr.isMT() || chr.isX()) {
+            return -1;
+        }
+        return Math.min(1, getNumAlts(row));
+    }
+
+    /**
+     * Same as {@link Variant#getGoodMaternal()}
+     */
+    public int getGoodMaternal(final int row) {
+        final byte maternal = genotypes[2 * row + 1];
+        if (maternal >= 0) {
+            return maternal;
+        }
+        final ChrString chr = getChr(row);
+        if (chr.isMT()) {
+            return Math.min(1, getNumAlts(row));
+        }
+        if (chr.isY()) {
+            return -1;
+        }
+        return Math.min(2, getNumAlts(row));
+    }
+
+    /**
+     * Same as {@link Variant#getType(int)}
+     *
+     * @param allele index of allele, 0 for the reference
+     */
+    public VariantType getType(final int row, final int allele) {
+        if (allele <= 0) {
+            return VariantType.Reference;
+        }
+        if (allele > getNumAlts(row)) {
+            throw new IndexOutOfBoundsException("Allele " + allele + " of a record with " + getNumAlts(row) + " ALT alleles");
+        }
+        return VARIANT_TYPES[altTypes[altStarts[row] + allele - 1]];
+    }
+
+    public VariantOverallType getOverallType(final int row) {
+        return OVERALL_TYPES[overallTypes[row]];
+    }
+
+    /**
+     * Same as {@link Variant#maxLen(int)}
+     */
+    public int maxLen(final int row, final int allele) {
+        if (allele <= 0 || allele > getNumAlts(row)) {
+            return 0;
+        }
+        return Math.max(refLengths[row], altLengths[altStarts[row] + allele - 1]);
+    }
+
+    /**
+     * Same as {@link Variant#maxLen()}
+     */
+    public int maxLen(final int row) {
+        return Math.max(maxLen(row, getGoodPaternal(row)), maxLen(row, getGoodMaternal(row)));
+    }
+
+    /**
+     * @return 1-based inclusive end of {@link Variant#getAlternativeAlleleInterval(int)}
+     */
+    public int getAlternativeAlleleEnd(final int row, final int allele) {
+        if (allele == 0 || refLengths[row] == 0) {
+            return positions[row];
+        }
+        return positions[row] + refLengths[row] - 1;
+    }
+
+    /**
+     * Adds a record made of one sequence ALT allele
+     *
+     * @param line      bytes holding the alleles
+     * @param refStart  offset of the reference allele in line
+     * @param refLength length of the reference allele
+     * @param altStart  offset of the alternative allele in line
+     * @param altLength length of the alternative allele
+     */
+    void addSimple(final int chrId, final int pos, final byte[] line, final int refStart, final int refLength,
+                   final int altStart, final int altLength, final VariantType altType,
+                   final byte paternal, final byte maternal, final boolean isPhased) {
+        final int row = size;
+        setRow(row, chrId, pos, refLength, paternal, maternal, isPhased);
+        refOffsets[row] = appendBases(line, refStart, refLength);
+        ensureAltCapacity(numAlts + 1);
+        altOffsets[numAlts] = appendBases(line, altStart, altLength);
+        altLengths[numAlts] = altLength;
+        altTypes[numAlts] = (byte) altType.ordinal();
+        numAlts++;
+        altStarts[row + 1] = numAlts;
+        // with one ALT allele the overall type is the type of that allele
+        final boolean hasAlt = getGoodPaternal(row) == 1 || getGoodMaternal(row) == 1;
+        overallTypes[row] = (byte) (hasAlt ? overallType(altType) : VariantOverallType.Reference).ordinal();
+        size++;
+    }
+
+    /**
+     * Adds any variant, the fields without a column are dropped
+     */
+    void add(final Variant variant) {
+        final int row = size;
+        setRow(row, variant.getChr().intern().getId(), variant.getPos(), variant.getReferenceAlleleLength(),
+                (byte) variant.paternal(), (byte) variant.maternal(), variant.isPhased());
+        final byte[] ref = variant.getReference();
+        // SVs have a reference length but no reference bases
+        refOffsets[row] = ref == null || ref.length != variant.getReferenceAlleleLength() ? -1 : appendBases(ref, 0, ref.length);
+        final int n = variant.getNumberOfAlternativeAlleles();
+        ensureAltCapacity(numAlts + n);
+        for (int i = 1; i <= n; i++) {
+            final Alt alt = variant.getAlt(i);
+            final byte[] sequence = alt.getSequence();
+            altOffsets[numAlts] = sequence == null ? -1 : appendBases(sequence, 0, sequence.length);
+            altLengths[numAlts] = alt.length();
+            altTypes[numAlts] = (byte) variant.getType(i).ordinal();
+            numAlts++;
+        }
+        altStarts[row + 1] = numAlts;
+        overallTypes[row] = (byte) variant.getType().ordinal();
+        size++;
+    }
+
+    private void setRow(final int row, final int chrId, final int pos, final int refLength,
+                        final byte paternal, final byte maternal, final boolean isPhased) {
+        if (row == capacity) {
+            throw new IllegalStateException("Batch is full");
+        }
+        chrIds[row] = chrId;
+        positions[row] = pos;
+        refLengths[row] = refLength;
+        genotypes[2 * row] = paternal;
+        genotypes[2 * row + 1] = maternal;
+        phased[row] = isPhased;
+        altStarts[row] = numAlts;
+    }
+
+    private static VariantOverallType overallType(final VariantType type) {
+        switch (type) {
+            case Reference:
+                return VariantOverallType.Reference;
+            case SNP:
+                return VariantOverallType.SNP;
+            case Deletion:
+                return VariantOverallType.Deletion;
+            case Insertion:
+                return VariantOverallType.Insertion;
+            default:
+                return VariantOverallType.Complex;
+        }
+    }
+
+    private int appendBases(final byte[] source, final int start, final int length) {
+        if (numBases + length > bases.length) {
+            bases = Arrays.copyOf(bases, Math.max(numBases + length, 2 * bases.length));
+        }
+        for (int i = 0; i < length; i++) {
+            final byte b = source[start + i];
+            bases[numBases + i] = b >= 'a' && b <= 'z' ? (byte) (b - ('a' - 'A')) : b;
+        }
+        final int offset = numBases;
+        numBases += length;
+        return offset;
+    }
+
+    private void ensureAltCapacity(final int n) {
+        if (n > altOffsets.length) {
+            final int newLength = Math.max(n, 2 * altOffsets.length);
+            altOffsets = Arrays.copyOf(altOffsets, newLength);
+            altLengths = Arrays.copyOf(altLengths, newLength);
+            altTypes = Arrays.copyOf(altTypes, newLength);
+        }
+    }
+}
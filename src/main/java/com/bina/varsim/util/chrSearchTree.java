@@ -8,18 +8,27 @@ package com.bina.varsim.util;
  */
 
 import com.bina.intervalTree.Interval1D;
+import com.bina.intervalTree.IntervalIndex;
 import com.bina.intervalTree.IntervalTree;
+import com.bina.intervalTree.IntervalVisitor;
 import com.bina.intervalTree.SimpleInterval1D;
+import com.bina.intervalTree.StaticIntervalIndex;
 import com.bina.varsim.types.ChrString;
 import org.apache.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
 
 
 public class chrSearchTree<K extends Interval1D> {
     private final static Logger log = Logger.getLogger(chrSearchTree.class.getName());
 
-    HashMap<ChrString, IntervalTree<K>> data;
+    HashMap<ChrString, IntervalIndex<K>> data;
+    // the same trees, indexed by ChrString ID for lookups
+    ArrayList<IntervalIndex<K>> byId = new ArrayList<>();
     boolean allow_duplicates = false; // this will allow duplicate intervals
 
     /**
@@ -39,12 +48,39 @@ public class chrSearchTree<K extends Interval1D> {
         this.allow_duplicates = allow_duplicates;
     }
 
+    /**
+     * Builds a read-only search tree, with a {@link StaticIntervalIndex} per chromosome. Overlaps come sorted
+     * by left then right end-point, not in the pre-order of the {@link IntervalTree} filled by put()
+     *
+     * @param intervals intervals of each chromosome
+     * @return the search tree, put() is not supported
+     */
+    public static <K extends Interval1D> chrSearchTree<K> build(final Map<ChrString, ? extends Collection<K>> intervals) {
+        return build(intervals, StaticIntervalIndex::new);
+    }
+
+    /**
+     * Builds a read-only search tree
+     *
+     * @param intervals intervals of each chromosome
+     * @param indexer   builds the index of one chromosome from its intervals
+     * @return the search tree, put() is not supported
+     */
+    public static <K extends Interval1D> chrSearchTree<K> build(final Map<ChrString, ? extends Collection<K>> intervals,
+                                                                final Function<Collection<K>, IntervalIndex<K>> indexer) {
+        final chrSearchTree<K> tree = new chrSearchTree<>(true);
+        for (final Map.Entry<ChrString, ? extends Collection<K>> entry : intervals.entrySet()) {
+            tree.setIndex(entry.getKey(), indexer.apply(entry.getValue()));
+        }
+        return tree;
+    }
+
     /**
      * @return Total number of intervals stored in all chromosomes
      */
     public long size() {
         long total = 0;
-        for (IntervalTree<K> val : data.values()) {
+        for (IntervalIndex<K> val : data.values()) {
             total += val.size();
         }
         return total;
@@ -52,7 +88,7 @@ public class chrSearchTree<K extends Interval1D> {
 
     public long maxDepth() {
         long maxval = 0;
-        for (IntervalTree<K> val : data.values()) {
+        for (IntervalIndex<K> val : data.values()) {
             maxval = Math.max(maxval, val.maxDepth());
         }
         return maxval;
@@ -69,15 +105,26 @@ public class chrSearchTree<K extends Interval1D> {
      * @param key     Entry to be inserted
      */
     public void put(ChrString chrname, K key) {
-        IntervalTree<K> out = data.get(chrname);
+        IntervalIndex<K> out = tree(chrname);
         if (out == null) {
             IntervalTree<K> contents = new IntervalTree<>();
             contents.add(key);
             log.info("Added chromosome: " + chrname);
-            data.put(chrname, contents);
+            setIndex(chrname, contents);
+        } else if (out instanceof IntervalTree) {
+            ((IntervalTree<K>) out).add(key);
         } else {
-            out.add(key);
+            throw new UnsupportedOperationException("Search tree of " + chrname + " is read-only");
+        }
+    }
+
+    void setIndex(final ChrString chrname, final IntervalIndex<K> index) {
+        data.put(chrname, index);
+        final int id = chrname.intern().getId();
+        while (byId.size() <= id) {
+            byId.add(null);
         }
+        byId.set(id, index);
     }
 
     /**
@@ -85,7 +132,16 @@ public class chrSearchTree<K extends Interval1D> {
      */
 
     public boolean containsKey(final ChrString chr) {
-        return data.containsKey(chr);
+        return tree(chr) != null;
+    }
+
+    /**
+     * @return the tree of a chromosome, null if it has none
+     */
+    private IntervalIndex<K> tree(final ChrString chr) {
+        // names never interned have no tree, looking them up does not register them
+        final int id = chr.getId();
+        return id >= 0 && id < byId.size() ? byId.get(id) : null;
     }
 
     public Iterable<K> getOverlaps(ChrString chrname, Interval1D key) {
@@ -104,7 +160,7 @@ public class chrSearchTree<K extends Interval1D> {
      * @return All the values corresponding to the intervals overlapping the specified interval
      */
     public Iterable<K> getOverlaps(ChrString chrname, Interval1D key, double reciprocalRatio, int wiggle) {
-        IntervalTree<K> out = data.get(chrname);
+        IntervalIndex<K> out = tree(chrname);
         if (out == null) {
             return null;
         } else {
@@ -112,6 +168,22 @@ public class chrSearchTree<K extends Interval1D> {
         }
     }
 
+    /**
+     * Like getOverlaps, but passes the values to the visitor as they are found instead of collecting them
+     *
+     * @param chrname         Chromosome name as a string
+     * @param key             Interval to be searched for
+     * @param reciprocalRatio minimum reciprocal overlap required, 0 means minimum one position overlap
+     * @param wiggle          Amount the interval can be shifted
+     * @param visitor         called for each interval overlapping the specified interval
+     * @return false if the visitor stopped the search
+     */
+    public boolean forEachOverlap(ChrString chrname, Interval1D key, double reciprocalRatio, int wiggle,
+                                  IntervalVisitor<? super K> visitor) {
+        IntervalIndex<K> out = tree(chrname);
+        return out == null || out.forEachOverlap(key, reciprocalRatio, wiggle, visitor);
+    }
+
     public boolean contains(ChrString chrname, Interval1D key) {
         return contains(chrname, key, 0, 0);
     }
@@ -128,7 +200,7 @@ public class chrSearchTree<K extends Interval1D> {
      * @return Whether the specified interval is overlapped at all
      */
     public boolean contains(ChrString chrname, Interval1D key, double reciprocalRatio, int wiggle) {
-        IntervalTree<K> out = data.get(chrname);
+        IntervalIndex<K> out = tree(chrname);
         if (out == null) {
             return false;
         } else {
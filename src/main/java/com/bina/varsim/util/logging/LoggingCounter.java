@@ -11,7 +11,7 @@ public class LoggingCounter {
         this.maxWarnings =  maxWarnings;
     }
 
-    public boolean isCountLeftAndDecrement() {
+    public synchronized boolean isCountLeftAndDecrement() {
         if (this.countDown > 0) {
             this.countDown--;
             if (this.countDown == 0) {
@@ -0,0 +1,130 @@
+package com.bina.intervalTree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StaticIntervalIndexTest {
+
+    private static List<SimpleInterval1D> randomIntervals(Random r, int n, int maxLength) {
+        List<SimpleInterval1D> intervals = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            long left = r.nextInt(100000);
+            // includes zero-length intervals, as for insertions
+            intervals.add(new SimpleInterval1D(left, left + r.nextInt(maxLength) - 1));
+        }
+        return intervals;
+    }
+
+    private static List<SimpleInterval1D> bruteForce(List<SimpleInterval1D> intervals, Interval1D k, double ratio, int wiggle) {
+        List<SimpleInterval1D> found = new ArrayList<>();
+        for (SimpleInterval1D interval : intervals) {
+            if (interval.intersects(k, ratio, wiggle)) {
+                found.add(interval);
+            }
+        }
+        return found;
+    }
+
+    @Test
+    public void emptyTest() {
+        StaticIntervalIndex<SimpleInterval1D> index = new StaticIntervalIndex<>(Collections.<SimpleInterval1D>emptyList());
+        assertEquals(0, index.size());
+        assertTrue(index.getOverlaps(new SimpleInterval1D(1, 10)).isEmpty());
+        assertFalse(index.contains(new SimpleInterval1D(1, 10)));
+    }
+
+    /**
+     * every interval meeting the criteria is found, in sorted order
+     */
+    @Test
+    public void sameAsBruteForceTest() {
+        Random r = new Random(0);
+        for (int n : new int[]{1, 2, 3, 15, 16, 17, 1000, 5000}) {
+            List<SimpleInterval1D> intervals = randomIntervals(r, n, n > 100 ? 2000 : 50);
+            StaticIntervalIndex<SimpleInterval1D> index = new StaticIntervalIndex<>(intervals);
+            assertEquals(n, index.size());
+            for (int i = 0; i < 200; i++) {
+                long left = r.nextInt(100000);
+                SimpleInterval1D query = new SimpleInterval1D(left, left + r.nextInt(500));
+                double ratio = r.nextBoolean() ? 0 : r.nextDouble();
+                int wiggle = r.nextBoolean() ? 0 : r.nextInt(100);
+                List<SimpleInterval1D> expected = bruteForce(intervals, query, ratio, wiggle);
+                Collections.sort(expected);
+                assertEquals(expected, index.getOverlaps(query, ratio, wiggle));
+                assertEquals(!expected.isEmpty(), index.contains(query, ratio, wiggle));
+            }
+        }
+    }
+
+    /**
+     * without wiggle, the same intervals as IntervalTree are found
+     */
+    @Test
+    public void sameAsIntervalTreeTest() {
+        Random r = new Random(1);
+        List<SimpleInterval1D> intervals = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            intervals.add(new SimpleInterval1D(r, -100000, 100000));
+        }
+        IntervalTree<SimpleInterval1D> tree = new IntervalTree<>(intervals);
+        StaticIntervalIndex<SimpleInterval1D> index = new StaticIntervalIndex<>(intervals);
+        for (SimpleInterval1D interval : intervals) {
+            SimpleInterval1D query = new SimpleInterval1D(interval.getLeft(), interval.getLeft() + r.nextInt(1000));
+            assertEquals(new HashSet<>(tree.getOverlaps(query)), new HashSet<>(index.getOverlaps(query)));
+            assertEquals(new HashSet<>(tree.getOverlaps(query, 0.5)), new HashSet<>(index.getOverlaps(query, 0.5)));
+            assertTrue(index.contains(interval, 1));
+        }
+    }
+
+    /**
+     * duplicates are all kept, in the order they were given
+     */
+    @Test
+    public void duplicatesTest() {
+        List<ValueInterval1D<Integer>> intervals = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            intervals.add(new ValueInterval1D<>(100, 100, i));
+        }
+        StaticIntervalIndex<ValueInterval1D<Integer>> index = new StaticIntervalIndex<>(intervals);
+        List<ValueInterval1D<Integer>> found = index.getOverlaps(new SimpleInterval1D(99, 100));
+        assertEquals(20, found.size());
+        for (int i = 0; i < found.size(); i++) {
+            assertEquals(i, found.get(i).getContent().intValue());
+        }
+    }
+
+    /**
+     * the visitor sees the keys in the order of getOverlaps, and can stop the search
+     */
+    @Test
+    public void visitorTest() {
+        Random r = new Random(2);
+        List<SimpleInterval1D> intervals = randomIntervals(r, 2000, 2000);
+        List<IntervalIndex<SimpleInterval1D>> indexes = new ArrayList<>();
+        indexes.add(new StaticIntervalIndex<>(intervals));
+        indexes.add(new IntervalTree<>(intervals));
+        for (IntervalIndex<SimpleInterval1D> index : indexes) {
+            for (int i = 0; i < 200; i++) {
+                long left = r.nextInt(100000);
+                SimpleInterval1D query = new SimpleInterval1D(left, left + r.nextInt(500));
+                List<SimpleInterval1D> expected = index.getOverlaps(query, 0, 10);
+                List<SimpleInterval1D> visited = new ArrayList<>();
+                assertTrue(index.forEachOverlap(query, 0, 10, visited::add));
+                assertEquals(expected, visited);
+
+                List<SimpleInterval1D> first = new ArrayList<>();
+                assertEquals(expected.isEmpty(), index.forEachOverlap(query, 0, 10, key -> first.add(key) && false));
+                assertEquals(expected.isEmpty() ? expected : expected.subList(0, 1), first);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.bina.intervalTree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SweepLineIndexTest {
+
+    private static List<SimpleInterval1D> randomIntervals(Random r, int n, int maxLength) {
+        List<SimpleInterval1D> intervals = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            long left = r.nextInt(100000);
+            // includes zero-length intervals, as for insertions
+            intervals.add(new SimpleInterval1D(left, left + r.nextInt(maxLength) - 1));
+        }
+        return intervals;
+    }
+
+    private static List<SimpleInterval1D> randomQueries(Random r, int n) {
+        List<SimpleInterval1D> queries = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            long left = r.nextInt(100000);
+            queries.add(new SimpleInterval1D(left, left + r.nextInt(500)));
+        }
+        return queries;
+    }
+
+    @Test
+    public void emptyTest() {
+        SweepLineIndex<SimpleInterval1D> index = new SweepLineIndex<>(Collections.<SimpleInterval1D>emptyList());
+        assertEquals(0, index.size());
+        assertTrue(index.getOverlaps(new SimpleInterval1D(1, 10), 0, 0).isEmpty());
+        assertFalse(index.contains(new SimpleInterval1D(1, 10), 0, 0));
+    }
+
+    /**
+     * sorted queries, with varying wiggle and ratio, find the same intervals in the same order as the static index
+     */
+    @Test
+    public void sortedQueriesTest() {
+        Random r = new Random(0);
+        for (int n : new int[]{1, 2, 17, 1000, 5000}) {
+            List<SimpleInterval1D> intervals = randomIntervals(r, n, n > 100 ? 2000 : 50);
+            SweepLineIndex<SimpleInterval1D> sweep = new SweepLineIndex<>(intervals);
+            StaticIntervalIndex<SimpleInterval1D> index = new StaticIntervalIndex<>(intervals);
+            List<SimpleInterval1D> queries = randomQueries(r, 1000);
+            Collections.sort(queries);
+            for (SimpleInterval1D query : queries) {
+                double ratio = r.nextBoolean() ? 0 : r.nextDouble();
+                int wiggle = r.nextBoolean() ? 0 : r.nextInt(100);
+                assertEquals(index.getOverlaps(query, ratio, wiggle), sweep.getOverlaps(query, ratio, wiggle));
+            }
+        }
+    }
+
+    /**
+     * queries out of order step the sweep back and are still answered in full
+     */
+    @Test
+    public void unsortedQueriesTest() {
+        Random r = new Random(1);
+        List<SimpleInterval1D> intervals = randomIntervals(r, 5000, 2000);
+        SweepLineIndex<SimpleInterval1D> sweep = new SweepLineIndex<>(intervals);
+        StaticIntervalIndex<SimpleInterval1D> index = new StaticIntervalIndex<>(intervals);
+        for (SimpleInterval1D query : randomQueries(r, 2000)) {
+            assertEquals(index.getOverlaps(query, 0, 10), sweep.getOverlaps(query, 0, 10));
+            assertEquals(index.contains(query, 0.5, 0), sweep.contains(query, 0.5, 0));
+        }
+    }
+
+    /**
+     * long intervals are still found by queries stepping back past their start
+     */
+    @Test
+    public void longIntervalsTest() {
+        Random r = new Random(2);
+        List<SimpleInterval1D> intervals = randomIntervals(r, 5000, 200);
+        intervals.add(new SimpleInterval1D(100, 90000));
+        intervals.add(new SimpleInterval1D(30000, 60000));
+        SweepLineIndex<SimpleInterval1D> sweep = new SweepLineIndex<>(intervals);
+        StaticIntervalIndex<SimpleInterval1D> index = new StaticIntervalIndex<>(intervals);
+        for (long left = 0; left < 100000; left += 50) {
+            // mostly sorted, with small steps back
+            SimpleInterval1D query = new SimpleInterval1D(left - r.nextInt(300), left + r.nextInt(100));
+            assertEquals(index.getOverlaps(query, 0, 10), sweep.getOverlaps(query, 0, 10));
+        }
+    }
+}
@@ -2,7 +2,6 @@ package com.bina.varsim.tools.evaluation;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.ArrayUtils;
-import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -13,9 +12,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 
 import static com.bina.varsim.GlobalTestingOptions.updateVCF;
+import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
 
 /**
  * Created by guoy28 on 10/28/16.
@@ -28,8 +30,14 @@ public class VCFCompareTest {
     universalTestMethod(directory, new String[0]);
   }
   public void universalTestMethod(String directory, String[] additionalArgs) throws IOException {
+    universalTestMethod(directory, new File(directory, "truth.vcf").toString(), additionalArgs);
+  }
+
+  /**
+   * @param truthVcf truth VCF or truth set to compare to, in place of the one in directory
+   */
+  public void universalTestMethod(String directory, String truthVcf, String[] additionalArgs) throws IOException {
     File wd = tmpFolder.newFolder("tmp");
-    String truthVcf = new File(directory, "truth.vcf").toString();
     String vcfForCompare = new File(directory, "compare.vcf").toString();
     String expectedFalseNegative = new File(directory, "test_FN.vcf").toString();
     String expectedFalsePositive = new File(directory, "test_FP.vcf").toString();
@@ -314,14 +322,22 @@ public class VCFCompareTest {
   public void sameLociSameInsertSeq() throws IOException {
     universalTestMethod("src/test/resources/validationTest/sameLociSameInsertSeq");
   }
+  /**
+   * 2 DELs in truth at the same position, both within -over of the DEL in compare, which pairs with the
+   * shorter one: true variants are found sorted by start then end, not in the order of the truth VCF
+   * @throws IOException
+   */
+  @Test
+  public void sameLociDifferentLengthTest() throws IOException {
+    universalTestMethod("src/test/resources/validationTest/sameLociDifferentLengthTest", new String[]{"-wig", "10","-over","0.5","-output_distance_metric"});
+  }
   /**
    * 1 DEL in TP, 2 DEL in compare, length the same, distance 30bp,10bp, respectively
    * wiggle=50bp, both DEL in compare can match, but we only match the closest one
    */
   @Test
-  @Ignore public void distanceMultipleMatchingTest() throws IOException {
-    //disabled until global matching is implemented
-    universalTestMethod("src/test/resources/validationTest/distanceMetricTests/multipleMatchingDistance", new String[]{"-wig", "50","-over","0.7","-output_distance_metric"});
+  public void distanceMultipleMatchingTest() throws IOException {
+    universalTestMethod("src/test/resources/validationTest/distanceMetricTests/multipleMatchingDistance", new String[]{"-wig", "50","-over","0.7","-output_distance_metric", "-global_matching"});
   }
   /**
    * complex variant
@@ -347,4 +363,164 @@ public class VCFCompareTest {
   public void complexVariantNoPartialMatchingTest2() throws IOException {
     universalTestMethod("src/test/resources/validationTest/complexVariantTests/noPartialMatchingTest2", new String[]{"-disallow_partial_fp"});
   }
+
+  /**
+   * write the truth set of a truth VCF with prepare_truth
+   * @param truthSetArgs options of prepare_truth
+   * @return the truth set
+   */
+  public String prepareTruth(String truthVcf, String truthSet, String[] truthSetArgs) throws IOException {
+    String[] args = new String[]{"-true_vcf", truthVcf};
+    if (truthSet != null) {
+      args = ArrayUtils.addAll(args, "-out", truthSet);
+    }
+    PrepareTruth.main(ArrayUtils.addAll(args, truthSetArgs));
+    return truthSet == null ? truthVcf + TruthSet.EXTENSION : truthSet;
+  }
+
+  /**
+   * truth set passed as -true_vcf gives the same results as the truth VCF
+   * TRAID-linked truth variants are composite variants
+   * @throws IOException
+   */
+  @Test
+  public void truthSetTest() throws IOException {
+    String directory = "src/test/resources/validationTest/canonicalizationTest1";
+    String truthSet = prepareTruth(new File(directory, "truth.vcf").toString(),
+            new File(tmpFolder.getRoot(), "truth.vcf" + TruthSet.EXTENSION).toString(), new String[0]);
+    universalTestMethod(directory, truthSet, new String[0]);
+  }
+
+  @Test
+  public void truthSetBreakendTest() throws IOException {
+    String directory = "src/test/resources/validationTest/breakendTests/nonreciprocalBalancedWithLargeWiggle";
+    String truthSet = prepareTruth(new File(directory, "truth.vcf").toString(),
+            new File(tmpFolder.getRoot(), "truth.vcf" + TruthSet.EXTENSION).toString(), new String[0]);
+    universalTestMethod(directory, truthSet, new String[]{"-wig", "10"});
+  }
+
+  /**
+   * truth set built with the -over of the comparison
+   * @throws IOException
+   */
+  @Test
+  public void truthSetDistanceTest() throws IOException {
+    String directory = "src/test/resources/validationTest/distanceMetricTests/insDistance";
+    String truthSet = prepareTruth(new File(directory, "truth.vcf").toString(),
+            new File(tmpFolder.getRoot(), "truth.vcf" + TruthSet.EXTENSION).toString(), new String[]{"-over", "0.5"});
+    universalTestMethod(directory, truthSet, new String[]{"-wig", "150","-over","0.5","-output_distance_metric"});
+  }
+
+  /**
+   * truth set built with another -over, the truth VCF it was built from is parsed instead
+   * @throws IOException
+   */
+  @Test
+  public void incompatibleTruthSetTest() throws IOException {
+    String directory = "src/test/resources/validationTest/distanceMetricTests/insDistance";
+    String truthSet = prepareTruth(new File(directory, "truth.vcf").toString(),
+            new File(tmpFolder.getRoot(), "truth.vcf" + TruthSet.EXTENSION).toString(), new String[0]);
+    universalTestMethod(directory, truthSet, new String[]{"-wig", "150","-over","0.5","-output_distance_metric"});
+  }
+
+  /**
+   * truth set at the default location next to the truth VCF is picked up
+   * @throws IOException
+   */
+  @Test
+  public void defaultTruthSetTest() throws IOException {
+    String directory = "src/test/resources/validationTest/complexVariantTests/noPartialMatchingTest";
+    Path truthVcf = Paths.get(tmpFolder.getRoot().getCanonicalPath(), "truth.vcf");
+    Files.copy(Paths.get(directory, "truth.vcf"), truthVcf);
+    String truthSet = prepareTruth(truthVcf.toString(), null, new String[0]);
+    assertTrue(TruthSet.read(Paths.get(truthSet)).isUpToDate(truthVcf));
+    universalTestMethod(directory, truthVcf.toString(), new String[]{"-disallow_partial_fp"});
+  }
+
+  /**
+   * truncated truth set next to the truth VCF, the truth VCF is parsed instead
+   * @throws IOException
+   */
+  @Test
+  public void truncatedTruthSetTest() throws IOException {
+    String directory = "src/test/resources/validationTest/complexVariantTests/noPartialMatchingTest";
+    Path truthVcf = Paths.get(tmpFolder.getRoot().getCanonicalPath(), "truth.vcf");
+    Files.copy(Paths.get(directory, "truth.vcf"), truthVcf);
+    Path truthSet = Paths.get(prepareTruth(truthVcf.toString(), null, new String[0]));
+    byte[] content = Files.readAllBytes(truthSet);
+    for (int length = 8; length < content.length; length += 7) {
+      Files.write(truthSet, Arrays.copyOf(content, length));
+      try {
+        TruthSet.read(truthSet);
+        fail("read a truth set truncated to " + length + " bytes");
+      } catch (IOException | IllegalArgumentException e) {
+        // expected
+      }
+    }
+    Files.write(truthSet, Arrays.copyOf(content, content.length / 2));
+    universalTestMethod(directory, truthVcf.toString(), new String[]{"-disallow_partial_fp"});
+  }
+
+  /**
+   * truth set passed as -true_vcf whose truth VCF changed after it was built, the truth VCF is parsed instead
+   * @throws IOException
+   */
+  @Test
+  public void staleTruthSetTest() throws IOException {
+    String directory = "src/test/resources/validationTest/complexVariantTests/noPartialMatchingTest";
+    Path truthVcf = Paths.get(tmpFolder.getRoot().getCanonicalPath(), "truth.vcf");
+    Files.copy(Paths.get("src/test/resources/validationTest/distanceMetricTests/insDistance", "truth.vcf"), truthVcf);
+    String truthSet = prepareTruth(truthVcf.toString(),
+            new File(tmpFolder.getRoot(), "stale" + TruthSet.EXTENSION).toString(), new String[0]);
+    Files.copy(Paths.get(directory, "truth.vcf"), truthVcf, StandardCopyOption.REPLACE_EXISTING);
+    assertFalse(TruthSet.read(Paths.get(truthSet)).isUpToDate(truthVcf));
+    universalTestMethod(directory, truthSet, new String[]{"-disallow_partial_fp"});
+  }
+
+  /**
+   * sweeping through the truth finds the same matches as the index
+   * @throws IOException
+   */
+  @Test
+  public void sweepTest() throws IOException {
+    universalTestMethod("src/test/resources/validationTest/canonicalizationTest1", new String[]{"-sweep"});
+  }
+
+  @Test
+  public void sweepWiggleTest() throws IOException {
+    universalTestMethod("src/test/resources/validationTest/breakendTests/nonreciprocalWithDifferentOrientationsAndLargeWiggle", new String[]{"-wig", "100", "-sweep"});
+  }
+
+  /**
+   * 2 DEL in truth, 2 DEL in compare, overlap ratio 0.5
+   * the first DEL in compare matches both true DELs, the second only the first one,
+   * so only global matching pairs both of them
+   */
+  @Test
+  public void globalMatchingTest() throws IOException {
+    universalTestMethod("src/test/resources/validationTest/globalMatchingTest", new String[]{"-over", "0.5", "-global_matching"});
+  }
+
+  /**
+   * 3 DEL in truth, 3 DEL in compare, overlap ratio 0.3
+   * the candidate pairs form an alternating chain of weak and strong pairs,
+   * pairing the 2 strong ones leaves 1 FP and 1 FN, all 3 are paired through the weak ones
+   */
+  @Test
+  public void globalMatchingChainTest() throws IOException {
+    universalTestMethod("src/test/resources/validationTest/globalMatchingChainTest", new String[]{"-over", "0.3", "-global_matching"});
+  }
+
+  /**
+   * -match_threads below 1 is a usage error, nothing is compared
+   */
+  @Test
+  public void invalidMatchThreadsTest() throws IOException {
+    String directory = "src/test/resources/validationTest/globalMatchingTest";
+    File wd = tmpFolder.newFolder("tmp");
+    VCFcompare.main(new String[]{"-true_vcf", new File(directory, "truth.vcf").toString(),
+            "-prefix", new File(wd, "test").toString(), "-global_matching", "-match_threads", "0",
+            new File(directory, "compare.vcf").toString()});
+    assertFalse(new File(wd, "test_TP.vcf").exists());
+  }
 }
@@ -0,0 +1,59 @@
+package com.bina.varsim.types;
+
+import com.bina.intervalTree.SimpleInterval1D;
+import com.bina.varsim.util.chrSearchTree;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ChrStringTest {
+    @Test
+    public void internTest() {
+        final ChrString chr = ChrString.valueOf("internTest1");
+        assertSame(chr, ChrString.valueOf("internTest1"));
+        assertSame(chr, new ChrString("internTest1").intern());
+        assertSame(chr, ChrString.byId(chr.getId()));
+        assertEquals(chr.getId(), new ChrString("internTest1").getId());
+        assertEquals(chr, new ChrString("internTest1"));
+        assertEquals(new ChrString("internTest1"), chr);
+
+        final ChrString other = ChrString.valueOf("internTest2");
+        assertNotEquals(chr.getId(), other.getId());
+        assertNotEquals(chr, other);
+        assertTrue(chr.getId() < ChrString.getNumIds() && other.getId() < ChrString.getNumIds());
+    }
+
+    @Test
+    public void sexChromosomeTest() {
+        assertTrue(ChrString.valueOf("chrX").isX());
+        assertTrue(new ChrString("X_100_200").isX());
+        assertTrue(ChrString.valueOf("Y").isY());
+        assertTrue(ChrString.valueOf("chrM").isMT());
+        assertTrue(new ChrString("MT_1_5").isMT());
+        final ChrString autosome = ChrString.valueOf("chr1");
+        assertFalse(autosome.isX() || autosome.isY() || autosome.isMT());
+        assertTrue(ChrString.valueOf("MT").isHaploid(GenderType.FEMALE));
+        assertTrue(ChrString.valueOf("X").isHaploid(GenderType.MALE));
+        assertFalse(ChrString.valueOf("X").isHaploid(GenderType.FEMALE));
+    }
+
+    @Test
+    public void searchTreeTest() {
+        final chrSearchTree<SimpleInterval1D> tree = new chrSearchTree<>();
+        tree.put(new ChrString("searchTree1"), new SimpleInterval1D(10, 20));
+        assertTrue(tree.containsKey(ChrString.valueOf("searchTree1")));
+        assertTrue(tree.contains(new ChrString("searchTree1"), new SimpleInterval1D(15, 15)));
+        assertFalse(tree.containsKey(ChrString.valueOf("searchTree2")));
+        assertFalse(tree.contains(new ChrString("searchTree2"), new SimpleInterval1D(15, 15)));
+
+        // names only looked up are not registered
+        final int numIds = ChrString.getNumIds();
+        assertFalse(tree.contains(new ChrString("searchTreeUnknown"), new SimpleInterval1D(15, 15)));
+        assertEquals(-1, new ChrString("searchTreeUnknown").getId());
+        assertEquals(numIds, ChrString.getNumIds());
+    }
+}
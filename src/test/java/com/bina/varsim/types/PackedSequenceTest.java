@@ -0,0 +1,51 @@
+package com.bina.varsim.types;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * checks that packing a sequence does not change what is read back
+ */
+public class PackedSequenceTest {
+    private static final byte[] BASES = "NNACGTacgtnnRYACGTNnkmACGTTTTTGGGGCCCCAAAAacgNNNN".getBytes();
+
+    @Test
+    public void roundTripTest() {
+        Sequence plain = new Sequence("chr1 test", BASES, BASES.length);
+        PackedSequence packed = PackedSequence.pack("chr1 test", BASES, BASES.length);
+        assertEquals("chr1", packed.getName());
+        assertEquals(plain.length(), packed.length());
+        for (int i = 1; i <= BASES.length; i++) {
+            assertEquals("position " + i, plain.byteAt(i), packed.byteAt(i));
+        }
+        for (int from = 1; from <= BASES.length; from++) {
+            for (int to = from; to <= BASES.length + 1; to++) {
+                assertArrayEquals(plain.subSeq(from, to), packed.subSeq(from, to));
+                assertArrayEquals(plain.revComp(from, to), packed.revComp(from, to));
+                assertEquals(plain.getNumNonNBases(from - 1, to - 1), packed.getNumNonNBases(from - 1, to - 1));
+            }
+        }
+        assertEquals(plain.getNumNonNBases(), packed.getNumNonNBases());
+    }
+
+    @Test
+    public void randomSequenceTest() {
+        Random random = new Random(7);
+        byte[] alphabet = "ACGTNacgtnR".getBytes();
+        byte[] bases = new byte[10007];
+        for (int i = 0; i < bases.length; i++) {
+            // mostly runs, so the run tables get exercised
+            bases[i] = i > 0 && random.nextInt(10) > 0 ? bases[i - 1] : alphabet[random.nextInt(alphabet.length)];
+        }
+        Sequence plain = new Sequence("r", bases, bases.length);
+        PackedSequence packed = PackedSequence.pack("r", bases, bases.length);
+        assertArrayEquals(plain.subSeq(1, bases.length + 1), packed.subSeq(1, bases.length + 1));
+        assertArrayEquals(plain.subSeq(4001, 4099), packed.subSeq(4001, 4099));
+        assertEquals(plain.getNumNonNBases(), packed.getNumNonNBases());
+        assertEquals(plain.getNumNonNBases(17, 9000), packed.getNumNonNBases(17, 9000));
+    }
+}
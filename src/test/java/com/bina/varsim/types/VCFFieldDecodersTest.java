@@ -0,0 +1,52 @@
+package com.bina.varsim.types;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * checks that INFO and FORMAT types follow the VCF header
+ */
+public class VCFFieldDecodersTest {
+    @Test
+    public void headerTypesTest() {
+        VCFFieldDecoders decoders = new VCFFieldDecoders();
+        assertTrue(decoders.addHeaderLine("##INFO=<ID=AF,Number=A,Type=Float,Description=\"Allele frequency, Type=String\">"));
+        assertTrue(decoders.addHeaderLine("##INFO=<ID=SOMATIC,Number=0,Type=Flag,Description=\"Somatic\">"));
+        assertTrue(decoders.addHeaderLine("##INFO=<ID=DP,Number=1,Type=String,Description=\"Overridden\">"));
+        assertTrue(decoders.addHeaderLine("##FORMAT=<ID=CN,Number=1,Type=Integer,Description=\"Copy number\">"));
+        assertFalse(decoders.addHeaderLine("##ALT=<ID=DEL,Description=\"Deletion\">"));
+
+        assertEquals(VCFFieldDecoders.Decoder.FLOAT, decoders.getInfoDecoder("AF"));
+        assertEquals(VCFFieldDecoders.Decoder.FLAG, decoders.getInfoDecoder("SOMATIC"));
+        assertEquals(VCFFieldDecoders.Decoder.STRING, decoders.getInfoDecoder("DP"));
+        // keys that are not declared keep the built-in types
+        assertEquals(VCFFieldDecoders.Decoder.INTEGER, decoders.getInfoDecoder("SVLEN"));
+        assertEquals(VCFFieldDecoders.Decoder.STRING, decoders.getInfoDecoder("UNKNOWN"));
+
+        VCFInfo info = new VCFInfo("AF=0.5,0.25;DP=12;SVLEN=-3", decoders);
+        assertArrayEquals(new double[]{0.5, 0.25}, info.getValue("AF", double[].class), 0);
+        assertArrayEquals(new String[]{"12"}, info.getValue("DP", String[].class));
+        assertArrayEquals(new int[]{-3}, info.getValue("SVLEN", int[].class));
+    }
+
+    @Test
+    public void formatLayoutTest() {
+        VCFFieldDecoders decoders = new VCFFieldDecoders();
+        decoders.addHeaderLine("##FORMAT=<ID=CN,Number=1,Type=Integer,Description=\"Copy number\">");
+        VCFFieldDecoders.FormatLayout layout = decoders.getFormatLayout("GT:DP:CN");
+        assertEquals(0, layout.indexOf("GT"));
+        assertEquals(2, layout.indexOf("CN"));
+        assertEquals(-1, layout.indexOf("GQ"));
+        assertEquals(VCFFieldDecoders.Decoder.INTEGER, layout.getDecoder(2));
+        assertEquals(VCFFieldDecoders.Decoder.STRING, layout.getDecoder(0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void defaultIsReadOnlyTest() {
+        VCFFieldDecoders.DEFAULT.addHeaderLine("##INFO=<ID=SVLEN,Number=.,Type=String,Description=\"x\">");
+    }
+}
@@ -5,6 +5,9 @@ import org.junit.Test;
 import java.util.List;
 
 import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * Created by guoy28 on 10/7/16.
@@ -22,4 +25,17 @@ public class VCFInfoTest {
             System.out.println(e.getMessage());
         }
     }
+
+    @Test
+    public void lazyLookupTest() throws Exception {
+        VCFInfo test = new VCFInfo("SVLENGTH=7;;ISINV;SVLEN=-3,4;END=;TRAID=a,b");
+        // a key that is a prefix of another key is not confused with it
+        assertArrayEquals(new int[]{-3, 4}, test.getValue("SVLEN", int[].class));
+        assertArrayEquals(new int[]{-3, 4}, test.getValue("SVLEN", int[].class));
+        assertEquals(Boolean.TRUE, test.getValue("ISINV", Boolean.class));
+        assertEquals(Boolean.TRUE, test.getValue("END", Boolean.class));
+        assertArrayEquals(new String[]{"a", "b"}, test.getValue("TRAID", String[].class));
+        assertNull(test.getValue("POS2", int[].class));
+        assertNull(test.getValue("SVLE", int[].class));
+    }
 }
@@ -0,0 +1,95 @@
+package com.bina.varsim.types.variant;
+
+import com.bina.varsim.util.VCFparser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PackedVariantListTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<Variant> readVariants() throws IOException {
+        final File vcf = folder.newFile("packed.vcf");
+        try (PrintWriter writer = new PrintWriter(vcf)) {
+            writer.println("##fileformat=VCFv4.1");
+            writer.println("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\ttest");
+            writer.println("2\t300\trs1\tA\tT\t50\tPASS\tDP=10\tGT\t0|1");
+            writer.println("1\t200\t.\tAC\tA\t.\tPASS\t.\tGT\t1/1");
+            writer.println("1\t100\t.\tA\tAGGT\t.\tq10\tAC=1;AN=2\tGT\t1|0");
+            writer.println("1\t400\t.\tN\t<DEL>\t.\tPASS\tSVTYPE=DEL;SVLEN=-100;END=500\tGT\t0|1");
+            writer.println("1\t150\t.\tG\tC\t.\tPASS\t.\tGT\t1|1");
+            writer.println("2\t100\t.\tA\tT,C\t.\tPASS\t.\tGT\t1|2");
+        }
+        final List<Variant> variants = new ArrayList<>();
+        final VCFparser parser = new VCFparser(vcf, "test", false);
+        while (parser.hasMoreInput()) {
+            final Variant variant = parser.parseLine();
+            if (variant != null) {
+                variants.add(variant);
+            }
+        }
+        return variants;
+    }
+
+    @Test
+    public void sameVariantsTest() throws IOException {
+        final List<Variant> variants = readVariants();
+        final PackedVariantList packed = new PackedVariantList();
+        packed.addAll(variants);
+        assertEquals(variants.size(), packed.size());
+        // the symbolic deletion and the multi-allelic SNV are stored as they are
+        assertEquals(2, packed.getNumUnpacked());
+        for (int i = 0; i < variants.size(); i++) {
+            final Variant variant = packed.get(i);
+            assertEquals(variants.get(i).toString(), variant.toString());
+            assertEquals(variants.get(i).isPhased(), variant.isPhased());
+            assertEquals(variants.get(i).getReferenceAlleleLength(), variant.getReferenceAlleleLength());
+        }
+    }
+
+    @Test
+    public void sortTest() throws IOException {
+        final List<Variant> variants = readVariants();
+        final PackedVariantList packed = new PackedVariantList();
+        packed.addAll(variants);
+        Collections.sort(variants);
+        Collections.sort(packed);
+        for (int i = 0; i < variants.size(); i++) {
+            assertEquals(variants.get(i).toString(), packed.get(i).toString());
+        }
+    }
+
+    @Test
+    public void setTest() throws IOException {
+        final List<Variant> variants = readVariants();
+        final PackedVariantList packed = new PackedVariantList();
+        packed.addAll(variants);
+        // changes to a rebuilt variant only stick once it is set back
+        final Variant variant = packed.get(1);
+        variant.setPhased(true);
+        assertFalse(packed.get(1).isPhased());
+        packed.set(1, variant);
+        assertTrue(packed.get(1).isPhased());
+
+        // a packed row can take a variant that is not packable and back
+        packed.set(0, variants.get(3));
+        assertSame(variants.get(3), packed.get(0));
+        assertEquals(3, packed.getNumUnpacked());
+        packed.set(0, variants.get(0));
+        assertEquals(variants.get(0).toString(), packed.get(0).toString());
+        assertEquals(2, packed.getNumUnpacked());
+    }
+}
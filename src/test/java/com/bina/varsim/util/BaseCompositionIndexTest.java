@@ -0,0 +1,89 @@
+package com.bina.varsim.util;
+
+import com.bina.varsim.types.ChrString;
+import com.bina.varsim.types.Sequence;
+import htsjdk.samtools.reference.FastaSequenceIndexCreator;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * checks the index against counting the bases directly
+ */
+public class BaseCompositionIndexTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void matchesSequenceTest() throws IOException {
+        Random random = new Random(11);
+        byte[] alphabet = "ACGTNacgtn".getBytes();
+        byte[] bases = new byte[5000];
+        for (int i = 0; i < bases.length; i++) {
+            bases[i] = i > 0 && random.nextInt(8) > 0 ? bases[i - 1] : alphabet[random.nextInt(alphabet.length)];
+        }
+        File f = tmpFolder.newFile("reference.fa");
+        FileUtils.writeStringToFile(f, ">chr1\n" + new String(bases) + "\n");
+        Path fasta = f.toPath();
+        FastaSequenceIndexCreator.create(fasta, false);
+
+        BaseCompositionIndex index = BaseCompositionIndex.loadOrBuild(fasta);
+        assertTrue(Files.exists(Paths.get(fasta + BaseCompositionIndex.EXTENSION)));
+        // second time round the sidecar is read back
+        BaseCompositionIndex reread = BaseCompositionIndex.loadOrBuild(fasta);
+
+        ChrString chr1 = new ChrString("chr1");
+        Sequence sequence = new Sequence("chr1", bases, bases.length);
+        assertEquals(sequence.getNumNonNBases(), reread.getNumNonNBases(chr1));
+        for (int trial = 0; trial < 200; trial++) {
+            int start = random.nextInt(bases.length);
+            int end = start + random.nextInt(bases.length - start + 1);
+            int lower = 0;
+            int gc = 0;
+            for (int i = start; i < end; i++) {
+                if (Character.isLowerCase(bases[i])) lower++;
+                if ("GCgc".indexOf(bases[i]) >= 0) gc++;
+            }
+            assertEquals(sequence.getNumNonNBases(start, end), index.getNumNonNBases(chr1, start, end));
+            assertEquals(sequence.getNumNonNBases(start, end), reread.getNumNonNBases(chr1, start, end));
+            assertEquals(lower, reread.getNumLowercaseBases(chr1, start, end));
+            assertEquals(gc, reread.getGCCount(chr1, start, end, sequence));
+        }
+    }
+
+    /**
+     * a truncated sidecar is rebuilt instead of failing the read
+     */
+    @Test
+    public void truncatedSidecarTest() throws IOException {
+        File f = tmpFolder.newFile("reference.fa");
+        FileUtils.writeStringToFile(f, ">chr1\nACGTNNNNacgtGGCC\n>chr2\nNNNNAAAA\n");
+        Path fasta = f.toPath();
+        FastaSequenceIndexCreator.create(fasta, false);
+        BaseCompositionIndex.loadOrBuild(fasta);
+        Path sidecar = Paths.get(fasta + BaseCompositionIndex.EXTENSION);
+        long size = Files.size(sidecar);
+        for (long length : new long[]{size - 1, size / 2, 21, 5, 0}) {
+            try (FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+            BaseCompositionIndex index = BaseCompositionIndex.loadOrBuild(fasta);
+            assertEquals(12, index.getNumNonNBases(new ChrString("chr1")));
+            assertEquals(4, index.getNumNonNBases(new ChrString("chr2")));
+            assertEquals(size, Files.size(sidecar));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.bina.varsim.util;
+
+import com.bina.varsim.types.ChrString;
+import com.bina.varsim.types.Sequence;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * checks eviction order and counters of the contig cache
+ */
+public class ContigCacheTest {
+    private static Sequence contig(final String name, final int length) {
+        return new Sequence(name, new byte[length], length);
+    }
+
+    @Test
+    public void lruEvictionTest() {
+        ContigCache cache = new ContigCache(25);
+        ChrString chr1 = new ChrString("1");
+        ChrString chr2 = new ChrString("2");
+        ChrString chr3 = new ChrString("3");
+
+        assertNull(cache.get(chr1));
+        cache.put(chr1, contig("1", 10));
+        cache.put(chr2, contig("2", 10));
+        // touching 1 makes 2 the least recently used
+        assertEquals(10, cache.get(chr1).length());
+        cache.put(chr3, contig("3", 10));
+
+        assertTrue(cache.contains(chr1));
+        assertFalse(cache.contains(chr2));
+        assertTrue(cache.contains(chr3));
+        assertEquals(20, cache.getBytes());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void oversizedContigTest() {
+        ContigCache cache = new ContigCache(5);
+        ChrString chr1 = new ChrString("1");
+        ChrString chr2 = new ChrString("2");
+        cache.put(chr1, contig("1", 10));
+        // the contig just loaded stays even though it is over budget
+        assertTrue(cache.contains(chr1));
+        cache.put(chr2, contig("2", 10));
+        assertFalse(cache.contains(chr1));
+        assertTrue(cache.contains(chr2));
+        cache.setBudget(0);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+}
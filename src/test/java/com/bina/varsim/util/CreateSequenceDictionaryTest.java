@@ -0,0 +1,54 @@
+package com.bina.varsim.util;
+
+import htsjdk.samtools.reference.FastaSequenceIndexCreator;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * checks that the parallel dictionary is byte-identical to the serial one
+ */
+public class CreateSequenceDictionaryTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void parallelMatchesSerialTest() throws IOException {
+        Random random = new Random(3);
+        StringBuilder fasta = new StringBuilder();
+        for (int contig = 0; contig < 40; contig++) {
+            fasta.append(">contig").append(contig).append(" description\n");
+            int length = 1 + random.nextInt(500);
+            for (int i = 0; i < length; i++) {
+                fasta.append("ACGTNacgtn".charAt(random.nextInt(10)));
+                if (i % 60 == 59) {
+                    fasta.append('\n');
+                }
+            }
+            fasta.append('\n');
+        }
+        File reference = tmpFolder.newFile("reference.fa");
+        FileUtils.writeStringToFile(reference, fasta.toString());
+        File dictionary = new File(tmpFolder.getRoot(), "reference.dict");
+
+        new CreateSequenceDictionary(reference.getPath(), 1);
+        String serial = FileUtils.readFileToString(dictionary);
+        dictionary.delete();
+
+        FastaSequenceIndexCreator.create(reference.toPath(), false);
+        new CreateSequenceDictionary(reference.getPath(), 4);
+        assertEquals(serial, FileUtils.readFileToString(dictionary));
+        dictionary.delete();
+
+        // contigs hashed a few bases at a time, across line ends
+        new CreateSequenceDictionary(reference.getPath(), 4, 7);
+        assertEquals(serial, FileUtils.readFileToString(dictionary));
+    }
+}
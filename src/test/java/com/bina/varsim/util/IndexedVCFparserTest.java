@@ -0,0 +1,213 @@
+package com.bina.varsim.util;
+
+import com.bina.intervalTree.SimpleInterval1D;
+import com.bina.varsim.types.variant.Variant;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.variant.vcf.VCFCodec;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IndexedVCFparserTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File vcf;
+    private File tbi;
+
+    @Before
+    public void setup() throws IOException {
+        vcf = folder.newFile("indexed.vcf.gz");
+        try (PrintWriter writer = new PrintWriter(new BlockCompressedOutputStream(vcf))) {
+            writer.println("##fileformat=VCFv4.1");
+            writer.println("##INFO=<ID=END,Number=1,Type=Integer,Description=\"End position\">");
+            writer.println("##INFO=<ID=SVLEN,Number=.,Type=Integer,Description=\"Length of variant\">");
+            writer.println("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">");
+            writer.println("##contig=<ID=1,length=1000000>");
+            writer.println("##contig=<ID=2,length=1000000>");
+            writer.println("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tsample");
+            for (final String chr : new String[]{"1", "2"}) {
+                for (int pos = 10; pos <= 400000; pos += 20) {
+                    if (pos % 1000 == 10) {
+                        writer.println(chr + "\t" + pos + "\t.\tACGTACGTAC\tA\t.\tPASS\t.\tGT\t0|1");
+                    } else {
+                        writer.println(chr + "\t" + pos + "\t.\tA\tT\t.\tPASS\t.\tGT\t1|0");
+                    }
+                }
+            }
+        }
+        final Index index = IndexFactory.createTabixIndex(vcf, new VCFCodec(), TabixFormat.VCF, null);
+        tbi = new File(vcf.getPath() + ".tbi");
+        index.write(tbi);
+    }
+
+    private static List<String> readAll(final GzFileParser<Variant> parser) {
+        final List<String> variants = new ArrayList<>();
+        while (parser.hasMoreInput()) {
+            final Variant variant = parser.parseLine();
+            if (variant != null) {
+                variants.add(variant.getChr() + ":" + variant.getPos() + ":" + variant);
+            }
+        }
+        return variants;
+    }
+
+    /**
+     * @return the variants of the whole file that overlap the regions
+     */
+    private List<String> expected(final Map<String, List<SimpleInterval1D>> regions) {
+        final List<String> variants = new ArrayList<>();
+        final VCFparser parser = new VCFparser(vcf.getPath(), null, false);
+        while (parser.hasMoreInput()) {
+            final Variant variant = parser.parseLine();
+            if (variant == null || !regions.containsKey(variant.getChr().toString())) {
+                continue;
+            }
+            // the deletions are stored one base after POS
+            final int reference = variant.getReference().length;
+            final long start = reference > 0 ? variant.getPos() - 1 : variant.getPos();
+            final long end = reference > 0 ? variant.getPos() + reference - 1 : variant.getPos();
+            for (final SimpleInterval1D region : regions.get(variant.getChr().toString())) {
+                if (region.getLeft() <= end && region.getRight() >= start) {
+                    variants.add(variant.getChr() + ":" + variant.getPos() + ":" + variant);
+                    break;
+                }
+            }
+        }
+        return variants;
+    }
+
+    private Map<String, List<SimpleInterval1D>> regions() {
+        final Map<String, List<SimpleInterval1D>> regions = new LinkedHashMap<>();
+        // overlapping regions are merged, a deletion starting before a region is found
+        regions.put("2", Arrays.asList(new SimpleInterval1D(300005, 300100), new SimpleInterval1D(5, 12),
+                new SimpleInterval1D(300050, 300200), new SimpleInterval1D(351015, 351016)));
+        regions.put("1", Collections.singletonList(new SimpleInterval1D(200000, 200059)));
+        regions.put("3", Collections.singletonList(new SimpleInterval1D(1, 1000)));
+        return regions;
+    }
+
+    @Test
+    public void tabixRegionsTest() throws IOException {
+        final Map<String, List<SimpleInterval1D>> regions = regions();
+        final List<String> expected = expected(regions);
+        final List<String> actual = readAll(new IndexedVCFparser(vcf.getPath(), null, false, null, false, regions));
+        assertEquals(expected, actual);
+        // file order, not region order
+        assertTrue(actual.get(0).startsWith("1:"));
+        assertEquals(3 + 1 + 10 + 1, actual.size());
+    }
+
+    @Test
+    public void wholeSequenceTest() throws IOException {
+        final Map<String, List<SimpleInterval1D>> regions = IndexedVCFparser.wholeSequences(Collections.singletonList("2"));
+        final List<String> actual = readAll(new IndexedVCFparser(vcf.getPath(), null, false, null, false, regions));
+        assertEquals(20000, actual.size());
+        assertEquals(expected(regions), actual);
+    }
+
+    @Test
+    public void csiRegionsTest() throws IOException {
+        writeCsiFromTbi();
+        assertTrue(tbi.delete());
+        assertTrue(IndexedVCFparser.isIndexed(vcf.getPath()));
+        final Map<String, List<SimpleInterval1D>> regions = regions();
+        assertEquals(expected(regions), readAll(new IndexedVCFparser(vcf.getPath(), null, false, null, false, regions)));
+    }
+
+    @Test
+    public void notIndexedTest() throws IOException {
+        assertTrue(tbi.delete());
+        assertFalse(IndexedVCFparser.isIndexed(vcf.getPath()));
+    }
+
+    /**
+     * Rewrites the tabix index in the CSI format, with the same binning (14 bit windows, 5 levels)
+     */
+    private void writeCsiFromTbi() throws IOException {
+        final ByteBuffer in;
+        try (InputStream stream = new BlockCompressedInputStream(tbi)) {
+            in = ByteBuffer.wrap(IOUtils.toByteArray(stream)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        final ByteBuffer out = ByteBuffer.allocate(2 * in.capacity() + 1024).order(ByteOrder.LITTLE_ENDIAN);
+        in.position(4);
+        final int numReferences = in.getInt();
+        final int[] header = new int[7];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = in.getInt();
+        }
+        final byte[] names = new byte[header[6]];
+        in.get(names);
+        out.put(new byte[]{'C', 'S', 'I', 1}).putInt(14).putInt(5).putInt(7 * 4 + names.length);
+        for (final int value : header) {
+            out.putInt(value);
+        }
+        out.put(names).putInt(numReferences);
+        for (int r = 0; r < numReferences; r++) {
+            final int numBins = in.getInt();
+            final Map<Integer, long[]> bins = new HashMap<>();
+            for (int b = 0; b < numBins; b++) {
+                final int bin = in.getInt();
+                final long[] chunks = new long[2 * in.getInt()];
+                for (int i = 0; i < chunks.length; i++) {
+                    chunks[i] = in.getLong();
+                }
+                bins.put(bin, chunks);
+            }
+            final long[] linear = new long[in.getInt()];
+            for (int i = 0; i < linear.length; i++) {
+                linear[i] = in.getLong();
+            }
+            out.putInt(numBins);
+            for (final Map.Entry<Integer, long[]> bin : bins.entrySet()) {
+                out.putInt(bin.getKey()).putLong(linearOffset(bin.getKey(), linear));
+                out.putInt(bin.getValue().length / 2);
+                for (final long offset : bin.getValue()) {
+                    out.putLong(offset);
+                }
+            }
+        }
+        try (OutputStream stream = new BlockCompressedOutputStream(new File(vcf.getPath() + ".csi"))) {
+            stream.write(out.array(), 0, out.position());
+        }
+    }
+
+    /**
+     * @return the linear index offset of the first window of a bin
+     */
+    private static long linearOffset(final int bin, final long[] linear) {
+        int level = 0;
+        int first = 0;
+        while (level < 5 && bin >= first + (1 << (3 * level))) {
+            first += 1 << (3 * level);
+            level++;
+        }
+        final long window = (long) (bin - first) << (3 * (5 - level));
+        return window < linear.length ? linear[(int) window] : 0;
+    }
+}
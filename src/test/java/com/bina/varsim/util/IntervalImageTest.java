@@ -0,0 +1,108 @@
+package com.bina.varsim.util;
+
+import com.bina.intervalTree.SimpleInterval1D;
+import com.bina.intervalTree.StaticIntervalIndex;
+import com.bina.varsim.types.BedFile;
+import com.bina.varsim.types.ChrString;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * checks queries on the mapped image against the in-memory index
+ */
+public class IntervalImageTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void sameAsStaticIndexTest() throws IOException {
+        Random random = new Random(3);
+        Map<ChrString, List<SimpleInterval1D>> intervals = new LinkedHashMap<>();
+        for (String chr : new String[]{"chr1", "chr2", "chrEmpty"}) {
+            List<SimpleInterval1D> list = new ArrayList<>();
+            int n = chr.equals("chrEmpty") ? 0 : 3000;
+            for (int i = 0; i < n; i++) {
+                long left = random.nextInt(100000);
+                list.add(new SimpleInterval1D(left, left + random.nextInt(1000) - 1));
+            }
+            intervals.put(ChrString.valueOf(chr), list);
+        }
+        Path image = tmpFolder.getRoot().toPath().resolve("intervals" + IntervalImage.EXTENSION);
+        IntervalImage.write(intervals, 1234, image);
+        chrSearchTree<SimpleInterval1D> mapped = IntervalImage.open(image).getTree();
+
+        assertEquals(6000, mapped.size());
+        assertFalse(mapped.contains(ChrString.valueOf("chrEmpty"), new SimpleInterval1D(1, 100000)));
+        assertFalse(mapped.contains(ChrString.valueOf("chrMissing"), new SimpleInterval1D(1, 100000)));
+        for (Map.Entry<ChrString, List<SimpleInterval1D>> entry : intervals.entrySet()) {
+            StaticIntervalIndex<SimpleInterval1D> index = new StaticIntervalIndex<>(entry.getValue());
+            for (int i = 0; i < 300; i++) {
+                long left = random.nextInt(100000);
+                SimpleInterval1D query = new SimpleInterval1D(left, left + random.nextInt(500));
+                int wiggle = random.nextBoolean() ? 0 : random.nextInt(100);
+                assertEquals(index.getOverlaps(query, 0.3, wiggle), mapped.getOverlaps(entry.getKey(), query, 0.3, wiggle));
+                assertEquals(index.contains(query), mapped.contains(entry.getKey(), query));
+            }
+        }
+    }
+
+    /**
+     * the image is written on the first read of a BED file, mapped on the next and rebuilt when the BED file changes size
+     */
+    @Test
+    public void bedFileTest() throws IOException {
+        File bed = tmpFolder.newFile("regions.bed");
+        FileUtils.writeStringToFile(bed, "# comment\nchr1\t100\t200\nchr1\t150\t300\nchr2\t0\t10\n");
+        BedFile bedFile = new BedFile(bed.toString());
+        Path image = IntervalImage.getDefaultImagePath(bed.toPath());
+        assertTrue(IntervalImage.open(image).isUpToDate(bed.toPath()));
+        assertTrue(bedFile.contains(ChrString.valueOf("chr1"), 101, 101));
+        assertFalse(bedFile.contains(ChrString.valueOf("chr1"), 100, 100));
+        assertTrue(new BedFile(bed.toString()).contains(ChrString.valueOf("chr2"), 10, 10));
+
+        FileUtils.writeStringToFile(bed, "chr3\t0\t10\n");
+        BedFile changed = new BedFile(bed.toString());
+        assertFalse(changed.contains(ChrString.valueOf("chr1"), 101, 101));
+        assertTrue(changed.contains(ChrString.valueOf("chr3"), 1, 1));
+        assertTrue(IntervalImage.open(image).isUpToDate(bed.toPath()));
+    }
+
+    /**
+     * a truncated image is rebuilt from the BED file instead of leaving the regions empty
+     */
+    @Test
+    public void truncatedImageTest() throws IOException {
+        File bed = tmpFolder.newFile("regions.bed");
+        FileUtils.writeStringToFile(bed, "chr1\t100\t200\nchr1\t150\t300\nchr2\t0\t10\n");
+        new BedFile(bed.toString());
+        Path image = IntervalImage.getDefaultImagePath(bed.toPath());
+        long size = Files.size(image);
+        for (long length : new long[]{size - 1, size - 9, size / 2, 20, 3, 0}) {
+            try (FileChannel channel = FileChannel.open(image, StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+            BedFile bedFile = new BedFile(bed.toString());
+            assertTrue(bedFile.contains(ChrString.valueOf("chr1"), 101, 101));
+            assertTrue(bedFile.contains(ChrString.valueOf("chr2"), 10, 10));
+            assertEquals(size, Files.size(image));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.bina.varsim.util;
+
+import com.bina.varsim.types.variant.MultiSampleVariant;
+import com.bina.varsim.types.variant.Variant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MultiSampleVCFparserTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File writeVcf() throws IOException {
+        final File vcf = folder.newFile("cohort.vcf");
+        try (PrintWriter writer = new PrintWriter(vcf)) {
+            writer.println("##fileformat=VCFv4.1");
+            writer.println("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">");
+            writer.println("##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Depth\">");
+            writer.println("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tA\tB\tC");
+            writer.println("1\t100\t.\tA\tT\t.\tPASS\t.\tGT\t0|1\t0|0\t1|1");
+            writer.println("1\t200\t.\tAC\tA\t.\tPASS\t.\tGT:DP\t0|0:3\t1/0:4\t0|0:5");
+            writer.println("1\t300\t.\tA\tAGG,C\t.\tPASS\t.\tGT\t0|0\t0|0\t0|0");
+            writer.println("1\t400\t.\tA\tAGG,C\t.\tPASS\t.\tGT\t2|1\t.\t0|2");
+            writer.println("X\t500\t.\tG\tC\t.\tPASS\t.\tGT\t1\t0\t0|1");
+        }
+        return vcf;
+    }
+
+    private static List<String> readSingle(final File vcf, final String id) {
+        final List<String> variants = new ArrayList<>();
+        final VCFparser parser = new VCFparser(vcf, id, false);
+        while (parser.hasMoreInput()) {
+            final Variant variant = parser.parseLine();
+            if (variant != null) {
+                variants.add(variant.toString());
+            }
+        }
+        return variants;
+    }
+
+    @Test
+    public void sameAsOneSampleAtATimeTest() throws IOException {
+        final File vcf = writeVcf();
+        final MultiSampleVCFparser parser = new MultiSampleVCFparser(vcf.getPath(), null, false, null, false);
+        final String[] ids = parser.getSampleIds();
+        assertArrayEquals(new String[]{"A", "B", "C"}, ids);
+
+        final List<List<String>> perSample = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            perSample.add(new ArrayList<>());
+        }
+        int numRecords = 0;
+        MultiSampleVariant previous = null;
+        while (parser.hasMoreInput()) {
+            final MultiSampleVariant variant = parser.parseLine();
+            if (variant == null) {
+                continue;
+            }
+            numRecords++;
+            if (previous != null) {
+                assertSame(previous.getSampleId(0), variant.getSampleId(0));
+            }
+            previous = variant;
+            for (int i = 0; i < ids.length; i++) {
+                if (!variant.isRef(i)) {
+                    perSample.get(i).add(variant.forSample(i).toString());
+                }
+            }
+        }
+        // the record where no sample carries an alternative allele is skipped
+        assertEquals(4, numRecords);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(readSingle(vcf, ids[i]), perSample.get(i));
+        }
+    }
+
+    @Test
+    public void selectedSamplesTest() throws IOException {
+        final MultiSampleVCFparser parser = new MultiSampleVCFparser(writeVcf().getPath(), Arrays.asList("C", "A"), false, null, false);
+        assertArrayEquals(new String[]{"C", "A"}, parser.getSampleIds());
+        MultiSampleVariant variant = null;
+        while (variant == null) {
+            variant = parser.parseLine();
+        }
+        assertEquals(100, variant.getSite().getPos());
+        assertEquals(1, variant.getPaternal(0));
+        assertEquals(1, variant.getMaternal(0));
+        assertEquals(0, variant.getPaternal(1));
+        assertEquals(1, variant.getMaternal(1));
+        assertTrue(variant.isPhased(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSampleTest() throws IOException {
+        new MultiSampleVCFparser(writeVcf().getPath(), Arrays.asList("D"), false, null, false);
+    }
+
+    /**
+     * a malformed record is reported to the caller instead of exiting
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedRecordTest() throws IOException {
+        final File vcf = folder.newFile("malformed.vcf");
+        try (PrintWriter writer = new PrintWriter(vcf)) {
+            writer.println("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tA");
+            writer.println("1\t3\t.\tT\t<DUP:TANDEM>,TTTT\t.\tPASS\tSVTYPE=DUP;SVLEN=4,4\tGT\t1|2");
+        }
+        final MultiSampleVCFparser parser = new MultiSampleVCFparser(vcf.getPath(), null, false, null, false);
+        while (parser.hasMoreInput()) {
+            parser.parseLine();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.bina.varsim.util;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelBgzfInputStreamTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] content() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            builder.append("chr").append(i % 23).append('\t').append(i * 37).append("\tA\tT\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void inflateBlocksInOrderTest() throws IOException {
+        final byte[] expected = content();
+        final File bgzf = folder.newFile("content.gz");
+        try (OutputStream out = new BlockCompressedOutputStream(bgzf)) {
+            out.write(expected);
+        }
+        try (PushbackInputStream in = new PushbackInputStream(new FileInputStream(bgzf), 64)) {
+            assertTrue(ParallelBgzfInputStream.startsWithBgzfBlock(in));
+            // the window is smaller than the number of blocks
+            assertArrayEquals(expected, IOUtils.toByteArray(new ParallelBgzfInputStream(in, 2)));
+        }
+    }
+
+    @Test
+    public void plainGzipTest() throws IOException {
+        final ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(content());
+        }
+        final byte[] compressed = gzip.toByteArray();
+        final PushbackInputStream in = new PushbackInputStream(new ByteArrayInputStream(compressed), 64);
+        assertFalse(ParallelBgzfInputStream.startsWithBgzfBlock(in));
+        // nothing was consumed
+        assertArrayEquals(compressed, IOUtils.toByteArray(in));
+    }
+
+    @Test
+    public void decompressStreamTest() throws IOException {
+        final byte[] expected = content();
+        final File bgzf = folder.newFile("parsed.gz");
+        try (OutputStream out = new BlockCompressedOutputStream(bgzf)) {
+            out.write(expected);
+        }
+        final File gzip = folder.newFile("parsed.txt.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzip))) {
+            out.write(expected);
+        }
+        final GzFileParser<Void> parser = new GzFileParser<Void>() {
+            @Override
+            public Void parseLine() {
+                return null;
+            }
+        };
+        try (InputStream in = parser.decompressStream(bgzf)) {
+            assertTrue(in instanceof ParallelBgzfInputStream);
+            assertArrayEquals(expected, IOUtils.toByteArray(in));
+        }
+        try (InputStream in = parser.decompressStream(gzip)) {
+            assertFalse(in instanceof ParallelBgzfInputStream);
+            assertArrayEquals(expected, IOUtils.toByteArray(in));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.bina.varsim.util;
+
+import com.bina.varsim.types.variant.Variant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class PipelinedVCFParserTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File writeVcf() throws IOException {
+        final File vcf = folder.newFile("pipelined.vcf");
+        try (PrintWriter writer = new PrintWriter(vcf)) {
+            writer.println("##fileformat=VCFv4.1");
+            writer.println("##INFO=<ID=SVLEN,Number=.,Type=Integer,Description=\"Length of variant\">");
+            writer.println("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">");
+            writer.println("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tsample");
+            for (int i = 1; i <= 1000; i++) {
+                final String chr = i <= 500 ? "1" : "2";
+                if (i % 7 == 0) {
+                    writer.println(chr + "\t" + (i * 10) + "\t.\tA\tACGT\t.\tPASS\t.\tGT\t0|1");
+                } else if (i % 11 == 0) {
+                    writer.println(chr + "\t" + (i * 10) + "\t.\tACG\tA\t.\tLowQual\t.\tGT\t1/1");
+                } else {
+                    writer.println(chr + "\t" + (i * 10) + "\t.\tA\tT\t.\tPASS\t.\tGT\t1|0");
+                }
+                if (i % 100 == 0) {
+                    writer.println();
+                }
+            }
+        }
+        return vcf;
+    }
+
+    private static List<String> readAll(final GzFileParser<Variant> parser) {
+        final List<String> variants = new ArrayList<>();
+        while (parser.hasMoreInput()) {
+            final Variant variant = parser.parseLine();
+            if (variant != null) {
+                variants.add(variant.toString());
+            }
+        }
+        return variants;
+    }
+
+    @Test
+    public void sameVariantsInOrderTest() throws IOException {
+        final String vcf = writeVcf().getPath();
+        final List<String> expected = readAll(new VCFparser(vcf, null, true, null, false));
+
+        final PipelinedVCFParser pipelined = new PipelinedVCFParser(vcf, null, true, null, false, 3, 17);
+        assertEquals("sample", pipelined.getSampleId());
+        final List<String> actual = readAll(pipelined);
+        assertEquals(expected, actual);
+        assertFalse(pipelined.hasMoreInput());
+    }
+
+    @Test
+    public void closeBeforeEndTest() throws IOException {
+        final String vcf = writeVcf().getPath();
+        final PipelinedVCFParser pipelined = new PipelinedVCFParser(vcf, null, false, null, false, 2, 5);
+        pipelined.parseLine();
+        pipelined.close();
+        assertFalse(pipelined.hasMoreInput());
+    }
+}
@@ -0,0 +1,221 @@
+package com.bina.varsim.util;
+
+import com.bina.varsim.types.ChrString;
+import com.bina.varsim.types.MappedFastaSequence;
+import com.bina.varsim.types.Sequence;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * checks that all storage modes of SimpleReference read back the same bases
+ */
+public class SimpleReferenceTest {
+    private static final String CHR1 = "ACGTACGTNNacgtacgtnnRYACGTACGTAC";
+    private static final String CHR2 = "TTTTGGGGCCCCAAAANNNNN";
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private String fasta;
+
+    @Before
+    public void setup() throws IOException {
+        File f = tmpFolder.newFile("reference.fa");
+        // short lines so that the line layout in the fai is exercised
+        FileUtils.writeStringToFile(f, ">1 first contig\n" + wrap(CHR1, 10) + ">2\n" + wrap(CHR2, 10));
+        fasta = f.getPath();
+    }
+
+    private static String wrap(final String bases, final int width) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < bases.length(); i += width) {
+            sb.append(bases, i, Math.min(bases.length(), i + width)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void storageModesTest() {
+        for (SimpleReference.Storage storage : SimpleReference.Storage.values()) {
+            SimpleReference reference = new SimpleReference(fasta);
+            reference.setStorage(storage);
+            ChrString chr1 = new ChrString("1");
+            assertEquals(storage.toString(), CHR1.length(), reference.getSequence(chr1).length());
+            for (int i = 1; i <= CHR1.length(); i++) {
+                assertEquals(storage + " position " + i, CHR1.charAt(i - 1), reference.charAt(chr1, i));
+            }
+            assertArrayEquals(CHR1.substring(4, 25).getBytes(), reference.byteRange(chr1, 5, 26));
+            assertArrayEquals(CHR2.getBytes(), reference.getSequence(new ChrString("2")).subSeq(1, CHR2.length() + 1));
+            assertEquals(CHR1.length() - 4, reference.getSequence(chr1).getNumNonNBases());
+        }
+    }
+
+    @Test
+    public void mappedRangeTest() {
+        SimpleReference reference = new SimpleReference(fasta);
+        reference.setStorage(SimpleReference.Storage.MAPPED);
+        Sequence contig = reference.getSequence(new ChrString("1"));
+        assertTrue(contig instanceof MappedFastaSequence);
+        MappedFastaSequence view = ((MappedFastaSequence) contig).range(8, 23);
+        assertEquals(15, view.length());
+        assertArrayEquals(CHR1.substring(7, 22).getBytes(), view.subSeq(1, 16));
+        assertEquals(CHR1.charAt(9), (char) view.byteAt(3));
+    }
+
+    @Test
+    public void metadataTest() {
+        SimpleReference reference = new SimpleReference(fasta);
+        ReferenceMetadata metadata = ReferenceMetadata.read(fasta);
+        ChrString chr2 = new ChrString("2");
+        assertEquals(2, metadata.size());
+        assertEquals(CHR2.length(), metadata.getLength(chr2));
+        assertEquals(1, metadata.getIndex(chr2));
+        assertEquals(new ChrString("1"), metadata.getContigs().get(0).getName());
+        // the dict was written when the reference was opened
+        assertEquals(32, metadata.getMd5(chr2).length());
+        assertEquals(CHR1.length(), reference.getRefLen(new ChrString("1")));
+        assertEquals(0, reference.getRefLen(new ChrString("3")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bedOutsideReferenceTest() throws IOException {
+        File bed = tmpFolder.newFile("regions.bed");
+        FileUtils.writeStringToFile(bed, "2\t0\t" + (CHR2.length() + 5) + "\n");
+        new SimpleReference(fasta).getNumNonNBases(bed);
+    }
+
+    @Test
+    public void imageTest() throws IOException {
+        ChrString chr1 = new ChrString("1");
+        ChrString chr2 = new ChrString("2");
+        // opening the FASTA the regular way writes the fai and dict
+        String md5 = new SimpleReference(fasta).getMetadata().getMd5(chr2);
+        File image = ReferenceImage.getDefaultImagePath(new File(fasta).toPath()).toFile();
+        ReferenceImage.write(new File(fasta).toPath(), image.toPath());
+        new File(fasta + ".fai").delete();
+        new File(tmpFolder.getRoot(), "reference.dict").delete();
+
+        // the image next to the FASTA is used, no fai or dict is created
+        SimpleReference reference = new SimpleReference(fasta);
+        assertFalse(new File(fasta + ".fai").exists());
+        assertEquals(md5, reference.getMetadata().getMd5(chr2));
+        assertEquals(CHR1.length(), reference.getRefLen(chr1));
+        assertEquals(CHR1, new String(reference.getSequence(chr1).subSeq(1, CHR1.length() + 1)));
+        assertEquals(CHR2.charAt(17), reference.charAt(chr2, 18));
+        assertEquals(CHR1.length() - 4, reference.getSequence(chr1).getNumNonNBases());
+
+        // the image can also be given instead of the FASTA
+        SimpleReference direct = new SimpleReference(image.getPath());
+        assertArrayEquals(CHR2.getBytes(), direct.byteRange(chr2, 1, CHR2.length() + 1));
+    }
+
+    /**
+     * a truncated image next to the FASTA is ignored and the FASTA is read
+     */
+    @Test
+    public void truncatedImageTest() throws IOException {
+        ChrString chr1 = new ChrString("1");
+        Path image = ReferenceImage.getDefaultImagePath(new File(fasta).toPath());
+        ReferenceImage.write(new File(fasta).toPath(), image);
+        long size = Files.size(image);
+        for (long length : new long[]{size - 1, size - 9, size / 2, 20, 0}) {
+            try (FileChannel channel = FileChannel.open(image, StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+            SimpleReference reference = new SimpleReference(fasta);
+            assertEquals(CHR1, new String(reference.getSequence(chr1).subSeq(1, CHR1.length() + 1)));
+        }
+    }
+
+    @Test
+    public void bgzipTest() throws IOException {
+        ChrString chr1 = new ChrString("1");
+        ChrString chr2 = new ChrString("2");
+        File gz = new File(tmpFolder.getRoot(), "reference.fa.gz");
+        // one BGZF block per line, so that reads span blocks
+        try (BlockCompressedOutputStream out = new BlockCompressedOutputStream(gz)) {
+            for (String line : FileUtils.readLines(new File(fasta), StandardCharsets.US_ASCII)) {
+                out.write((line + "\n").getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            }
+        }
+        SimpleReference plain = new SimpleReference(fasta);
+        for (SimpleReference.Storage storage : SimpleReference.Storage.values()) {
+            SimpleReference reference = new SimpleReference(gz.getPath());
+            assertTrue(new File(gz.getPath() + ".gzi").exists());
+            reference.setStorage(storage);
+            assertEquals(plain.getMetadata().getMd5(chr1), reference.getMetadata().getMd5(chr1));
+            assertArrayEquals(plain.byteRange(chr1, 5, 27), reference.byteRange(chr1, 5, 27));
+            assertEquals(CHR2.charAt(12), reference.charAt(chr2, 13));
+            assertEquals(CHR1, new String(reference.getSequence(chr1).subSeq(1, CHR1.length() + 1)));
+        }
+
+        long hits = BgzfBlockCache.getShared().getHits();
+        SimpleReference reference = new SimpleReference(gz.getPath());
+        assertArrayEquals(plain.byteRange(chr2, 1, CHR2.length()), reference.byteRange(chr2, 1, CHR2.length()));
+        assertTrue(BgzfBlockCache.getShared().getHits() > hits);
+    }
+
+    @Test
+    public void concurrentAccessTest() throws Exception {
+        SimpleReference reference = new SimpleReference(fasta);
+        // small enough that the two contigs keep evicting each other
+        reference.setCacheBudget(CHR1.length());
+        SimpleReference snapshot = reference.snapshot();
+        assertTrue(snapshot.isSnapshot());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < 32; t++) {
+            final int seed = t;
+            results.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                boolean ok = true;
+                for (int i = 0; i < 500; i++) {
+                    boolean first = random.nextBoolean();
+                    String bases = first ? CHR1 : CHR2;
+                    ChrString contig = new ChrString(first ? "1" : "2");
+                    int position = random.nextInt(bases.length()) + 1;
+                    SimpleReference shared = random.nextBoolean() ? reference : snapshot;
+                    if (i % 50 == 0) {
+                        ok &= new String(shared.getSequence(contig).subSeq(1, bases.length() + 1)).equals(bases);
+                    }
+                    ok &= shared.charAt(contig, position) == bases.charAt(position - 1);
+                }
+                return ok;
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+        executor.shutdown();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshotIsReadOnlyTest() {
+        new SimpleReference(fasta).snapshot().setCacheBudget(0);
+    }
+}
@@ -0,0 +1,77 @@
+package com.bina.varsim.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * checks that the byte-level tokenizer splits records like StringUtilities.fastSplit
+ */
+public class VCFRecordTokenizerTest {
+    private static VCFRecordTokenizer tokenize(final String line) {
+        final VCFRecordTokenizer record = new VCFRecordTokenizer();
+        final byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        record.tokenize(bytes, bytes.length);
+        return record;
+    }
+
+    @Test
+    public void fieldsTest() {
+        String line = "chr1\t12345\trs1\tacg\tA,<DEL>\t.\tPASS\tSVLEN=-3\tGT:CN\t1|0:2|1";
+        VCFRecordTokenizer record = tokenize(line);
+        assertEquals(StringUtilities.fastSplit(line, "\t").length, record.getNumFields());
+        assertEquals("chr1", record.getString(VCFRecordTokenizer.CHROM));
+        assertEquals(12345, record.getInt(VCFRecordTokenizer.POS));
+        assertEquals("ACG", record.getUpperCaseString(VCFRecordTokenizer.REF));
+        assertEquals("A,<DEL>", record.getString(VCFRecordTokenizer.ALT));
+        assertTrue(record.fieldEquals(VCFRecordTokenizer.FILTER, "PASS"));
+        assertEquals(1, record.getSubfieldIndex(VCFRecordTokenizer.FORMAT, (byte) ':', "CN"));
+        assertEquals(-1, record.getSubfieldIndex(VCFRecordTokenizer.FORMAT, (byte) ':', "DP"));
+        int[] bounds = new int[2];
+        assertTrue(record.getSubfield(VCFRecordTokenizer.FIRST_SAMPLE, (byte) ':', 1, bounds));
+        assertEquals("2|1", new String(record.getLine(), bounds[0], bounds[1] - bounds[0], StandardCharsets.UTF_8));
+        assertFalse(record.getSubfield(VCFRecordTokenizer.FIRST_SAMPLE, (byte) ':', 2, bounds));
+        assertEquals(line, record.toString());
+    }
+
+    @Test
+    public void emptyFieldsTest() {
+        // runs of tabs count as one separator, as in fastSplit
+        VCFRecordTokenizer record = tokenize("\t1\t\t3\t");
+        assertEquals(2, record.getNumFields());
+        assertEquals(-3, tokenize("-3").getInt(0));
+    }
+
+    @Test
+    public void stringReuseTest() {
+        VCFRecordTokenizer record = new VCFRecordTokenizer();
+        byte[] first = "chr2\t1\t.\tA\tC".getBytes(StandardCharsets.UTF_8);
+        record.tokenize(first, first.length);
+        String chr = record.getString(VCFRecordTokenizer.CHROM);
+        byte[] second = "chr2\t7\t.\tG\tT".getBytes(StandardCharsets.UTF_8);
+        record.tokenize(second, second.length);
+        assertSame(chr, record.getString(VCFRecordTokenizer.CHROM));
+        assertEquals("G", record.getString(VCFRecordTokenizer.REF));
+    }
+
+    @Test
+    public void lineReaderTest() throws IOException {
+        ByteLineReader reader = new ByteLineReader(new ByteArrayInputStream("#h\r\n\nlast".getBytes(StandardCharsets.UTF_8)));
+        assertEquals('#', reader.peek());
+        assertTrue(reader.readLine());
+        assertEquals("#h", new String(reader.getLine(), 0, reader.getLength(), StandardCharsets.UTF_8));
+        assertTrue(reader.readLine());
+        assertEquals(0, reader.getLength());
+        assertTrue(reader.readLine());
+        assertEquals("last", new String(reader.getLine(), 0, reader.getLength(), StandardCharsets.UTF_8));
+        assertFalse(reader.hasMoreLines());
+        assertFalse(reader.readLine());
+    }
+}
@@ -115,6 +115,19 @@ public class VCFparserTest {
         Variant	v	=	parser.processLine("chr17\t43059469\t.\tC\t<DEL>\t.\tPASS\tSVLEN=-300\tGT\t1|0");
         assertTrue(v.toString().compareTo("chr17\t43059469\t.\tC\t<DEL>\t.\tPASS\tVARIANT_OVERALL_TYPE=Deletion;SVTYPE=DEL;SVLEN=-300\tGT\t1|0") == 0);
     }
+    /**
+     * SVLEN and END declared as Float or String in the header are still read as integers
+     */
+    @Test
+    public void floatSVLENTest() throws UnexpectedException {
+        VCFparser floatParser = new VCFparser();
+        floatParser.processLine("##fileformat=VCFv4.1");
+        floatParser.processLine("##INFO=<ID=SVLEN,Number=.,Type=Float,Description=\"Length of variant\">");
+        floatParser.processLine("##INFO=<ID=END,Number=1,Type=String,Description=\"End position\">");
+        floatParser.processLine("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\ttest");
+        Variant v = floatParser.processLine("chr17\t43059469\t.\tC\t<DEL>\t.\tPASS\tSVLEN=-300.0;END=43059769\tGT\t1|0");
+        assertTrue(v.toString().equals("chr17\t43059469\t.\tC\t<DEL>\t.\tPASS\tVARIANT_OVERALL_TYPE=Deletion;SVTYPE=DEL;SVLEN=-300\tGT\t1|0"));
+    }
     @Test
     public void parsingGT() throws UnexpectedException {
         Variant	v	=	parser.processLine("chr12\t24150060\t.\tT\tTGAGAGA\t.\tPASS\tSVLEN=6\tGT\t1/1");
@@ -0,0 +1,156 @@
+package com.bina.varsim.util;
+
+import com.bina.varsim.types.ParentRecord;
+import com.bina.varsim.types.variant.Variant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VariantBatchTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File writeVcf() throws IOException {
+        final File vcf = folder.newFile("batch.vcf");
+        try (PrintWriter writer = new PrintWriter(vcf)) {
+            writer.println("##fileformat=VCFv4.1");
+            writer.println("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">");
+            writer.println("##FORMAT=<ID=CN,Number=1,Type=String,Description=\"Copy number\">");
+            writer.println("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\ttest");
+            writer.println("1\t100\trs1\tA\tT\t50\tPASS\tDP=10\tGT\t0|1");
+            writer.println("1\t110\t.\tc\tg\t.\tPASS\t.\tGT\t1/1");
+            writer.println("1\t120\t.\tAC\tA\t.\tPASS\t.\tGT\t1|0");
+            writer.println("1\t130\t.\tA\tAGGT\t.\tPASS\t.\tGT\t0/1");
+            writer.println("1\t140\t.\tACGT\tTGCA\t.\tPASS\t.\tGT\t1|1");
+            writer.println("1\t150\t.\tACGTT\tTGT\t.\tPASS\t.\tGT\t1|1");
+            writer.println("1\t160\t.\tA\tT\t.\tPASS\t.\tGT\t0|0");
+            writer.println("1\t170\t.\tA\tT,C\t.\tPASS\t.\tGT\t1|2");
+            writer.println("1\t180\t.\tN\t<DEL>\t.\tPASS\tSVTYPE=DEL;SVLEN=-100;END=280\tGT\t0|1");
+            writer.println("1\t300\t.\tA\tC\t.\tPASS\t.\tGT:CN\t1|1:2|2");
+            writer.println("1\t310\t.\tG\tA\t.\tPASS\t.\tGT\t.");
+            writer.println("X\t400\t.\tG\tC\t.\tPASS\t.\tGT\t1");
+            writer.println("Y\t500\t.\tGA\tG\t.\tPASS\t.\tGT\t1");
+        }
+        return vcf;
+    }
+
+    private static List<Variant> readVariants(final File vcf) {
+        final List<Variant> variants = new ArrayList<>();
+        final VCFparser parser = new VCFparser(vcf, null, false);
+        while (parser.hasMoreInput()) {
+            final Variant variant = parser.parseLine();
+            if (variant != null) {
+                variants.add(variant);
+            }
+        }
+        return variants;
+    }
+
+    private static void assertSameRow(final Variant variant, final VariantBatch batch, final int row) {
+        assertEquals(variant.getChr(), batch.getChr(row));
+        assertEquals(variant.getPos(), batch.getPositions()[row]);
+        assertEquals(variant.getReferenceAlleleLength(), batch.getRefLengths()[row]);
+        assertEquals(variant.paternal(), batch.getGenotypes()[2 * row]);
+        assertEquals(variant.maternal(), batch.getGenotypes()[2 * row + 1]);
+        assertEquals(variant.isPhased(), batch.isPhased(row));
+        assertEquals(variant.getGoodPaternal(), batch.getGoodPaternal(row));
+        assertEquals(variant.getGoodMaternal(), batch.getGoodMaternal(row));
+        assertEquals(variant.getType(), batch.getOverallType(row));
+        assertEquals(variant.maxLen(), batch.maxLen(row));
+        if (batch.getRefOffsets()[row] >= 0) {
+            final byte[] ref = Arrays.copyOfRange(batch.getBases(), batch.getRefOffsets()[row],
+                    batch.getRefOffsets()[row] + batch.getRefLengths()[row]);
+            assertArrayEquals(variant.getReference(), ref);
+        } else {
+            assertEquals(0, variant.getReference().length);
+        }
+        assertEquals(variant.getNumberOfAlternativeAlleles(), batch.getNumAlts(row));
+        for (int allele = 1; allele <= batch.getNumAlts(row); allele++) {
+            assertEquals(variant.getType(allele), batch.getType(row, allele));
+            assertEquals(variant.maxLen(allele), batch.maxLen(row, allele));
+            final int alt = batch.getAltStarts()[row] + allele - 1;
+            if (batch.getAltOffsets()[alt] >= 0) {
+                final byte[] bases = Arrays.copyOfRange(batch.getBases(), batch.getAltOffsets()[alt],
+                        batch.getAltOffsets()[alt] + batch.getAltLengths()[alt]);
+                assertArrayEquals(variant.getAlt(allele).getSequence(), bases);
+            }
+        }
+    }
+
+    @Test
+    public void sameAsVariantsTest() throws IOException {
+        final File vcf = writeVcf();
+        final List<Variant> variants = readVariants(vcf);
+        final VCFparser parser = new VCFparser(vcf, null, false);
+        // small batches, so that records are split over several of them
+        final VariantBatch batch = new VariantBatch(3);
+        int n = 0;
+        while (parser.parseBatch(batch) > 0) {
+            assertTrue(batch.size() <= 3);
+            for (int row = 0; row < batch.size(); row++) {
+                assertSameRow(variants.get(n++), batch, row);
+            }
+        }
+        assertEquals(variants.size(), n);
+        assertEquals(0, parser.parseBatch(batch));
+    }
+
+    @Test
+    public void sameStatsTest() throws IOException {
+        final List<File> vcfs;
+        try (Stream<java.nio.file.Path> paths = Files.walk(Paths.get("src/test/resources"))) {
+            vcfs = paths.filter(p -> p.toString().endsWith(".vcf")).map(java.nio.file.Path::toFile).collect(Collectors.toList());
+        }
+        vcfs.add(writeVcf());
+        for (final File vcf : vcfs) {
+            final ParentRecord expected = new ParentRecord();
+            for (final Variant variant : readVariants(vcf)) {
+                if (variant.getGoodMaternal() != 0 || variant.getGoodPaternal() != 0) {
+                    expected.add(variant, null);
+                }
+            }
+            final ParentRecord actual = new ParentRecord();
+            final VCFparser parser = new VCFparser(vcf, null, false);
+            final VariantBatch batch = new VariantBatch();
+            while (parser.parseBatch(batch) > 0) {
+                for (int row = 0; row < batch.size(); row++) {
+                    if (batch.getGoodMaternal(row) != 0 || batch.getGoodPaternal(row) != 0) {
+                        actual.add(batch, row, null);
+                    }
+                }
+            }
+            assertEquals(vcf.toString(), expected.toString(), actual.toString());
+        }
+    }
+
+    /**
+     * a malformed record is reported to the caller instead of exiting
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedRecordTest() throws IOException {
+        final File vcf = folder.newFile("malformed.vcf");
+        try (PrintWriter writer = new PrintWriter(vcf)) {
+            writer.println("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\ttest");
+            writer.println("1\t3\t.\tT\t<DUP:TANDEM>,TTTT\t.\tPASS\tSVTYPE=DUP;SVLEN=4,4\tGT\t1|2");
+        }
+        final VCFparser parser = new VCFparser(vcf, null, false);
+        final VariantBatch batch = new VariantBatch();
+        while (parser.parseBatch(batch) > 0) {
+        }
+    }
+}